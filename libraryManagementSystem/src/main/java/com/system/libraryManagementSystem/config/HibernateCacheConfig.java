@@ -0,0 +1,29 @@
+package com.system.libraryManagementSystem.config;
+
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.xml.XmlConfiguration;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.UUID;
+
+@Configuration
+public class HibernateCacheConfig {
+
+    //the jcache provider hands out one cache manager per uri, so two application contexts (e.g. tests) would share the regions and
+    //the first one to shut down would close them for the other. every context gets its own manager built from ehcache.xml
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer() {
+        return properties -> {
+            EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+            XmlConfiguration configuration = new XmlConfiguration(getClass().getResource("/ehcache.xml"));
+            URI uri = URI.create("urn:library-management-system:second-level-cache:" + UUID.randomUUID());
+
+            properties.put(ConfigSettings.CACHE_MANAGER, provider.getCacheManager(uri, configuration));
+        };
+    }
+}
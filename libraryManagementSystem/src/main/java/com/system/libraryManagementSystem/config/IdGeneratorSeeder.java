@@ -0,0 +1,70 @@
+package com.system.libraryManagementSystem.config;
+
+import com.system.libraryManagementSystem.model.IdGenerators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+//moves every generator row past the ids already in its table, so databases created with IDENTITY keep working after the switch to
+//the pooled table generator. runs once all beans (and the schema update) are ready and before the first request, and again from
+//LoanLedgerMigration once the records it copies with their ids are in the loan table
+@Component
+public class IdGeneratorSeeder implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorSeeder.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        seed();
+    }
+
+    public void seed() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> IdGenerators.SEQUENCES.forEach(this::seed));
+    }
+
+    private void seed(String sequence, String table) {
+        //the pooled optimizer hands out (next_val - ALLOCATION_SIZE, next_val], so next_val must be at least max(id) + ALLOCATION_SIZE
+        long maxId = maxId(table);
+        if (!sequence.equals(table) && tableExists(sequence)) {       //the table the row is named after is not migrated yet, its ids are copied as they are
+            maxId = Math.max(maxId, maxId(sequence));
+        }
+        long minimum = maxId + IdGenerators.ALLOCATION_SIZE;
+
+        List<Long> current = jdbcTemplate.queryForList(
+                "SELECT " + IdGenerators.VALUE_COLUMN + " FROM " + IdGenerators.TABLE + " WHERE " + IdGenerators.NAME_COLUMN + " = ? FOR UPDATE",
+                Long.class, sequence);
+        if (current.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO " + IdGenerators.TABLE + " (" + IdGenerators.NAME_COLUMN + ", " + IdGenerators.VALUE_COLUMN + ") VALUES (?, ?)",
+                    sequence, minimum);
+        } else if (current.get(0) < minimum) {
+            jdbcTemplate.update("UPDATE " + IdGenerators.TABLE + " SET " + IdGenerators.VALUE_COLUMN + " = ? WHERE " + IdGenerators.NAME_COLUMN + " = ?",
+                    minimum, sequence);
+        } else {
+            return;
+        }
+        logger.info("Id generator {} moved to {}", sequence, minimum);
+    }
+
+    private long maxId(String table) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        return maxId == null ? 0 : maxId;
+    }
+
+    private boolean tableExists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?", Integer.class, table);
+        return count != null && count > 0;
+    }
+}
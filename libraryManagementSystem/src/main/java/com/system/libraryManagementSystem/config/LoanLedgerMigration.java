@@ -0,0 +1,150 @@
+package com.system.libraryManagementSystem.config;
+
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongBinaryOperator;
+
+//copies the loans of the tables the ledger replaced (borrowing_record and the member_book_borrowed join table) into the loan table.
+//runs before the first request while the old tables are still there, id ranges are copied in parallel chunks that commit on their own.
+//every chunk can run again without copying a row twice, so a failed or interrupted migration is finished by the next start. once both
+//tables are copied they are renamed to *_migrated in one statement, the copy runs once: later starts must not bring back loans that
+//were returned, deleted or archived since
+@Component
+public class LoanLedgerMigration implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanLedgerMigration.class);
+
+    //record ids are kept, the ledger uses the generator row of borrowing_record. an approved record is the open loan only when the member
+    //still has the book in the join table and it is the member's latest approved record of that book, the old tables had no return date
+    //so every other approved record is closed at its planned return date. borrowed_at is the partition key, a record without a borrow
+    //date is filed under the current month
+    private static final String COPY_RECORDS = "INSERT INTO loan (id, member_id, book_id, requested_at, approved_at, borrowed_at, due_at, returned_at, is_approved, version) " +
+            "SELECT br.id, br.member_id, br.book_id, br.borrow_date, IF(br.is_approved, br.borrow_date, NULL), COALESCE(br.borrow_date, NOW()), br.return_date, " +
+            "IF(br.is_approved AND NOT (EXISTS (SELECT 1 FROM member_book_borrowed mbb WHERE mbb.member_id = br.member_id AND mbb.book_id = br.book_id) " +
+            "AND br.id = (SELECT MAX(newer.id) FROM borrowing_record newer WHERE newer.member_id = br.member_id AND newer.book_id = br.book_id AND newer.is_approved)), " +
+            "COALESCE(br.return_date, br.borrow_date, NOW()), NULL), " +
+            "br.is_approved, 0 " +
+            "FROM borrowing_record br WHERE br.id BETWEEN ? AND ? " +
+            "AND NOT EXISTS (SELECT 1 FROM loan copied WHERE copied.id = br.id)";      //by id, borrowed_at of a record without a borrow date is NOW()
+    //join table rows without an open loan in the ledger, the ones the records above did not cover
+    private static final String UNCOPIED_LOANS = "SELECT mbb.member_id, mbb.book_id FROM member_book_borrowed mbb WHERE mbb.member_id BETWEEN ? AND ? " +
+            "AND NOT EXISTS (SELECT 1 FROM loan l WHERE l.member_id = mbb.member_id AND l.book_id = mbb.book_id AND l.is_approved = 1 AND l.returned_at IS NULL)";
+
+    //suffix of the copied tables, kept for reference and never read again
+    private static final String MIGRATED = "_migrated";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private IdGeneratorSeeder idGeneratorSeeder;
+
+    @Value("${library.loan-migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.loan-migration.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${library.loan-migration.threads:4}")
+    private int threads;
+
+    @Value("${library.loan.period-days:14}")
+    private int loanPeriodDays;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled || !tableExists("borrowing_record") || !tableExists("member_book_borrowed")) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            //records first, the join table rows are only copied when no record already stands for them
+            long records = runChunks(executor, "borrowing_record", "id", (from, to) -> jdbcTemplate.update(COPY_RECORDS, from, to));
+            //the copied ids are in the loan table now, whichever of the two ran first the generator has to be past them before it hands out more
+            idGeneratorSeeder.seed();
+            long loans = runChunks(executor, "member_book_borrowed", "member_id", this::copyLoans);
+            jdbcTemplate.execute("RENAME TABLE borrowing_record TO borrowing_record" + MIGRATED + ", member_book_borrowed TO member_book_borrowed" + MIGRATED);
+            logger.info("Loan ledger migration finished: {} borrowing records and {} borrowed books copied, the old tables are kept as *{}",
+                    records, loans, MIGRATED);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long runChunks(ExecutorService executor, String table, String column, LongBinaryOperator chunk) {
+        Long min = jdbcTemplate.queryForObject("SELECT MIN(" + column + ") FROM " + table, Long.class);
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(" + column + ") FROM " + table, Long.class);
+        if (min == null) {
+            return 0;
+        }
+
+        List<Future<Long>> chunks = new ArrayList<>();
+        for (long from = min; from <= max; from += chunkSize) {
+            long to = Math.min(from + chunkSize - 1, max);
+            long start = from;
+            chunks.add(executor.submit(() -> new TransactionTemplate(transactionManager).execute(status -> chunk.applyAsLong(start, to))));
+        }
+
+        long copied = 0;
+        try {
+            for (Future<Long> result : chunks) {
+                copied += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Loan ledger migration of " + table + " was interrupted", e);
+        } catch (ExecutionException e) {      //the chunks already committed stay, the next start copies the rest
+            throw new IllegalStateException("Loan ledger migration of " + table + " failed", e.getCause());
+        }
+        return copied;
+    }
+
+    //the rows need ids from the generator, so they are saved as entities (jdbc batches of hibernate.jdbc.batch_size)
+    private long copyLoans(long fromMemberId, long toMemberId) {
+        LocalDateTime now = LocalDateTime.now();        //the join table did not keep when a book was borrowed
+        List<BorrowingRecord> loans = jdbcTemplate.query(UNCOPIED_LOANS, (row, rowNumber) -> BorrowingRecord.builder()
+                .member(memberRepository.getReferenceById(row.getLong("member_id")))
+                .book(bookRepository.getReferenceById(row.getLong("book_id")))
+                .requestedAt(now)
+                .approvedAt(now)
+                .borrowDate(now)
+                .returnDate(now.plusDays(loanPeriodDays))
+                .isApproved(true)
+                .build(), fromMemberId, toMemberId);
+        borrowingRecordRepository.saveAll(loans);
+        return loans.size();
+    }
+
+    private boolean tableExists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?", Integer.class, table);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.system.libraryManagementSystem.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "library.loan-limit")
+public class LoanLimitProperties {
+
+    private boolean enabled = true;
+
+    //by role without the ROLE_ prefix, in lower case (member, librarian, admin). a member with several roles gets the limits of the role with the most loans
+    private Map<String, Limit> roles = new HashMap<>();
+
+    //members without a configured role
+    private Limit defaults = new Limit();
+
+    //counters are compared with the loan table this often, and dropped when the member did not borrow or request for idle-timeout
+    private Duration reconcileInterval = Duration.ofMinutes(10);
+
+    private Duration idleTimeout = Duration.ofHours(1);
+
+    private int reconcileBatchSize = 500;
+
+    @Getter
+    @Setter
+    public static class Limit {
+
+        //open loans and pending requests together, a pending request keeps its place under the loan limit until it is approved
+        private int maxLoans = 5;
+
+        private int maxRequests = 3;
+    }
+}
@@ -0,0 +1,212 @@
+package com.system.libraryManagementSystem.config;
+
+import com.system.libraryManagementSystem.model.IdGenerators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+//keeps the loan table range partitioned by the month of borrowed_at: one partition per month plus pmax for anything later, so a query
+//with a range on borrowed_at only reads its months. the first start turns the table into a partitioned one (a single table copy), after
+//that library.loan-partition.months-ahead months are always there in advance, cut from the empty pmax.
+//months older than library.loan-partition.retention-months leave the table as a whole partition (detached into a table loan_pYYYYMM of
+//their own, or dropped), no row by row delete. a month with a loan or request still open is kept until it is closed
+@Component
+public class LoanPartitioning implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanPartitioning.class);
+
+    private static final String TABLE = IdGenerators.LOAN_TABLE;
+    private static final String KEY = "borrowed_at";
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final String PARTITIONS = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${library.loan-partition.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.loan-partition.months-ahead:3}")
+    private int monthsAhead;
+
+    //0 keeps every month
+    @Value("${library.loan-partition.retention-months:0}")
+    private int retentionMonths;
+
+    //detach keeps the rows of a retired month in loan_pYYYYMM, drop throws them away
+    @Value("${library.loan-partition.retention-action:detach}")
+    private String retentionAction;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        if (partitions().isEmpty()) {
+            partition();
+        }
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${library.loan-partition.maintenance-interval:PT24H}", initialDelayString = "${library.loan-partition.maintenance-interval:PT24H}")
+    public synchronized void maintain() {
+        if (!enabled || partitions().isEmpty()) {
+            return;
+        }
+        try {
+            addMonths(YearMonth.now().plusMonths(monthsAhead));
+            if (retentionMonths > 0) {
+                retireMonthsBefore(YearMonth.now().minusMonths(retentionMonths));
+            }
+        } catch (DataAccessException e) {       //another instance may be at it, the next run tries again
+            logger.warn("Loan partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    //mysql wants the partition key in the primary key and in every unique key, and no foreign keys on a partitioned table
+    private synchronized void partition() {
+        long started = System.nanoTime();
+        jdbcTemplate.update("UPDATE " + TABLE + " SET " + KEY + " = COALESCE(requested_at, approved_at, NOW()) WHERE " + KEY + " IS NULL");
+        for (String foreignKey : jdbcTemplate.queryForList("SELECT CONSTRAINT_NAME FROM information_schema.REFERENTIAL_CONSTRAINTS " +
+                "WHERE CONSTRAINT_SCHEMA = DATABASE() AND TABLE_NAME = ?", String.class, TABLE)) {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP FOREIGN KEY " + foreignKey);
+        }
+
+        String columnType = jdbcTemplate.queryForObject("SELECT COLUMN_TYPE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?", String.class, TABLE, KEY);
+        StringJoiner keys = new StringJoiner(", ");
+        keys.add("MODIFY " + KEY + " " + columnType + " NOT NULL");
+        keys.add("DROP PRIMARY KEY, ADD PRIMARY KEY (id, " + KEY + ")");
+        uniqueKeys().forEach((name, columns) -> {
+            if (!columns.contains(KEY)) {
+                keys.add("DROP INDEX " + name + ", ADD UNIQUE INDEX " + name + " (" + String.join(", ", columns) + ", " + KEY + ")");
+            }
+        });
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " " + keys);
+
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(" + KEY + ") FROM " + TABLE, LocalDateTime.class);
+        YearMonth first = oldest == null ? YearMonth.now() : YearMonth.from(oldest);
+        StringJoiner partitions = new StringJoiner(", ");
+        for (YearMonth month = first; !month.isAfter(YearMonth.now().plusMonths(monthsAhead)); month = month.plusMonths(1)) {
+            partitions.add(definition(month));
+        }
+        partitions.add("PARTITION pmax VALUES LESS THAN (MAXVALUE)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " PARTITION BY RANGE COLUMNS(" + KEY + ") (" + partitions + ")");
+        logger.info("Loan table partitioned by month from {} in {} ms", first, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    //cuts the missing months from pmax, which holds nothing but loans borrowed in the far future
+    private void addMonths(YearMonth until) {
+        YearMonth last = lastMonth();
+        if (last == null || !last.isBefore(until)) {
+            return;
+        }
+        StringJoiner partitions = new StringJoiner(", ");
+        for (YearMonth month = last.plusMonths(1); !month.isAfter(until); month = month.plusMonths(1)) {
+            partitions.add(definition(month));
+        }
+        partitions.add("PARTITION pmax VALUES LESS THAN (MAXVALUE)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION pmax INTO (" + partitions + ")");
+        logger.info("Loan partitions added up to {}", until);
+    }
+
+    private void retireMonthsBefore(YearMonth before) {
+        List<String> retired = new ArrayList<>();
+        for (Map.Entry<String, YearMonth> partition : partitions().entrySet()) {
+            if (partition.getValue() == null || !partition.getValue().isBefore(before)) {
+                break;      //in order, pmax and the months still kept come last
+            }
+            String name = partition.getKey();
+            Integer open = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE + " PARTITION (" + name + ") WHERE returned_at IS NULL", Integer.class);
+            if (open != null && open > 0) {
+                logger.info("Loan partition {} is kept, {} loans or requests of it are still open", name, open);
+                continue;
+            }
+            if ("drop".equalsIgnoreCase(retentionAction)) {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + name);
+            } else if (!detach(name)) {
+                continue;
+            }
+            retired.add(name);
+        }
+        if (!retired.isEmpty()) {
+            logger.info("Loan partitions {} {}", retired, "drop".equalsIgnoreCase(retentionAction) ? "dropped" : "detached");
+        }
+    }
+
+    //swaps the partition with an empty table of the same shape, only metadata changes hands, then drops the now empty partition
+    private boolean detach(String partition) {
+        String archive = TABLE + "_" + partition;
+        Integer exists = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?",
+                Integer.class, archive);
+        if (exists == null || exists == 0) {
+            jdbcTemplate.execute("CREATE TABLE " + archive + " LIKE " + TABLE);
+            jdbcTemplate.execute("ALTER TABLE " + archive + " REMOVE PARTITIONING");
+        } else {        //left by a run that stopped half way
+            Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + archive, Integer.class);
+            Integer left = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE + " PARTITION (" + partition + ")", Integer.class);
+            if (rows != null && rows > 0 && left != null && left == 0) {       //exchanged already, only the drop is missing
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition);
+                return true;
+            }
+            if (rows != null && rows > 0) {
+                logger.warn("Loan partition {} is not detached, {} already holds rows", partition, archive);
+                return false;
+            }
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " EXCHANGE PARTITION " + partition + " WITH TABLE " + archive);
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition);
+        return true;
+    }
+
+    //partition name to the month it holds, in order, null for pmax. empty when the table is not partitioned
+    private Map<String, YearMonth> partitions() {
+        Map<String, YearMonth> partitions = new LinkedHashMap<>();
+        jdbcTemplate.query(PARTITIONS, row -> {
+            String bound = row.getString("PARTITION_DESCRIPTION");
+            partitions.put(row.getString("PARTITION_NAME"),
+                    "MAXVALUE".equalsIgnoreCase(bound) ? null : YearMonth.parse(bound.replace("'", "").substring(0, 7)).minusMonths(1));
+        }, TABLE);
+        return partitions;
+    }
+
+    private YearMonth lastMonth() {
+        YearMonth last = null;
+        for (YearMonth month : partitions().values()) {
+            if (month != null) {
+                last = month;
+            }
+        }
+        return last;
+    }
+
+    private Map<String, List<String>> uniqueKeys() {
+        Map<String, List<String>> keys = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? " +
+                "AND NON_UNIQUE = 0 AND INDEX_NAME <> 'PRIMARY' ORDER BY INDEX_NAME, SEQ_IN_INDEX", row -> {
+            keys.computeIfAbsent(row.getString("INDEX_NAME"), name -> new ArrayList<>()).add(row.getString("COLUMN_NAME"));
+        }, TABLE);
+        return keys;
+    }
+
+    //the partition of a month holds the rows borrowed before the first day of the next one
+    private static String definition(YearMonth month) {
+        return "PARTITION " + NAME.format(month) + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + " 00:00:00')";
+    }
+}
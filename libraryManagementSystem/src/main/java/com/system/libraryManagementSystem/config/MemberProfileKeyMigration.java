@@ -0,0 +1,64 @@
+package com.system.libraryManagementSystem.config;
+
+import com.system.libraryManagementSystem.model.IdGenerators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+//moves member_profile onto the primary key of its member (MemberProfile.member is @MapsId). the schema update adds the new mapping but
+//keeps the old member_id column, while it is there the rows get their member's id and the column goes. runs before the first request,
+//a start interrupted halfway finishes on the next one
+@Component
+public class MemberProfileKeyMigration implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemberProfileKeyMigration.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!columnExists("member_profile", "member_id")) {
+            return;
+        }
+
+        //the foreign key of member_id would keep the column
+        for (String foreignKey : foreignKeysOf("member_profile", "member_id")) {
+            jdbcTemplate.execute("ALTER TABLE member_profile DROP FOREIGN KEY " + foreignKey);
+        }
+        //through negative ids, a profile id may already be the id of another profile's member
+        Integer moved = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.update("UPDATE member_profile SET id = -member_id WHERE id > 0");
+            return jdbcTemplate.update("UPDATE member_profile SET id = -id WHERE id < 0");
+        });
+        jdbcTemplate.execute("ALTER TABLE member_profile DROP COLUMN member_id");
+        //the schema update could not add it while the ids were the old ones
+        if (foreignKeysOf("member_profile", "id").isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE member_profile ADD CONSTRAINT fk_member_profile_member FOREIGN KEY (id) REFERENCES member (id)");
+        }
+        jdbcTemplate.update("DELETE FROM " + IdGenerators.TABLE + " WHERE " + IdGenerators.NAME_COLUMN + " = ?", "member_profile");     //its generator row is not used anymore
+        logger.info("Member profiles moved onto the ids of their members, {} rows", moved);
+    }
+
+    private boolean columnExists(String table, String column) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?",
+                Integer.class, table, column);
+        return count != null && count > 0;
+    }
+
+    private List<String> foreignKeysOf(String table, String column) {
+        return jdbcTemplate.queryForList("SELECT constraint_name FROM information_schema.key_column_usage " +
+                "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ? AND referenced_table_name IS NOT NULL",
+                String.class, table, column);
+    }
+}
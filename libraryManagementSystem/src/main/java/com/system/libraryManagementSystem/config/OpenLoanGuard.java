@@ -0,0 +1,66 @@
+package com.system.libraryManagementSystem.config;
+
+import com.system.libraryManagementSystem.model.IdGenerators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//one open loan per member and book, enforced by the database. the loan table is partitioned by borrowed_at and mysql wants the partition
+//key in every unique key, so the key lives in open_loan (not partitioned), kept by triggers on the loan table: whatever opens a second
+//loan of the same book for a member (borrow, approval, a record edited or copied) fails with a duplicate key and its transaction rolls back.
+//the triggers are created again and open_loan is rebuilt from the loan table on every start
+@Component
+public class OpenLoanGuard implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenLoanGuard.class);
+
+    private static final String LOAN = IdGenerators.LOAN_TABLE;
+    private static final String TABLE = "open_loan";
+
+    private static final String OPEN = "NEW.is_approved = 1 AND NEW.returned_at IS NULL AND NEW.member_id IS NOT NULL AND NEW.book_id IS NOT NULL";
+    private static final String INSERT = "INSERT INTO " + TABLE + " (member_id, book_id, loan_id) VALUES (NEW.member_id, NEW.book_id, NEW.id)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (member_id BIGINT NOT NULL, book_id BIGINT NOT NULL, loan_id BIGINT NOT NULL, " +
+                "PRIMARY KEY (member_id, book_id), UNIQUE KEY uk_open_loan_loan (loan_id))");
+
+        trigger("loan_open_insert", "AFTER INSERT", "IF " + OPEN + " THEN " + INSERT + "; END IF;");
+        //only a change of the open state, the member or the book moves the key, an edited due date leaves it alone
+        trigger("loan_open_update", "AFTER UPDATE", "IF NOT (OLD.is_approved <=> NEW.is_approved AND OLD.returned_at <=> NEW.returned_at " +
+                "AND OLD.member_id <=> NEW.member_id AND OLD.book_id <=> NEW.book_id) THEN " +
+                "DELETE FROM " + TABLE + " WHERE loan_id = OLD.id; " +
+                "IF " + OPEN + " THEN " + INSERT + "; END IF; END IF;");
+        trigger("loan_open_delete", "AFTER DELETE", "DELETE FROM " + TABLE + " WHERE loan_id = OLD.id;");
+
+        //open loans written before the triggers (or while the table was dropped and created again) are keyed here, a pair already open twice
+        //keeps its first loan in the key and is logged, returning the book closes both
+        Integer[] counts = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.update("DELETE FROM " + TABLE);
+            int keyed = jdbcTemplate.update("INSERT IGNORE INTO " + TABLE + " (member_id, book_id, loan_id) " +
+                    "SELECT member_id, book_id, id FROM " + LOAN + " WHERE is_approved = 1 AND returned_at IS NULL " +
+                    "AND member_id IS NOT NULL AND book_id IS NOT NULL ORDER BY id");
+            Integer open = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + LOAN + " WHERE is_approved = 1 AND returned_at IS NULL " +
+                    "AND member_id IS NOT NULL AND book_id IS NOT NULL", Integer.class);
+            return new Integer[]{keyed, open};
+        });
+        if (counts[1] > counts[0]) {
+            logger.warn("{} open loans hold a book their member already has open, they are closed when the book is returned", counts[1] - counts[0]);
+        }
+    }
+
+    private void trigger(String name, String event, String body) {
+        jdbcTemplate.execute("DROP TRIGGER IF EXISTS " + name);
+        jdbcTemplate.execute("CREATE TRIGGER " + name + " " + event + " ON " + LOAN + " FOR EACH ROW BEGIN " + body + " END");
+    }
+}
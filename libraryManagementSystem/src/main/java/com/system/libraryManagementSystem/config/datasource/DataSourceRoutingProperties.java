@@ -0,0 +1,35 @@
+package com.system.libraryManagementSystem.config.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "library.datasource.routing")
+public class DataSourceRoutingProperties {
+
+    private boolean enabled;
+
+    //how long a member keeps reading from the primary after a write, covers the replication lag
+    private Duration pinToPrimary = Duration.ofSeconds(5);
+
+    private Duration healthCheckTimeout = Duration.ofSeconds(2);
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Replica {
+
+        private String url;
+
+        private String username;
+
+        private String password;
+    }
+}
@@ -0,0 +1,64 @@
+package com.system.libraryManagementSystem.config.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+//read-only transactions (@Transactional(readOnly = true) in the services) read from the replicas, everything else uses spring.datasource.
+//off by default, enable with library.datasource.routing.enabled=true and library.datasource.routing.replicas[n].url/username/password
+@Configuration
+@ConditionalOnProperty(name = "library.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+public class ReadWriteRoutingConfig {
+
+    @Bean
+    public ReadYourWritesTracker readYourWritesTracker(DataSourceRoutingProperties routingProperties) {
+        return new ReadYourWritesTracker(routingProperties.getPinToPrimary());
+    }
+
+    @Bean
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaDataSource(DataSourceProperties dataSourceProperties, DataSourceRoutingProperties routingProperties,
+                                                      HikariDataSource primaryDataSource, ReadYourWritesTracker readYourWritesTracker) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (DataSourceRoutingProperties.Replica replica : routingProperties.getReplicas()) {
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(dataSourceProperties.determineDriverClassName())
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            pool.setPoolName("replica-" + replicas.size());
+            pool.setReadOnly(true);     //pools start lazily, a replica that is down at startup is only marked down
+            replicas.add(pool);
+        }
+        return new ReplicaRoutingDataSource(replicas, primaryDataSource, readYourWritesTracker, routingProperties.getHealthCheckTimeout());
+    }
+
+    //the proxy only takes a real connection when the first statement runs, after HibernateJpaDialect has marked it read-only or not,
+    //read-only connections come from the replica side
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaRoutingDataSource replicaDataSource, ReadYourWritesTracker readYourWritesTracker) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(new WriteTrackingDataSource(primaryDataSource, readYourWritesTracker));
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,57 @@
+package com.system.libraryManagementSystem.config.datasource;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//remembers which members wrote recently, their reads go to the primary until the window has passed so they always see their own writes
+//the pins are per application instance, behind a load balancer use sticky sessions or a window longer than the replication lag
+public class ReadYourWritesTracker {
+
+    private final long windowNanos;
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWritesTracker(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void pinCurrentPrincipal() {
+        String principal = currentPrincipal();
+        if (principal != null) {
+            pinnedUntil.merge(principal, System.nanoTime() + windowNanos, Math::max);
+        }
+    }
+
+    public boolean isCurrentPrincipalPinned() {
+        String principal = currentPrincipal();
+        if (principal == null) {
+            return false;
+        }
+        Long until = pinnedUntil.get(principal);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() <= 0) {
+            pinnedUntil.remove(principal, until);
+            return false;
+        }
+        return true;
+    }
+
+    public void evictExpired() {
+        long now = System.nanoTime();
+        pinnedUntil.values().removeIf(until -> until - now <= 0);
+    }
+
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+}
@@ -0,0 +1,110 @@
+package com.system.libraryManagementSystem.config.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//connections for read-only transactions: round robin over the healthy replicas, the primary for pinned members or when no replica is up
+public class ReplicaRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final List<DataSource> replicas;
+    private final DataSource primary;
+    private final ReadYourWritesTracker tracker;
+    private final int healthCheckTimeoutSeconds;
+    private final AtomicIntegerArray healthy;     //1 = healthy, updated by the health check and by failed connection attempts
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(List<DataSource> replicas, DataSource primary, ReadYourWritesTracker tracker, Duration healthCheckTimeout) {
+        this.replicas = List.copyOf(replicas);
+        this.primary = primary;
+        this.tracker = tracker;
+        this.healthCheckTimeoutSeconds = (int) Math.max(1, healthCheckTimeout.toSeconds());
+        this.healthy = new AtomicIntegerArray(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            healthy.set(i, 1);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    //same routing, the credentials go to whichever pool the connection comes from
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection route(Connector connector) throws SQLException {
+        if (tracker.isCurrentPrincipalPinned()) {
+            return connector.connect(primary);
+        }
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(1, replicas.size()));
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            int index = (start + attempt) % replicas.size();
+            if (healthy.get(index) == 1) {
+                try {
+                    return connector.connect(replicas.get(index));
+                } catch (SQLException e) {
+                    markDown(index, e);
+                }
+            }
+        }
+        return connector.connect(primary);     //no replica is up, reads fall back to the primary
+    }
+
+    @Scheduled(fixedDelayString = "${library.datasource.routing.health-check-interval:PT10S}")
+    public void checkReplicas() {
+        for (int i = 0; i < replicas.size(); i++) {
+            try (Connection connection = replicas.get(i).getConnection()) {
+                if (connection.isValid(healthCheckTimeoutSeconds)) {
+                    if (healthy.getAndSet(i, 1) == 0) {
+                        logger.info("Replica {} is back up", i);
+                    }
+                } else {
+                    markDown(i, null);
+                }
+            } catch (SQLException e) {
+                markDown(i, e);
+            }
+        }
+        tracker.evictExpired();
+    }
+
+    public boolean isReplicaHealthy(int index) {
+        return healthy.get(index) == 1;
+    }
+
+    private void markDown(int index, SQLException cause) {
+        if (healthy.getAndSet(index, 0) == 1) {
+            logger.warn("Replica {} is down, its reads go to the other replicas or the primary until the next successful health check", index, cause);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Connector {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
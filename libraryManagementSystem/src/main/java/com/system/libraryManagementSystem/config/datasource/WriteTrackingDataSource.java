@@ -0,0 +1,45 @@
+package com.system.libraryManagementSystem.config.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//the primary as seen by read-write transactions, every connection handed out pins the current member to the primary
+public class WriteTrackingDataSource extends DelegatingDataSource {
+
+    private final ReadYourWritesTracker tracker;
+
+    public WriteTrackingDataSource(DataSource primary, ReadYourWritesTracker tracker) {
+        super(primary);
+        this.tracker = tracker;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        pin();
+        return super.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        pin();
+        return super.getConnection(username, password);
+    }
+
+    private void pin() {
+        tracker.pinCurrentPrincipal();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            //the window starts again when the transaction ends, a long write would otherwise use up most of it
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    tracker.pinCurrentPrincipal();
+                }
+            });
+        }
+    }
+}
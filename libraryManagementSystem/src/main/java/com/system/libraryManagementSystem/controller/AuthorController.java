@@ -9,6 +9,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -49,7 +50,7 @@ public class AuthorController {
     public ResponseEntity<AuthorDTO> getAuthorById(@PathVariable Long id) {
         Author author = authorService.getAuthorById(id);
 
-        return new ResponseEntity<>(AuthorMapper.toDTO(author), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(author.getVersion())).body(AuthorMapper.toDTO(author));
     }
 
     @Operation(summary = "Create Author")
@@ -64,10 +65,11 @@ public class AuthorController {
     @Operation(summary = "Update Author")
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @PutMapping("/update")
-    public ResponseEntity<AuthorDTO> updateAuthor(@Valid @RequestBody AuthorDTO updatedAuthorDTO) { //baka no need na @PathVariable, just search using the id of the updatedAuthorDTO
+    public ResponseEntity<AuthorDTO> updateAuthor(@Valid @RequestBody AuthorDTO updatedAuthorDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) { //baka no need na @PathVariable, just search using the id of the updatedAuthorDTO
         Author newAuthor = AuthorMapper.toEntity(updatedAuthorDTO);
+        newAuthor.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         Author updatedAuthor = authorService.updateAuthor(newAuthor.getId(), newAuthor);
-        return new ResponseEntity<>(AuthorMapper.toDTO(updatedAuthor), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedAuthor.getVersion())).body(AuthorMapper.toDTO(updatedAuthor));
     }
 
     @Operation(summary = "Delete Author")
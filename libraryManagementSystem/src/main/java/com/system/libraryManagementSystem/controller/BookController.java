@@ -1,14 +1,18 @@
 package com.system.libraryManagementSystem.controller;
 
 import com.system.libraryManagementSystem.dto.BookDTO;
+import com.system.libraryManagementSystem.dto.BookInventoryDTO;
+import com.system.libraryManagementSystem.mapper.BookInventoryMapper;
 import com.system.libraryManagementSystem.mapper.BookMapper;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.service.BookService;
+import com.system.libraryManagementSystem.service.InventoryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -23,6 +27,9 @@ public class BookController {
     @Autowired
     private BookService bookService;
 
+    @Autowired
+    private InventoryService inventoryService;
+
     public BookController(BookService bookService) {
         this.bookService = bookService;
     }
@@ -46,7 +53,7 @@ public class BookController {
     @GetMapping("/{id}")
     public ResponseEntity<BookDTO> getBookById(@PathVariable Long id) {
         Book book = bookService.getBookById(id);
-        return new ResponseEntity<>(BookMapper.toDTO(book), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(book.getVersion())).body(BookMapper.toDTO(book));
     }
 
     @Operation(summary = "Create Book")
@@ -61,10 +68,11 @@ public class BookController {
     @Operation(summary = "Update Book")
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @PutMapping("/update")
-    public ResponseEntity<BookDTO> updateBook(@Valid @RequestBody BookDTO updatedBookDTO) {
+    public ResponseEntity<BookDTO> updateBook(@Valid @RequestBody BookDTO updatedBookDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         Book newBook = BookMapper.toEntity(updatedBookDTO);
+        newBook.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         Book updatedBook = bookService.updateBook(newBook.getId(), newBook);
-        return new ResponseEntity<>(BookMapper.toDTO(updatedBook), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedBook.getVersion())).body(BookMapper.toDTO(updatedBook));
     }
 
     @Operation(summary = "Delete Book")
@@ -75,6 +83,19 @@ public class BookController {
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
+    @Operation(summary = "Get Book Inventory", security = @SecurityRequirement(name = ""))
+    @GetMapping("/{id}/inventory")
+    public ResponseEntity<BookInventoryDTO> getBookInventory(@PathVariable Long id) {
+        return new ResponseEntity<>(BookInventoryMapper.toDTO(inventoryService.getInventory(id)), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Set Book Copies")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @PutMapping("/{id}/inventory")
+    public ResponseEntity<BookInventoryDTO> setBookCopies(@PathVariable Long id, @Valid @RequestBody BookInventoryDTO bookInventoryDTO) {
+        return new ResponseEntity<>(BookInventoryMapper.toDTO(inventoryService.setTotalCopies(id, bookInventoryDTO.getTotalCopies())), HttpStatus.OK);
+    }
+
     @Operation(summary = "Get Books By Title", security = @SecurityRequirement(name = ""))
     @GetMapping("/title")
     public ResponseEntity<Page<BookDTO>> getBooksByTitle(
@@ -1,23 +1,33 @@
 package com.system.libraryManagementSystem.controller;
 
+import com.system.libraryManagementSystem.dto.BatchApprovalRequestDTO;
+import com.system.libraryManagementSystem.dto.BatchApprovalResultDTO;
+import com.system.libraryManagementSystem.dto.BorrowRequestDTO;
 import com.system.libraryManagementSystem.dto.BorrowingRecordDTO;
+import com.system.libraryManagementSystem.dto.IntakeStatusDTO;
 import com.system.libraryManagementSystem.mapper.BorrowingRecordMapper;
 import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.service.BorrowIntakeService;
 import com.system.libraryManagementSystem.service.BorrowingRecordService;
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.net.URI;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 
 @RestController
@@ -27,6 +37,9 @@ public class BorrowingRecordController { //maybe you can also create a api end p
     @Autowired
     BorrowingRecordService borrowingRecordService;
 
+    @Autowired
+    private BorrowIntakeService borrowIntakeService;
+
     public BorrowingRecordController(BorrowingRecordService borrowingRecordService) {
         this.borrowingRecordService = borrowingRecordService;
     }
@@ -38,13 +51,15 @@ public class BorrowingRecordController { //maybe you can also create a api end p
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "ASC") String sortDirection,
-            @RequestParam(defaultValue = "id") String sortField
+            @RequestParam(defaultValue = "id") String sortField,
+            @RequestParam(required = false) String borrowedFrom,       //a window of borrow dates [from, until) reads only its months
+            @RequestParam(required = false) String borrowedUntil
     ) {
-        return new ResponseEntity<>(
-                borrowingRecordService.getAllBorrowingRecords(page, size, sortDirection, sortField)
-                        .map(BorrowingRecordMapper::toDTO),
-                HttpStatus.OK
-        );
+        Page<BorrowingRecord> records = borrowedFrom == null && borrowedUntil == null
+                ? borrowingRecordService.getAllBorrowingRecords(page, size, sortDirection, sortField)
+                : borrowingRecordService.getBorrowingRecordsBorrowedBetween(borrowedFrom == null ? null : parseDateTime(borrowedFrom),
+                        borrowedUntil == null ? null : parseDateTime(borrowedUntil), page, size, sortDirection, sortField);
+        return new ResponseEntity<>(records.map(BorrowingRecordMapper::toDTO), HttpStatus.OK);
     }
 
     @Operation(summary = "Get Record By ID")
@@ -52,7 +67,7 @@ public class BorrowingRecordController { //maybe you can also create a api end p
     @GetMapping("/{id}")
     public ResponseEntity<BorrowingRecordDTO> getBorrowingRecordById(@PathVariable Long id) {
         BorrowingRecord borrowingRecord = borrowingRecordService.getBorrowingRecordById(id);
-        return new ResponseEntity<>(BorrowingRecordMapper.toDTO(borrowingRecord), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(borrowingRecord.getVersion())).body(BorrowingRecordMapper.toDTO(borrowingRecord));
     }
 
     @Operation(summary = "Create Record")
@@ -67,10 +82,11 @@ public class BorrowingRecordController { //maybe you can also create a api end p
     @Operation(summary = "Update Record")
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @PutMapping("/update")
-    public ResponseEntity<BorrowingRecordDTO> updateBorrowingRecord(@Valid @RequestBody BorrowingRecordDTO updatedBorrowingRecordDTO) {
+    public ResponseEntity<BorrowingRecordDTO> updateBorrowingRecord(@Valid @RequestBody BorrowingRecordDTO updatedBorrowingRecordDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         BorrowingRecord newBorrowingRecord = BorrowingRecordMapper.toEntity(updatedBorrowingRecordDTO);
+        newBorrowingRecord.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         BorrowingRecord updatedBorrowingRecord = borrowingRecordService.updateBorrowingRecord(newBorrowingRecord.getId(), newBorrowingRecord);
-        return new ResponseEntity<>(BorrowingRecordMapper.toDTO(updatedBorrowingRecord), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedBorrowingRecord.getVersion())).body(BorrowingRecordMapper.toDTO(updatedBorrowingRecord));
     }
 
     @Operation(summary = "Delete Record")
@@ -107,13 +123,36 @@ public class BorrowingRecordController { //maybe you can also create a api end p
         return new ResponseEntity<>(BorrowingRecordMapper.toDTO(savedBorrowingRecord), HttpStatus.CREATED);
     }
 
+    @Operation(summary = "Send Borrow Request Asynchronously")
+    @PreAuthorize("#requestDTO.memberEmail == authentication.name")
+    @PostMapping("/request/async")
+    public ResponseEntity<IntakeStatusDTO> sendOwnBorrowingRequestAsync(@Valid @RequestBody BorrowRequestDTO requestDTO) {       //queued, saved by the intake writer
+        IntakeStatusDTO status = borrowIntakeService.submit(requestDTO);
+        return ResponseEntity.accepted()
+                .location(URI.create("/borrowing-record/intake/" + status.getTrackingId()))
+                .body(status);
+    }
+
+    @Operation(summary = "Get Borrow Request Status")
+    @GetMapping("/intake/{trackingId}")
+    public ResponseEntity<IntakeStatusDTO> getIntakeStatus(@PathVariable String trackingId) {
+        return new ResponseEntity<>(borrowIntakeService.getStatus(trackingId), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Subscribe To Borrow Request Status")
+    @GetMapping(value = "/intake/{trackingId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToIntakeStatus(@PathVariable String trackingId) {
+        return borrowIntakeService.subscribe(trackingId);
+    }
+
     @Operation(summary = "Update Own Record")
     @PreAuthorize("#updatedBorrowingRecordDTO.memberEmail == authentication.name")
     @PutMapping("/update/own")
-    public ResponseEntity<BorrowingRecordDTO> updateOwnBorrowingRecordDTO(@Valid @RequestBody BorrowingRecordDTO updatedBorrowingRecordDTO) {
+    public ResponseEntity<BorrowingRecordDTO> updateOwnBorrowingRecordDTO(@Valid @RequestBody BorrowingRecordDTO updatedBorrowingRecordDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         BorrowingRecord newBorrowingRecord = BorrowingRecordMapper.toEntity(updatedBorrowingRecordDTO);
+        newBorrowingRecord.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         BorrowingRecord updatedBorrowingRecord = borrowingRecordService.updateBorrowingRecord(newBorrowingRecord.getId(), newBorrowingRecord);
-        return new ResponseEntity<>(BorrowingRecordMapper.toDTO(updatedBorrowingRecord), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedBorrowingRecord.getVersion())).body(BorrowingRecordMapper.toDTO(updatedBorrowingRecord));
     }
 
     @Operation(summary = "Delete Own Record")
@@ -221,6 +260,45 @@ public class BorrowingRecordController { //maybe you can also create a api end p
         return new ResponseEntity<>("Request has been approved", HttpStatus.ACCEPTED);
     }
 
+    @Operation(summary = "Approve Borrow Requests In Bulk")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @PutMapping("/approve")
+    public ResponseEntity<BatchApprovalResultDTO> approveBorrowRequests(@Valid @RequestBody BatchApprovalRequestDTO request) {
+        return new ResponseEntity<>(borrowingRecordService.approveBorrowRequests(request), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Claim Pending Requests")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @PostMapping("/claims")
+    public ResponseEntity<List<BorrowingRecordDTO>> claimPendingRequests(@RequestParam(defaultValue = "10") int size, Authentication authentication) {
+        return new ResponseEntity<>(
+                borrowingRecordService.claimPendingRequests(authentication.getName(), size).stream()
+                        .map(BorrowingRecordMapper::toDTO)
+                        .toList(),
+                HttpStatus.OK
+        );
+    }
+
+    @Operation(summary = "Get Claimed Requests")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @GetMapping("/claims")
+    public ResponseEntity<List<BorrowingRecordDTO>> getClaimedRequests(Authentication authentication) {
+        return new ResponseEntity<>(
+                borrowingRecordService.getClaimedRequests(authentication.getName()).stream()
+                        .map(BorrowingRecordMapper::toDTO)
+                        .toList(),
+                HttpStatus.OK
+        );
+    }
+
+    @Operation(summary = "Release Claimed Request")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @DeleteMapping("/claims/{id}")
+    public ResponseEntity<Void> releaseClaim(@PathVariable Long id, Authentication authentication) {
+        borrowingRecordService.releaseClaim(id, authentication.getName());
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     public LocalDateTime parseDateTime(String dateString) {
         try {
             // If user provides full date and time
@@ -0,0 +1,38 @@
+package com.system.libraryManagementSystem.controller;
+
+import com.system.libraryManagementSystem.dto.CatalogImportReportDTO;
+import com.system.libraryManagementSystem.service.CatalogImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/catalog")
+public class CatalogImportController {
+
+    @Autowired
+    private CatalogImportService catalogImportService;
+
+    //the body is read as a stream, columns/fields: title, genre, publicationYear, authorName, authorBiography (only for new authors)
+    @Operation(summary = "Import Books And Authors From CSV")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<CatalogImportReportDTO> importCsv(InputStream body) throws IOException {
+        return new ResponseEntity<>(catalogImportService.importCsv(body), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Import Books And Authors From NDJSON")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ResponseEntity<CatalogImportReportDTO> importNdjson(InputStream body) throws IOException {
+        return new ResponseEntity<>(catalogImportService.importNdjson(body), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,32 @@
+package com.system.libraryManagementSystem.controller;
+
+import com.system.libraryManagementSystem.exception.PreconditionFailedException;
+
+//entity versions as strong ETags ("3"), a PUT sends the ETag it read back in If-Match and fails with 412 if the entity changed since
+public final class ETags {
+
+    private ETags() {
+    }
+
+    //null (no header) when an unchanged update hands back the entity mapped from the request
+    public static String of(Long version) {
+        return version == null ? null : "\"" + version + "\"";
+    }
+
+    //null when there is no precondition (no header or "*"). If-Match uses the strong comparison (RFC 9110 13.1.1), a weak tag never matches
+    public static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            throw new PreconditionFailedException("If-Match needs a strong ETag, a weak one never matches, got: " + ifMatch);
+        }
+        tag = tag.replace("\"", "");
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match must be an ETag returned by this API, got: " + ifMatch);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.system.libraryManagementSystem.controller;
+
+import com.system.libraryManagementSystem.service.ExportFormat;
+import com.system.libraryManagementSystem.service.ExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+
+    @Autowired
+    private ExportService exportService;
+
+    @Operation(summary = "Export All Books")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/books")
+    public ResponseEntity<StreamingResponseBody> exportBooks(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip
+    ) {
+        ExportFormat exportFormat = ExportFormat.fromParameter(format);
+        return stream("books", exportFormat, gzip, out -> exportService.exportBooks(exportFormat, gzip, out));
+    }
+
+    @Operation(summary = "Export All Members")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/members")
+    public ResponseEntity<StreamingResponseBody> exportMembers(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip
+    ) {
+        ExportFormat exportFormat = ExportFormat.fromParameter(format);
+        return stream("members", exportFormat, gzip, out -> exportService.exportMembers(exportFormat, gzip, out));
+    }
+
+    @Operation(summary = "Export All Borrowing Records")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/borrowing-records")
+    public ResponseEntity<StreamingResponseBody> exportBorrowingRecords(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip
+    ) {
+        ExportFormat exportFormat = ExportFormat.fromParameter(format);
+        return stream("borrowing-records", exportFormat, gzip, out -> exportService.exportBorrowingRecords(exportFormat, gzip, out));
+    }
+
+    //the body is written on an async thread after this returns (spring.mvc.async.request-timeout bounds how long it may take)
+    private ResponseEntity<StreamingResponseBody> stream(String name, ExportFormat format, boolean gzip, StreamingResponseBody body) {
+        String filename = name + "." + format.getExtension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+}
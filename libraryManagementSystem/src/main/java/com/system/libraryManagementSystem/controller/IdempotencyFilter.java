@@ -0,0 +1,222 @@
+package com.system.libraryManagementSystem.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.system.libraryManagementSystem.controller.IdempotencyStore.Claim;
+import com.system.libraryManagementSystem.controller.IdempotencyStore.StoredResponse;
+import com.system.libraryManagementSystem.exception.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+//POST and PUT requests with an Idempotency-Key header run once per key, a retry with the same key and body gets the stored response
+//(marked with Idempotent-Replayed: true) instead of running again. keys are scoped to the caller and the path, a key sent again with a
+//different body is refused. registered as a plain servlet filter, it runs after the security filter chain so only authorized requests get here
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String REPLAYED = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final List<String> REPLAYED_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.LOCATION, HttpHeaders.ETAG);
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${library.idempotency.max-body-bytes:65536}")
+    private int maxBodyBytes;
+
+    @Value("${library.idempotency.max-response-bytes:1048576}")
+    private int maxResponseBytes;
+
+    @Value("${library.idempotency.wait-timeout:10s}")
+    private Duration waitTimeout;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return request.getHeader(IDEMPOTENCY_KEY) == null || !(method.equals("POST") || method.equals("PUT"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY).trim();
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            writeError(response, HttpStatus.BAD_REQUEST, "INVALID IDEMPOTENCY KEY", IDEMPOTENCY_KEY + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        if (request.getContentLengthLong() > maxBodyBytes || (request.getContentLengthLong() < 0 && request.getContentType() != null)) {
+            writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "IDEMPOTENCY KEY NOT SUPPORTED",
+                    IDEMPOTENCY_KEY + " is only supported for bodies with a Content-Length of at most " + maxBodyBytes + " bytes");
+            return;
+        }
+
+        byte[] body = request.getInputStream().readAllBytes();
+        String key = caller() + " " + request.getMethod() + " " + request.getRequestURI() + " " + idempotencyKey;
+        byte[] fingerprint = fingerprint(request, body);
+
+        Claim claim = idempotencyStore.claim(key, fingerprint);
+        while (!claim.owner()) {
+            if (!claim.sameRequest()) {
+                writeError(response, HttpStatus.UNPROCESSABLE_ENTITY, "IDEMPOTENCY KEY REUSED", IDEMPOTENCY_KEY + " was already used for a different request");
+                return;
+            }
+            StoredResponse stored;
+            try {
+                stored = idempotencyStore.await(claim, waitTimeout);        //only duplicates of this key wait here
+            } catch (TimeoutException e) {
+                writeError(response, HttpStatus.CONFLICT, "IDEMPOTENCY KEY IN USE", "A request with this " + IDEMPOTENCY_KEY + " is still running, retry later");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException("Interrupted while waiting for the request with the same " + IDEMPOTENCY_KEY, e);
+            }
+            if (stored != null) {
+                replay(stored, response);
+                return;
+            }
+            claim = idempotencyStore.claim(key, fingerprint);     //the first request failed without a response worth keeping, run it again
+        }
+
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(new CachedBodyRequest(request, body), cachingResponse);
+            if (isReplayable(request, cachingResponse)) {
+                idempotencyStore.complete(claim, toStoredResponse(cachingResponse));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                idempotencyStore.abandon(claim);
+            }
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+    //5xx, 409 and 429 can go away on a retry, they are not kept. streamed (async) responses are not kept either
+    private boolean isReplayable(HttpServletRequest request, ContentCachingResponseWrapper response) {
+        int status = response.getStatus();
+        return !request.isAsyncStarted()
+                && status < 500 && status != HttpStatus.CONFLICT.value() && status != HttpStatus.TOO_MANY_REQUESTS.value()
+                && response.getContentSize() <= maxResponseBytes;
+    }
+
+    private StoredResponse toStoredResponse(ContentCachingResponseWrapper response) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : REPLAYED_HEADERS) {
+            String value = name.equals(HttpHeaders.CONTENT_TYPE) ? response.getContentType() : response.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return new StoredResponse(response.getStatus(), headers, response.getContentAsByteArray());
+    }
+
+    private void replay(StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        stored.headers().forEach(response::setHeader);
+        response.setHeader(REPLAYED, "true");
+        response.getOutputStream().write(stored.body());
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String label, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(LocalDateTime.now(), status.value(), label, message));
+    }
+
+    private static String caller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null || !authentication.isAuthenticated() ? "anonymous" : authentication.getName();
+    }
+
+    private static byte[] fingerprint(HttpServletRequest request, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (request.getQueryString() != null) {
+                digest.update(request.getQueryString().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            return digest.digest(body);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //the body was read to fingerprint it, the controller reads it again from here
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
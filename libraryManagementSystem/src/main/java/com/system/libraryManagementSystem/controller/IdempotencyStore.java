@@ -0,0 +1,123 @@
+package com.system.libraryManagementSystem.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//responses of POST/PUT requests by Idempotency-Key (see IdempotencyFilter). the first request with a key owns it until it completes,
+//duplicates of that key wait for its response and nothing else is locked. completed responses are kept for library.idempotency.ttl,
+//at most library.idempotency.max-entries of them, the oldest go first
+@Component
+public class IdempotencyStore {
+
+    @Value("${library.idempotency.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${library.idempotency.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Slot> completed = new ConcurrentLinkedQueue<>();      //completion order is expiry order, the ttl is the same for all
+    private final AtomicInteger completedCount = new AtomicInteger();
+    private Clock clock = Clock.systemUTC();
+
+    //the owner runs the request and calls complete or abandon, anyone else gets the slot of the owner to wait on
+    public Claim claim(String key, byte[] fingerprint) {
+        Slot mine = new Slot(key, fingerprint);
+        Slot slot = slots.compute(key, (k, existing) -> existing == null || existing.isExpired(clock.instant()) ? mine : existing);
+        if (slot != mine) {
+            return new Claim(false, Arrays.equals(slot.fingerprint, fingerprint), slot);
+        }
+        return new Claim(true, true, slot);
+    }
+
+    public void complete(Claim claim, StoredResponse response) {
+        Slot slot = claim.slot();
+        slot.expiresAt = clock.instant().plus(ttl);
+        completed.add(slot);
+        completedCount.incrementAndGet();
+        slot.response.complete(response);
+        while (completedCount.get() > maxEntries) {        //oldest first
+            if (!evict(completed.poll())) {
+                break;
+            }
+        }
+    }
+
+    //the request failed in a way worth retrying (5xx, exception), waiting duplicates run it themselves
+    public void abandon(Claim claim) {
+        slots.remove(claim.slot().key, claim.slot());
+        claim.slot().response.complete(null);
+    }
+
+    //null when the owner abandoned the key, then the caller claims it again
+    public StoredResponse await(Claim claim, Duration timeout) throws InterruptedException, TimeoutException {
+        try {
+            return claim.slot().response.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.idempotency.purge-interval:PT1M}")
+    public void purgeExpired() {
+        Instant now = clock.instant();
+        for (Slot slot = completed.peek(); slot != null && slot.isExpired(now); slot = completed.peek()) {
+            if (!evict(completed.poll())) {
+                break;
+            }
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private boolean evict(Slot slot) {
+        if (slot == null) {
+            return false;
+        }
+        completedCount.decrementAndGet();
+        slots.remove(slot.key, slot);
+        return true;
+    }
+
+    public record Claim(boolean owner, boolean sameRequest, Slot slot) {
+    }
+
+    public record StoredResponse(int status, Map<String, String> headers, byte[] body) {
+    }
+
+    public static final class Slot {
+        private final String key;
+        private final byte[] fingerprint;
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+        private volatile Instant expiresAt;     //null while the request runs
+
+        private Slot(String key, byte[] fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+        private boolean isExpired(Instant now) {
+            return expiresAt != null && expiresAt.isBefore(now);
+        }
+    }
+}
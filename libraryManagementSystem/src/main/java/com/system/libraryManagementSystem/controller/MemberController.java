@@ -1,6 +1,8 @@
 package com.system.libraryManagementSystem.controller;
 
+import com.system.libraryManagementSystem.dto.BookDTO;
 import com.system.libraryManagementSystem.dto.MemberDTO;
+import com.system.libraryManagementSystem.mapper.BookMapper;
 import com.system.libraryManagementSystem.mapper.MemberMapper;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.repository.BookRepository;
@@ -9,6 +11,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -47,7 +50,7 @@ public class MemberController {
     @GetMapping("/{id}")
     public ResponseEntity<MemberDTO> getMemberById(@PathVariable Long id) {
         Member member = memberService.getMemberById(id);
-        return new ResponseEntity<>(MemberMapper.toDTO(member), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(member.getVersion())).body(MemberMapper.toDTO(member));
     }
 
     @Operation(summary = "Create Member")
@@ -63,10 +66,11 @@ public class MemberController {
     @Operation(summary = "Update Member")
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @PutMapping("/update")
-    public ResponseEntity<MemberDTO> updateMember(@Valid @RequestBody MemberDTO updatedMemberDTO) {
+    public ResponseEntity<MemberDTO> updateMember(@Valid @RequestBody MemberDTO updatedMemberDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         Member newMember = MemberMapper.toEntity(updatedMemberDTO);
+        newMember.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         Member updatedMember = memberService.updateMember(newMember.getId(), newMember);
-        return new ResponseEntity<>(MemberMapper.toDTO(updatedMember), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedMember.getVersion())).body(MemberMapper.toDTO(updatedMember));
     }
 
     @Operation(summary = "Delete Member")
@@ -82,7 +86,7 @@ public class MemberController {
     @GetMapping("/own/{id}")
     public ResponseEntity<MemberDTO> getOwnMemberDetails(@PathVariable Long id) {  //automatically inject Authentication object, can use the email instead of id
         Member member = memberService.getMemberById(id);
-        return new ResponseEntity<>(MemberMapper.toDTO(member), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(member.getVersion())).body(MemberMapper.toDTO(member));
     }
 
 //    @PreAuthorize("#memberDTO.email == authentication.name") //pwede rin
@@ -135,6 +139,34 @@ public class MemberController {
         return new ResponseEntity<>(MemberMapper.toDTO(member), HttpStatus.OK);
     }
 
+    @Operation(summary = "Get Own Loans")
+    @PreAuthorize("@memberService.isMemberOwner(#memberId, authentication)")
+    @GetMapping("/{memberId}/loans")
+    public ResponseEntity<Page<BookDTO>> getOwnLoans(
+            @PathVariable Long memberId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "ASC") String sortDirection,
+            @RequestParam(defaultValue = "id") String sortField
+    ) {
+        return new ResponseEntity<>(memberService.getBorrowedBooks(memberId, page, size, sortDirection, sortField)
+                .map(BookMapper::toDTO), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Get Loans - ADMIN/LIBRARIAN")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @GetMapping("/authorized/{memberId}/loans")
+    public ResponseEntity<Page<BookDTO>> getLoansWithAuthority(
+            @PathVariable Long memberId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "ASC") String sortDirection,
+            @RequestParam(defaultValue = "id") String sortField
+    ) {
+        return new ResponseEntity<>(memberService.getBorrowedBooks(memberId, page, size, sortDirection, sortField)
+                .map(BookMapper::toDTO), HttpStatus.OK);
+    }
+
     @Operation(summary = "Get Members By Name")
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @GetMapping("/name")
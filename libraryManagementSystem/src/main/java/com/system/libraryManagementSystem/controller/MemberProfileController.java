@@ -11,6 +11,7 @@ import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.util.Pair;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -58,16 +59,17 @@ public class MemberProfileController {
     @GetMapping("/{id}")
     public ResponseEntity<MemberProfileDTO> getMemberProfileById(@PathVariable Long id) {
         MemberProfile memberProfile = memberProfileService.getMemberProfileById(id);
-        return new ResponseEntity<>(MemberProfileMapper.toDTO(memberProfile), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(memberProfile.getVersion())).body(MemberProfileMapper.toDTO(memberProfile));
     }
 
     @Operation(summary = "Update Profile")
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @PutMapping("/update")
-    public ResponseEntity<MemberProfileDTO> updateMemberProfile(@Valid @RequestBody MemberProfileDTO updatedMemberProfileDTO) {
+    public ResponseEntity<MemberProfileDTO> updateMemberProfile(@Valid @RequestBody MemberProfileDTO updatedMemberProfileDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         MemberProfile newMemberProfile = MemberProfileMapper.toEntity(updatedMemberProfileDTO);
+        newMemberProfile.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         MemberProfile updatedMemberProfile = memberProfileService.updateMemberProfile(newMemberProfile.getId(), newMemberProfile);
-        return new ResponseEntity<>(MemberProfileMapper.toDTO(updatedMemberProfile), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedMemberProfile.getVersion())).body(MemberProfileMapper.toDTO(updatedMemberProfile));
     }
 
     @Operation(summary = "Create Profile")
@@ -101,16 +103,17 @@ public class MemberProfileController {
     @GetMapping("/own/{id}")
     public ResponseEntity<MemberProfileDTO> getOwnMemberProfile(@PathVariable Long id, Authentication authentication) {     //maybe can use email instead of id
         MemberProfile memberProfile = memberProfileService.getMemberProfileById(id);
-        return new ResponseEntity<>(MemberProfileMapper.toDTO(memberProfile), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(memberProfile.getVersion())).body(MemberProfileMapper.toDTO(memberProfile));
     }
 
     @Operation(summary = "Update Own Profile")
     @PreAuthorize("@memberProfileService.isMemberProfileOwner(#memberProfileDTO.memberProfileId, authentication)")
     @PutMapping("/update/own")
-    public ResponseEntity<MemberProfileDTO> updateOwnMemberProfile(@RequestBody MemberProfileDTO memberProfileDTO) {
+    public ResponseEntity<MemberProfileDTO> updateOwnMemberProfile(@RequestBody MemberProfileDTO memberProfileDTO, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         MemberProfile memberProfile = MemberProfileMapper.toEntity(memberProfileDTO);
+        memberProfile.setVersion(ETags.parseIfMatch(ifMatch));      //expected version, checked by the service
         MemberProfile updatedMemberProfile = memberProfileService.updateMemberProfile(memberProfile.getId(), memberProfile);
-        return new ResponseEntity<>(MemberProfileMapper.toDTO(updatedMemberProfile), HttpStatus.OK);
+        return ResponseEntity.ok().eTag(ETags.of(updatedMemberProfile.getVersion())).body(MemberProfileMapper.toDTO(updatedMemberProfile));
     }
 
     @Operation(summary = "Get Profile By Name")
@@ -0,0 +1,52 @@
+package com.system.libraryManagementSystem.controller;
+
+import com.system.libraryManagementSystem.dto.ReservationDTO;
+import com.system.libraryManagementSystem.dto.ReservationRequestDTO;
+import com.system.libraryManagementSystem.service.ReservationService;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/reservation")
+public class ReservationController {
+
+    @Autowired
+    private ReservationService reservationService;
+
+    //a member queues for themselves, librarians can queue any member and give the reservation a priority
+    @Operation(summary = "Reserve A Book Without Available Copies")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN') or @memberService.isMemberOwner(#requestDTO.memberId, authentication)")
+    @PostMapping
+    public ResponseEntity<ReservationDTO> placeReservation(@Valid @RequestBody ReservationRequestDTO requestDTO, Authentication authentication) {
+        boolean librarian = authentication.getAuthorities().stream()
+                .anyMatch(authority -> authority.getAuthority().equals("ROLE_LIBRARIAN") || authority.getAuthority().equals("ROLE_ADMIN"));
+        int priority = librarian && requestDTO.getPriority() != null ? requestDTO.getPriority() : 0;
+        return new ResponseEntity<>(reservationService.placeReservation(requestDTO.getMemberId(), requestDTO.getBookId(), priority), HttpStatus.CREATED);
+    }
+
+    @Operation(summary = "Get Reservation And Position In The Queue")
+    @GetMapping("/{id}")
+    public ResponseEntity<ReservationDTO> getReservation(@PathVariable Long id) {
+        return new ResponseEntity<>(reservationService.getReservation(id), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Get Next In Line For A Book")
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @GetMapping("/book/{bookId}/next")
+    public ResponseEntity<ReservationDTO> getNextInLine(@PathVariable Long bookId) {
+        return new ResponseEntity<>(reservationService.getNextInLine(bookId), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Cancel Reservation")
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancelReservation(@PathVariable Long id) {
+        reservationService.cancelReservation(id);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
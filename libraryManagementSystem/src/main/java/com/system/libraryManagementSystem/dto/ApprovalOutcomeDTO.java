@@ -0,0 +1,24 @@
+package com.system.libraryManagementSystem.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class ApprovalOutcomeDTO {
+
+    private Long recordId;
+
+    private Outcome outcome;
+
+    public enum Outcome {
+        APPROVED,
+        ALREADY_APPROVED,
+        UNAVAILABLE,        //no copy of the book was left for this request
+        NOT_FOUND
+    }
+}
@@ -0,0 +1,27 @@
+package com.system.libraryManagementSystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//either the ids to approve or, when no ids are given, a filter over the pending requests (oldest first)
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class BatchApprovalRequestDTO {
+
+    @Size(max = 500, message = "At most 500 requests can be approved at once")
+    private List<Long> ids;
+
+    private Long bookId;        //filter only
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    private LocalDateTime requestedBefore;      //filter only
+}
@@ -0,0 +1,25 @@
+package com.system.libraryManagementSystem.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class BatchApprovalResultDTO {
+
+    private int approved;
+
+    private int alreadyApproved;
+
+    private int unavailable;
+
+    private int notFound;
+
+    private List<ApprovalOutcomeDTO> outcomes;      //one per requested id, in the order the ids were sent
+}
@@ -0,0 +1,23 @@
+package com.system.libraryManagementSystem.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class BookInventoryDTO {
+
+    private Long bookId;
+
+    @NotNull(message = "Total copies must not be blank")
+    @Min(value = 0, message = "Total copies must be 0 or more")
+    private Integer totalCopies;
+
+    private int availableCopies;    //read only, ignored on update
+}
@@ -0,0 +1,46 @@
+package com.system.libraryManagementSystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.validation.constraints.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+//body of POST /borrowing-record/request/async. only the shape is validated here, the ids, title, name and email are checked
+//against LoanReferenceIndex instead of the database (no @BookId / @MemberId)
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class BorrowRequestDTO {
+
+    @NotNull(message = "The ID of a book cannot be null")
+    @Min(value = 0, message = "Book's id must be valid")
+    private Long bookId;
+
+    @NotBlank(message = "Book's title must not be blank")
+    private String bookTitle;
+
+    @NotNull(message = "The ID of a member cannot be null")
+    @Min(value = 0, message = "Member's id must be valid")
+    private Long memberId;
+
+    @NotBlank(message = "Member's name must not be blank")
+    @Size(min = 2, max = 50, message = "Member's name must be between 2 to 50 characters")
+    private String memberName;
+
+    @NotBlank(message = "Member's email must not be blank")
+    @Email(message = "Member's email must be valid and proper format: example@gmail.com")
+    private String memberEmail;
+
+    @NotNull(message = "Date must not be blank to borrow")
+    @PastOrPresent(message = "Date must be between now or in the past to borrow")
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    private LocalDateTime borrowDate;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    private LocalDateTime returnDate;
+}
@@ -0,0 +1,17 @@
+package com.system.libraryManagementSystem.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class CatalogImportErrorDTO {
+
+    private long row;       //1-based data row, the csv header is not counted
+
+    private String message;
+}
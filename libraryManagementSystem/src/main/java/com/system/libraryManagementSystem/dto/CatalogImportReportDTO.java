@@ -0,0 +1,29 @@
+package com.system.libraryManagementSystem.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class CatalogImportReportDTO {
+
+    private long rowsRead;
+
+    private long booksImported;
+
+    private long authorsCreated;
+
+    private long rowsRejected;
+
+    private int chunksCommitted;
+
+    private List<CatalogImportErrorDTO> errors;       //capped at library.import.max-reported-errors
+
+    private boolean errorsTruncated;
+}
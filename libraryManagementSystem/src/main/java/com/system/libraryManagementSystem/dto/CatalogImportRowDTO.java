@@ -0,0 +1,34 @@
+package com.system.libraryManagementSystem.dto;
+
+import com.system.libraryManagementSystem.dto.validation.annotation.PublicationYear;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+//one line of a catalog import (csv row with a header or ndjson object), the author is matched by name
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class CatalogImportRowDTO {
+
+    @NotBlank(message = "Book's title must not be blank")
+    private String title;
+
+    @NotBlank(message = "Book's genre must not be blank")
+    private String genre;
+
+    @PublicationYear
+    private Integer publicationYear;
+
+    @NotBlank(message = "Author's name must not be blank")
+    @Size(min = 2, max = 50, message = "Author's name must be between 2 to 50 characters")
+    private String authorName;
+
+    //only needed when the author does not exist yet
+    @Size(min = 20, max = 200, message = "Biography must be between 20 to 200 characters")
+    private String authorBiography;
+}
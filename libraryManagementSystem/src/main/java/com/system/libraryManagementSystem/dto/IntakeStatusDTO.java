@@ -0,0 +1,27 @@
+package com.system.libraryManagementSystem.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class IntakeStatusDTO {
+
+    private String trackingId;
+
+    private Status status;
+
+    private Long recordId;      //set once the request is saved
+
+    private String message;     //why the request was rejected
+
+    public enum Status {
+        QUEUED,
+        ACCEPTED,
+        REJECTED
+    }
+}
@@ -0,0 +1,30 @@
+package com.system.libraryManagementSystem.dto;
+
+import lombok.*;
+
+import java.time.LocalDate;
+
+//flat member row for the export, the password is never exported
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class MemberExportDTO {
+
+    private Long id;
+
+    private String name;
+
+    private String email;
+
+    private boolean enabled;
+
+    private String phoneNumber;
+
+    private String address;
+
+    private LocalDate dateOfBirth;
+}
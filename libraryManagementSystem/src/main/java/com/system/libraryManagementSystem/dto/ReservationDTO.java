@@ -0,0 +1,35 @@
+package com.system.libraryManagementSystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.system.libraryManagementSystem.model.Reservation;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class ReservationDTO {
+
+    private Long reservationId;
+
+    private Long bookId;
+
+    private Long memberId;
+
+    private int priority;
+
+    private Reservation.Status status;
+
+    private Integer position;       //1 is next in line, only while WAITING
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    private LocalDateTime queuedAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    private LocalDateTime expiresAt;        //pickup deadline of a READY hold
+}
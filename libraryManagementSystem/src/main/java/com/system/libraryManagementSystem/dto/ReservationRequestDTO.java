@@ -0,0 +1,22 @@
+package com.system.libraryManagementSystem.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class ReservationRequestDTO {
+
+    @NotNull(message = "Book id must not be blank")
+    private Long bookId;
+
+    @NotNull(message = "Member id must not be blank")
+    private Long memberId;
+
+    private Integer priority;       //librarians only, ignored for members
+}
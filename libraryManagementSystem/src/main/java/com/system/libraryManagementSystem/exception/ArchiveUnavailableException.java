@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class ArchiveUnavailableException extends RuntimeException {
+    public ArchiveUnavailableException(String message) {
+        super(message);
+    }
+}
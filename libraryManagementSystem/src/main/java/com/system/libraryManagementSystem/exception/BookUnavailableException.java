@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class BookUnavailableException extends RuntimeException {
+    public BookUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class IntakeRequestNotFoundException extends RuntimeException {
+    public IntakeRequestNotFoundException(String message) {
+        super(message);
+    }
+}
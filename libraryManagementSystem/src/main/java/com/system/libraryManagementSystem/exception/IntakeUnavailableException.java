@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class IntakeUnavailableException extends RuntimeException {
+    public IntakeUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class InvalidApprovalFilterException extends RuntimeException {
+    public InvalidApprovalFilterException(String message) {
+        super(message);
+    }
+}
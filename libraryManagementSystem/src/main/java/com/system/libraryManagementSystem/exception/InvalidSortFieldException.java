@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class InvalidSortFieldException extends RuntimeException {
+    public InvalidSortFieldException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class InventoryConflictException extends RuntimeException {
+    public InventoryConflictException(String message) {
+        super(message);
+    }
+}
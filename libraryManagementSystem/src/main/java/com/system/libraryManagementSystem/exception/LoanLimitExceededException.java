@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class LoanLimitExceededException extends RuntimeException {
+    public LoanLimitExceededException(String message) {
+        super(message);
+    }
+}
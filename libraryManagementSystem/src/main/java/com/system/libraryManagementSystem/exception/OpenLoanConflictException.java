@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class OpenLoanConflictException extends RuntimeException {
+    public OpenLoanConflictException(String message) {
+        super(message);
+    }
+}
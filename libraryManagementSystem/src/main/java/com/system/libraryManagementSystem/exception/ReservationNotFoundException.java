@@ -0,0 +1,7 @@
+package com.system.libraryManagementSystem.exception;
+
+public class ReservationNotFoundException extends RuntimeException {
+    public ReservationNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package com.system.libraryManagementSystem.mapper;
+
+import com.system.libraryManagementSystem.dto.BookInventoryDTO;
+import com.system.libraryManagementSystem.model.BookInventory;
+
+public class BookInventoryMapper {
+
+    public static BookInventoryDTO toDTO(BookInventory bookInventory) {
+        BookInventoryDTO bookInventoryDTO = new BookInventoryDTO();
+
+        bookInventoryDTO.setBookId(bookInventory.getBookId());
+        bookInventoryDTO.setTotalCopies(bookInventory.getTotalCopies());
+        bookInventoryDTO.setAvailableCopies(bookInventory.getAvailableCopies());
+
+        return bookInventoryDTO;
+    }
+}
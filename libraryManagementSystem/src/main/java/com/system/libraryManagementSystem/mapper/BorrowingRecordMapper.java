@@ -32,14 +32,18 @@ public class BorrowingRecordMapper {
         BorrowingRecordDTO borrowingRecordDTO = new BorrowingRecordDTO();
 
         borrowingRecordDTO.setRecordId(borrowingRecord.getId());
-        borrowingRecordDTO.setMemberId(borrowingRecord.getMember().getId());
-        borrowingRecordDTO.setMemberName(borrowingRecord.getMember().getName());
-        borrowingRecordDTO.setBookId(borrowingRecord.getBook().getId());
-        borrowingRecordDTO.setBookTitle(borrowingRecord.getBook().getTitle());
+        if (borrowingRecord.getMember() != null) {        //null once the member of a closed loan is deleted
+            borrowingRecordDTO.setMemberId(borrowingRecord.getMember().getId());
+            borrowingRecordDTO.setMemberName(borrowingRecord.getMember().getName());
+            borrowingRecordDTO.setMemberEmail(borrowingRecord.getMember().getEmail());
+        }
+        if (borrowingRecord.getBook() != null) {
+            borrowingRecordDTO.setBookId(borrowingRecord.getBook().getId());
+            borrowingRecordDTO.setBookTitle(borrowingRecord.getBook().getTitle());
+        }
         borrowingRecordDTO.setBorrowDate(borrowingRecord.getBorrowDate());
         borrowingRecordDTO.setReturnDate(borrowingRecord.getReturnDate());
         borrowingRecordDTO.setApproved(borrowingRecord.isApproved());
-        borrowingRecordDTO.setMemberEmail(borrowingRecord.getMember().getEmail());
 
         return borrowingRecordDTO;
     }
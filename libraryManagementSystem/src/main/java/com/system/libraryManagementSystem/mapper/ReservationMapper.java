@@ -0,0 +1,23 @@
+package com.system.libraryManagementSystem.mapper;
+
+import com.system.libraryManagementSystem.dto.ReservationDTO;
+import com.system.libraryManagementSystem.model.Reservation;
+
+public class ReservationMapper {
+
+    //book and member are lazy, only their ids are read and a proxy hands those out without a select
+    public static ReservationDTO toDTO(Reservation reservation, Integer position) {
+        ReservationDTO reservationDTO = new ReservationDTO();
+
+        reservationDTO.setReservationId(reservation.getId());
+        reservationDTO.setBookId(reservation.getBook().getId());
+        reservationDTO.setMemberId(reservation.getMember().getId());
+        reservationDTO.setPriority(reservation.getPriority());
+        reservationDTO.setStatus(reservation.getStatus());
+        reservationDTO.setPosition(position);
+        reservationDTO.setQueuedAt(reservation.getQueuedAt());
+        reservationDTO.setExpiresAt(reservation.getExpiresAt());
+
+        return reservationDTO;
+    }
+}
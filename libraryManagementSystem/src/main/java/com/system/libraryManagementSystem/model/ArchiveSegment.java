@@ -0,0 +1,58 @@
+package com.system.libraryManagementSystem.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+//manifest of the loan archive, one row per segment file of closed loans (LoanArchiveService). the row is written in the transaction
+//that deletes the loans from the loan table, and its min/max columns let a query skip the files that can not hold a match.
+//written once and never updated, so it has no version
+@Table(name = "loan_archive_segment")
+public class ArchiveSegment {
+
+    @Id
+    @Column(length = 64)        //the file name in library.loan-archive.directory
+    private String name;
+
+    @Column(name = "row_count", nullable = false)
+    private Integer rowCount;
+
+    @Column(nullable = false)
+    private Long bytes;
+
+    @Column(name = "min_id")
+    private Long minId;
+
+    @Column(name = "max_id")
+    private Long maxId;
+
+    @Column(name = "min_member_id")
+    private Long minMemberId;
+
+    @Column(name = "max_member_id")
+    private Long maxMemberId;
+
+    @Column(name = "min_borrowed_at")
+    private LocalDateTime minBorrowedAt;
+
+    @Column(name = "max_borrowed_at")
+    private LocalDateTime maxBorrowedAt;
+
+    @Column(name = "min_due_at")
+    private LocalDateTime minDueAt;
+
+    @Column(name = "max_due_at")
+    private LocalDateTime maxDueAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
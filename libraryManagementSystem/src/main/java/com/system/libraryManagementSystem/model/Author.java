@@ -3,6 +3,10 @@ package com.system.libraryManagementSystem.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.util.List;
 
@@ -12,18 +16,29 @@ import java.util.List;
 @AllArgsConstructor
 @RequiredArgsConstructor
 @ToString
-@EqualsAndHashCode
+@EqualsAndHashCode(callSuper = false)
 @Builder
-public class Author {
+@BatchSize(size = 25)
+@NamedEntityGraph(name = "Author.publishedBooks", attributeNodes = @NamedAttributeNode("publishedBooks"))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "author")
+@Table(indexes = @Index(name = "idx_author_deleted", columnList = "deleted"))       //tombstones to purge
+@SQLRestriction(TombstonedEntity.LIVE)
+public class Author extends TombstonedEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "author_id")
+    @TableGenerator(name = "author_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.AUTHOR, allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
 
     private String name;
 
     private String biography;
 
-    @OneToMany(mappedBy = "author", orphanRemoval = true, cascade = CascadeType.ALL, fetch = FetchType.LAZY)        //cascade = what happens to parent will also reflect to children, parent save -> child save, parent delete -> child delete, parent update -> child update etc, use cascade if you want your children to be affected too
+    //read-only side, books are saved on their own and removed with their author by TombstoneService in set-based deletes, no cascade
+    //or orphan removal that would load and delete every book one by one
+    @OneToMany(mappedBy = "author", fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "author.publishedBooks")     //only book ids are cached, the books come from the book region. Book writes evict it (hibernate.cache.auto_evict_collection_cache)
+    @BatchSize(size = 25)   //a page of authors initializes their books in one select per 25 authors, fetch joins cannot be combined with paging
     private List<Book> publishedBooks;
 }
@@ -2,6 +2,11 @@ package com.system.libraryManagementSystem.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.SQLJoinTableRestriction;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.util.List;
 
@@ -11,12 +16,19 @@ import java.util.List;
 @AllArgsConstructor
 @RequiredArgsConstructor
 @ToString
-@EqualsAndHashCode
+@EqualsAndHashCode(callSuper = false)
 @Builder
-public class Book {
+@BatchSize(size = 25)      //lazy Book proxies (e.g. BorrowingRecord.book) are initialized 25 ids per select instead of one by one
+@NamedEntityGraph(name = "Book.author", attributeNodes = @NamedAttributeNode("author"))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book")      //second-level cache, the region is sized in ehcache.xml
+@Table(indexes = @Index(name = "idx_book_deleted", columnList = "deleted"))
+@SQLRestriction(TombstonedEntity.LIVE)      //also leaves deleted titles out of Author.publishedBooks and Member.borrowedBooks
+public class Book extends TombstonedEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "book_id")
+    @TableGenerator(name = "book_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.BOOK, allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
 
     private String title;
@@ -30,6 +42,7 @@ public class Book {
     private Author author;
 
     @ManyToMany(mappedBy = "borrowedBooks") //no need in post when you create a new book
+    @SQLJoinTableRestriction(Member.OPEN_LOAN)
     private List<Member> members;
 }
 
@@ -0,0 +1,28 @@
+package com.system.libraryManagementSystem.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+//copies of one title, keyed by the book id. checkout and return never read this row first, they run a single conditional update
+//(BookInventoryRepository) so concurrent loans of the same title can not oversell it
+@Entity
+@Table(name = "book_inventory")
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Builder
+public class BookInventory {
+
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Column(nullable = false)
+    private int totalCopies;
+
+    @Column(nullable = false)
+    private int availableCopies;
+}
@@ -5,7 +5,10 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.NotFound;
+import org.hibernate.annotations.NotFoundAction;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
@@ -14,28 +17,101 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @RequiredArgsConstructor
 @ToString
-@EqualsAndHashCode
+@EqualsAndHashCode(callSuper = false)
 @Builder
-public class BorrowingRecord {      //unidirectional, only the one who will hold the relationship
+//the loan ledger, one row per loan from the request to the return. the borrowing record api reads and writes these rows and
+//Member.borrowedBooks is the view of the approved rows that are not returned yet.
+//range partitioned by the month of borrowed_at (LoanPartitioning), so mysql wants borrowed_at in the primary key and in every unique
+//key and no foreign keys on the table
+@Table(name = IdGenerators.LOAN_TABLE, indexes = {
+        @Index(name = "idx_loan_member_open", columnList = "member_id, returned_at, is_approved"),      //loans of a member, Member.borrowedBooks
+        @Index(name = "idx_loan_book_open", columnList = "book_id, returned_at"),       //who holds a title
+        @Index(name = "idx_loan_pending", columnList = "is_approved, requested_at, claim_expires_at"),     //requests waiting for approval, oldest first, claims checked in the index
+        @Index(name = "idx_loan_claimed_by", columnList = "claimed_by"),
+        @Index(name = "uk_loan_intake_id", columnList = "intake_id, borrowed_at", unique = true),      //a replayed intake request is saved once, it keeps its borrow date
+        @Index(name = "idx_loan_borrowed_at", columnList = "borrowed_at"),
+        @Index(name = "idx_loan_due_at", columnList = "due_at"),       //overdue sweep watermark, walked as (due_at, id)
+        @Index(name = "idx_loan_fine_open", columnList = "returned_at, fine_accrued_until, due_at")     //overdue loans still out, fines to accrue, open loans not marked yet
+})
+@NamedEntityGraph(
+        name = "BorrowingRecord.bookAndMember",
+        attributeNodes = {
+                @NamedAttributeNode("book"),
+                @NamedAttributeNode("member")
+        }
+)
+public class BorrowingRecord extends VersionedEntity {      //unidirectional, only the one who will hold the relationship
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "borrowing_record_id")
+    @TableGenerator(name = "borrowing_record_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.BORROWING_RECORD, allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
 
+    //closed loans outlive their book and member: a deleted (or purged) one reads as null instead of failing the whole page
     @ManyToOne
-    @JoinColumn(name = "book_id")
+    @NotFound(action = NotFoundAction.IGNORE)
+    @JoinColumn(name = "book_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))      //partitioned tables can not have foreign keys
     private Book book;
 
     @ManyToOne
-    @JoinColumn(name = "member_id")
+    @NotFound(action = NotFoundAction.IGNORE)
+    @JoinColumn(name = "member_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Member member;
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "requested_at")
+    private LocalDateTime requestedAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "approved_at")
+    private LocalDateTime approvedAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "borrowed_at", nullable = false)        //the partition key
     private LocalDateTime borrowDate;
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "due_at")        //the date the book has to be back, the api keeps calling it returnDate
     private LocalDateTime returnDate;
 
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "returned_at")
+    private LocalDateTime returnedAt;
+
+    @Column(name = "is_approved")
     private boolean isApproved;
 
+    //lease on a pending request, the librarian who claimed it works on it alone until the claim expires (BorrowingRecordService.claimPendingRequests)
+    @Column(name = "claimed_by")
+    private String claimedBy;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "claim_expires_at")
+    private LocalDateTime claimExpiresAt;
+
+    @Column(name = "intake_id", length = 36)        //tracking id of a request that came through BorrowIntakeService
+    private String intakeId;
+
+    //set when DueDateReminderService sent the due date reminder, cleared when the due date changes
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "reminded_at")
+    private LocalDateTime remindedAt;
+
+    //written by OverdueSweepService, null until the loan is found overdue. fines are charged per whole day up to fine_accrued_until
+    @Column(name = "fine", precision = 10, scale = 2)
+    private BigDecimal fine;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "fine_accrued_until")
+    private LocalDateTime fineAccruedUntil;
+
+    //a request without a borrow date is filed under the month it was made
+    @PrePersist
+    @PreUpdate
+    private void fileUnderBorrowMonth() {
+        if (borrowDate == null) {
+            borrowDate = requestedAt != null ? requestedAt : LocalDateTime.now();
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package com.system.libraryManagementSystem.model;
+
+import java.util.Map;
+
+//every entity takes its ids from a row of one table-backed pooled generator, ids are handed out from memory in blocks of ALLOCATION_SIZE
+//and inserts can be batched (IDENTITY needs the insert to run before the id is known, which disables Hibernate's jdbc batching).
+//MemberProfile has no row, it takes the id of its member
+public final class IdGenerators {
+
+    public static final String TABLE = "id_generator";
+    public static final String NAME_COLUMN = "sequence_name";
+    public static final String VALUE_COLUMN = "next_val";
+    public static final int ALLOCATION_SIZE = 50;
+
+    //the generator row of each entity is named after its table, the loan ledger keeps the row of the borrowing_record table it replaced
+    //so the ids of migrated records stay below every id handed out after the switch
+    public static final String BOOK = "book";
+    public static final String AUTHOR = "author";
+    public static final String MEMBER = "member";
+    public static final String BORROWING_RECORD = "borrowing_record";
+    public static final String RESERVATION = "reservation";
+
+    public static final String LOAN_TABLE = "loan";
+
+    //generator row -> table holding its ids
+    public static final Map<String, String> SEQUENCES = Map.of(
+            BOOK, BOOK,
+            AUTHOR, AUTHOR,
+            MEMBER, MEMBER,
+            BORROWING_RECORD, LOAN_TABLE,
+            RESERVATION, RESERVATION);
+
+    private IdGenerators() {
+    }
+}
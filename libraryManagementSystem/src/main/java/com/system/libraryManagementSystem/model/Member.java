@@ -3,6 +3,10 @@ package com.system.libraryManagementSystem.model;
 //import com.system.libraryManagementSystem.security.Role;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.SQLJoinTableRestriction;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -15,13 +19,23 @@ import java.util.Set;
 @AllArgsConstructor
 @RequiredArgsConstructor
 @ToString
-@EqualsAndHashCode
+@EqualsAndHashCode(callSuper = false)
 @Builder
-@Table(indexes = @Index(columnList = "email", unique = true))
-public class Member {
+@Table(indexes = {@Index(columnList = "email", unique = true), @Index(name = "idx_member_deleted", columnList = "deleted")})
+@SQLRestriction(TombstonedEntity.LIVE)
+@NamedEntityGraph(
+        name = "Member.details",
+        attributeNodes = @NamedAttributeNode(value = "borrowedBooks", subgraph = "borrowedBooks.author"),
+        subgraphs = @NamedSubgraph(name = "borrowedBooks.author", attributeNodes = @NamedAttributeNode("author"))
+)
+public class Member extends TombstonedEntity {
+
+    public static final String OPEN_LOAN = "is_approved = 1 and returned_at is null";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "member_id")
+    @TableGenerator(name = "member_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.MEMBER, allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
 
     private boolean isEnabled;
@@ -37,6 +51,7 @@ public class Member {
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(name = "member_roles", joinColumns = @JoinColumn(name = "member_id"))
     @Column(name = "role")
+    @BatchSize(size = 25)
     private Set<String> roles;
 
     private boolean isAccountNonExpired;
@@ -45,25 +60,20 @@ public class Member {
 
     private boolean isCredentialsNonExpired;
 
+    //read-only view of the loan ledger (BorrowingRecord): the approved loans that are not returned yet. loans are written as ledger rows
+    //by MemberService.borrowBook/returnBook, never by changing this bag (a ledger row needs its id and lifecycle columns). the key columns
+    //are not insertable or updatable, so hibernate never inserts or deletes loan rows for it, and a changed bag fails the flush (@Immutable).
+    //a book is listed once, the open-loan key (OpenLoanGuard) allows one open loan per member and book
     @ManyToMany
+    @Immutable
     @JoinTable(
-            name = "member_book_borrowed",
-            joinColumns = @JoinColumn(name = "member_id"),
-            inverseJoinColumns = @JoinColumn(name = "book_id")
+            name = IdGenerators.LOAN_TABLE,
+            joinColumns = @JoinColumn(name = "member_id", insertable = false, updatable = false,
+                    foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT)),       //the ledger declares its own keys
+            inverseJoinColumns = @JoinColumn(name = "book_id", insertable = false, updatable = false,
+                    foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     )
+    @SQLJoinTableRestriction(OPEN_LOAN)
+    @BatchSize(size = 25)
     private List<Book> borrowedBooks = new ArrayList<>();
-
-    @OneToOne(mappedBy = "member", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)     //cascade = all operations must be cascaded to the memberProfile(child)
-    private MemberProfile memberProfile;
-
-    public void setMemberProfile(MemberProfile memberProfile) {
-        if (memberProfile == null) {
-            if (this.memberProfile != null) {
-                this.memberProfile.setMember(null);
-            }
-        } else {
-            memberProfile.setMember(this);
-        }
-        this.memberProfile = memberProfile;
-    }
 }
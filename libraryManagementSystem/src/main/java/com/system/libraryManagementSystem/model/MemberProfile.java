@@ -2,6 +2,7 @@ package com.system.libraryManagementSystem.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.time.LocalDate;
 
@@ -11,12 +12,15 @@ import java.time.LocalDate;
 @AllArgsConstructor
 @RequiredArgsConstructor
 @ToString
-@EqualsAndHashCode
+@EqualsAndHashCode(callSuper = false)
 @Builder
-public class MemberProfile {
+@NamedEntityGraph(name = "MemberProfile.member", attributeNodes = @NamedAttributeNode("member"))
+@Table(indexes = @Index(name = "idx_member_profile_deleted", columnList = "deleted"))
+@SQLRestriction(TombstonedEntity.LIVE)
+public class MemberProfile extends TombstonedEntity {
 
+    //the member's id, the profile shares the primary key of its member (MemberProfileKeyMigration moves the tables that had member_id)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     private String phoneNumber;
@@ -28,8 +32,11 @@ public class MemberProfile {
 
     private LocalDate dateOfBirth;
 
-    @OneToOne //if memberProfile is deleted, member too. Member deleted, memberProfile too. that is why they both have cascadeType = ALL
-    @JoinColumn(name = "member_id", nullable = false)
+    //owning side only, Member has no profile field: a mappedBy one-to-one can not be proxied and was loaded with every member.
+    //a member's profile is memberProfileRepository.findById(memberId)
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "id")
     private Member member;
 
 }
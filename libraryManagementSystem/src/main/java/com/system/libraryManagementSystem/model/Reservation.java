@@ -0,0 +1,66 @@
+package com.system.libraryManagementSystem.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode(callSuper = false)
+@Builder
+//a member's place in the queue of a title with no copy on the shelf. the queue is served by priority, then first come first served.
+//a returned copy goes to the first in line as a hold (READY) that the member picks up by borrowing the book before it expires
+@Table(name = IdGenerators.RESERVATION, indexes = {
+        @Index(name = "idx_reservation_queue", columnList = "book_id, status, priority DESC, queued_at, id"),     //next in line of a title
+        @Index(name = "idx_reservation_member", columnList = "member_id, book_id, status"),
+        @Index(name = "idx_reservation_hold", columnList = "status, expires_at")       //holds to expire, read back on start
+})
+public class Reservation extends VersionedEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "reservation_id")
+    @TableGenerator(name = "reservation_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.RESERVATION, allocationSize = IdGenerators.ALLOCATION_SIZE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "book_id", nullable = false)
+    private Book book;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "member_id", nullable = false)
+    private Member member;
+
+    @Column(nullable = false)
+    private int priority;       //higher is served first, only librarians set it
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "queued_at", nullable = false)
+    private LocalDateTime queuedAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "ready_at")
+    private LocalDateTime readyAt;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MMM-yyyy HH:mm:ss")
+    @Column(name = "expires_at")        //end of the pickup of a hold
+    private LocalDateTime expiresAt;
+
+    public enum Status {
+        WAITING,
+        READY,
+        FULFILLED,
+        CANCELLED,
+        EXPIRED
+    }
+}
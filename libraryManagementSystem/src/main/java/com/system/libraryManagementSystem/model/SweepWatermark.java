@@ -0,0 +1,34 @@
+package com.system.libraryManagementSystem.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode(callSuper = false)
+@Builder
+//how far a background sweep got, one row per sweep. the row is written in the transaction of the chunk it describes,
+//so after a crash the sweep goes on after the last committed chunk
+@Table(name = "sweep_watermark")
+public class SweepWatermark extends VersionedEntity {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    //last (due_at, id) of the loan table the sweep went past
+    @Column(name = "position_at", nullable = false)
+    private LocalDateTime positionAt;
+
+    @Column(name = "position_id", nullable = false)
+    private Long positionId;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
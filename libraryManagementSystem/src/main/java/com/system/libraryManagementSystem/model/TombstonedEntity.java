@@ -0,0 +1,19 @@
+package com.system.libraryManagementSystem.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.MappedSuperclass;
+import lombok.Getter;
+import lombok.Setter;
+
+//soft delete, a delete only sets the flag and every query of the entity leaves the row out (@SQLRestriction(LIVE) on the entity).
+//TombstoneService removes the flagged rows and what hangs off them later, in chunks
+@MappedSuperclass
+@Getter
+@Setter
+public abstract class TombstonedEntity extends VersionedEntity {
+
+    public static final String LIVE = "deleted = false";
+
+    @Column(nullable = false)       //existing rows get false when the column is added
+    private boolean deleted;
+}
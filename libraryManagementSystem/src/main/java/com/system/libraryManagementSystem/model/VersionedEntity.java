@@ -0,0 +1,20 @@
+package com.system.libraryManagementSystem.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.MappedSuperclass;
+import jakarta.persistence.Version;
+import lombok.Getter;
+import lombok.Setter;
+
+//optimistic locking for every entity, an update runs as "... WHERE id = ? AND version = ?" and fails when another transaction got there first.
+//kept in a superclass so the lombok constructors, builders and equals of the entities stay as they are, entities set callSuper = false on
+//@EqualsAndHashCode so the version is never part of equality
+@MappedSuperclass
+@Getter
+@Setter
+public abstract class VersionedEntity {
+
+    @Version
+    @Column(nullable = false)       //existing rows get 0 when the column is added
+    private Long version;
+}
@@ -0,0 +1,9 @@
+package com.system.libraryManagementSystem.repository;
+
+import com.system.libraryManagementSystem.model.ArchiveSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ArchiveSegmentRepository extends JpaRepository<ArchiveSegment, String> {
+}
@@ -1,20 +1,63 @@
 package com.system.libraryManagementSystem.repository;
 
 import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.repository.support.TwoPhasePagination;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface AuthorRepository extends JpaRepository<Author, Long> {
+    //paged reads do not fetch publishedBooks with a join (Hibernate would paginate in memory), the collection is batch fetched instead (@BatchSize on Author.publishedBooks)
+    @Override
+    @EntityGraph(value = "Author.publishedBooks", type = EntityGraphType.LOAD)
+    Optional<Author> findById(Long id);
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
+    @Override
+    Page<Author> findAll(Pageable pageable);
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
     @Query("SELECT a FROM Author a WHERE LOWER(a.name) LIKE LOWER(CONCAT('%', :name, '%'))")        //you can provide your own query
     Page<Author> findAuthorByName(String name, Pageable pageable);
 //    @Query("SELECT a FROM Author a WHERE a.biography LIKE %:keyword%")
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
     Page<Author> findByBiographyContainingIgnoreCase(String keyword, Pageable pageable);        //or use derived query, must usse specific naming
-    @Query("SELECT a FROM Author a JOIN FETCH a.publishedBooks b WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :bookTitle, '%'))")
-    Page<Author> findByPublishedBookTitle(String bookTitle, Pageable pageable);
+
+    //JOIN FETCH + Pageable would paginate in memory, so page over the author ids first and fetch the books of that page only
+    default Page<Author> findByPublishedBookTitle(String bookTitle, Pageable pageable) {
+        return TwoPhasePagination.fetch(
+                findAuthorIdsByPublishedBookTitle(bookTitle, pageable),
+                ids -> findAuthorsWithPublishedBooksByTitle(ids, bookTitle),
+                Author::getId
+        );
+    }
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query(value = "SELECT a.id FROM Author a WHERE EXISTS (SELECT b.id FROM Book b WHERE b.author = a AND LOWER(b.title) LIKE LOWER(CONCAT('%', :bookTitle, '%')))",
+            countQuery = "SELECT COUNT(a) FROM Author a WHERE EXISTS (SELECT b.id FROM Book b WHERE b.author = a AND LOWER(b.title) LIKE LOWER(CONCAT('%', :bookTitle, '%')))")
+    Page<Long> findAuthorIdsByPublishedBookTitle(String bookTitle, Pageable pageable);
+    //the filtered publishedBooks must not reach the collection cache, BYPASS keeps this query from storing anything in the second-level cache
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = SpecHints.HINT_SPEC_CACHE_STORE_MODE, value = "BYPASS")})
+    @Query("SELECT DISTINCT a FROM Author a JOIN FETCH a.publishedBooks b WHERE a.id IN :ids AND LOWER(b.title) LIKE LOWER(CONCAT('%', :bookTitle, '%'))")   //publishedBooks only holds the matching titles
+    List<Author> findAuthorsWithPublishedBooksByTitle(List<Long> ids, String bookTitle);
+    //exact, case-insensitive match for the catalog import, names must be passed lower-cased
+    @Query("SELECT a FROM Author a WHERE LOWER(a.name) IN :names ORDER BY a.id")
+    List<Author> findByLowerCaseNameIn(Collection<String> names);
+    //soft delete, TombstoneService purges the row later. 0 when there is no such author
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Author a SET a.deleted = true, a.version = a.version + 1 WHERE a.id = :id AND a.deleted = false")
+    int tombstone(Long id);
 
 //    Optional<Author> findByPublishedBooksTitle(String bookTitle); //✅ use Optional<> to use method chain with .orElseThrow
 }
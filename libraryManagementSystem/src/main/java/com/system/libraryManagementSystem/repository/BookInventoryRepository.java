@@ -0,0 +1,41 @@
+package com.system.libraryManagementSystem.repository;
+
+import com.system.libraryManagementSystem.model.BookInventory;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BookInventoryRepository extends JpaRepository<BookInventory, Long> {
+    //the WHERE clause is the availability check, 0 updated rows means no copy was left (or the title is not tracked)
+    @Modifying
+    @Query("UPDATE BookInventory i SET i.availableCopies = i.availableCopies - 1 WHERE i.bookId = :bookId AND i.availableCopies > 0")
+    int checkout(Long bookId);
+    @Modifying
+    @Query("UPDATE BookInventory i SET i.availableCopies = i.availableCopies + 1 WHERE i.bookId = :bookId AND i.availableCopies < i.totalCopies")
+    int checkin(Long bookId);
+    //copies on loan (total - available) stay on loan, the update is refused when the new total is smaller than that
+    @Modifying
+    @Query("UPDATE BookInventory i SET i.availableCopies = i.availableCopies + (:totalCopies - i.totalCopies), i.totalCopies = :totalCopies " +
+            "WHERE i.bookId = :bookId AND i.totalCopies - i.availableCopies <= :totalCopies")
+    int updateTotalCopies(Long bookId, int totalCopies);
+    //batch checkout, every title of the batch is read (and locked) once instead of one conditional update per loan
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<BookInventory> findAllByBookIdIn(Collection<Long> bookIds);
+    //takes one copy per loan of the batch, every title is updated once. a title without enough copies is left untouched
+    @Modifying
+    @Query("UPDATE BookInventory i SET i.availableCopies = i.availableCopies - " +
+            "(SELECT COUNT(br) FROM BorrowingRecord br WHERE br.id IN :loanIds AND br.book.id = i.bookId) " +
+            "WHERE i.bookId IN (SELECT br.book.id FROM BorrowingRecord br WHERE br.id IN :loanIds) " +
+            "AND i.availableCopies >= (SELECT COUNT(br) FROM BorrowingRecord br WHERE br.id IN :loanIds AND br.book.id = i.bookId)")
+    int checkoutAll(Collection<Long> loanIds);
+    @Modifying
+    @Query("DELETE FROM BookInventory i WHERE i.bookId = :bookId")
+    int deleteByBookId(Long bookId);
+}
@@ -1,22 +1,77 @@
 package com.system.libraryManagementSystem.repository;
 
 import com.system.libraryManagementSystem.model.Book;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
+
+    //every read joins the author in the same select, BookMapper.toDTO reads book.getAuthor() for each row
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
+    @Override
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
+    Page<Book> findAll(Pageable pageable);
+    @Override
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
+    Optional<Book> findById(Long id);
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
     @Query("SELECT DISTINCT b FROM Book b JOIN b.author a WHERE LOWER(a.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     Page<Book> findBooksByAuthorsName(String name, Pageable pageable);
 //    @Query("SELECT b FROM Book b WHERE b.title LIKE %:title%") case sensitive
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
     Page<Book> findByTitleContainingIgnoreCase(String title, Pageable pageable);    //derived query, jpa provides the query based on its name
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
     @Query("SELECT b from Book b WHERE LOWER(b.genre) LIKE LOWER(CONCAT('%', :genre, '%'))")
     Page<Book> findBooksByGenre(String genre, Pageable pageable);
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"), @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")})
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
     Page<Book> findBooksByPublicationYear(int publicationYear, Pageable pageable);
+    @EntityGraph(value = "Book.author", type = EntityGraphType.LOAD)
     Optional<Book> findByTitle(String title);
+    //one page of a member's loans, the open rows of the loan ledger (idx_loan_member_open) without loading the member's borrowedBooks collection
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(value = "SELECT b FROM Book b JOIN FETCH b.author WHERE b.id IN (SELECT br.book.id FROM BorrowingRecord br WHERE br.member.id = :memberId AND br.isApproved = true AND br.returnedAt IS NULL)",
+            countQuery = "SELECT COUNT(b) FROM Book b WHERE b.id IN (SELECT br.book.id FROM BorrowingRecord br WHERE br.member.id = :memberId AND br.isApproved = true AND br.returnedAt IS NULL)")    //book is the root so the page sort applies to the book
+    Page<Book> findBorrowedBooksByMemberId(Long memberId, Pageable pageable);
+    //id and title only, for LoanReferenceIndex and the intake writer
+    @Query("SELECT b.id AS id, b.title AS title FROM Book b WHERE b.id IN :ids")
+    List<BookTitle> findTitlesByIdIn(Collection<Long> ids);
+    //a delete locks the rows it flags before it looks for open loans, a loan or request is written under a shared lock of its book
+    //(lockLive). either the delete waits for the write and finds its loan, or the write waits for the delete and finds the book gone
+    @Query(value = "SELECT id FROM book WHERE id = :id FOR UPDATE", nativeQuery = true)
+    List<Long> lockForDelete(Long id);
+    @Query(value = "SELECT id FROM book WHERE author_id = :authorId AND deleted = false FOR UPDATE", nativeQuery = true)
+    List<Long> lockIdsByAuthorId(Long authorId);
+    //the books of the given ids that are not deleted, locked until the loans written with them commit
+    @Query(value = "SELECT id FROM book WHERE id IN (:ids) AND deleted = false FOR SHARE", nativeQuery = true)
+    List<Long> lockLive(Collection<Long> ids);
+    //soft delete, TombstoneService purges the rows later
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Book b SET b.deleted = true, b.version = b.version + 1 WHERE b.id = :id AND b.deleted = false")
+    int tombstone(Long id);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Book b SET b.deleted = true, b.version = b.version + 1 WHERE b.author.id = :authorId AND b.deleted = false")
+    int tombstoneByAuthorId(Long authorId);
+
+    interface BookTitle {
+        Long getId();
+        String getTitle();
+    }
 }
@@ -1,24 +1,151 @@
 package com.system.libraryManagementSystem.repository;
 
 import com.system.libraryManagementSystem.model.BorrowingRecord;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface BorrowingRecordRepository extends JpaRepository<BorrowingRecord, Long> {
 
+    //BorrowingRecordMapper.toDTO reads the book and the member of every record, fetch both with the record
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Override
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    Page<BorrowingRecord> findAll(Pageable pageable);
+    @Override
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    Optional<BorrowingRecord> findById(Long id);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
     @Query("SELECT br FROM BorrowingRecord br JOIN br.book b WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :title, '%'))")
     Page<BorrowingRecord> findBorrowingRecordByBookTitle(String title, Pageable pageable);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
     @Query("SELECT br FROM BorrowingRecord br JOIN br.member m WHERE LOWER(m.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     Page<BorrowingRecord> findBorrowingRecordByMemberName(String name, Pageable pageable);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
     Page<BorrowingRecord> findByMemberEmail(String email, Pageable pageable);       //does not allow partial matching, maybe need different name or use custom @Query
-    @Query("SELECT br FROM BorrowingRecord br WHERE br.borrowDate BETWEEN :startDate AND :endDate")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    @Query("SELECT br FROM BorrowingRecord br WHERE br.borrowDate BETWEEN :startDate AND :endDate")     //a range on the partition key, only the months in it are read
     Page<BorrowingRecord> findBorrowingRecordByBorrowDate(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable);  //by date, optional time
-    @Query("SELECT br FROM BorrowingRecord br WHERE br.returnDate BETWEEN :startDate AND :endDate")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    //a loan is borrowed before it is due, the bound on borrowed_at leaves out the months after endDate
+    @Query("SELECT br FROM BorrowingRecord br WHERE br.returnDate BETWEEN :startDate AND :endDate AND br.borrowDate <= :endDate")
     Page<BorrowingRecord> findBorrowingRecordByReturnDate(LocalDateTime startDate, LocalDateTime endDate, Pageable pageable);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    @Query("SELECT br FROM BorrowingRecord br WHERE br.borrowDate >= :from AND br.borrowDate < :until")
+    Page<BorrowingRecord> findBorrowedBetween(LocalDateTime from, LocalDateTime until, Pageable pageable);      //the listing of a window of months
+    //open loan = approved and not returned, the rows Member.borrowedBooks shows
+    @Query("SELECT COUNT(br) > 0 FROM BorrowingRecord br WHERE br.member.id = :memberId AND br.book.id = :bookId AND br.isApproved = true AND br.returnedAt IS NULL")
+    boolean existsOpenLoan(Long memberId, Long bookId);
+    //loans and requests not closed yet, a member or book that has one is not deleted (TombstoneService)
+    @Query("SELECT COUNT(br) > 0 FROM BorrowingRecord br WHERE br.member.id = :memberId AND br.returnedAt IS NULL")
+    boolean existsUnreturnedByMemberId(Long memberId);
+    @Query("SELECT COUNT(br) > 0 FROM BorrowingRecord br WHERE br.book.id IN :bookIds AND br.returnedAt IS NULL")
+    boolean existsUnreturnedByBookIdIn(Collection<Long> bookIds);
+    //the loan row is kept as history, returning only closes it
+    //the loans returnLoan closes, locked so none opens or closes in between. their records are evicted from the record cache
+    @Query(value = "SELECT id FROM loan WHERE member_id = :memberId AND book_id = :bookId AND is_approved = 1 AND returned_at IS NULL FOR UPDATE", nativeQuery = true)
+    List<Long> lockOpenLoanIds(Long memberId, Long bookId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BorrowingRecord br SET br.returnedAt = :returnedAt, br.version = br.version + 1 " +
+            "WHERE br.member.id = :memberId AND br.book.id = :bookId AND br.isApproved = true AND br.returnedAt IS NULL")
+    int returnLoan(Long memberId, Long bookId, LocalDateTime returnedAt);
+    //batch approval, the rows stay locked until the batch commits so no other approval can take a copy for the same request.
+    //oldest requests come first, they get the copies when there are not enough for every request
+    @Query(value = "SELECT id, book_id AS bookId, member_id AS memberId, is_approved AS approved, due_at AS dueAt FROM loan WHERE id IN (:ids) ORDER BY requested_at, id FOR UPDATE", nativeQuery = true)
+    List<ApprovalCandidate> lockForApproval(Collection<Long> ids);
+    @Query(value = "SELECT id, book_id AS bookId, member_id AS memberId, is_approved AS approved, due_at AS dueAt FROM loan WHERE is_approved = 0 " +
+            "AND (:bookId IS NULL OR book_id = :bookId) AND (:requestedBefore IS NULL OR requested_at < :requestedBefore) " +
+            "ORDER BY requested_at, id LIMIT :limit FOR UPDATE", nativeQuery = true)
+    List<ApprovalCandidate> lockPendingForApproval(Long bookId, LocalDateTime requestedBefore, int limit);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BorrowingRecord br SET br.isApproved = true, br.approvedAt = :approvedAt, br.version = br.version + 1 " +
+            "WHERE br.id IN :ids AND br.isApproved = false")
+    int approveAll(Collection<Long> ids, LocalDateTime approvedAt);
+
+    //work queue of pending requests. SKIP LOCKED passes over the rows another librarian is claiming right now instead of waiting for them,
+    //the claim columns keep them out of the queue after that transaction until the claim expires
+    @Query(value = "SELECT id FROM loan WHERE is_approved = 0 AND (claim_expires_at IS NULL OR claim_expires_at < :now) " +
+            "ORDER BY requested_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockUnclaimed(LocalDateTime now, int limit);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BorrowingRecord br SET br.claimedBy = :librarian, br.claimExpiresAt = :expiresAt, br.version = br.version + 1 WHERE br.id IN :ids")
+    int claim(Collection<Long> ids, String librarian, LocalDateTime expiresAt);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BorrowingRecord br SET br.claimedBy = NULL, br.claimExpiresAt = NULL, br.version = br.version + 1 " +
+            "WHERE br.id = :id AND br.claimedBy = :librarian AND br.isApproved = false")
+    int releaseClaim(Long id, String librarian);
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    @Query("SELECT br FROM BorrowingRecord br WHERE br.claimedBy = :librarian AND br.claimExpiresAt >= :now AND br.isApproved = false " +
+            "ORDER BY br.requestedAt, br.id")
+    List<BorrowingRecord> findClaimedBy(String librarian, LocalDateTime now);
+
+    @EntityGraph(value = "BorrowingRecord.bookAndMember", type = EntityGraphType.LOAD)
+    Optional<BorrowingRecord> findByIntakeId(String intakeId);
+    List<BorrowingRecord> findByIntakeIdIn(Collection<String> intakeIds);
+
+    //due date reminders (DueDateReminderService), open loans falling due in a window walked as (due_at, id) on idx_loan_due_at
+    @Query(value = "SELECT id, due_at AS dueAt FROM loan WHERE (due_at, id) > (:afterDueAt, :afterId) AND due_at <= :until " +
+            "AND is_approved = 1 AND returned_at IS NULL AND reminded_at IS NULL ORDER BY due_at, id LIMIT :limit", nativeQuery = true)
+    List<DueLoan> findDueForReminder(LocalDateTime afterDueAt, long afterId, LocalDateTime until, int limit);
+    @Query(value = "SELECT id, due_at AS dueAt FROM loan WHERE id = :id AND is_approved = 1 AND returned_at IS NULL AND reminded_at IS NULL", nativeQuery = true)
+    Optional<DueLoan> findDueForReminder(Long id);
+    //0 when the loan was returned, reminded already or its due date moved since the reminder was scheduled
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BorrowingRecord br SET br.remindedAt = :remindedAt, br.version = br.version + 1 " +
+            "WHERE br.id = :id AND br.returnDate = :dueAt AND br.isApproved = true AND br.returnedAt IS NULL AND br.remindedAt IS NULL")
+    int markReminded(Long id, LocalDateTime dueAt, LocalDateTime remindedAt);
+
+    //deletes of a record, the member whose counts change and the copy an open loan holds
+    @Query("SELECT br.member.id AS memberId, br.book.id AS bookId, br.isApproved AS approved, br.returnedAt AS returnedAt FROM BorrowingRecord br WHERE br.id = :id")
+    Optional<LoanHolding> findLoanHoldingById(Long id);
+    //loan limits (LoanLimitService), open loans and pending requests of the members from idx_loan_member_open
+    @Query(value = "SELECT member_id AS memberId, CAST(SUM(is_approved = 1 AND returned_at IS NULL) AS SIGNED) AS loans, " +
+            "CAST(SUM(is_approved = 0) AS SIGNED) AS requests FROM loan WHERE member_id IN (:memberIds) GROUP BY member_id", nativeQuery = true)
+    List<LoanCount> countOpenByMemberIn(Collection<Long> memberIds);
+
+    interface DueLoan {
+        Long getId();
+        LocalDateTime getDueAt();
+    }
+
+    interface LoanCount {
+        Long getMemberId();
+        Long getLoans();
+        Long getRequests();
+    }
+
+    interface LoanHolding {
+        Long getMemberId();
+        Long getBookId();
+        Boolean getApproved();
+        LocalDateTime getReturnedAt();
+    }
+
+    interface ApprovalCandidate {
+        Long getId();
+        Long getBookId();
+        Long getMemberId();
+        Boolean getApproved();
+        LocalDateTime getDueAt();
+    }
 }
@@ -1,10 +1,16 @@
 package com.system.libraryManagementSystem.repository;
 
 import com.system.libraryManagementSystem.model.MemberProfile;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -12,16 +18,40 @@ import java.util.Optional;
 
 @Repository
 public interface MemberProfileRepository extends JpaRepository<MemberProfile, Long> {
+    //MemberProfileMapper.toDTO reads the member's id, name and email
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Override
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
+    Page<MemberProfile> findAll(Pageable pageable);
+    @Override
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
+    Optional<MemberProfile> findById(Long id);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
     @Query("SELECT mp FROM MemberProfile mp JOIN mp.member m WHERE LOWER(m.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     Page<MemberProfile> findMemberProfileByMemberName(String name, Pageable pageable);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
     @Query("SELECT mp FROM MemberProfile mp WHERE mp.phoneNumber LIKE %:phoneNumber%")
     Page<MemberProfile> findMemberProfileByPhoneNumber(String phoneNumber, Pageable pageable);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
     @Query("SELECT mp FROM MemberProfile mp WHERE LOWER(mp.address) LIKE LOWER(CONCAT('%', :address, '%'))")
     Page<MemberProfile> findMemberProfileByAddress(String address, Pageable pageable);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
     @Query("SELECT mp FROM MemberProfile mp WHERE mp.dateOfBirth BETWEEN :startDate AND :endDate")
     Page<MemberProfile> findMemberProfileByDateOfBirth(LocalDate startDate, LocalDate endDate, Pageable pageable); //by year and by year-month
+    @EntityGraph(value = "MemberProfile.member", type = EntityGraphType.LOAD)
     @Query("SELECT mp FROM MemberProfile mp JOIN mp.member m WHERE m.email = :email")
     Optional<MemberProfile> findMemberProfileByEmail(String email);
 
     boolean existsByMemberId(Long memberId);
+    //the profile is cached by the member's email too
+    @Query("SELECT m.email FROM MemberProfile mp JOIN mp.member m WHERE mp.id = :id")
+    Optional<String> findMemberEmailById(Long id);
+    //soft delete, TombstoneService purges the rows later. a profile has the id of its member
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE MemberProfile mp SET mp.deleted = true, mp.version = mp.version + 1 WHERE mp.id = :id AND mp.deleted = false")
+    int tombstone(Long id);
 }
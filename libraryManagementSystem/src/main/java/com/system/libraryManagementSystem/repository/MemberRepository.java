@@ -1,24 +1,68 @@
 package com.system.libraryManagementSystem.repository;
 
 import com.system.libraryManagementSystem.model.Member;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MemberRepository extends JpaRepository<Member, Long> {
+    //paged reads are one select of member rows, roles and borrowedBooks are batch fetched (@BatchSize) so the page stays in the database.
+    //the profile is not mapped on Member (it shares the member's id) so no member read touches member_profile
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Override
+    Page<Member> findAll(Pageable pageable);
+    @Override
+    @EntityGraph(value = "Member.details", type = EntityGraphType.LOAD)
+    Optional<Member> findById(Long id);
     //by name, by borrowedBooks(admin)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
     @Query("SELECT m FROM Member m WHERE LOWER(m.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     Page<Member> findMemberByName(String name, Pageable pageable);
-    @Query("SELECT DISTINCT m FROM Member m JOIN m.borrowedBooks b WHERE LOWER(b.title) LIKE LOWER(CONCAT('%', :title, '%'))")    //same as joined table
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT m FROM Member m WHERE m.id IN (SELECT br.member.id FROM BorrowingRecord br JOIN br.book b " +
+            "WHERE br.isApproved = true AND br.returnedAt IS NULL AND LOWER(b.title) LIKE LOWER(CONCAT('%', :title, '%')))")      //open loans in the ledger
     Page<Member> findMemberByBorrowedBookTitle(String title, Pageable pageable);
+    //used by the jwt filter on every request, borrowedBooks is not needed there
     Optional<Member> findByEmail(String email);
+    //id, name and email only, for LoanReferenceIndex and the intake writer
+    @Query("SELECT m.id AS id, m.name AS name, m.email AS email FROM Member m WHERE m.id IN :ids")
+    List<MemberName> findNamesByIdIn(Collection<Long> ids);
+    //the limits of LoanLimitService go by role
+    @Query("SELECT r FROM Member m JOIN m.roles r WHERE m.id = :id")
+    List<String> findRolesById(Long id);
+    //archived loans are kept by member id, the email of the member may have changed since
+    @Query("SELECT m.id FROM Member m WHERE m.email = :email")
+    Optional<Long> findIdByEmail(String email);
+    //the member a delete flags and the members a loan or request is written for, see BookRepository.lockForDelete
+    @Query(value = "SELECT id FROM member WHERE id = :id FOR UPDATE", nativeQuery = true)
+    List<Long> lockForDelete(Long id);
+    @Query(value = "SELECT id FROM member WHERE id IN (:ids) AND deleted = false FOR SHARE", nativeQuery = true)
+    List<Long> lockLive(Collection<Long> ids);
+    //soft delete, TombstoneService purges the row later
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Member m SET m.deleted = true, m.version = m.version + 1 WHERE m.id = :id AND m.deleted = false")
+    int tombstone(Long id);
 //    boolean existByEmail(String email);
 
 //    @Query("SELECT m FROM Member m JOIN m.roles r WHERE r.name = :roleName")
 //    Page<Member> findMembersByRole(String roleName, Pageable pageable);
+
+    interface MemberName {
+        Long getId();
+        String getName();
+        String getEmail();
+    }
 }
@@ -0,0 +1,63 @@
+package com.system.libraryManagementSystem.repository;
+
+import com.system.libraryManagementSystem.model.Reservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+    //queue order of idx_reservation_queue, ReservationService keeps the queue of a title in memory once it was read. a locking read like
+    //findNextInLine, a snapshot taken before the title lock was granted would leave out reservations committed while the caller waited
+    @Query(value = "SELECT id, priority, queued_at AS queuedAt FROM reservation WHERE book_id = :bookId AND status = 'WAITING' " +
+            "ORDER BY priority DESC, queued_at, id FOR SHARE", nativeQuery = true)
+    List<QueueEntry> findQueue(Long bookId);
+    //a locking read, it sees a reservation committed while the caller waited for the title lock
+    @Query(value = "SELECT id FROM reservation WHERE book_id = :bookId AND status = 'WAITING' ORDER BY priority DESC, queued_at, id LIMIT 1 FOR UPDATE", nativeQuery = true)
+    Optional<Long> findNextInLine(Long bookId);
+    @Query("SELECT r.book.id FROM Reservation r WHERE r.id = :id")
+    Optional<Long> findBookIdById(Long id);
+    @Query("SELECT COUNT(r) > 0 FROM Reservation r WHERE r.member.id = :memberId AND r.book.id = :bookId " +
+            "AND r.status IN (com.system.libraryManagementSystem.model.Reservation.Status.WAITING, com.system.libraryManagementSystem.model.Reservation.Status.READY)")
+    boolean existsActive(Long memberId, Long bookId);
+    //borrowing the book picks up the hold, the copy was taken off the shelf for the member when the hold was made
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Reservation r SET r.status = com.system.libraryManagementSystem.model.Reservation.Status.FULFILLED, r.version = r.version + 1 " +
+            "WHERE r.member.id = :memberId AND r.book.id = :bookId AND r.status = com.system.libraryManagementSystem.model.Reservation.Status.READY AND r.expiresAt > :now")
+    int fulfill(Long memberId, Long bookId, LocalDateTime now);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Reservation r SET r.status = com.system.libraryManagementSystem.model.Reservation.Status.EXPIRED, r.version = r.version + 1 " +
+            "WHERE r.id = :id AND r.status = com.system.libraryManagementSystem.model.Reservation.Status.READY AND r.expiresAt <= :now")
+    int expire(Long id, LocalDateTime now);
+    @Query("SELECT r.id AS id, r.expiresAt AS expiresAt FROM Reservation r WHERE r.status = com.system.libraryManagementSystem.model.Reservation.Status.READY")
+    List<HoldExpiry> findHolds();
+    @Query("SELECT r.id AS id, r.expiresAt AS expiresAt FROM Reservation r WHERE r.id = :id AND r.status = com.system.libraryManagementSystem.model.Reservation.Status.READY")
+    Optional<HoldExpiry> findHold(Long id);
+    //waiting reservations ahead of holds within a title, a hold passed on must not go to another of these members
+    @Query("SELECT r.id AS id, r.book.id AS bookId FROM Reservation r WHERE r.member.id IN :memberIds " +
+            "AND r.status IN (com.system.libraryManagementSystem.model.Reservation.Status.WAITING, com.system.libraryManagementSystem.model.Reservation.Status.READY) " +
+            "ORDER BY r.book.id, r.status DESC")
+    List<ActiveReservation> findActiveByMemberIdIn(Collection<Long> memberIds);
+
+    interface QueueEntry {
+        Long getId();
+        Integer getPriority();
+        LocalDateTime getQueuedAt();
+    }
+
+    interface ActiveReservation {
+        Long getId();
+        Long getBookId();
+    }
+
+    interface HoldExpiry {
+        Long getId();
+        LocalDateTime getExpiresAt();
+    }
+}
@@ -0,0 +1,16 @@
+package com.system.libraryManagementSystem.repository;
+
+import com.system.libraryManagementSystem.model.SweepWatermark;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface SweepWatermarkRepository extends JpaRepository<SweepWatermark, String> {
+    //held until the chunk commits, a second instance running the same sweep waits instead of doing the chunk twice
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<SweepWatermark> findWithLockByName(String name);
+}
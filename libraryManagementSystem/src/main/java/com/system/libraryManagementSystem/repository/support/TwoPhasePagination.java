@@ -0,0 +1,48 @@
+package com.system.libraryManagementSystem.repository.support;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Pagination for queries that need to fetch a collection (JOIN FETCH) of the root entity.
+ * <p>
+ * Combining a collection fetch join with a Pageable makes Hibernate load every matching row and
+ * paginate in memory (HHH90003004). Instead, page over the distinct root ids in the database first
+ * (phase 1), then fetch the graph for only those ids (phase 2) and put it back in the id order.
+ */
+public final class TwoPhasePagination {
+
+    private TwoPhasePagination() {
+    }
+
+    /**
+     * @param idPage      phase 1, a page of root ids with the requested sort and the total count
+     * @param graphLoader phase 2, loads the roots (with their fetched collections) for the given ids, in any order
+     * @param idOf        extracts the id of a loaded root
+     */
+    public static <T, ID> Page<T> fetch(Page<ID> idPage, Function<List<ID>, List<T>> graphLoader, Function<T, ID> idOf) {
+        Pageable pageable = idPage.getPageable();
+        if (idPage.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, idPage.getTotalElements());
+        }
+
+        Map<ID, T> rootsById = graphLoader.apply(idPage.getContent())
+                .stream()
+                .collect(Collectors.toMap(idOf, Function.identity(), (first, duplicate) -> first));     //fetch joins may repeat the root
+
+        List<T> content = idPage.getContent()
+                .stream()
+                .map(rootsById::get)
+                .filter(Objects::nonNull)   //deleted between the two phases
+                .toList();
+
+        return new PageImpl<>(content, pageable, idPage.getTotalElements());
+    }
+}
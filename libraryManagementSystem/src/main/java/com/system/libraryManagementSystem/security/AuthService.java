@@ -3,6 +3,7 @@ package com.system.libraryManagementSystem.security;
 import com.system.libraryManagementSystem.exception.MemberNotFoundException;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService;
 import io.jsonwebtoken.Jwts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +31,15 @@ public class AuthService {
     AuthenticationManager authenticationManager;
     @Autowired
     private JwtService jwtService;
+    @Autowired
+    private TombstoneService tombstoneService;
 
 
     public String register(Member member) {
         if (memberRepository.findByEmail(member.getEmail()).isPresent()) {
             return "Email already in use";  //maybe create a Response format
         }
+        tombstoneService.purgeMemberWithEmail(member.getEmail());       //a deleted member keeps the unique email until it is purged
         if (member.getRoles() == null || member.getRoles().isEmpty()) {
             member.setRoles(new HashSet<>(List.of("ROLE_MEMBER")));
         }
@@ -1,5 +1,6 @@
 package com.system.libraryManagementSystem.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -38,6 +39,7 @@ public class SecurityConfig {
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth                 //request matchers must be ordered as specific to general, to evaluate the specific one first
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()       //the request was already authorized before a streaming (async) response was started
                         .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html", "/v3/api-docs.yaml").permitAll()
                         .requestMatchers(HttpMethod.POST, "/auth/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/books/**", "/authors/**").permitAll()                //guest
@@ -47,13 +49,15 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.PUT, "/members/**", "/member-profile/**", "/borrowing-record/**").hasAnyRole("MEMBER", "LIBRARIAN", "ADMIN")
                         .requestMatchers(HttpMethod.POST, "/member-profile/**", "/borrowing-record/**", "/members/**").hasAnyRole("MEMBER", "LIBRARIAN", "ADMIN")  //can request for books, which will be confirmed by admin or librarian only     //can post member-profile only for themselves
                         .requestMatchers(HttpMethod.DELETE, "/borrowing-record/**").hasAnyRole("MEMBER", "LIBRARIAN", "ADMIN")
+                        .requestMatchers("/reservation/**").hasAnyRole("MEMBER", "LIBRARIAN", "ADMIN")       //own reservations only, checked in the service
 
                         //Librarians, Admins
-                        .requestMatchers(HttpMethod.POST, "/books/**", "/authors/**").hasAnyRole("LIBRARIAN", "ADMIN")
+                        .requestMatchers(HttpMethod.POST, "/books/**", "/authors/**", "/catalog/**").hasAnyRole("LIBRARIAN", "ADMIN")
                         .requestMatchers(HttpMethod.PUT, "/books/**", "/authors/**", "/borrowing-record/**").hasAnyRole("LIBRARIAN", "ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/books/**", "/authors/**").hasAnyRole("LIBRARIAN", "ADMIN")
 
                         //Admins only
+                        .requestMatchers("/actuator/**", "/export/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST, "/members/**", "/member-profile").hasRole("ADMIN")
                         .requestMatchers("/members/**", "/member-profile", "/borrowing-record/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
@@ -3,6 +3,9 @@ package com.system.libraryManagementSystem.service;
 import com.system.libraryManagementSystem.exception.AuthorNotFoundException;
 import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
+import com.system.libraryManagementSystem.service.support.OptimisticRetry;
+import com.system.libraryManagementSystem.service.support.VersionPreconditions;
 import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
@@ -13,6 +16,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 
 @Service
@@ -21,6 +25,10 @@ public class AuthorService {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private TombstoneService tombstoneService;
+
+    @Transactional(readOnly = true)
     public Page<Author> getAllAuthors(int page, int size, String sortDirection, String sortField) {
 
         PageRequest pageRequest = PageRequest.of(
@@ -29,25 +37,30 @@ public class AuthorService {
                 Sort.by(Sort.Direction.fromString(sortDirection), sortField)
         );
 
-        return authorRepository.findAll(pageRequest);
+        return initializePublishedBooks(authorRepository.findAll(pageRequest));
     }
 
     @Cacheable(cacheNames = "authors", key = "#id")
+    @Transactional(readOnly = true)
     public Author getAuthorById(Long id) {
         return authorRepository.findById(id)
                 .orElseThrow(() -> new AuthorNotFoundException("Author not found with the id: " + id));
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional
     public Author saveNewAuthor(Author author) {
         return authorRepository.save(author);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "authors", key = "#id")  //if you passed the whole object only  without the Long id, you can use #updatedAuthor.id
+    @OptimisticRetry
+    @Transactional
     public Author updateAuthor(Long id, Author updatedAuthor) {
         Author author = authorRepository.findById(id)
                 .orElseThrow(() -> new AuthorNotFoundException("Author not found with the id: " + id));
+        VersionPreconditions.checkVersion(author, updatedAuthor.getVersion(), "Author with the id: " + id);
 
         if (author.equals(updatedAuthor)) return author;    //so no need to save the updatedAuthor
 
@@ -59,24 +72,33 @@ public class AuthorService {
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @CacheEvict(cacheNames = "authors", key = "#id")
-    public void deleteAuthorById(Long id) {
-        authorRepository.deleteById(id);
+    @Transactional
+    public Deleted deleteAuthorById(Long id) {
+        return tombstoneService.deleteAuthor(id);        //its books with it, purged later
     }
 
+    @Transactional(readOnly = true)
     public Page<Author> getAuthorsByPublishedBookTitle(String bookTitle, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
        return authorRepository.findByPublishedBookTitle(bookTitle, pageRequest);
     }
 
+    @Transactional(readOnly = true)
     public Page<Author> getAuthorsByName(String name, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return authorRepository.findAuthorByName(name, pageRequest);
-
+        return initializePublishedBooks(authorRepository.findAuthorByName(name, pageRequest));
     }
 
+    @Transactional(readOnly = true)
     public Page<Author> getAuthorsByBiographyKeyword(String keyword, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return authorRepository.findByBiographyContainingIgnoreCase(keyword, pageRequest);
+        return initializePublishedBooks(authorRepository.findByBiographyContainingIgnoreCase(keyword, pageRequest));
+    }
+
+    //open-in-view is disabled, AuthorMapper.toDTO runs after the transaction so the books are loaded here (one batch select per 25 authors, see @BatchSize)
+    private Page<Author> initializePublishedBooks(Page<Author> authors) {
+        authors.forEach(author -> Hibernate.initialize(author.getPublishedBooks()));
+        return authors;
     }
 
 }
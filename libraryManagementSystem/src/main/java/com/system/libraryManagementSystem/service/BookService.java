@@ -3,6 +3,9 @@ package com.system.libraryManagementSystem.service;
 import com.system.libraryManagementSystem.exception.BookNotFoundException;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
+import com.system.libraryManagementSystem.service.support.OptimisticRetry;
+import com.system.libraryManagementSystem.service.support.VersionPreconditions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
@@ -12,6 +15,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -22,7 +26,11 @@ public class BookService {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private TombstoneService tombstoneService;
+
 
+    @Transactional(readOnly = true)
     public Page<Book> getAllBooks(int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(
                 page,
@@ -33,21 +41,26 @@ public class BookService {
     }
 
     @Cacheable(cacheNames = "books", key = "#id")
+    @Transactional(readOnly = true)
     public Book getBookById(Long id) {
         return bookRepository.findById(id)
                 .orElseThrow(() -> new BookNotFoundException("Book not found with the id: " + id));
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional
     public Book saveNewBook(Book book) {
         return bookRepository.save(book);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "books", key = "#id")
+    @OptimisticRetry
+    @Transactional
     public Book updateBook(Long id, Book updatedBook) {
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new BookNotFoundException("Book not found with the id: " + id));
+        VersionPreconditions.checkVersion(book, updatedBook.getVersion(), "Book with the id: " + id);
 
         if (book.equals(updatedBook)) return updatedBook;
 
@@ -61,25 +74,30 @@ public class BookService {
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @CacheEvict(cacheNames = "books", key = "#id")
-    public void deleteBookById(Long id) {
-        bookRepository.deleteById(id);
+    @Transactional
+    public Deleted deleteBookById(Long id) {
+        return tombstoneService.deleteBook(id);      //the inventory row and reservations go with the purge
     }
 
+    @Transactional(readOnly = true)
     public Page<Book> getBooksByTitle(String title, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return bookRepository.findByTitleContainingIgnoreCase(title, pageRequest);
     }
 
+    @Transactional(readOnly = true)
     public Page<Book> getBooksByGenre(String genre, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return bookRepository.findBooksByGenre(genre, pageRequest);
     }
 
+    @Transactional(readOnly = true)
     public Page<Book> getBooksByPublicationYear(int publicationYear, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return bookRepository.findBooksByPublicationYear(publicationYear, pageRequest);
     }
     //get books by range of publication year
+    @Transactional(readOnly = true)
     public Page<Book> getBooksByAuthorsName(String authorsName, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return bookRepository.findBooksByAuthorsName(authorsName, pageRequest);
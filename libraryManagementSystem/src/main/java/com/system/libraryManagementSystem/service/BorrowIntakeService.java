@@ -0,0 +1,445 @@
+package com.system.libraryManagementSystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.system.libraryManagementSystem.dto.BorrowRequestDTO;
+import com.system.libraryManagementSystem.dto.IntakeStatusDTO;
+import com.system.libraryManagementSystem.dto.IntakeStatusDTO.Status;
+import com.system.libraryManagementSystem.exception.IntakeRequestNotFoundException;
+import com.system.libraryManagementSystem.exception.IntakeUnavailableException;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BookRepository.BookTitle;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository.MemberName;
+import com.system.libraryManagementSystem.service.support.IntakeJournal;
+import com.system.libraryManagementSystem.service.support.IntakeJournal.Entry;
+import com.system.libraryManagementSystem.service.support.LoanReferenceIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+//borrow requests taken without touching the database on the request thread: checked against LoanReferenceIndex, written to the
+//IntakeJournal and answered 202 with a tracking id. one writer thread saves the queue in batches and publishes the final status,
+//which clients poll or receive as a server-sent event. a request the database keeps failing on goes to the dead-letter file
+//(library.intake.dead-letter, one json line per request) and is rejected, the rest of its batch is saved
+@Service
+public class BorrowIntakeService implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BorrowIntakeService.class);
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private LoanReferenceIndex loanReferenceIndex;
+    @Autowired
+    private LoanLimitService loanLimitService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${library.intake.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.intake.journal:intake/borrow-requests.journal}")
+    private String journalPath;
+
+    @Value("${library.intake.fsync:true}")
+    private boolean fsync;
+
+    @Value("${library.intake.journal-compact-bytes:1048576}")
+    private long journalCompactBytes;
+
+    @Value("${library.intake.capacity:10000}")
+    private int capacity;
+
+    @Value("${library.intake.batch-size:200}")
+    private int batchSize;
+
+    @Value("${library.intake.max-batch-delay:50ms}")
+    private Duration maxBatchDelay;
+
+    @Value("${library.intake.retry-delay:1s}")
+    private Duration retryDelay;
+
+    //attempts of a batch before it is split to find the request it fails on
+    @Value("${library.intake.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${library.intake.dead-letter:intake/borrow-requests.dead}")
+    private String deadLetterPath;
+
+    @Value("${library.intake.status-retention:10000}")
+    private int statusRetention;
+
+    @Value("${library.intake.sse-timeout:30s}")
+    private Duration sseTimeout;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();       //bounded by capacityLeft
+    private final Map<String, Tracked> queued = new ConcurrentHashMap<>();
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private Map<String, Tracked> finished;
+    private Semaphore capacityLeft;
+    private IntakeJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        finished = Collections.synchronizedMap(new LinkedHashMap<String, Tracked>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tracked> eldest) {
+                return size() > statusRetention;        //older statuses are read from the loan table (accepted requests only)
+            }
+        });
+
+        journal = new IntakeJournal(Path.of(journalPath), objectMapper, fsync, journalCompactBytes);
+        List<Entry> replayed;
+        try {
+            replayed = journal.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Borrow request journal " + journalPath + " could not be opened", e);
+        }
+        for (Entry entry : replayed) {
+            queued.put(entry.trackingId(), new Tracked(entry.memberEmail(), status(entry.trackingId(), Status.QUEUED, null, null)));
+            queue.add(entry);
+        }
+        capacityLeft = new Semaphore(capacity - replayed.size());
+        if (!replayed.isEmpty()) {
+            logger.info("{} borrow requests read back from the intake journal", replayed.size());
+        }
+
+        running = true;
+        writer = new Thread(this::drain, "borrow-intake-writer");
+        writer.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (writer == null) {
+            return;
+        }
+        running = false;        //the batch in progress is finished, what is still queued stays in the journal for the next start
+        writer.join(Duration.ofSeconds(10).toMillis());
+        journal.close();
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+    }
+
+    @PreAuthorize("#request.memberEmail == authentication.name")
+    public IntakeStatusDTO submit(BorrowRequestDTO request) {
+        if (!running) {
+            throw new IntakeUnavailableException("Borrow requests are not queued right now, send them to /borrowing-record/request");
+        }
+        loanReferenceIndex.checkMember(request.getMemberId(), request.getMemberName(), request.getMemberEmail());
+        loanReferenceIndex.checkBook(request.getBookId(), request.getBookTitle());
+        loanLimitService.checkRequest(request.getMemberId());      //counted when the writer saved it, a burst can pass the limit by what is still queued
+
+        if (!capacityLeft.tryAcquire()) {
+            throw new IntakeUnavailableException("The borrow request queue is full, try again later");
+        }
+        Entry entry = new Entry(UUID.randomUUID().toString(), request.getMemberId(), request.getMemberName(), request.getMemberEmail(),
+                request.getBookId(), request.getBookTitle(), request.getBorrowDate(), request.getReturnDate(), LocalDateTime.now());
+        try {
+            journal.append(entry);
+        } catch (IOException e) {
+            capacityLeft.release();
+            throw new UncheckedIOException("Borrow request could not be written to the intake journal", e);
+        }
+
+        IntakeStatusDTO status = status(entry.trackingId(), Status.QUEUED, null, null);
+        queued.put(entry.trackingId(), new Tracked(entry.memberEmail(), status));
+        queue.add(entry);
+        return status;
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN') or @borrowIntakeService.isSubmitter(#trackingId, authentication)")
+    public IntakeStatusDTO getStatus(String trackingId) {
+        return findStatus(trackingId)
+                .orElseThrow(() -> new IntakeRequestNotFoundException("No borrow request found with the tracking id: " + trackingId));
+    }
+
+    //one event with the current status, then one with the final status and the stream ends
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN') or @borrowIntakeService.isSubmitter(#trackingId, authentication)")
+    public SseEmitter subscribe(String trackingId) {
+        IntakeStatusDTO current = getStatus(trackingId);
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        if (current.getStatus() != Status.QUEUED) {
+            deliver(emitter, current, true);
+            return emitter;
+        }
+
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(trackingId, id -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        deliver(emitter, current, false);
+
+        IntakeStatusDTO now = getStatus(trackingId);        //the writer may have finished before the emitter was registered
+        if (now.getStatus() != Status.QUEUED && emitters.remove(emitter)) {
+            deliver(emitter, now, true);
+        }
+        return emitter;
+    }
+
+    public boolean isSubmitter(String trackingId, Authentication authentication) {
+        Tracked tracked = tracked(trackingId);
+        if (tracked != null) {
+            return tracked.memberEmail().equals(authentication.getName());
+        }
+        return borrowingRecordRepository.findByIntakeId(trackingId)
+                .map(record -> record.getMember() != null && record.getMember().getEmail().equals(authentication.getName()))
+                .orElse(false);
+    }
+
+    private Optional<IntakeStatusDTO> findStatus(String trackingId) {
+        Tracked tracked = tracked(trackingId);
+        if (tracked != null) {
+            return Optional.of(tracked.status());
+        }
+        return borrowingRecordRepository.findByIntakeId(trackingId)
+                .map(record -> status(trackingId, Status.ACCEPTED, record.getId(), null));
+    }
+
+    private Tracked tracked(String trackingId) {
+        Tracked tracked = queued.get(trackingId);
+        if (tracked == null && finished != null) {
+            tracked = finished.get(trackingId);
+        }
+        return tracked;
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);      //wakes up now and then to see whether the application is stopping
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxBatchDelay.toNanos();
+                while (batch.size() < batchSize) {      //a batch is sent when it is full or maxBatchDelay after its first request
+                    Entry next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                if (!save(batch)) {
+                    return;
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    //the batch is tried maxAttempts times, then each half on its own, down to the single request that fails, which is dead-lettered.
+    //only while the database answers: when it is not reachable the same batch waits for it however long it takes.
+    //false when the application is stopping, what is not finished stays in the journal
+    private boolean save(List<Entry> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            Map<String, IntakeStatusDTO> outcomes;
+            try {
+                outcomes = persist(batch);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return false;
+                }
+                if (attempt >= maxAttempts && databaseAnswers(batch.get(0))) {
+                    if (batch.size() == 1) {
+                        finish(deadLetter(batch.get(0), attempt, e));
+                        return true;
+                    }
+                    int half = batch.size() / 2;
+                    return save(batch.subList(0, half)) && save(batch.subList(half, batch.size()));
+                }
+                logger.warn("Batch of {} borrow requests could not be saved (attempt {}), retrying in {}", batch.size(), attempt, retryDelay, e);
+                Thread.sleep(retryDelay.toMillis());
+                continue;
+            }
+            finish(outcomes);
+            return true;
+        }
+    }
+
+    private boolean databaseAnswers(Entry entry) {
+        try {
+            memberRepository.existsById(entry.memberId());
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    //the request is rejected and kept in the dead-letter file, in the log as well when the file can not be written
+    private Map<String, IntakeStatusDTO> deadLetter(Entry entry, int attempts, RuntimeException failure) {
+        Path file = Path.of(deadLetterPath);
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, objectMapper.writeValueAsString(new DeadLetter(entry, failure.toString(), LocalDateTime.now())) + System.lineSeparator(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            logger.error("Borrow request {} could not be saved after {} attempts, it was moved to {}", entry.trackingId(), attempts, file, failure);
+        } catch (IOException e) {
+            logger.error("Borrow request {} could not be saved after {} attempts and not written to {} either: {}",
+                    entry.trackingId(), attempts, file, entry, failure);
+        }
+        return Map.of(entry.trackingId(), rejected(entry, "Borrow request could not be saved, it was set aside for a librarian"));
+    }
+
+    private Map<String, IntakeStatusDTO> persist(List<Entry> batch) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            return transaction.execute(status -> write(batch));
+        } catch (DataIntegrityViolationException e) {      //one request broke a constraint, each one is saved alone to find it
+            Map<String, IntakeStatusDTO> outcomes = new LinkedHashMap<>();
+            for (Entry entry : batch) {
+                try {
+                    outcomes.putAll(transaction.execute(status -> write(List.of(entry))));
+                } catch (DataIntegrityViolationException single) {
+                    outcomes.put(entry.trackingId(), rejected(entry, "Borrow request could not be saved: " + single.getMostSpecificCause().getMessage()));
+                }
+            }
+            return outcomes;
+        }
+    }
+
+    //the requests were checked against the index when they came in, they are checked against the database here in three reads for the whole batch
+    private Map<String, IntakeStatusDTO> write(List<Entry> batch) {
+        Set<Long> memberIds = batch.stream().map(Entry::memberId).collect(Collectors.toSet());
+        Set<Long> bookIds = batch.stream().map(Entry::bookId).collect(Collectors.toSet());
+        memberRepository.lockLive(memberIds);       //first, a delete waits for the requests and the reads below see one that committed
+        bookRepository.lockLive(bookIds);
+        Map<Long, MemberName> members = memberRepository.findNamesByIdIn(memberIds).stream()
+                .collect(Collectors.toMap(MemberName::getId, Function.identity()));
+        Map<Long, BookTitle> books = bookRepository.findTitlesByIdIn(bookIds).stream()
+                .collect(Collectors.toMap(BookTitle::getId, Function.identity()));
+        Map<String, Long> alreadySaved = borrowingRecordRepository.findByIntakeIdIn(batch.stream().map(Entry::trackingId).toList()).stream()
+                .collect(Collectors.toMap(BorrowingRecord::getIntakeId, BorrowingRecord::getId));      //read back from the journal after a crash
+        members.values().forEach(loanReferenceIndex::remember);
+        books.values().forEach(loanReferenceIndex::remember);
+
+        Map<String, IntakeStatusDTO> outcomes = new LinkedHashMap<>();
+        Map<String, BorrowingRecord> records = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            MemberName member = members.get(entry.memberId());
+            BookTitle book = books.get(entry.bookId());
+            if (alreadySaved.containsKey(entry.trackingId())) {
+                outcomes.put(entry.trackingId(), status(entry.trackingId(), Status.ACCEPTED, alreadySaved.get(entry.trackingId()), null));
+            } else if (member == null) {
+                loanReferenceIndex.forgetMember(entry.memberId());
+                outcomes.put(entry.trackingId(), rejected(entry, "Member not found with the id: " + entry.memberId()));
+            } else if (!member.getName().equalsIgnoreCase(entry.memberName()) || !member.getEmail().equalsIgnoreCase(entry.memberEmail())) {
+                outcomes.put(entry.trackingId(), rejected(entry, entry.memberName() + " did not match the member with the id: " + entry.memberId()));
+            } else if (book == null) {
+                loanReferenceIndex.forgetBook(entry.bookId());
+                outcomes.put(entry.trackingId(), rejected(entry, "Book not found with the id: " + entry.bookId()));
+            } else if (!book.getTitle().equalsIgnoreCase(entry.bookTitle())) {
+                outcomes.put(entry.trackingId(), rejected(entry, entry.bookTitle() + " did not match the title of the book with the id: " + entry.bookId()));
+            } else {
+                records.put(entry.trackingId(), BorrowingRecord.builder()
+                        .member(memberRepository.getReferenceById(entry.memberId()))
+                        .book(bookRepository.getReferenceById(entry.bookId()))
+                        .requestedAt(entry.receivedAt())
+                        .borrowDate(entry.borrowDate())
+                        .returnDate(entry.returnDate())
+                        .isApproved(false)
+                        .intakeId(entry.trackingId())
+                        .build());
+                outcomes.put(entry.trackingId(), null);     //keeps the order of the batch
+            }
+        }
+
+        borrowingRecordRepository.saveAll(records.values());       //jdbc batches of hibernate.jdbc.batch_size on commit
+        records.values().stream()
+                .collect(Collectors.groupingBy(record -> record.getMember().getId(), Collectors.counting()))
+                .forEach((memberId, count) -> loanLimitService.requestsSaved(memberId, count.intValue()));
+        records.forEach((trackingId, record) -> outcomes.put(trackingId, status(trackingId, Status.ACCEPTED, record.getId(), null)));
+        return outcomes;
+    }
+
+    private void finish(Map<String, IntakeStatusDTO> outcomes) {
+        try {
+            journal.markDone(outcomes.keySet());
+        } catch (IOException e) {       //the requests are read back on the next start and recognized by their intake id
+            logger.warn("Finished borrow requests could not be marked in the intake journal", e);
+        }
+
+        outcomes.forEach((trackingId, status) -> {
+            Tracked tracked = queued.get(trackingId);
+            finished.put(trackingId, new Tracked(tracked.memberEmail(), status));
+            queued.remove(trackingId);
+            capacityLeft.release();
+
+            List<SseEmitter> emitters = subscribers.remove(trackingId);
+            if (emitters != null) {
+                emitters.forEach(emitter -> {
+                    if (emitters.remove(emitter)) {     //subscribe() may be delivering the same status right now, only one of them sends it
+                        deliver(emitter, status, true);
+                    }
+                });
+            }
+        });
+    }
+
+    private void deliver(SseEmitter emitter, IntakeStatusDTO status, boolean last) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(status));
+            if (last) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {      //the client went away or the stream was already completed
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static IntakeStatusDTO rejected(Entry entry, String message) {
+        return status(entry.trackingId(), Status.REJECTED, null, message);
+    }
+
+    private static IntakeStatusDTO status(String trackingId, Status status, Long recordId, String message) {
+        return new IntakeStatusDTO(trackingId, status, recordId, message);
+    }
+
+    private record Tracked(String memberEmail, IntakeStatusDTO status) {
+    }
+
+    //a line of the dead-letter file
+    private record DeadLetter(Entry request, String error, LocalDateTime failedAt) {
+    }
+}
@@ -1,21 +1,45 @@
 package com.system.libraryManagementSystem.service;
 
+import com.system.libraryManagementSystem.dto.ApprovalOutcomeDTO;
+import com.system.libraryManagementSystem.dto.ApprovalOutcomeDTO.Outcome;
+import com.system.libraryManagementSystem.dto.BatchApprovalRequestDTO;
+import com.system.libraryManagementSystem.dto.BatchApprovalResultDTO;
+import com.system.libraryManagementSystem.exception.BookNotFoundException;
 import com.system.libraryManagementSystem.exception.BorrowingRecordNotFound;
+import com.system.libraryManagementSystem.exception.InvalidApprovalFilterException;
+import com.system.libraryManagementSystem.exception.MemberNotFoundException;
 import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.repository.BookRepository;
 import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository.ApprovalCandidate;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.LoanArchiveService.Matches;
+import com.system.libraryManagementSystem.service.support.LoanOrder;
+import com.system.libraryManagementSystem.service.support.OptimisticRetry;
+import com.system.libraryManagementSystem.service.support.VersionPreconditions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 
 @Service
@@ -24,7 +48,41 @@ public class BorrowingRecordService {
     @Autowired
     private BorrowingRecordRepository borrowingRecordRepository;
 
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private DueDateReminderService dueDateReminderService;
+
+    @Autowired
+    private LoanLimitService loanLimitService;
+
+    @Autowired
+    private LoanArchiveService loanArchiveService;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Value("${library.approval.max-batch-size:500}")
+    private int maxBatchSize;
+
+    @Value("${library.approval.claim-lease:5m}")
+    private Duration claimLease;
+
+    @Value("${library.approval.max-claim-size:50}")
+    private int maxClaimSize;
+
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<BorrowingRecord> getAllBorrowingRecords(int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(
                 page,
@@ -34,31 +92,96 @@ public class BorrowingRecordService {
         return borrowingRecordRepository.findAll(pageRequest);
     }
 
+    //the listing of the loans borrowed in [from, until), only the monthly partitions of the window are read
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
+    public Page<BorrowingRecord> getBorrowingRecordsBorrowedBetween(LocalDateTime from, LocalDateTime until, int page, int size, String sortDirection, String sortField) {
+        PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
+        LocalDateTime start = from != null ? from : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime end = until != null ? until : LocalDateTime.of(9999, 1, 1, 0, 0);
+        return withArchived(pageable -> borrowingRecordRepository.findBorrowedBetween(start, end, pageable),
+                (order, limit) -> loanArchiveService.findBorrowedBetween(start, end.minusNanos(1_000), order, limit), pageRequest);
+    }
+
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @Cacheable(cacheNames = "borrowing_records", key = "#id")
+    @Transactional(readOnly = true)
     public BorrowingRecord getBorrowingRecordById(Long id) {
         return borrowingRecordRepository.findById(id)
                 .orElseThrow(() -> new BorrowingRecordNotFound("Record not found with the id: " + id));
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
+    @Transactional
     public BorrowingRecord saveNewBorrowingRecord(BorrowingRecord borrowingRecord) {
-        return borrowingRecordRepository.save(borrowingRecord);
+        lockReferences(memberIdOf(borrowingRecord), bookIdOf(borrowingRecord));
+        borrowingRecord.setRequestedAt(LocalDateTime.now());
+        if (borrowingRecord.isApproved()) {
+            borrowingRecord.setApprovedAt(borrowingRecord.getRequestedAt());
+        }
+        if (borrowingRecord.getMember() != null) {      //throws LoanLimitExceededException at the member's limit
+            if (borrowingRecord.isApproved()) {
+                loanLimitService.openLoan(borrowingRecord.getMember().getId());
+            } else {
+                loanLimitService.openRequest(borrowingRecord.getMember().getId());
+            }
+        }
+        if (borrowingRecord.isApproved()) {
+            takeCopy(bookIdOf(borrowingRecord));       //created as an open loan, a copy leaves the shelf like on approval
+        }
+        BorrowingRecord saved = borrowingRecordRepository.save(borrowingRecord);
+        if (saved.isApproved()) {
+            dueDateReminderService.trackAfterCommit(saved.getId(), saved.getReturnDate());
+        }
+        return saved;
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "borrowing_records", key = "#id")
+    @OptimisticRetry
+    @Transactional
     public BorrowingRecord updateBorrowingRecord(Long id, BorrowingRecord updatedBorrowingRecord) {
         BorrowingRecord record = borrowingRecordRepository.findById(id)
                 .orElseThrow(() -> new BorrowingRecordNotFound("Record not found with the id: " + id));
+        VersionPreconditions.checkVersion(record, updatedBorrowingRecord.getVersion(), "Record with the id: " + id);
 
         if (updatedBorrowingRecord.equals(record)) return updatedBorrowingRecord;
 
+        //an open loan holds a copy of its book: approving takes one, unapproving gives it back and a new book swaps them
+        boolean wasOpen = record.isApproved() && record.getReturnedAt() == null;
+        boolean isOpen = updatedBorrowingRecord.isApproved() && record.getReturnedAt() == null;
+        Long oldBookId = bookIdOf(record);
+        Long newBookId = bookIdOf(updatedBorrowingRecord);
+        Long newMemberId = memberIdOf(updatedBorrowingRecord);
+        lockReferences(Objects.equals(memberIdOf(record), newMemberId) ? null : newMemberId,
+                Objects.equals(oldBookId, newBookId) ? null : newBookId);
+        if (isOpen && (!wasOpen || !Objects.equals(oldBookId, newBookId))) {
+            takeCopy(newBookId);        //first, throws BookUnavailableException before anything changed
+        }
+        if (wasOpen && (!isOpen || !Objects.equals(oldBookId, newBookId))) {
+            giveBackCopy(oldBookId);
+        }
+
+        if (record.getMember() != null) {       //null when the member of a closed loan was deleted
+            loanLimitService.forget(record.getMember().getId());      //member and approval can both change, their counts are read again
+        }
+        if (updatedBorrowingRecord.getMember() != null) {
+            loanLimitService.forget(updatedBorrowingRecord.getMember().getId());
+        }
         record.setBook(updatedBorrowingRecord.getBook());
         record.setMember(updatedBorrowingRecord.getMember());
         record.setBorrowDate(updatedBorrowingRecord.getBorrowDate());
+        if (!Objects.equals(updatedBorrowingRecord.getReturnDate(), record.getReturnDate())) {
+            record.setRemindedAt(null);      //a new due date gets its own reminder
+        }
+        if (isOpen && (!wasOpen || !Objects.equals(updatedBorrowingRecord.getReturnDate(), record.getReturnDate()))) {
+            dueDateReminderService.trackAfterCommit(id, updatedBorrowingRecord.getReturnDate());
+        }
         record.setReturnDate(updatedBorrowingRecord.getReturnDate());
 
+        if (updatedBorrowingRecord.isApproved() != record.isApproved()) {
+            record.setApprovedAt(updatedBorrowingRecord.isApproved() ? LocalDateTime.now() : null);
+        }
         record.setApproved(updatedBorrowingRecord.isApproved());    //member must not be able to set approved
 
         return borrowingRecordRepository.save(record);
@@ -66,29 +189,75 @@ public class BorrowingRecordService {
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @CacheEvict(cacheNames = "borrowing_records", key = "#id")
+    @Transactional
     public void deleteBorrowingRecordById(Long id) {
+        borrowingRecordRepository.findLoanHoldingById(id).ifPresent(loan -> {
+            if (Boolean.TRUE.equals(loan.getApproved()) && loan.getReturnedAt() == null) {
+                giveBackCopy(loan.getBookId());     //a deleted open loan does not keep its copy
+            }
+            if (loan.getMemberId() != null) {
+                loanLimitService.forget(loan.getMemberId());
+            }
+        });
         borrowingRecordRepository.deleteById(id);
     }
 
+    private void takeCopy(Long bookId) {
+        if (bookId != null) {
+            inventoryService.checkout(bookId);
+        }
+    }
+
+    //like MemberService.returnBook, the first in line of the title gets the copy as a hold before it goes back on the shelf
+    private void giveBackCopy(Long bookId) {
+        if (bookId != null) {
+            reservationService.returnCopy(bookId);
+        }
+    }
+
+    //shared locks of the member and the book a record is written with, a delete of either one waits for the record to commit
+    //(TombstoneService) and one that committed first leaves no row to lock
+    private void lockReferences(Long memberId, Long bookId) {
+        if (memberId != null && memberRepository.lockLive(List.of(memberId)).isEmpty()) {
+            throw new MemberNotFoundException("Member not found with the id: " + memberId);
+        }
+        if (bookId != null && bookRepository.lockLive(List.of(bookId)).isEmpty()) {
+            throw new BookNotFoundException("Book not found with the id: " + bookId);
+        }
+    }
+
+    private static Long bookIdOf(BorrowingRecord record) {
+        return record.getBook() == null ? null : record.getBook().getId();
+    }
+
+    private static Long memberIdOf(BorrowingRecord record) {
+        return record.getMember() == null ? null : record.getMember().getId();
+    }
+
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<BorrowingRecord> getBorrowingRecordByMemberEmail(String email, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return borrowingRecordRepository.findByMemberEmail(email, pageRequest);
+        return withArchived(pageable -> borrowingRecordRepository.findByMemberEmail(email, pageable),
+                (order, limit) -> loanArchiveService.findByMemberEmail(email, order, limit), pageRequest);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<BorrowingRecord> getBorrowingRecordByBookTitle(String title, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return borrowingRecordRepository.findBorrowingRecordByBookTitle(title, pageRequest);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<BorrowingRecord> getBorrowingRecordByMemberName(String name, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return borrowingRecordRepository.findBorrowingRecordByMemberName(name, pageRequest);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<BorrowingRecord> getBorrowingRecordByBorrowDate(LocalDateTime borrowDate, int page, int size, String sortDirection, String sortField) {
         LocalDateTime startDate;
         LocalDateTime endDate;
@@ -105,10 +274,12 @@ public class BorrowingRecordService {
         }
 
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return borrowingRecordRepository.findBorrowingRecordByBorrowDate(startDate, endDate, pageRequest);
+        return withArchived(pageable -> borrowingRecordRepository.findBorrowingRecordByBorrowDate(startDate, endDate, pageable),
+                (order, limit) -> loanArchiveService.findBorrowedBetween(startDate, endDate, order, limit), pageRequest);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<BorrowingRecord> getBorrowingRecordByReturnDate(LocalDateTime returnDate, int page, int size, String sortDirection, String sortField) {
         LocalDateTime startDate;
         LocalDateTime endDate;
@@ -122,21 +293,171 @@ public class BorrowingRecordService {
         }
 
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return borrowingRecordRepository.findBorrowingRecordByReturnDate(startDate, endDate, pageRequest);
+        return withArchived(pageable -> borrowingRecordRepository.findBorrowingRecordByReturnDate(startDate, endDate, pageable),
+                (order, limit) -> loanArchiveService.findDueBetween(startDate, endDate, order, limit), pageRequest);
     }
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @OptimisticRetry
+    @Transactional
     public void approveBorrowRequest(Long borrowingRecordId) {
         BorrowingRecord record = borrowingRecordRepository.findById(borrowingRecordId)
                 .orElseThrow(() -> new BorrowingRecordNotFound("Record not found with the id: " + borrowingRecordId));
+        if (record.isApproved()) {
+            return;     //already an open loan (or returned), approving again must not check out a second copy
+        }
+
+        inventoryService.checkout(record.getBook().getId());     //an approved request is an open loan and takes a copy
         record.setApproved(true);
+        record.setApprovedAt(LocalDateTime.now());
         borrowingRecordRepository.save(record);
+        if (record.getMember() != null) {       //null when the member of the request was deleted
+            loanLimitService.requestsApproved(record.getMember().getId(), 1);
+        }
+        dueDateReminderService.trackAfterCommit(record.getId(), record.getReturnDate());
+    }
+
+    //approves a whole batch in one transaction: one locked read of the requests, one locked read of the copies of their titles,
+    //then one update for the requests and one for the copies. a request whose title has no copy left is reported and stays pending
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional
+    public BatchApprovalResultDTO approveBorrowRequests(BatchApprovalRequestDTO request) {
+        Map<Long, Outcome> outcomes = new LinkedHashMap<>();
+        List<ApprovalCandidate> candidates;
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            request.getIds().forEach(id -> outcomes.put(id, Outcome.NOT_FOUND));      //overwritten for every id that is found
+            candidates = borrowingRecordRepository.lockForApproval(outcomes.keySet());
+        } else if (request.getBookId() != null || request.getRequestedBefore() != null) {
+            candidates = borrowingRecordRepository.lockPendingForApproval(request.getBookId(), request.getRequestedBefore(), maxBatchSize);
+        } else {        //an empty body would approve any pending requests
+            throw new InvalidApprovalFilterException("Give the ids of the requests to approve or filter them by bookId or requestedBefore");
+        }
+
+        List<ApprovalCandidate> pending = new ArrayList<>();
+        for (ApprovalCandidate candidate : candidates) {
+            if (Boolean.TRUE.equals(candidate.getApproved())) {
+                outcomes.put(candidate.getId(), Outcome.ALREADY_APPROVED);
+            } else {
+                pending.add(candidate);
+            }
+        }
+
+        Map<Long, Integer> copiesLeft = pending.isEmpty() ? Map.of() :
+                inventoryService.lockAvailableCopies(pending.stream().map(ApprovalCandidate::getBookId).distinct().toList());
+        Map<Long, Integer> copiesLeftAfter = new HashMap<>(copiesLeft);
+        List<Long> approvedIds = new ArrayList<>();
+        Map<Long, Integer> approvedByMember = new HashMap<>();
+        for (ApprovalCandidate candidate : pending) {       //oldest request first
+            Integer copies = copiesLeftAfter.get(candidate.getBookId());
+            if (copies == null || copies > 0) {     //untracked titles can always be borrowed
+                if (copies != null) {
+                    copiesLeftAfter.put(candidate.getBookId(), copies - 1);
+                }
+                approvedIds.add(candidate.getId());
+                dueDateReminderService.trackAfterCommit(candidate.getId(), candidate.getDueAt());
+                approvedByMember.merge(candidate.getMemberId(), 1, Integer::sum);
+                outcomes.put(candidate.getId(), Outcome.APPROVED);
+            } else {
+                outcomes.put(candidate.getId(), Outcome.UNAVAILABLE);
+            }
+        }
+
+        if (!approvedIds.isEmpty()) {
+            borrowingRecordRepository.approveAll(approvedIds, LocalDateTime.now());
+            int trackedTitles = (int) copiesLeft.keySet().stream()
+                    .filter(bookId -> copiesLeftAfter.get(bookId) < copiesLeft.get(bookId))
+                    .count();
+            if (trackedTitles > 0) {
+                inventoryService.checkoutAll(approvedIds, trackedTitles);
+            }
+            Cache cache = cacheManager.getCache("borrowing_records");
+            approvedIds.forEach(cache::evict);
+            approvedByMember.forEach(loanLimitService::requestsApproved);
+        }
+
+        List<ApprovalOutcomeDTO> results = new ArrayList<>(outcomes.size());
+        outcomes.forEach((id, outcome) -> results.add(new ApprovalOutcomeDTO(id, outcome)));
+        return BatchApprovalResultDTO.builder()
+                .approved(count(outcomes, Outcome.APPROVED))
+                .alreadyApproved(count(outcomes, Outcome.ALREADY_APPROVED))
+                .unavailable(count(outcomes, Outcome.UNAVAILABLE))
+                .notFound(count(outcomes, Outcome.NOT_FOUND))
+                .outcomes(results)
+                .build();
+    }
+
+    private static int count(Map<Long, Outcome> outcomes, Outcome outcome) {
+        return (int) outcomes.values().stream().filter(outcome::equals).count();
+    }
+
+    //hands the librarian up to size pending requests no one else holds, oldest first, and returns every request the librarian holds.
+    //a claim runs out after library.approval.claim-lease, the request goes back to the queue when it was not approved by then
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional
+    public List<BorrowingRecord> claimPendingRequests(String librarian, int size) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = borrowingRecordRepository.lockUnclaimed(now, Math.max(0, Math.min(size, maxClaimSize)));
+        if (!ids.isEmpty()) {
+            borrowingRecordRepository.claim(ids, librarian, now.plus(claimLease));
+            Cache cache = cacheManager.getCache("borrowing_records");
+            ids.forEach(cache::evict);
+        }
+        return borrowingRecordRepository.findClaimedBy(librarian, now);
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
+    public List<BorrowingRecord> getClaimedRequests(String librarian) {
+        return borrowingRecordRepository.findClaimedBy(librarian, LocalDateTime.now());
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @CacheEvict(cacheNames = "borrowing_records", key = "#id")
+    @Transactional
+    public void releaseClaim(Long id, String librarian) {
+        if (borrowingRecordRepository.releaseClaim(id, librarian) == 0) {
+            throw new BorrowingRecordNotFound("No pending request with the id: " + id + " is claimed by " + librarian);
+        }
     }
 
+    @Transactional(readOnly = true)
     public boolean isMemberOwnerOfTheRecord(Long borrowingRecordId, Authentication authentication) {
 
         return borrowingRecordRepository.findById(borrowingRecordId)
-                .map(br -> br.getMember().getEmail().equals(authentication.getName()))
+                .map(br -> br.getMember() != null && br.getMember().getEmail().equals(authentication.getName()))
                 .orElse(false);
     }
 
+    //one page over the loan table and the archived loans of the query. both are read up to the end of the page only, in the order of the
+    //page, and merged until the page is full. the sort is limited to the fields a segment stores (LoanOrder), with or without archived
+    //loans, so a page does not fail once its loans get archived. without archived rows it is the plain query
+    private static Page<BorrowingRecord> withArchived(Function<Pageable, Page<BorrowingRecord>> query,
+                                                      BiFunction<LoanOrder, Integer, Matches> archive, PageRequest pageRequest) {
+        LoanOrder order = LoanOrder.of(pageRequest.getSort());
+        int offset = (int) Math.min(pageRequest.getOffset(), Integer.MAX_VALUE);
+        int end = (int) Math.min(pageRequest.getOffset() + pageRequest.getPageSize(), Integer.MAX_VALUE);
+        Matches archived = archive.apply(order, end);
+        if (archived.total() == 0) {
+            return query.apply(pageRequest);
+        }
+        Page<BorrowingRecord> head = query.apply(PageRequest.of(0, end, pageRequest.getSort()));
+
+        List<BorrowingRecord> table = head.getContent();
+        List<BorrowingRecord> archivedRows = archived.first();
+        List<BorrowingRecord> content = new ArrayList<>(pageRequest.getPageSize());
+        int fromTable = 0;
+        int fromArchive = 0;
+        for (int position = 0; position < end && (fromTable < table.size() || fromArchive < archivedRows.size()); position++) {
+            BorrowingRecord next;
+            if (fromArchive == archivedRows.size() || fromTable < table.size()
+                    && order.comparator().compare(table.get(fromTable), archivedRows.get(fromArchive)) <= 0) {
+                next = table.get(fromTable++);
+            } else {
+                next = archivedRows.get(fromArchive++);
+            }
+            if (position >= offset) {
+                content.add(next);
+            }
+        }
+        return new PageImpl<>(content, pageRequest, head.getTotalElements() + archived.total());
+    }
 }
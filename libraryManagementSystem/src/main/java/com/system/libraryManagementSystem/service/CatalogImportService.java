@@ -0,0 +1,219 @@
+package com.system.libraryManagementSystem.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.system.libraryManagementSystem.dto.CatalogImportErrorDTO;
+import com.system.libraryManagementSystem.dto.CatalogImportReportDTO;
+import com.system.libraryManagementSystem.dto.CatalogImportRowDTO;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+public class CatalogImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogImportService.class);
+
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private Validator validator;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${library.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${library.import.max-reported-errors:100}")
+    private int maxReportedErrors;
+
+    private final ObjectReader csvReader = new CsvMapper()
+            .enable(CsvParser.Feature.TRIM_SPACES)
+            .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)     //an empty authorBiography cell means no biography
+            .readerFor(CatalogImportRowDTO.class)
+            .with(CsvSchema.emptySchema().withHeader());      //columns are matched by the header names
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    public CatalogImportReportDTO importCsv(InputStream input) throws IOException {
+        return importRows(csvReader, input);
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    public CatalogImportReportDTO importNdjson(InputStream input) throws IOException {
+        return importRows(objectMapper.readerFor(CatalogImportRowDTO.class), input);
+    }
+
+    //rows are read one at a time and written chunk by chunk, only the current chunk and the author name -> id map stay in memory
+    private CatalogImportReportDTO importRows(ObjectReader reader, InputStream input) throws IOException {
+        CatalogImportReportDTO report = CatalogImportReportDTO.builder().errors(new ArrayList<>()).build();
+        Map<String, Long> authorIds = new HashMap<>();      //lower-cased name -> id, grows with every committed chunk
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+
+        try (MappingIterator<CatalogImportRowDTO> rows = reader.readValues(input)) {
+            long rowNumber = 0;
+            while (true) {
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                } catch (IOException e) {       //the stream itself is broken (e.g. malformed json), nothing after this point can be read
+                    report.setRowsRead(rowNumber + 1);
+                    reject(report, rowNumber + 1, "Import stopped, the input could not be read any further: " + e.getMessage());
+                    break;
+                }
+
+                rowNumber++;
+                report.setRowsRead(rowNumber);
+                try {
+                    chunk.add(new ImportRow(rowNumber, rows.nextValue()));
+                } catch (JsonProcessingException e) {     //a single bad value, the iterator skips to the next row
+                    reject(report, rowNumber, "Row could not be parsed: " + e.getOriginalMessage());
+                }
+
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, authorIds, report);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, authorIds, report);
+        }
+
+        logger.info("Catalog import finished: {} rows read, {} books imported, {} authors created, {} rows rejected",
+                report.getRowsRead(), report.getBooksImported(), report.getAuthorsCreated(), report.getRowsRejected());
+        return report;
+    }
+
+    private void importChunk(List<ImportRow> chunk, Map<String, Long> authorIds, CatalogImportReportDTO report) {
+        List<ImportRow> validRows = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            Set<ConstraintViolation<CatalogImportRowDTO>> violations = validator.validate(row.data());
+            if (violations.isEmpty()) {
+                validRows.add(row);
+            } else {
+                reject(report, row.number(), violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+            }
+        }
+        if (validRows.isEmpty()) {
+            return;
+        }
+
+        //each chunk commits on its own, a failing chunk is rolled back and reported without stopping the import
+        ChunkResult result;
+        try {
+            result = new TransactionTemplate(transactionManager).execute(status -> writeChunk(validRows, authorIds));
+        } catch (DataAccessException | TransactionException e) {
+            validRows.forEach(row -> reject(report, row.number(), "Chunk was rolled back: " + e.getMessage()));
+            return;
+        }
+
+        authorIds.putAll(result.authorIds());
+        result.errors().forEach(error -> reject(report, error.getRow(), error.getMessage()));
+        report.setBooksImported(report.getBooksImported() + result.booksImported());
+        report.setAuthorsCreated(report.getAuthorsCreated() + result.authorsCreated());
+        report.setChunksCommitted(report.getChunksCommitted() + 1);
+
+        logger.info("Catalog import chunk {} committed: {} rows read, {} books imported, {} rows rejected",
+                report.getChunksCommitted(), report.getRowsRead(), report.getBooksImported(), report.getRowsRejected());
+    }
+
+    private ChunkResult writeChunk(List<ImportRow> rows, Map<String, Long> knownAuthorIds) {
+        Map<String, Long> chunkAuthorIds = new HashMap<>();     //every author the chunk points to, merged into the import map after commit
+        List<CatalogImportErrorDTO> errors = new ArrayList<>();
+        int authorsCreated = 0;
+
+        Set<String> unknownNames = new HashSet<>();
+        for (ImportRow row : rows) {
+            String name = nameKey(row.data());
+            if (knownAuthorIds.containsKey(name)) {
+                chunkAuthorIds.put(name, knownAuthorIds.get(name));
+            } else {
+                unknownNames.add(name);
+            }
+        }
+        if (!unknownNames.isEmpty()) {
+            authorRepository.findByLowerCaseNameIn(unknownNames)
+                    .forEach(author -> chunkAuthorIds.putIfAbsent(author.getName().toLowerCase(Locale.ROOT), author.getId()));
+        }
+
+        List<Book> books = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            String name = nameKey(row.data());
+            Long authorId = chunkAuthorIds.get(name);
+            if (authorId == null) {
+                if (row.data().getAuthorBiography() == null || row.data().getAuthorBiography().isBlank()) {
+                    errors.add(new CatalogImportErrorDTO(row.number(), "Author not found with the name: " + row.data().getAuthorName() + ", an authorBiography is needed to create it"));
+                    continue;
+                }
+                Author author = authorRepository.save(Author.builder()
+                        .name(row.data().getAuthorName().trim())
+                        .biography(row.data().getAuthorBiography())
+                        .publishedBooks(new ArrayList<>())
+                        .build());
+                authorId = author.getId();
+                chunkAuthorIds.put(name, authorId);
+                authorsCreated++;
+            }
+            books.add(Book.builder()
+                    .title(row.data().getTitle().trim())
+                    .genre(row.data().getGenre().trim())
+                    .publicationYear(row.data().getPublicationYear())
+                    .author(authorRepository.getReferenceById(authorId))     //proxy, the author is not selected again
+                    .build());
+        }
+
+        bookRepository.saveAll(books);      //sent as jdbc batches of hibernate.jdbc.batch_size on commit
+        int booksImported = books.size();
+        return new ChunkResult(chunkAuthorIds, errors, booksImported, authorsCreated);
+    }
+
+    private void reject(CatalogImportReportDTO report, long rowNumber, String message) {
+        report.setRowsRejected(report.getRowsRejected() + 1);
+        if (report.getErrors().size() < maxReportedErrors) {
+            report.getErrors().add(new CatalogImportErrorDTO(rowNumber, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private static String nameKey(CatalogImportRowDTO row) {
+        return row.getAuthorName().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record ImportRow(long number, CatalogImportRowDTO data) {
+    }
+
+    private record ChunkResult(Map<String, Long> authorIds, List<CatalogImportErrorDTO> errors, int booksImported, int authorsCreated) {
+    }
+}
@@ -0,0 +1,196 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository.DueLoan;
+import com.system.libraryManagementSystem.service.support.TimingWheel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//reminders library.reminder.days-before days before a loan is due. the loans falling due in the next library.reminder.look-ahead are read
+//from idx_loan_due_at into a timing wheel and the window is topped up from where the last read stopped, nothing is polled per reminder.
+//a sent reminder is kept in reminded_at, so a restart reads back exactly the reminders still to send (the ones missed while down go out
+//right away). handlers run on a bounded pool, a full queue makes the wheel thread run the reminder itself.
+//publishes a DueDateReminder event per loan for the notifiers, counted as library.reminder.sent
+@Service
+public class DueDateReminderService implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DueDateReminderService.class);
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${library.reminder.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.reminder.days-before:2}")
+    private int daysBefore;
+
+    @Value("${library.reminder.look-ahead:PT6H}")
+    private Duration lookAhead;
+
+    @Value("${library.reminder.tick:1s}")
+    private Duration tick;
+
+    @Value("${library.reminder.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${library.reminder.threads:2}")
+    private int threads;
+
+    @Value("${library.reminder.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private final Map<Long, TimingWheel.Timeout> scheduled = new ConcurrentHashMap<>();
+    private TimingWheel timingWheel;
+    private ThreadPoolExecutor executor;
+    private volatile LocalDateTime loadedUntil;     //due dates up to here are in the wheel
+    private LocalDateTime lastDueAt;
+    private long lastId;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        timingWheel = new TimingWheel(tick, 512, 4, executor);      //512 ticks per level, 4 levels cover years at a one second tick
+        meterRegistry.gauge("library.reminder.pending", timingWheel, TimingWheel::size);
+
+        LocalDateTime now = LocalDateTime.now();
+        lastDueAt = now;        //already due is the overdue sweep's business
+        lastId = 0;
+        loadedUntil = now;
+        topUp();
+        timingWheel.start("due-date-reminders");
+    }
+
+    @Override
+    public void destroy() {
+        if (timingWheel != null) {
+            timingWheel.close();
+            executor.shutdown();
+        }
+    }
+
+    //reads the loans falling due since the last read, the next window is read before the wheel gets to the end of this one
+    @Scheduled(fixedDelayString = "${library.reminder.top-up-interval:PT1H}", initialDelayString = "${library.reminder.top-up-interval:PT1H}")
+    public synchronized void topUp() {
+        if (timingWheel == null) {
+            return;
+        }
+        LocalDateTime until = LocalDateTime.now().plusDays(daysBefore).plus(lookAhead);
+        int loaded = 0;
+        List<DueLoan> loans;
+        do {
+            loans = borrowingRecordRepository.findDueForReminder(lastDueAt, lastId, until, fetchSize);
+            for (DueLoan loan : loans) {
+                schedule(loan.getId(), loan.getDueAt());
+                lastDueAt = loan.getDueAt();
+                lastId = loan.getId();
+            }
+            loaded += loans.size();
+        } while (loans.size() == fetchSize);
+        loadedUntil = until;
+        logger.info("Due date reminders loaded up to {}: {} new, {} waiting", until, loaded, timingWheel.size());
+    }
+
+    //a loan opened (created approved, approved or borrowed) or given a new due date in the current transaction, the window its due date
+    //falls in may have been read already. tracked once the transaction committed, a rolled back loan gets no timer
+    public void trackAfterCommit(Long loanId, LocalDateTime dueAt) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            track(loanId, dueAt);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                track(loanId, dueAt);
+            }
+        });
+    }
+
+    public void track(Long loanId, LocalDateTime dueAt) {
+        if (timingWheel == null || dueAt == null) {
+            return;
+        }
+        if (!dueAt.isAfter(loadedUntil)) {
+            schedule(loanId, dueAt);
+        } else {
+            cancel(loanId);     //read again with its window
+        }
+    }
+
+    private void schedule(Long loanId, LocalDateTime dueAt) {
+        Duration delay = Duration.between(LocalDateTime.now(), dueAt.minusDays(daysBefore));
+        TimingWheel.Timeout timeout = timingWheel.schedule(() -> remind(loanId, dueAt), delay.isNegative() ? Duration.ZERO : delay);
+        TimingWheel.Timeout previous = scheduled.put(loanId, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void cancel(Long loanId) {
+        TimingWheel.Timeout previous = scheduled.remove(loanId);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void remind(Long loanId, LocalDateTime dueAt) {
+        try {
+            scheduled.computeIfPresent(loanId, (id, timeout) -> timeout.isPending() ? timeout : null);     //a newer timer of the loan stays
+            Integer marked = new TransactionTemplate(transactionManager).execute(status ->
+                    borrowingRecordRepository.markReminded(loanId, dueAt, LocalDateTime.now()));
+            if (marked == null || marked == 0) {
+                //returned, reminded or moved, a loan that is still open with a new due date in the loaded window gets a new timer
+                borrowingRecordRepository.findDueForReminder(loanId)
+                        .filter(loan -> !loan.getDueAt().equals(dueAt))
+                        .ifPresent(loan -> track(loan.getId(), loan.getDueAt()));
+                return;
+            }
+            Cache cache = cacheManager.getCache("borrowing_records");
+            if (cache != null) {
+                cache.evict(loanId);
+            }
+            eventPublisher.publishEvent(new DueDateReminder(loanId, dueAt));
+            meterRegistry.counter("library.reminder.sent").increment();
+        } catch (RuntimeException e) {
+            logger.warn("Due date reminder of loan {} failed, it is read again after a restart: {}", loanId, e.getMessage());
+        }
+    }
+
+    public record DueDateReminder(Long loanId, LocalDateTime dueAt) {
+    }
+}
@@ -0,0 +1,97 @@
+package com.system.libraryManagementSystem.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.system.libraryManagementSystem.dto.BookDTO;
+import com.system.libraryManagementSystem.dto.BorrowingRecordDTO;
+import com.system.libraryManagementSystem.dto.MemberExportDTO;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+//full dumps written straight to the response, rows are projected to dtos and read through a forward-only cursor in a stateless session,
+//nothing is kept in a persistence context so memory stays the same for 10 or 10 million rows
+@Service
+public class ExportService {
+
+    private static final String BOOKS_QUERY = "SELECT new com.system.libraryManagementSystem.dto.BookDTO(b.id, b.title, b.genre, b.publicationYear, a.id, a.name) " +
+            "FROM Book b LEFT JOIN b.author a ORDER BY b.id";
+    private static final String MEMBERS_QUERY = "SELECT new com.system.libraryManagementSystem.dto.MemberExportDTO(m.id, m.name, m.email, m.isEnabled, p.phoneNumber, p.address, p.dateOfBirth) " +
+            "FROM Member m LEFT JOIN MemberProfile p ON p.id = m.id ORDER BY m.id";
+    //closed loans of deleted books and members are exported too, with their ids and without names
+    private static final String BORROWING_RECORDS_QUERY = "SELECT new com.system.libraryManagementSystem.dto.BorrowingRecordDTO(br.id, br.book.id, b.title, br.member.id, m.name, m.email, br.borrowDate, br.returnDate, br.isApproved) " +
+            "FROM BorrowingRecord br LEFT JOIN br.book b LEFT JOIN br.member m ORDER BY br.id";
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${library.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private final CsvMapper csvMapper = CsvMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportBooks(ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        export(BOOKS_QUERY, BookDTO.class, format, gzip, out);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportMembers(ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        export(MEMBERS_QUERY, MemberExportDTO.class, format, gzip, out);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportBorrowingRecords(ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        export(BORROWING_RECORDS_QUERY, BorrowingRecordDTO.class, format, gzip, out);
+    }
+
+    private <T> void export(String query, Class<T> rowType, ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, GZIP_BUFFER_SIZE) : out;
+
+        try (StatelessSession session = entityManagerFactory.unwrap(SessionFactory.class).openStatelessSession();
+             SequenceWriter writer = writerFor(rowType, format).writeValues(target)) {      //closing the writer finishes the gzip stream
+            session.doWork(connection -> connection.setReadOnly(true));
+            Transaction transaction = session.beginTransaction();     //one snapshot for the whole dump
+            try (ScrollableResults<T> rows = session.createSelectionQuery(query, rowType)
+                    .setFetchSize(fetchSize)        //with useCursorFetch the driver reads fetchSize rows per round trip instead of the whole result
+                    .setReadOnly(true)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (rows.next()) {
+                    writer.write(rows.get());
+                }
+            } finally {
+                transaction.rollback();     //nothing was written, ends the read-only transaction
+            }
+        }
+    }
+
+    private ObjectWriter writerFor(Class<?> rowType, ExportFormat format) {
+        ObjectWriter writer = switch (format) {
+            case NDJSON -> objectMapper.writerFor(rowType).withRootValueSeparator("\n");
+            case CSV -> csvMapper.writerFor(rowType).with(csvMapper.schemaFor(rowType).withHeader());
+        };
+        return writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);     //let the output buffer fill instead of flushing every row
+    }
+}
@@ -0,0 +1,86 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.exception.BookNotFoundException;
+import com.system.libraryManagementSystem.exception.BookUnavailableException;
+import com.system.libraryManagementSystem.exception.InventoryConflictException;
+import com.system.libraryManagementSystem.model.BookInventory;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+//a title without an inventory row is not tracked and can always be borrowed, copies are only counted once a librarian sets them
+@Service
+public class InventoryService {
+
+    @Autowired
+    private BookInventoryRepository bookInventoryRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    //joins the caller's transaction, the row stays locked only from this update until that transaction commits
+    @Transactional
+    public void checkout(Long bookId) {
+        if (bookInventoryRepository.checkout(bookId) == 1) {
+            return;
+        }
+        if (bookInventoryRepository.existsById(bookId)) {      //only read when the update missed, to tell "sold out" from "not tracked"
+            throw new BookUnavailableException("No copies of the book with the id: " + bookId + " are available");
+        }
+    }
+
+    //copies left of every tracked title among bookIds, untracked titles are not in the map. the rows stay locked until the caller's
+    //transaction commits, so the copies a batch counts on can not be taken in the meantime
+    @Transactional
+    public Map<Long, Integer> lockAvailableCopies(Collection<Long> bookIds) {
+        return bookInventoryRepository.findAllByBookIdIn(bookIds).stream()
+                .collect(Collectors.toMap(BookInventory::getBookId, BookInventory::getAvailableCopies));
+    }
+
+    //one copy per loan, grouped by title. trackedTitles is how many titles of the loans have an inventory row
+    @Transactional
+    public void checkoutAll(Collection<Long> loanIds, int trackedTitles) {
+        if (bookInventoryRepository.checkoutAll(loanIds) != trackedTitles) {     //a title ran out, the caller's transaction is rolled back
+            throw new BookUnavailableException("Not enough copies are available for every loan of the batch");
+        }
+    }
+
+    //false for untracked titles or when every copy is already on the shelf. like checkout the row stays locked until the caller commits
+    @Transactional
+    public boolean checkin(Long bookId) {
+        return bookInventoryRepository.checkin(bookId) == 1;
+    }
+
+    @Transactional(readOnly = true)
+    public BookInventory getInventory(Long bookId) {
+        return bookInventoryRepository.findById(bookId)
+                .orElseThrow(() -> new BookNotFoundException("No inventory is kept for the book with the id: " + bookId));
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional
+    public BookInventory setTotalCopies(Long bookId, int totalCopies) {
+        if (!bookRepository.existsById(bookId)) {
+            throw new BookNotFoundException("Book not found with the id: " + bookId);
+        }
+        if (bookInventoryRepository.updateTotalCopies(bookId, totalCopies) == 0) {
+            if (bookInventoryRepository.existsById(bookId)) {
+                throw new InventoryConflictException("Total copies of the book with the id: " + bookId + " can not be less than the copies on loan");
+            }
+            return bookInventoryRepository.save(new BookInventory(bookId, totalCopies, totalCopies));
+        }
+        return getInventory(bookId);
+    }
+
+    @Transactional
+    public void deleteInventory(Long bookId) {
+        bookInventoryRepository.deleteByBookId(bookId);
+    }
+}
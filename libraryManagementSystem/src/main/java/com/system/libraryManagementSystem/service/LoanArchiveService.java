@@ -0,0 +1,409 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.exception.ArchiveUnavailableException;
+import com.system.libraryManagementSystem.model.ArchiveSegment;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.ArchiveSegmentRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.support.LoanOrder;
+import com.system.libraryManagementSystem.service.support.LoanSegment;
+import com.system.libraryManagementSystem.service.support.LoanSegment.Column;
+import com.system.libraryManagementSystem.service.support.LoanSegment.Row;
+import com.system.libraryManagementSystem.service.support.LoanSegment.Stats;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+//moves closed loans out of the loan table into column-oriented segment files (LoanSegment) in library.loan-archive.directory.
+//a loan returned more than library.loan-archive.min-age ago is archived, oldest borrow date first, library.loan-archive.segment-rows
+//loans per file, so the files follow each other in borrow date order. the file is written first, then its manifest row
+//(ArchiveSegment) and the delete of its loans commit together, and the file only gets its name after the commit. a file still
+//named .tmp on start is finished or thrown away by its manifest row.
+//the borrow date, due date and member queries of BorrowingRecordService read the segments whose min/max of the column can hold a match,
+//and decode no more rows than the end of the requested page. the manifest is kept in memory so a query that does not reach the archive costs nothing. the directory has to be shared when more
+//than one instance runs, the manifest is read again on every run of the job.
+//counted as library.loan-archive.archived, library.loan-archive.segments.read and library.loan-archive.segments.skipped
+@Service
+public class LoanArchiveService implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanArchiveService.class);
+
+    private static final String STAGED = ".tmp";
+
+    //idx_loan_borrowed_at from the oldest month, the old months are closed almost entirely. the loan rows only are locked
+    private static final String NEXT_CLOSED = "SELECT l.id, l.member_id, m.name AS member_name, m.email AS member_email, l.book_id, " +
+            "b.title AS book_title, l.requested_at, l.approved_at, l.borrowed_at, l.due_at, l.returned_at, l.is_approved, l.fine, " +
+            "l.fine_accrued_until FROM loan l LEFT JOIN member m ON m.id = l.member_id LEFT JOIN book b ON b.id = l.book_id " +
+            "WHERE l.returned_at < ? ORDER BY l.borrowed_at, l.id LIMIT ? FOR UPDATE OF l";
+    //the borrow dates bound the months the delete looks in
+    private static final String DELETE = "DELETE FROM loan WHERE id IN (%s) AND borrowed_at BETWEEN ? AND ?";
+    private static final int DELETE_BATCH = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ArchiveSegmentRepository archiveSegmentRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${library.loan-archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.loan-archive.directory:data/archive}")
+    private Path directory;
+
+    @Value("${library.loan-archive.min-age:P365D}")
+    private Duration minAge;
+
+    @Value("${library.loan-archive.segment-rows:50000}")
+    private int segmentRows;
+
+    //fewer closed loans than this wait for a later run, many small files would be opened by every query
+    @Value("${library.loan-archive.min-segment-rows:1000}")
+    private int minSegmentRows;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile List<ArchiveSegment> segments = List.of();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            logger.warn("Loan archive directory {} could not be prepared: {}", directory, e.getMessage());
+        }
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${library.loan-archive.interval:PT24H}", initialDelayString = "${library.loan-archive.initial-delay:PT10M}")
+    public void scheduledArchive() {
+        if (enabled) {
+            reload();
+            archive(LocalDateTime.now());
+        }
+    }
+
+    public ArchiveResult archive(LocalDateTime now) {
+        if (!running.compareAndSet(false, true)) {
+            return new ArchiveResult(0, 0);
+        }
+        long started = System.nanoTime();
+        try {
+            LocalDateTime cutoff = now.minus(minAge);
+            int written = 0;
+            int archived = 0;
+            for (int rows = archiveSegment(cutoff); rows > 0; rows = archiveSegment(cutoff)) {
+                written++;
+                archived += rows;
+                if (rows < segmentRows) {
+                    break;
+                }
+            }
+            if (archived > 0) {
+                logger.info("Loans returned before {} archived: {} loans in {} segments in {} ms", cutoff, archived, written,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+            return new ArchiveResult(written, archived);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    //the bounds are inclusive. borrowed_at is never null, a segment inside the range is counted from its manifest row without opening it
+    public Matches findBorrowedBetween(LocalDateTime from, LocalDateTime to, LoanOrder order, int limit) {
+        return find(segment -> overlaps(segment.getMinBorrowedAt(), segment.getMaxBorrowedAt(), from, to),
+                segment -> !segment.getMinBorrowedAt().isBefore(from) && !segment.getMaxBorrowedAt().isAfter(to),
+                Column.BORROWED_AT, LoanSegment.micros(from), LoanSegment.micros(to), order, limit);
+    }
+
+    public Matches findDueBetween(LocalDateTime from, LocalDateTime to, LoanOrder order, int limit) {
+        return find(segment -> overlaps(segment.getMinDueAt(), segment.getMaxDueAt(), from, to), segment -> false,
+                Column.DUE_AT, LoanSegment.micros(from), LoanSegment.micros(to), order, limit);
+    }
+
+    public Matches findByMember(Long memberId, LoanOrder order, int limit) {
+        return find(segment -> segment.getMinMemberId() != null && segment.getMinMemberId() <= memberId && memberId <= segment.getMaxMemberId(),
+                segment -> false, Column.MEMBER_ID, memberId, memberId, order, limit);
+    }
+
+    //no lookup of the member while nothing is archived
+    public Matches findByMemberEmail(String email, LoanOrder order, int limit) {
+        if (segments.isEmpty()) {
+            return Matches.NONE;
+        }
+        return memberRepository.findIdByEmail(email).map(memberId -> findByMember(memberId, order, limit)).orElse(Matches.NONE);
+    }
+
+    //the first limit matches in the order and the count of all of them. only the column of the query is inflated to count a segment,
+    //its rows are decoded only while the segment can still hold one of the first limit rows (by the min/max of the first sort key)
+    private Matches find(Predicate<ArchiveSegment> mayHold, Predicate<ArchiveSegment> covers, Column column, long from, long to,
+                         LoanOrder order, int limit) {
+        PriorityQueue<BorrowingRecord> first = new PriorityQueue<>(order.comparator().reversed());     //the last of the first rows on top
+        long total = 0;
+        int read = 0;
+        List<ArchiveSegment> current = segments;
+        for (ArchiveSegment segment : current) {
+            if (!mayHold.test(segment)) {
+                continue;
+            }
+            boolean needsRows = first.size() < limit || mayPrecede(segment, order, first.peek(), column);
+            if (!needsRows && covers.test(segment)) {
+                total += segment.getRowCount();
+                continue;
+            }
+            read++;
+            try (LoanSegment.Reader reader = LoanSegment.open(directory.resolve(segment.getName()))) {
+                BitSet matching = reader.where(column, from, to);
+                total += matching.cardinality();
+                if (needsRows) {
+                    for (Row row : reader.first(matching, order.columns(), limit)) {
+                        first.add(toRecord(row));
+                        if (first.size() > limit) {
+                            first.poll();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new ArchiveUnavailableException("Archived loans of segment " + segment.getName() + " can not be read: " + e.getMessage());
+            }
+        }
+        meterRegistry.counter("library.loan-archive.segments.read").increment(read);
+        meterRegistry.counter("library.loan-archive.segments.skipped").increment(current.size() - read);
+        List<BorrowingRecord> records = new ArrayList<>(first);
+        records.sort(order.comparator());
+        return new Matches(records, total);
+    }
+
+    private int archiveSegment(LocalDateTime cutoff) {
+        Integer archived = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Row> rows = jdbcTemplate.query(NEXT_CLOSED, (resultSet, rowNum) -> row(resultSet), cutoff, segmentRows);
+            if (rows.isEmpty() || rows.size() < minSegmentRows) {
+                return 0;
+            }
+
+            //the smallest id is unique to the segment, every loan is archived once and leaves the table
+            String name = "loans-" + rows.stream().mapToLong(Row::id).min().getAsLong() + LoanSegment.EXTENSION;
+            Path staged = directory.resolve(name + STAGED);
+            Stats stats;
+            try {
+                Files.deleteIfExists(staged);       //left by a run that did not commit
+                stats = LoanSegment.write(staged, rows);
+            } catch (IOException e) {
+                throw new ArchiveUnavailableException("Loan archive segment " + name + " could not be written: " + e.getMessage());
+            }
+            ArchiveSegment segment = archiveSegmentRepository.save(ArchiveSegment.builder()
+                    .name(name)
+                    .rowCount(stats.rows())
+                    .bytes(stats.bytes())
+                    .minId(stats.minId())
+                    .maxId(stats.maxId())
+                    .minMemberId(stats.minMemberId())
+                    .maxMemberId(stats.maxMemberId())
+                    .minBorrowedAt(stats.minBorrowedAt())
+                    .maxBorrowedAt(stats.maxBorrowedAt())
+                    .minDueAt(stats.minDueAt())
+                    .maxDueAt(stats.maxDueAt())
+                    .createdAt(LocalDateTime.now())
+                    .build());
+
+            List<Long> ids = rows.stream().map(Row::id).toList();
+            for (int from = 0; from < ids.size(); from += DELETE_BATCH) {
+                List<Object> arguments = new ArrayList<>(ids.subList(from, Math.min(from + DELETE_BATCH, ids.size())));
+                int batch = arguments.size();
+                arguments.add(stats.minBorrowedAt());
+                arguments.add(stats.maxBorrowedAt());
+                jdbcTemplate.update(DELETE.formatted(String.join(", ", Collections.nCopies(batch, "?"))), arguments.toArray());
+            }
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int completion) {
+                    if (completion == STATUS_COMMITTED) {
+                        publish(segment, staged, ids);
+                    } else {
+                        deleteQuietly(staged);
+                    }
+                }
+            });
+            return rows.size();
+        });
+        meterRegistry.counter("library.loan-archive.archived").increment(archived == null ? 0 : archived);
+        return archived == null ? 0 : archived;
+    }
+
+    //the loans are gone from the table, the segment is named and read from now on
+    private void publish(ArchiveSegment segment, Path staged, List<Long> ids) {
+        try {
+            Files.move(staged, directory.resolve(segment.getName()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {       //the manifest row is committed, the next start finishes the move
+            logger.warn("Loan archive segment {} is left as {}: {}", segment.getName(), staged, e.getMessage());
+        }
+        List<ArchiveSegment> published = new ArrayList<>(segments);
+        published.add(segment);
+        segments = List.copyOf(published);
+
+        Cache cache = cacheManager.getCache("borrowing_records");
+        if (cache != null) {
+            ids.forEach(cache::evict);
+        }
+    }
+
+    //a staged file with a manifest row committed, its loans are deleted, anything else staged never was
+    private void recover() throws IOException {
+        Set<String> names = new HashSet<>();
+        archiveSegmentRepository.findAll().forEach(segment -> names.add(segment.getName()));
+        try (DirectoryStream<Path> staged = Files.newDirectoryStream(directory, "*" + LoanSegment.EXTENSION + STAGED)) {
+            for (Path file : staged) {
+                String name = file.getFileName().toString();
+                name = name.substring(0, name.length() - STAGED.length());
+                if (names.contains(name)) {
+                    Files.move(file, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                    logger.info("Loan archive segment {} recovered", name);
+                } else {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    //the manifest as committed, segments written by another instance included
+    public void reload() {
+        List<ArchiveSegment> manifest = new ArrayList<>(archiveSegmentRepository.findAll());
+        manifest.sort(Comparator.comparing(ArchiveSegment::getMinBorrowedAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+        for (ArchiveSegment segment : manifest) {
+            if (!Files.exists(directory.resolve(segment.getName()))) {
+                logger.warn("Loan archive segment {} is in the manifest but not in {}", segment.getName(), directory);
+            }
+        }
+        segments = List.copyOf(manifest);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Staged loan archive segment {} could not be deleted: {}", file, e.getMessage());
+        }
+    }
+
+    //no member or book entity behind it, the names are the ones the loan had when it was archived
+    private static BorrowingRecord toRecord(Row row) {
+        return BorrowingRecord.builder()
+                .id(row.id())
+                .member(row.memberId() == null ? null : Member.builder().id(row.memberId()).name(row.memberName()).email(row.memberEmail()).build())
+                .book(row.bookId() == null ? null : Book.builder().id(row.bookId()).title(row.bookTitle()).build())
+                .requestedAt(row.requestedAt())
+                .approvedAt(row.approvedAt())
+                .borrowDate(row.borrowedAt())
+                .returnDate(row.dueAt())
+                .returnedAt(row.returnedAt())
+                .isApproved(row.approved())
+                .fine(row.fine())
+                .fineAccruedUntil(row.fineAccruedUntil())
+                .build();
+    }
+
+    private static Row row(ResultSet resultSet) throws SQLException {
+        return new Row(
+                resultSet.getLong("id"),
+                resultSet.getObject("member_id", Long.class),
+                resultSet.getString("member_name"),
+                resultSet.getString("member_email"),
+                resultSet.getObject("book_id", Long.class),
+                resultSet.getString("book_title"),
+                resultSet.getObject("requested_at", LocalDateTime.class),
+                resultSet.getObject("approved_at", LocalDateTime.class),
+                resultSet.getObject("borrowed_at", LocalDateTime.class),
+                resultSet.getObject("due_at", LocalDateTime.class),
+                resultSet.getObject("returned_at", LocalDateTime.class),
+                resultSet.getBoolean("is_approved"),
+                resultSet.getObject("fine", BigDecimal.class),
+                resultSet.getObject("fine_accrued_until", LocalDateTime.class));
+    }
+
+    private static boolean overlaps(LocalDateTime min, LocalDateTime max, LocalDateTime from, LocalDateTime to) {
+        return min != null && !max.isBefore(from) && !min.isAfter(to);
+    }
+
+    //false when no row of the segment can come before the last of the first rows, judged by the manifest's min/max of the first sort key.
+    //an equal value can, the id decides. the min/max leave out nulls, which sort first, so a due date is only judged descending or when
+    //the query is on the due date itself
+    private static boolean mayPrecede(ArchiveSegment segment, LoanOrder order, BorrowingRecord last, Column queried) {
+        LoanSegment.Order key = order.first();
+        Long lastValue = key == null ? null : order.firstValue(last);
+        if (lastValue == null) {
+            return true;
+        }
+        Long min;
+        Long max;
+        switch (key.column()) {
+            case ID -> {
+                min = segment.getMinId();
+                max = segment.getMaxId();
+            }
+            case BORROWED_AT -> {
+                min = LoanSegment.micros(segment.getMinBorrowedAt());
+                max = LoanSegment.micros(segment.getMaxBorrowedAt());
+            }
+            case DUE_AT -> {
+                if (key.ascending() && queried != Column.DUE_AT) {
+                    return true;
+                }
+                min = LoanSegment.micros(segment.getMinDueAt());
+                max = LoanSegment.micros(segment.getMaxDueAt());
+            }
+            default -> {
+                return true;
+            }
+        }
+        if (min == null) {
+            return true;
+        }
+        return key.ascending() ? min <= lastValue : max >= lastValue;
+    }
+
+    //the first rows of a query in its order and the count of all its rows
+    public record Matches(List<BorrowingRecord> first, long total) {
+        public static final Matches NONE = new Matches(List.of(), 0);
+    }
+
+    public record ArchiveResult(int segments, int archived) {
+    }
+}
@@ -0,0 +1,310 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.config.LoanLimitProperties;
+import com.system.libraryManagementSystem.config.LoanLimitProperties.Limit;
+import com.system.libraryManagementSystem.exception.LoanLimitExceededException;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository.LoanCount;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+//caps the open loans and pending requests of a member by role. the counts of a member are read from the loan table once, with the
+//roles, and kept in memory from then on, so a limit check on borrowBook and /borrowing-record/request is a lock on the member's counter.
+//a loan or request that is being opened is counted right away and taken back when its transaction rolls back, approvals and returns
+//only count once they committed, so a rolled back change never lets a member past the limit.
+//a reconcile pass reads the counts of the members in memory again every library.loan-limit.reconcile-interval and fixes the counters
+//that drifted from the table (counted as library.loan-limit.drift), refusals are counted as library.loan-limit.exceeded
+@Service
+@EnableConfigurationProperties(LoanLimitProperties.class)
+public class LoanLimitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoanLimitService.class);
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private LoanLimitProperties properties;
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    //a loan opened directly (borrowBook, a request saved as approved), throws LoanLimitExceededException at the limit
+    public void openLoan(Long memberId) {
+        reserve(memberId, false);
+    }
+
+    //a pending request, it also holds a place under the loan limit
+    public void openRequest(Long memberId) {
+        reserve(memberId, true);
+    }
+
+    //the same check without counting, for requests that are counted once they are saved (the intake queue)
+    public void checkRequest(Long memberId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Counter counter = counterOf(memberId);
+        synchronized (counter) {
+            checkLimit(memberId, counter, true);
+        }
+    }
+
+    //requests saved outside a limit check, counted after commit
+    public void requestsSaved(Long memberId, int count) {
+        afterCommit(memberId, counter -> counter.requests += count);
+    }
+
+    public void requestsApproved(Long memberId, int count) {
+        afterCommit(memberId, counter -> {
+            counter.requests = Math.max(0, counter.requests - count);
+            counter.loans += count;
+        });
+    }
+
+    public void loansReturned(Long memberId, int count) {
+        afterCommit(memberId, counter -> counter.loans = Math.max(0, counter.loans - count));
+    }
+
+    //the loans of the member changed in a way not counted here (record edited or deleted, roles changed), read again on the next check
+    public void forget(Long memberId) {
+        if (memberId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    counters.remove(memberId);
+                }
+            });
+        } else {
+            counters.remove(memberId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.loan-limit.reconcile-interval:PT10M}", initialDelayString = "${library.loan-limit.reconcile-interval:PT10M}")
+    public void reconcile() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long idleSince = System.nanoTime() - properties.getIdleTimeout().toNanos();
+        counters.entrySet().removeIf(entry -> entry.getValue().isIdle(idleSince));
+
+        List<Long> memberIds = new ArrayList<>(counters.keySet());
+        int drifted = 0;
+        for (int from = 0; from < memberIds.size(); from += properties.getReconcileBatchSize()) {
+            drifted += reconcile(memberIds.subList(from, Math.min(from + properties.getReconcileBatchSize(), memberIds.size())));
+        }
+        meterRegistry.counter("library.loan-limit.drift").increment(drifted);
+        if (drifted > 0) {
+            logger.warn("Loan limit counters of {} out of {} members did not match the loan table and were corrected", drifted, memberIds.size());
+        }
+    }
+
+    //a counter is only corrected when nothing touched it while the table was read, a change in progress is not in the table yet
+    private int reconcile(List<Long> memberIds) {
+        Map<Counter, Long> before = new HashMap<>();
+        for (Long memberId : memberIds) {
+            Counter counter = counters.get(memberId);
+            if (counter != null) {
+                synchronized (counter) {
+                    if (counter.inFlight == 0) {
+                        before.put(counter, counter.changes);
+                    }
+                }
+            }
+        }
+        Map<Long, LoanCount> counts = new HashMap<>();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->       //not read-only, a replica may lag behind
+                borrowingRecordRepository.countOpenByMemberIn(memberIds).forEach(count -> counts.put(count.getMemberId(), count)));
+
+        int drifted = 0;
+        for (Long memberId : memberIds) {
+            Counter counter = counters.get(memberId);
+            if (counter == null || !before.containsKey(counter)) {
+                continue;
+            }
+            LoanCount count = counts.get(memberId);
+            int loans = count == null ? 0 : count.getLoans().intValue();
+            int requests = count == null ? 0 : count.getRequests().intValue();
+            synchronized (counter) {
+                if (counter.inFlight == 0 && counter.changes == before.get(counter) && (counter.loans != loans || counter.requests != requests)) {
+                    counter.loans = loans;
+                    counter.requests = requests;
+                    drifted++;
+                }
+            }
+        }
+        return drifted;
+    }
+
+    private void reserve(Long memberId, boolean request) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Counter counter = counterOf(memberId);
+        boolean transactional = TransactionSynchronizationManager.isSynchronizationActive();
+        synchronized (counter) {
+            checkLimit(memberId, counter, request);
+            if (request) {
+                counter.requests++;
+            } else {
+                counter.loans++;
+            }
+            if (transactional) {
+                counter.inFlight++;
+            }
+            counter.touch();
+        }
+        if (!transactional) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (counter) {
+                    counter.inFlight--;
+                    if (status != STATUS_COMMITTED) {
+                        if (request) {
+                            counter.requests--;
+                        } else {
+                            counter.loans--;
+                        }
+                    }
+                    counter.touch();
+                }
+            }
+        });
+    }
+
+    private void checkLimit(Long memberId, Counter counter, boolean request) {
+        if (counter.loans + counter.requests >= counter.limit.getMaxLoans()) {
+            meterRegistry.counter("library.loan-limit.exceeded").increment();
+            throw new LoanLimitExceededException("Member with the id: " + memberId + " already has " + counter.loans + " loans and " +
+                    counter.requests + " pending requests, the limit is " + counter.limit.getMaxLoans());
+        }
+        if (request && counter.requests >= counter.limit.getMaxRequests()) {
+            meterRegistry.counter("library.loan-limit.exceeded").increment();
+            throw new LoanLimitExceededException("Member with the id: " + memberId + " already has " + counter.requests +
+                    " pending requests, the limit is " + counter.limit.getMaxRequests());
+        }
+    }
+
+    //the change is applied when the transaction commits, in flight until then so a reconcile pass leaves the counter alone
+    private void afterCommit(Long memberId, Consumer<Counter> change) {
+        Counter counter = memberId == null ? null : counters.get(memberId);
+        if (!properties.isEnabled() || counter == null) {
+            return;     //a member not in memory is read with the change when it is needed
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (counter) {
+                change.accept(counter);
+                counter.touch();
+            }
+            return;
+        }
+        synchronized (counter) {
+            counter.inFlight++;
+            counter.touch();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (counter) {
+                    counter.inFlight--;
+                    if (status == STATUS_COMMITTED) {
+                        change.accept(counter);
+                    }
+                    counter.touch();
+                }
+            }
+        });
+    }
+
+    //read outside the map lock, when two threads read the same member the first counter in the map is used by both
+    private Counter counterOf(Long memberId) {
+        Counter counter = counters.get(memberId);
+        if (counter != null) {
+            return counter;
+        }
+        Counter loaded = new TransactionTemplate(transactionManager).execute(status -> {
+            List<LoanCount> counts = borrowingRecordRepository.countOpenByMemberIn(List.of(memberId));
+            Counter read = new Counter(limitOf(memberRepository.findRolesById(memberId)));
+            if (!counts.isEmpty()) {
+                read.loans = counts.get(0).getLoans().intValue();
+                read.requests = counts.get(0).getRequests().intValue();
+            }
+            return read;
+        });
+        Counter existing = counters.putIfAbsent(memberId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        counters.remove(memberId, loaded);      //it may have counted rows of the rolled back transaction
+                    }
+                }
+            });
+        }
+        return loaded;
+    }
+
+    private Limit limitOf(List<String> roles) {
+        Limit limit = null;
+        for (String role : roles) {
+            Limit roleLimit = properties.getRoles().get(role.replaceFirst("^ROLE_", "").toLowerCase());
+            if (roleLimit != null && (limit == null || roleLimit.getMaxLoans() > limit.getMaxLoans())) {
+                limit = roleLimit;
+            }
+        }
+        return limit == null ? properties.getDefaults() : limit;
+    }
+
+    private static final class Counter {
+        private final Limit limit;
+        private int loans;
+        private int requests;
+        private int inFlight;       //changes whose transaction has not finished
+        private long changes;
+        private long lastUsed = System.nanoTime();
+
+        private Counter(Limit limit) {
+            this.limit = limit;
+        }
+
+        private void touch() {
+            changes++;
+            lastUsed = System.nanoTime();
+        }
+
+        private synchronized boolean isIdle(long idleSince) {
+            return inFlight == 0 && lastUsed - idleSince < 0;
+        }
+    }
+}
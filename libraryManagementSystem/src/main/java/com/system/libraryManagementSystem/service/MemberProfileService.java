@@ -2,10 +2,11 @@ package com.system.libraryManagementSystem.service;
 
 import com.system.libraryManagementSystem.exception.MemberNotFoundException;
 import com.system.libraryManagementSystem.exception.MemberProfileNotFoundException;
-import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.model.MemberProfile;
 import com.system.libraryManagementSystem.repository.MemberProfileRepository;
-import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
+import com.system.libraryManagementSystem.service.support.OptimisticRetry;
+import com.system.libraryManagementSystem.service.support.VersionPreconditions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
@@ -17,6 +18,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 
@@ -28,10 +30,11 @@ public class MemberProfileService {
     @Autowired
     CacheManager cacheManager;
     @Autowired
-    MemberRepository memberRepository;
+    private TombstoneService tombstoneService;
 
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<MemberProfile> getAllMemberProfiles(int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(
                 page,
@@ -43,12 +46,14 @@ public class MemberProfileService {
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @Cacheable(cacheNames = "member_profiles", key = "#id")
+    @Transactional(readOnly = true)
     public MemberProfile getMemberProfileById(Long id) {
         return memberProfileRepository.findById(id)
                 .orElseThrow(() -> new MemberProfileNotFoundException("Member profile not found with the id: " + id));
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
+    @Transactional
     public MemberProfile saveNewMemberProfile(MemberProfile memberProfile) {
         Long memberId = memberProfile.getMember().getId();
 
@@ -56,22 +61,29 @@ public class MemberProfileService {
         if (memberProfileRepository.existsByMemberId(memberId)) {
             throw new IllegalStateException("Member already has a profile.");
         }
+        tombstoneService.purgeProfileOf(memberId);      //a deleted profile still holds the member's id until it is purged
 
         return memberProfileRepository.save(memberProfile);
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "member_profiles", key = "#id")
+    @OptimisticRetry
+    @Transactional
     public MemberProfile updateMemberProfile(Long id, MemberProfile updatedMemberProfile) {
         MemberProfile memberProfile = memberProfileRepository.findById(id)
                 .orElseThrow(() -> new MemberProfileNotFoundException("Member profile not found with the id: " + id));
+        VersionPreconditions.checkVersion(memberProfile, updatedMemberProfile.getVersion(), "Member profile with the id: " + id);
+
+        if (!id.equals(updatedMemberProfile.getMember().getId())) {      //the profile has the id of its member, it can not move to another one
+            throw new IllegalStateException("Member profile with the id: " + id + " belongs to another member.");
+        }
 
         if (updatedMemberProfile.equals(memberProfile)) return updatedMemberProfile;
 
         memberProfile.setAddress(updatedMemberProfile.getAddress());
         memberProfile.setPhoneNumber(updatedMemberProfile.getPhoneNumber());
         memberProfile.setDateOfBirth(updatedMemberProfile.getDateOfBirth());
-        memberProfile.setMember(updatedMemberProfile.getMember());
 
         // Save first!
         MemberProfile savedProfile = memberProfileRepository.save(memberProfile);
@@ -87,38 +99,31 @@ public class MemberProfileService {
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @CacheEvict(cacheNames = "member_profiles", key = "#id")
-    public void deleteMemberProfileById(Long id) {
-
-        MemberProfile memberProfile = memberProfileRepository.findById(id)
-                        .orElseThrow(() -> new MemberProfileNotFoundException("Member profile not found with the id: " + id));
-
-        Member member = memberProfile.getMember();
-        String email = member.getEmail();
-
-        if (member != null) {
-            member.setMemberProfile(null); // This will trigger orphan removal
-            memberRepository.save(member); // Save the member to apply changes
-        }
-        if (email != null) {
-            cacheManager.getCache("member_profiles").evict(email);
+    @Transactional
+    public Deleted deleteMemberProfileById(Long id) {
+        Deleted deleted = tombstoneService.deleteMemberProfile(id);     //one update, the email key is evicted with it and the row is purged later
+        if (deleted.profiles() == 0) {
+            throw new MemberProfileNotFoundException("Member profile not found with the id: " + id);
         }
-        memberProfileRepository.deleteById(id);
-
+        return deleted;
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<MemberProfile> getMemberProfileByMemberName(String name, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return memberProfileRepository.findMemberProfileByMemberName(name, pageRequest);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<MemberProfile> getMemberProfileByPhoneNumber(String phoneNumber, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return memberProfileRepository.findMemberProfileByPhoneNumber(phoneNumber, pageRequest);
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<MemberProfile> getMemberProfileByAddress(String address, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return memberProfileRepository.findMemberProfileByAddress(address, pageRequest);
@@ -126,17 +131,20 @@ public class MemberProfileService {
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
     @Cacheable(cacheNames = "member_profiles", key = "#email")  //insert new cache value but with email as the key
+    @Transactional(readOnly = true)
     public MemberProfile getMemberProfileByMemberEmail(String email) {
         return memberProfileRepository.findMemberProfileByEmail(email)
                 .orElseThrow(() -> new MemberProfileNotFoundException("Member profile not found with the email: " + email));
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<MemberProfile> getMemberProfileByDateOfBirth(LocalDate startDate, LocalDate endDate, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
         return memberProfileRepository.findMemberProfileByDateOfBirth(startDate, endDate, pageRequest);
     }
 
+    @Transactional(readOnly = true)
     public boolean isMemberProfileOwner(Long id, Authentication authentication) {
         return memberProfileRepository.findById(id)
                 .map(mp -> mp.getMember().getEmail().equals(authentication.getName()))
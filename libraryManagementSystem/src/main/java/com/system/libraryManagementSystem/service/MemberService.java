@@ -4,14 +4,24 @@ package com.system.libraryManagementSystem.service;
 import com.system.libraryManagementSystem.exception.BookNotFoundException;
 import com.system.libraryManagementSystem.exception.MemberNotFoundException;
 import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
-import jakarta.transaction.Transactional;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
+import com.system.libraryManagementSystem.service.support.OptimisticRetry;
+import com.system.libraryManagementSystem.service.support.VersionPreconditions;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
@@ -19,8 +29,11 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
 
@@ -35,9 +48,43 @@ public class MemberService {
     @Autowired
     private BookRepository bookRepository;
 
-    public MemberService(MemberRepository memberRepository, BookRepository bookRepository, BCryptPasswordEncoder passwordEncoder) {
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private LoanLimitService loanLimitService;
+
+    @Autowired
+    private TombstoneService tombstoneService;
+
+    @Autowired
+    private DueDateReminderService dueDateReminderService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${library.loan.period-days:14}")
+    private int loanPeriodDays;
+
+    public MemberService(MemberRepository memberRepository, BookRepository bookRepository, BorrowingRecordRepository borrowingRecordRepository,
+                         InventoryService inventoryService, ReservationService reservationService, LoanLimitService loanLimitService,
+                         TombstoneService tombstoneService, DueDateReminderService dueDateReminderService, CacheManager cacheManager,
+                         BCryptPasswordEncoder passwordEncoder) {
         this.memberRepository = memberRepository;
         this.bookRepository = bookRepository;
+        this.borrowingRecordRepository = borrowingRecordRepository;
+        this.inventoryService = inventoryService;
+        this.reservationService = reservationService;
+        this.loanLimitService = loanLimitService;
+        this.tombstoneService = tombstoneService;
+        this.dueDateReminderService = dueDateReminderService;
+        this.cacheManager = cacheManager;
         this.passwordEncoder = passwordEncoder;
     }
 
@@ -45,33 +92,43 @@ public class MemberService {
     BCryptPasswordEncoder passwordEncoder;
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<Member> getAllMembers(int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(
                 page,
                 size,
                 Sort.by(Sort.Direction.fromString(sortDirection), sortField)
         );
-        return memberRepository.findAll(pageRequest);
+        return initializeBorrowedBooks(memberRepository.findAll(pageRequest));
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @Cacheable(cacheNames = "members", key = "#id")
+    @Transactional(readOnly = true)
     public Member getMemberById(Long id) {
         return fetchMemberById(id);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
+    @Transactional
     public Member saveNewMember(Member member) {
+        tombstoneService.purgeMemberWithEmail(member.getEmail());
         return memberRepository.save(member);
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "members", key = "#id")
+    @OptimisticRetry
+    @Transactional
     public Member updateMember(Long id, Member updatedMember) {
         Member member = fetchMemberById(id);
+        VersionPreconditions.checkVersion(member, updatedMember.getVersion(), "Member with the id: " + id);
 
         if (updatedMember.equals(member)) return updatedMember;
 
+        if (!member.getEmail().equals(updatedMember.getEmail())) {
+            tombstoneService.purgeMemberWithEmail(updatedMember.getEmail());
+        }
         member.setName(updatedMember.getName());
         member.setEmail(updatedMember.getEmail());
         if (!updatedMember.getPassword().startsWith("$2a$")) {  // bcrypt passwords start with "$2a$"
@@ -80,6 +137,7 @@ public class MemberService {
             member.setPassword(updatedMember.getPassword());
         }
         member.setRoles(new HashSet<>(updatedMember.getRoles()));
+        loanLimitService.forget(id);        //the limits go by role
         member.setEnabled(updatedMember.isEnabled());
         member.setAccountNonExpired(updatedMember.isAccountNonExpired());
         member.setCredentialsNonExpired(updatedMember.isCredentialsNonExpired());
@@ -89,48 +147,137 @@ public class MemberService {
 
     @PreAuthorize("hasRole('ADMIN')")
     @CacheEvict(cacheNames = "members", key = "#id")
-    public void deleteMemberById(Long id) {
-        memberRepository.deleteById(id);
+    @Transactional
+    public Deleted deleteMemberById(Long id) {
+        Deleted deleted = tombstoneService.deleteMember(id);
+        loanLimitService.forget(id);
+        return deleted;
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<Member> getMemberByName(String name, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return memberRepository.findMemberByName(name, pageRequest);
+        return initializeBorrowedBooks(memberRepository.findMemberByName(name, pageRequest));
     }
 
     @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
     public Page<Member> getMemberByBorrowedBookTitle(String title, int page, int size, String sortDirection, String sortField) {
         PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
-        return memberRepository.findMemberByBorrowedBookTitle(title, pageRequest);
+        return initializeBorrowedBooks(memberRepository.findMemberByBorrowedBookTitle(title, pageRequest));
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "members", key = "#memberId")
+    @OptimisticRetry
+    @Transactional
     public Member returnBook(Long memberId, Long bookId) {
-        Member member = fetchMemberById(memberId);
-        Book book = fetchBookById(bookId);
+        checkMemberAndBook(memberId, bookId);
 
-        if (member.getBorrowedBooks() != null) {
-            member.getBorrowedBooks().remove(book);
+        //a copy goes back on the shelf only for a loan the member actually had, loans opened twice before the open-loan key (OpenLoanGuard) are all closed
+        List<Long> loanIds = borrowingRecordRepository.lockOpenLoanIds(memberId, bookId);
+        int returned = borrowingRecordRepository.returnLoan(memberId, bookId, LocalDateTime.now());
+        evictRecordsAfterCommit(loanIds);       //the loans are borrowing records as well, getBorrowingRecordById must not show them open
+        for (int i = 0; i < returned; i++) {
+            reservationService.returnCopy(bookId);      //the first in line of the title gets the copy as a hold
         } //else throw exception if member still not borrowed any books and the client is already returning
+        if (returned > 0) {
+            loanLimitService.loansReturned(memberId, returned);
+        }
 
-        return memberRepository.save(member);
+        return fetchMemberById(memberId);
     }
 
     @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
     @CachePut(cacheNames = "members", key = "#memberId")
+    @OptimisticRetry
+    @Transactional
     public Member borrowBook(Long memberId, Long bookId) {
+        //shared locks, a delete of the member or the book waits for the loan and then refuses (TombstoneService)
+        if (memberRepository.lockLive(List.of(memberId)).isEmpty()) {
+            throw new MemberNotFoundException("Member not found with the id: " + memberId);
+        }
+        if (bookRepository.lockLive(List.of(bookId)).isEmpty()) {
+            throw new BookNotFoundException("Book not found with the id: " + bookId);
+        }
+
+        //borrowing a book the member already has changes nothing. of two requests that both open the loan the second one breaks the
+        //open-loan key (OpenLoanGuard), it is rolled back and retried as a conflict and then finds the loan open
+        if (!borrowingRecordRepository.existsOpenLoan(memberId, bookId)) {
+            loanLimitService.openLoan(memberId);        //throws LoanLimitExceededException at the member's limit, before a copy is taken
+            if (!reservationService.fulfillHold(memberId, bookId)) {     //a held copy is already off the shelf
+                inventoryService.checkout(bookId);      //throws BookUnavailableException when no copy is left
+            }
+            LocalDateTime now = LocalDateTime.now();
+            BorrowingRecord loan = BorrowingRecord.builder()
+                    .member(memberRepository.getReferenceById(memberId))
+                    .book(bookRepository.getReferenceById(bookId))
+                    .requestedAt(now)
+                    .approvedAt(now)
+                    .borrowDate(now)
+                    .returnDate(now.plusDays(loanPeriodDays))
+                    .isApproved(true)
+                    .build();
+            try {
+                borrowingRecordRepository.saveAndFlush(loan);      //flushed so the member read below sees the loan
+            } catch (DataIntegrityViolationException e) {      //the open-loan key, intake_id is not set on this row
+                throw new ConcurrencyFailureException("Member with the id: " + memberId + " opened a loan of the book with the id: " + bookId + " concurrently", e);
+            }
+            dueDateReminderService.trackAfterCommit(loan.getId(), loan.getReturnDate());
+        }
+
         Member member = fetchMemberById(memberId);
-        Book book = fetchBookById(bookId);
+        Hibernate.initialize(member.getBorrowedBooks());        //the member may be the proxy of the new row, its loans are read after the flush
+        return member;
+    }
+
+    @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
+    @Transactional(readOnly = true)
+    public Page<Book> getBorrowedBooks(Long memberId, int page, int size, String sortDirection, String sortField) {
+        if (!memberRepository.existsById(memberId)) {
+            throw new MemberNotFoundException("Member not found with the id: " + memberId);
+        }
+        PageRequest pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sortDirection), sortField));
+        return bookRepository.findBorrowedBooksByMemberId(memberId, pageRequest);
+    }
 
-        if (member.getBorrowedBooks() == null) {
-            member.setBorrowedBooks(new ArrayList<>()); // ✅ Ensure it is initialized
+    private void evictRecordsAfterCommit(List<Long> loanIds) {
+        if (loanIds.isEmpty()) {
+            return;
         }
+        Runnable evict = () -> {
+            Cache cache = cacheManager.getCache("borrowing_records");
+            if (cache != null) {
+                loanIds.forEach(cache::evict);
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict.run();
+            }
+        });
+    }
 
+    //existence checks only, neither the member with its loans nor the book entity is loaded for a loan write
+    private void checkMemberAndBook(Long memberId, Long bookId) {
+        if (!memberRepository.existsById(memberId)) {
+            throw new MemberNotFoundException("Member not found with the id: " + memberId);
+        }
+        if (!bookRepository.existsById(bookId)) {
+            throw new BookNotFoundException("Book not found with the id: " + bookId);
+        }
+    }
 
-        member.getBorrowedBooks().add(book);
-        return memberRepository.save(member);
+    //open-in-view is disabled, MemberMapper.toDTO runs after the transaction so the borrowed books are loaded here (one batch select per 25 members, see @BatchSize)
+    private Page<Member> initializeBorrowedBooks(Page<Member> members) {
+        members.forEach(member -> Hibernate.initialize(member.getBorrowedBooks()));
+        return members;
     }
 
     public Member fetchMemberById(Long id) {
@@ -143,6 +290,7 @@ public class MemberService {
                 .orElseThrow(() -> new BookNotFoundException("Book not found with the id: " + id));
     }
 
+    @Transactional(readOnly = true)
     public boolean isMemberOwner(Long id, Authentication authentication) {
         return memberRepository.findById(id)
                 .map(member -> member.getEmail().equals(authentication.getName()))
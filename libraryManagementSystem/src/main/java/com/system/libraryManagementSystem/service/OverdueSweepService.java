@@ -0,0 +1,197 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.model.SweepWatermark;
+import com.system.libraryManagementSystem.repository.SweepWatermarkRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//finds the loans that went overdue and charges their fines, in two passes that both work in committed chunks of library.overdue.chunk-size.
+//detection walks the loan table by (due_at, id) from the watermark of the last run up to now, so every loan is looked at once when it
+//falls due and a crash only loses the chunk that was running. a loan that opened or got its due date only after the walk went past
+//it is picked up by the open loans never marked (idx_loan_fine_open). accrual charges the open overdue loans for the whole days since their
+//last charge, a loan that was charged today is not read again until tomorrow.
+//counted as library.overdue.detected and library.overdue.charged, runs are timed as library.overdue.sweep
+@Service
+public class OverdueSweepService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverdueSweepService.class);
+
+    public static final String WATERMARK = "overdue-detection";
+    private static final LocalDateTime START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    //the keys of idx_loan_due_at only, returned and pending loans are walked past as well so the watermark moves over them
+    private static final String NEXT_DUE = "SELECT id, due_at FROM loan WHERE (due_at, id) > (?, ?) AND due_at <= ? ORDER BY due_at, id LIMIT ?";
+    private static final String MARK_OVERDUE = "UPDATE loan SET fine = 0, fine_accrued_until = due_at, version = version + 1 " +
+            "WHERE id IN (%s) AND is_approved = 1 AND returned_at IS NULL AND fine_accrued_until IS NULL";
+    //open loans the walk went past before they were open or due: approved after their due date, created with a past due date or given a
+    //due date behind the watermark. idx_loan_fine_open from (NULL, NULL) up to the due date
+    private static final String NEXT_LATE = "SELECT id FROM loan WHERE returned_at IS NULL AND fine_accrued_until IS NULL AND due_at <= ? " +
+            "AND is_approved = 1 LIMIT ?";
+    //idx_loan_fine_open, a due date moved past the last charge counts from the new due date
+    private static final String NEXT_TO_CHARGE = "SELECT id FROM loan WHERE returned_at IS NULL AND fine_accrued_until <= ? " +
+            "AND GREATEST(fine_accrued_until, due_at) <= ? ORDER BY fine_accrued_until LIMIT ?";
+    //mysql assigns left to right, fine is computed before fine_accrued_until moves
+    private static final String CHARGE = "UPDATE loan SET " +
+            "fine = LEAST(fine + ? * TIMESTAMPDIFF(DAY, GREATEST(fine_accrued_until, due_at), ?), ?), " +
+            "fine_accrued_until = GREATEST(fine_accrued_until, due_at) + INTERVAL TIMESTAMPDIFF(DAY, GREATEST(fine_accrued_until, due_at), ?) DAY, " +
+            "version = version + 1 " +
+            "WHERE id IN (%s) AND returned_at IS NULL AND GREATEST(fine_accrued_until, due_at) <= ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private SweepWatermarkRepository sweepWatermarkRepository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${library.overdue.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.overdue.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${library.overdue.daily-fine:0.25}")
+    private BigDecimal dailyFine;
+
+    @Value("${library.overdue.max-fine:20.00}")
+    private BigDecimal maxFine;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Scheduled(fixedDelayString = "${library.overdue.sweep-interval:PT15M}", initialDelayString = "${library.overdue.initial-delay:PT1M}")
+    public void scheduledSweep() {
+        if (enabled) {
+            sweep(LocalDateTime.now());
+        }
+    }
+
+    public SweepResult sweep(LocalDateTime now) {
+        if (!running.compareAndSet(false, true)) {
+            return new SweepResult(0, 0, 0);
+        }
+        long started = System.nanoTime();
+        try {
+            int detected = 0;
+            int scanned = 0;
+            for (Chunk chunk = detectChunk(now); chunk.scanned() > 0; chunk = detectChunk(now)) {
+                detected += chunk.updated();
+                scanned += chunk.scanned();
+            }
+            for (int marked = markLateChunk(now); marked > 0; marked = markLateChunk(now)) {
+                detected += marked;
+            }
+            int charged = 0;
+            for (int updated = chargeChunk(now); updated > 0; updated = chargeChunk(now)) {
+                charged += updated;
+            }
+
+            long elapsed = System.nanoTime() - started;
+            meterRegistry.timer("library.overdue.sweep").record(elapsed, TimeUnit.NANOSECONDS);
+            double seconds = Math.max(elapsed / 1e9, 1e-3);
+            logger.info("Overdue sweep up to {}: {} loans past due scanned, {} newly overdue, {} fines charged in {} ms ({} loans/s)",
+                    now, scanned, detected, charged, TimeUnit.NANOSECONDS.toMillis(elapsed), Math.round((scanned + charged) / seconds));
+            return new SweepResult(scanned, detected, charged);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    //one chunk and the watermark after it commit together
+    private Chunk detectChunk(LocalDateTime now) {
+        Chunk chunk = new TransactionTemplate(transactionManager).execute(status -> {
+            SweepWatermark watermark = sweepWatermarkRepository.findWithLockByName(WATERMARK)
+                    .orElseGet(() -> sweepWatermarkRepository.saveAndFlush(SweepWatermark.builder().name(WATERMARK).positionAt(START).positionId(0L).build()));
+
+            List<Long> ids = new ArrayList<>();
+            List<LocalDateTime> dueDates = new ArrayList<>();
+            jdbcTemplate.query(NEXT_DUE, row -> {
+                ids.add(row.getLong("id"));
+                dueDates.add(row.getObject("due_at", LocalDateTime.class));
+            }, watermark.getPositionAt(), watermark.getPositionId(), now, chunkSize);
+            if (ids.isEmpty()) {
+                return new Chunk(0, 0, List.of());
+            }
+
+            int updated = jdbcTemplate.update(MARK_OVERDUE.formatted(placeholders(ids.size())), ids.toArray());
+            watermark.setPositionAt(dueDates.get(dueDates.size() - 1));
+            watermark.setPositionId(ids.get(ids.size() - 1));
+            watermark.setUpdatedAt(LocalDateTime.now());
+            return new Chunk(ids.size(), updated, updated > 0 ? ids : List.of());
+        });
+        evict(chunk.ids());
+        meterRegistry.counter("library.overdue.detected").increment(chunk.updated());
+        return chunk;
+    }
+
+    private int markLateChunk(LocalDateTime now) {
+        Chunk chunk = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Long> ids = jdbcTemplate.queryForList(NEXT_LATE, Long.class, now, chunkSize);
+            if (ids.isEmpty()) {
+                return new Chunk(0, 0, List.of());
+            }
+            int updated = jdbcTemplate.update(MARK_OVERDUE.formatted(placeholders(ids.size())), ids.toArray());
+            return new Chunk(ids.size(), updated, ids);
+        });
+        evict(chunk.ids());
+        meterRegistry.counter("library.overdue.detected").increment(chunk.updated());
+        return chunk.updated();
+    }
+
+    private int chargeChunk(LocalDateTime now) {
+        LocalDateTime dayAgo = now.minusDays(1);
+        Chunk chunk = new TransactionTemplate(transactionManager).execute(status -> {
+            List<Long> ids = jdbcTemplate.queryForList(NEXT_TO_CHARGE, Long.class, dayAgo, dayAgo, chunkSize);
+            if (ids.isEmpty()) {
+                return new Chunk(0, 0, List.of());
+            }
+            List<Object> arguments = new ArrayList<>(List.of(dailyFine, now, maxFine, now));
+            arguments.addAll(ids);
+            arguments.add(dayAgo);
+            int updated = jdbcTemplate.update(CHARGE.formatted(placeholders(ids.size())), arguments.toArray());
+            return new Chunk(ids.size(), updated, ids);
+        });
+        evict(chunk.ids());
+        meterRegistry.counter("library.overdue.charged").increment(chunk.updated());
+        return chunk.updated();
+    }
+
+    //the record cache holds entities, the fine and the version of these rows changed under it
+    private void evict(List<Long> ids) {
+        Cache cache = cacheManager.getCache("borrowing_records");
+        if (cache != null) {
+            ids.forEach(cache::evict);
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private record Chunk(int scanned, int updated, List<Long> ids) {
+    }
+
+    public record SweepResult(int scanned, int detected, int charged) {
+    }
+}
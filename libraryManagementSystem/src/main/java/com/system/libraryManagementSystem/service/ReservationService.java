@@ -0,0 +1,359 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.dto.ReservationDTO;
+import com.system.libraryManagementSystem.exception.BookNotFoundException;
+import com.system.libraryManagementSystem.exception.MemberNotFoundException;
+import com.system.libraryManagementSystem.exception.ReservationConflictException;
+import com.system.libraryManagementSystem.exception.ReservationNotFoundException;
+import com.system.libraryManagementSystem.mapper.ReservationMapper;
+import com.system.libraryManagementSystem.model.Reservation;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.repository.ReservationRepository;
+import com.system.libraryManagementSystem.repository.ReservationRepository.ActiveReservation;
+import com.system.libraryManagementSystem.repository.ReservationRepository.HoldExpiry;
+import com.system.libraryManagementSystem.repository.ReservationRepository.QueueEntry;
+import com.system.libraryManagementSystem.service.support.OrderStatisticTreap;
+import com.system.libraryManagementSystem.service.support.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//queues of members waiting for a title without a copy on the shelf. every change to the queue of a title runs under the lock of its
+//inventory row, the same lock checkout and return take, so place, cancel, return and hold expiry of one title happen one at a time.
+//a return takes it with its conditional checkin update, no locking read. the waiting part of a queue is mirrored in memory (an
+//order-statistic treap per title) once it was read, position and next in line come from there in O(log n). the mirror is changed
+//under the row lock as well and dropped when the transaction rolls back, at most library.reservation.cached-queues titles are kept.
+//a returned copy becomes a hold for the first in line instead of going back on the shelf, a hold not picked up within
+//library.reservation.hold-period expires on a timing wheel and the copy moves on to the next member
+@Service
+public class ReservationService implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationService.class);
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${library.reservation.hold-period:P3D}")
+    private Duration holdPeriod;
+
+    @Value("${library.reservation.cached-queues:10000}")
+    private int maxQueues;
+
+    private final Map<Long, TitleQueue> queues = new ConcurrentHashMap<>();
+    private TimingWheel holdExpiry;
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10000),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        holdExpiry = new TimingWheel(Duration.ofSeconds(1), 512, 4, executor);
+        reservationRepository.findHolds().forEach(hold -> scheduleExpiry(hold.getId(), hold.getExpiresAt()));       //holds of before the restart
+        holdExpiry.start("reservation-holds");
+    }
+
+    @Override
+    public void destroy() {
+        holdExpiry.close();
+        executor.shutdown();
+    }
+
+    @PreAuthorize("hasAnyRole('MEMBER', 'LIBRARIAN', 'ADMIN')")
+    @Transactional
+    public ReservationDTO placeReservation(Long memberId, Long bookId, int priority) {
+        if (!memberRepository.existsById(memberId)) {
+            throw new MemberNotFoundException("Member not found with the id: " + memberId);
+        }
+        if (!bookRepository.existsById(bookId)) {
+            throw new BookNotFoundException("Book not found with the id: " + bookId);
+        }
+        Integer available = lockTitle(bookId);
+        if (available == null) {
+            throw new ReservationConflictException("The book with the id: " + bookId + " is not counted in the inventory and can always be borrowed");
+        }
+        if (available > 0) {
+            throw new ReservationConflictException("Copies of the book with the id: " + bookId + " are available, borrow it instead");
+        }
+        if (reservationRepository.existsActive(memberId, bookId)) {
+            throw new ReservationConflictException("Member with the id: " + memberId + " already has a reservation of the book with the id: " + bookId);
+        }
+        if (borrowingRecordRepository.existsOpenLoan(memberId, bookId)) {
+            throw new ReservationConflictException("Member with the id: " + memberId + " already has the book with the id: " + bookId);
+        }
+
+        Reservation reservation = reservationRepository.save(Reservation.builder()
+                .member(memberRepository.getReferenceById(memberId))
+                .book(bookRepository.getReferenceById(bookId))
+                .priority(priority)
+                .status(Reservation.Status.WAITING)
+                .queuedAt(LocalDateTime.now())
+                .build());
+        TitleQueue queue = changeQueueOf(bookId);
+        queue.add(reservation.getId(), reservation.getPriority(), reservation.getQueuedAt());
+        return ReservationMapper.toDTO(reservation, queue.position(reservation.getId()));
+    }
+
+    //not read-only, the first read of a title's queue takes the title lock so no change of the queue is missed while it is read
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN') or @reservationService.isMemberOwnerOfTheReservation(#id, authentication)")
+    @Transactional
+    public ReservationDTO getReservation(Long id) {
+        Reservation reservation = fetchReservation(id);
+        Integer position = reservation.getStatus() == Reservation.Status.WAITING ? queueOf(reservation.getBook().getId()).position(id) : null;
+        return ReservationMapper.toDTO(reservation, position);
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN')")
+    @Transactional
+    public ReservationDTO getNextInLine(Long bookId) {
+        Long id = queueOf(bookId).first();
+        if (id == null) {
+            throw new ReservationNotFoundException("No one is waiting for the book with the id: " + bookId);
+        }
+        return ReservationMapper.toDTO(fetchReservation(id), 1);
+    }
+
+    @PreAuthorize("hasAnyRole('LIBRARIAN', 'ADMIN') or @reservationService.isMemberOwnerOfTheReservation(#id, authentication)")
+    @Transactional
+    public void cancelReservation(Long id) {
+        Long bookId = reservationRepository.findBookIdById(id)
+                .orElseThrow(() -> new ReservationNotFoundException("Reservation not found with the id: " + id));
+        lockTitle(bookId);
+        Reservation reservation = fetchReservation(id);     //read again under the title lock
+        if (!cancel(reservation, bookId)) {
+            throw new ReservationConflictException("Reservation with the id: " + id + " is already " + reservation.getStatus());
+        }
+    }
+
+    //the members are purged (TombstoneService), their reservations are cancelled first so their holds go on to the next in line.
+    //joins the caller's transaction, which deletes the rows afterwards with plain sql
+    @Transactional
+    public void withdraw(Collection<Long> memberIds) {
+        for (ActiveReservation active : reservationRepository.findActiveByMemberIdIn(memberIds)) {
+            lockTitle(active.getBookId());
+            cancel(fetchReservation(active.getId()), active.getBookId());
+            reservationRepository.flush();      //the next in line is read with sql, the cancelled waiting reservations must be out of it
+        }
+    }
+
+    //the titles are purged with their reservations, the queues are read again should a title id ever come back
+    public void forgetTitles(Collection<Long> bookIds) {
+        bookIds.forEach(queues::remove);
+    }
+
+    //the title lock is held, false when the reservation is no longer active
+    private boolean cancel(Reservation reservation, Long bookId) {
+        switch (reservation.getStatus()) {
+            case WAITING -> {
+                reservation.setStatus(Reservation.Status.CANCELLED);
+                changeQueueOf(bookId).remove(reservation.getId());
+            }
+            case READY -> {
+                reservation.setStatus(Reservation.Status.CANCELLED);
+                passOnCopy(bookId);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //a copy of the title came back, joins the caller's transaction. it goes on the shelf with one conditional update, which also takes
+    //the title lock, and is taken off again as a hold when someone is waiting. untracked titles have no queue
+    @Transactional
+    public void returnCopy(Long bookId) {
+        if (inventoryService.checkin(bookId) && holdForNextInLine(bookId)) {
+            inventoryService.checkout(bookId);      //the copy just put back, the row is still locked
+        }
+    }
+
+    //the member picks up the hold by borrowing, true when the member had one and the copy is already theirs
+    @Transactional
+    public boolean fulfillHold(Long memberId, Long bookId) {
+        return reservationRepository.fulfill(memberId, bookId, LocalDateTime.now()) == 1;
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isMemberOwnerOfTheReservation(Long id, Authentication authentication) {
+        return reservationRepository.findById(id)
+                .map(reservation -> reservation.getMember().getEmail().equals(authentication.getName()))
+                .orElse(false);
+    }
+
+    private void expireHold(Long id) {
+        try {
+            LocalDateTime notYet = new TransactionTemplate(transactionManager).execute(status -> {
+                Long bookId = reservationRepository.findBookIdById(id).orElse(null);
+                if (bookId == null) {
+                    return null;
+                }
+                lockTitle(bookId);
+                if (reservationRepository.expire(id, LocalDateTime.now()) == 1) {
+                    passOnCopy(bookId);
+                    return null;
+                }
+                //the wheel counts ticks from its own start and can fire up to a tick before the hold ends, a hold still ready waits again
+                return reservationRepository.findHold(id).map(HoldExpiry::getExpiresAt).orElse(null);
+            });
+            if (notYet != null) {
+                scheduleExpiry(id, notYet);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Hold of reservation {} could not be expired, it is tried again after a restart: {}", id, e.getMessage());
+        }
+    }
+
+    //the copy of a hold that was cancelled or expired, the title lock is held
+    private void passOnCopy(Long bookId) {
+        if (!holdForNextInLine(bookId)) {
+            inventoryService.checkin(bookId);
+        }
+    }
+
+    private boolean holdForNextInLine(Long bookId) {
+        Long id = reservationRepository.findNextInLine(bookId).orElse(null);
+        if (id == null) {
+            return false;
+        }
+        Reservation reservation = fetchReservation(id);
+        LocalDateTime now = LocalDateTime.now();
+        reservation.setStatus(Reservation.Status.READY);
+        reservation.setReadyAt(now);
+        reservation.setExpiresAt(now.plus(holdPeriod));
+        changeQueueOf(bookId).remove(id);
+        LocalDateTime expiresAt = reservation.getExpiresAt();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                scheduleExpiry(id, expiresAt);
+            }
+        });
+        return true;
+    }
+
+    private void scheduleExpiry(Long id, LocalDateTime expiresAt) {
+        Duration delay = Duration.between(LocalDateTime.now(), expiresAt);
+        holdExpiry.schedule(() -> expireHold(id), delay.isNegative() ? Duration.ZERO : delay);
+    }
+
+    //available copies of the title with its inventory row locked until the transaction ends, null when the title is not tracked
+    private Integer lockTitle(Long bookId) {
+        return inventoryService.lockAvailableCopies(List.of(bookId)).get(bookId);
+    }
+
+    //the caller holds the title lock or is about to read the queue of a title that is not in memory yet
+    private TitleQueue queueOf(Long bookId) {
+        TitleQueue queue = queues.get(bookId);
+        if (queue != null) {
+            return queue;
+        }
+        lockTitle(bookId);
+        if (queues.size() >= maxQueues) {
+            queues.clear();     //starts over instead of tracking which titles are used least, a queue is read again under its title lock
+        }
+        return queues.computeIfAbsent(bookId, id -> new TitleQueue(reservationRepository.findQueue(id)));
+    }
+
+    //the mirror is changed before the commit, a transaction that rolls back leaves it to be read again
+    private TitleQueue changeQueueOf(Long bookId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    queues.remove(bookId);
+                }
+            }
+        });
+        return queueOf(bookId);
+    }
+
+    private Reservation fetchReservation(Long id) {
+        return reservationRepository.findById(id)
+                .orElseThrow(() -> new ReservationNotFoundException("Reservation not found with the id: " + id));
+    }
+
+    private record QueueKey(int priority, LocalDateTime queuedAt, long id) implements Comparable<QueueKey> {
+        @Override
+        public int compareTo(QueueKey other) {
+            int comparison = Integer.compare(other.priority, priority);     //higher priority first
+            if (comparison == 0) {
+                comparison = queuedAt.compareTo(other.queuedAt);
+            }
+            return comparison != 0 ? comparison : Long.compare(id, other.id);
+        }
+    }
+
+    //the WAITING reservations of one title in queue order
+    private static final class TitleQueue {
+        private final OrderStatisticTreap<QueueKey> order = new OrderStatisticTreap<>();
+        private final Map<Long, QueueKey> keys = new HashMap<>();
+
+        private TitleQueue(List<QueueEntry> entries) {
+            entries.forEach(entry -> add(entry.getId(), entry.getPriority(), entry.getQueuedAt()));
+        }
+
+        private synchronized void add(Long id, int priority, LocalDateTime queuedAt) {
+            QueueKey key = new QueueKey(priority, queuedAt, id);
+            if (keys.putIfAbsent(id, key) == null) {
+                order.insert(key);
+            }
+        }
+
+        private synchronized void remove(Long id) {
+            QueueKey key = keys.remove(id);
+            if (key != null) {
+                order.remove(key);
+            }
+        }
+
+        //1-based, null when the reservation is not waiting
+        private synchronized Integer position(Long id) {
+            QueueKey key = keys.get(id);
+            return key == null ? null : order.rank(key) + 1;
+        }
+
+        private synchronized Long first() {
+            QueueKey key = order.first();
+            return key == null ? null : key.id();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.exception.OpenLoanConflictException;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberProfileRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+//deletes of authors, books, members and member profiles. a delete only flags the row and the rows that go with it (the books of an
+//author, the profile of a member) with one update per table, whatever the size of the graph, every query leaves flagged rows out
+//(TombstonedEntity). the purge removes the flagged rows for good, children first, in committed chunks of library.purge.chunk-size
+//with one set-based delete per table and chunk, an author's books go by author_id. a member or book with a loan or request that is not
+//closed yet is not deleted (OpenLoanConflictException), its row is locked for the check so none is written in between. closed loans
+//keep the ids of purged members and books, the loan table has no foreign keys. counted as library.purge.purged by table, runs are
+//timed as library.purge.run
+@Service
+public class TombstoneService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TombstoneService.class);
+
+    private static final String NEXT_AUTHORS = "SELECT id FROM author WHERE deleted = true LIMIT ?";
+    private static final String NEXT_BOOKS = "SELECT id FROM book WHERE deleted = true LIMIT ?";
+    private static final String NEXT_PROFILES = "SELECT id FROM member_profile WHERE deleted = true LIMIT ?";
+    private static final String NEXT_MEMBERS = "SELECT id FROM member WHERE deleted = true LIMIT ?";
+    private static final String MEMBERS_WITH_EMAIL = "SELECT id FROM member WHERE email = ? AND deleted = true";
+
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberProfileRepository memberProfileRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private ReservationService reservationService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${library.purge.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.purge.chunk-size:500}")
+    private int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean pending = new AtomicBoolean(true);      //rows flagged before a restart are looked for once
+
+    //the author and its books, nothing when there is no such author. the caller evicts the author's own cache entry
+    @Transactional
+    public Deleted deleteAuthor(Long id) {
+        List<Long> bookIds = bookRepository.lockIdsByAuthorId(id);     //first, the check below reads what committed while it waited
+        if (!bookIds.isEmpty() && borrowingRecordRepository.existsUnreturnedByBookIdIn(bookIds)) {
+            throw new OpenLoanConflictException("Author with the id: " + id + " has books that are borrowed or requested, they have to be returned first");
+        }
+        if (authorRepository.tombstone(id) == 0) {
+            return Deleted.NOTHING;
+        }
+        Deleted deleted = new Deleted(1, bookRepository.tombstoneByAuthorId(id), 0, 0);
+        evict("books", bookIds);
+        pending.set(true);
+        return deleted;
+    }
+
+    @Transactional
+    public Deleted deleteBook(Long id) {
+        bookRepository.lockForDelete(id);       //a loan of the book is written before this lock is granted or after the book is flagged
+        if (borrowingRecordRepository.existsUnreturnedByBookIdIn(List.of(id))) {
+            throw new OpenLoanConflictException("Book with the id: " + id + " is borrowed or requested, it has to be returned first");
+        }
+        return flagged(new Deleted(0, bookRepository.tombstone(id), 0, 0));
+    }
+
+    //the member and its profile, nothing when there is no such member
+    @Transactional
+    public Deleted deleteMember(Long id) {
+        memberRepository.lockForDelete(id);
+        if (borrowingRecordRepository.existsUnreturnedByMemberId(id)) {
+            throw new OpenLoanConflictException("Member with the id: " + id + " has books borrowed or requested, they have to be returned first");
+        }
+        List<Object> profileKeys = new ArrayList<>(List.of(id));       //the profile has the member's id
+        memberRepository.findNamesByIdIn(List.of(id)).forEach(member -> profileKeys.add(member.getEmail()));     //profiles are cached by email too
+        if (memberRepository.tombstone(id) == 0) {
+            return Deleted.NOTHING;
+        }
+        Deleted deleted = new Deleted(0, 0, 1, memberProfileRepository.tombstone(id));
+        evict("member_profiles", profileKeys);
+        pending.set(true);
+        return deleted;
+    }
+
+    //the member keeps its row, the profile is gone from it on its next load
+    @Transactional
+    public Deleted deleteMemberProfile(Long id) {
+        Optional<String> email = memberProfileRepository.findMemberEmailById(id);
+        Deleted deleted = flagged(new Deleted(0, 0, 0, memberProfileRepository.tombstone(id)));
+        if (deleted.profiles() > 0) {
+            evict("member_profiles", email.stream().toList());
+        }
+        return deleted;
+    }
+
+    //the email is unique with flagged rows as well, a member registered again takes it over. joins the caller's transaction
+    @Transactional
+    public void purgeMemberWithEmail(String email) {
+        List<Long> ids = jdbcTemplate.queryForList(MEMBERS_WITH_EMAIL, Long.class, email);
+        if (!ids.isEmpty()) {
+            purgeMembers(ids);
+        }
+    }
+
+    //a member has one profile, a flagged one included, under the member's id. joins the caller's transaction
+    @Transactional
+    public void purgeProfileOf(Long memberId) {
+        jdbcTemplate.update("DELETE FROM member_profile WHERE id = ? AND deleted = true", memberId);
+    }
+
+    @Scheduled(fixedDelayString = "${library.purge.interval:PT5M}", initialDelayString = "${library.purge.initial-delay:PT5M}")
+    public void scheduledPurge() {
+        if (enabled && pending.getAndSet(false)) {
+            purge();
+        }
+    }
+
+    public PurgeResult purge() {
+        if (!running.compareAndSet(false, true)) {
+            return new PurgeResult(0, 0, 0, 0);
+        }
+        long started = System.nanoTime();
+        try {
+            AtomicInteger booksOfAuthors = new AtomicInteger();
+            int authors = purgeAll("author", NEXT_AUTHORS, ids -> booksOfAuthors.addAndGet(purgeAuthors(ids)));
+            int books = booksOfAuthors.get() + purgeAll("book", NEXT_BOOKS, this::purgeBooks);
+            int profiles = purgeAll("member_profile", NEXT_PROFILES,
+                    ids -> jdbcTemplate.update("DELETE FROM member_profile WHERE id IN (%s) AND deleted = true".formatted(placeholders(ids.size())), ids.toArray()));
+            int members = purgeAll("member", NEXT_MEMBERS, this::purgeMembers);
+
+            long elapsed = System.nanoTime() - started;
+            meterRegistry.timer("library.purge.run").record(elapsed, TimeUnit.NANOSECONDS);
+            if (books + profiles + members + authors > 0) {
+                logger.info("Purged {} books, {} member profiles, {} members and {} authors in {} ms",
+                        books, profiles, members, authors, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            return new PurgeResult(books, profiles, members, authors);
+        } catch (RuntimeException e) {
+            pending.set(true);      //tried again on the next run
+            throw e;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    //one chunk a transaction until no flagged row is left
+    private int purgeAll(String table, String next, Consumer<List<Long>> purger) {
+        int purged = 0;
+        while (true) {
+            Integer chunk = new TransactionTemplate(transactionManager).execute(status -> {
+                List<Long> ids = jdbcTemplate.queryForList(next, Long.class, chunkSize);
+                if (!ids.isEmpty()) {
+                    purger.accept(ids);
+                }
+                return ids.size();
+            });
+            if (chunk == null || chunk == 0) {
+                return purged;
+            }
+            purged += chunk;
+            meterRegistry.counter("library.purge.purged", "table", table).increment(chunk);
+        }
+    }
+
+    //the books of the authors by author_id (the index of its foreign key), however many there are. the number of books deleted
+    private int purgeAuthors(List<Long> ids) {
+        String in = placeholders(ids.size());
+        Object[] arguments = ids.toArray();
+        String booksOfAuthors = "SELECT id FROM book WHERE author_id IN (%s)".formatted(in);
+        List<Long> queued = jdbcTemplate.queryForList("SELECT DISTINCT book_id FROM reservation WHERE book_id IN (" + booksOfAuthors + ")", Long.class, arguments);
+        jdbcTemplate.update("DELETE FROM reservation WHERE book_id IN (" + booksOfAuthors + ")", arguments);
+        jdbcTemplate.update("DELETE FROM book_inventory WHERE book_id IN (" + booksOfAuthors + ")", arguments);
+        int books = jdbcTemplate.update("DELETE FROM book WHERE author_id IN (%s)".formatted(in), arguments);
+        jdbcTemplate.update("DELETE FROM author WHERE id IN (%s) AND deleted = true".formatted(in), arguments);
+        reservationService.forgetTitles(queued);
+        meterRegistry.counter("library.purge.purged", "table", "book").increment(books);
+        return books;
+    }
+
+    //a deleted title takes its queue and its inventory row along, the loan table keeps the book id
+    private void purgeBooks(List<Long> ids) {
+        String in = placeholders(ids.size());
+        Object[] arguments = ids.toArray();
+        jdbcTemplate.update("DELETE FROM reservation WHERE book_id IN (%s)".formatted(in), arguments);
+        jdbcTemplate.update("DELETE FROM book_inventory WHERE book_id IN (%s)".formatted(in), arguments);
+        jdbcTemplate.update("DELETE FROM book WHERE id IN (%s) AND deleted = true".formatted(in), arguments);
+        reservationService.forgetTitles(ids);
+    }
+
+    //holds of the members go on to the next in line before their reservations are deleted
+    private void purgeMembers(List<Long> ids) {
+        reservationService.withdraw(ids);
+        String in = placeholders(ids.size());
+        Object[] arguments = ids.toArray();
+        jdbcTemplate.update("DELETE FROM member_profile WHERE id IN (%s)".formatted(in), arguments);
+        jdbcTemplate.update("DELETE FROM reservation WHERE member_id IN (%s)".formatted(in), arguments);
+        jdbcTemplate.update("DELETE FROM member_roles WHERE member_id IN (%s)".formatted(in), arguments);
+        jdbcTemplate.update("DELETE FROM member WHERE id IN (%s) AND deleted = true".formatted(in), arguments);
+    }
+
+    private Deleted flagged(Deleted deleted) {
+        if (deleted.rows() > 0) {
+            pending.set(true);
+        }
+        return deleted;
+    }
+
+    private void evict(String cacheName, Collection<?> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            keys.forEach(cache::evict);
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    //rows a delete flagged, by table
+    public record Deleted(int authors, int books, int members, int profiles) {
+        public static final Deleted NOTHING = new Deleted(0, 0, 0, 0);
+
+        public int rows() {
+            return authors + books + members + profiles;
+        }
+    }
+
+    public record PurgeResult(int books, int profiles, int members, int authors) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+//append-only file behind the borrow request intake queue, one json line per accepted request and one per finished request.
+//a request is only answered 202 once its line is written, so requests that were queued when the application stopped are read back
+//on the next start. the file is rewritten with only the unfinished requests on open, and emptied whenever nothing is left to replay
+public class IntakeJournal implements Closeable {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final boolean fsync;
+    private final long compactBytes;
+
+    private FileChannel channel;
+    private long unfinished;
+
+    public IntakeJournal(Path file, ObjectMapper objectMapper, boolean fsync, long compactBytes) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+        this.compactBytes = compactBytes;
+    }
+
+    //the requests the last run accepted but did not finish, in the order they came in
+    public synchronized List<Entry> open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        LinkedHashMap<String, Entry> unfinishedEntries = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            for (String json : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (json.isBlank()) {
+                    continue;
+                }
+                Line line;
+                try {
+                    line = objectMapper.readValue(json, Line.class);
+                } catch (JsonProcessingException e) {       //a line cut off by a crash, it was never answered 202
+                    continue;
+                }
+                if (line.request() != null) {
+                    unfinishedEntries.put(line.request().trackingId(), line.request());
+                } else if (line.done() != null) {
+                    unfinishedEntries.remove(line.done());
+                }
+            }
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Entry entry : unfinishedEntries.values()) {
+                writer.write(objectMapper.writeValueAsString(new Line(entry, null)));
+                writer.newLine();
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        unfinished = unfinishedEntries.size();
+        return new ArrayList<>(unfinishedEntries.values());
+    }
+
+    public synchronized void append(Entry entry) throws IOException {
+        write(new Line(entry, null));
+        if (fsync) {
+            channel.force(false);
+        }
+        unfinished++;
+    }
+
+    //no fsync, a finished request that is read back after a crash is recognized by its intake id and not saved twice
+    public synchronized void markDone(Collection<String> trackingIds) throws IOException {
+        for (String trackingId : trackingIds) {
+            write(new Line(null, trackingId));
+        }
+        unfinished -= trackingIds.size();
+        if (unfinished <= 0 && channel.size() > compactBytes) {
+            channel.truncate(0);
+            unfinished = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void write(Line line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((objectMapper.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public record Entry(String trackingId, Long memberId, String memberName, String memberEmail, Long bookId, String bookTitle,
+                        LocalDateTime borrowDate, LocalDateTime returnDate, LocalDateTime receivedAt) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Line(Entry request, String done) {
+    }
+}
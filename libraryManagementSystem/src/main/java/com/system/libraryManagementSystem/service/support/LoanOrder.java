@@ -0,0 +1,77 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.system.libraryManagementSystem.exception.InvalidSortFieldException;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.service.support.LoanSegment.Column;
+import org.springframework.data.domain.Sort;
+
+import java.util.*;
+import java.util.function.Function;
+
+//the sort of a loan query that reads through to the archive (BorrowingRecordService). a page merged from the loan table and the
+//segments can only be sorted by the fields a segment stores, each is compared as the number the segment keeps of it, so a loan from
+//the table and an archived loan sort the same. nulls first like mysql, ties by id
+public final class LoanOrder {
+
+    private static final Map<String, Field> FIELDS = Map.of(
+            "id", new Field(Column.ID, BorrowingRecord::getId),
+            "requestedAt", new Field(Column.REQUESTED_AT, record -> LoanSegment.micros(record.getRequestedAt())),
+            "approvedAt", new Field(Column.APPROVED_AT, record -> LoanSegment.micros(record.getApprovedAt())),
+            "borrowDate", new Field(Column.BORROWED_AT, record -> LoanSegment.micros(record.getBorrowDate())),
+            "returnDate", new Field(Column.DUE_AT, record -> LoanSegment.micros(record.getReturnDate())),
+            "returnedAt", new Field(Column.RETURNED_AT, record -> LoanSegment.micros(record.getReturnedAt())),
+            "isApproved", new Field(Column.APPROVED, record -> record.isApproved() ? 1L : 0L),
+            "fine", new Field(Column.FINE, record -> record.getFine() == null ? null : record.getFine().movePointRight(2).longValueExact()),
+            "fineAccruedUntil", new Field(Column.FINE_ACCRUED_UNTIL, record -> LoanSegment.micros(record.getFineAccruedUntil())));
+
+    private final List<Field> fields;
+    private final List<LoanSegment.Order> columns;
+    private final Comparator<BorrowingRecord> comparator;
+
+    private LoanOrder(List<Field> fields, List<LoanSegment.Order> columns) {
+        this.fields = fields;
+        this.columns = columns;
+        Comparator<BorrowingRecord> order = (a, b) -> 0;
+        for (int i = 0; i < fields.size(); i++) {
+            Comparator<BorrowingRecord> byField = Comparator.comparing(fields.get(i).value(), Comparator.nullsFirst(Comparator.naturalOrder()));
+            order = order.thenComparing(columns.get(i).ascending() ? byField : byField.reversed());
+        }
+        this.comparator = order.thenComparing(BorrowingRecord::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    public static LoanOrder of(Sort sort) {
+        List<Field> fields = new ArrayList<>();
+        List<LoanSegment.Order> columns = new ArrayList<>();
+        for (Sort.Order property : sort) {
+            Field field = FIELDS.get(property.getProperty());
+            if (field == null) {
+                throw new InvalidSortFieldException("Borrowing records can not be sorted by " + property.getProperty() +
+                        ", sort by one of " + new TreeSet<>(FIELDS.keySet()));
+            }
+            fields.add(field);
+            columns.add(new LoanSegment.Order(field.column(), property.isAscending()));
+        }
+        return new LoanOrder(fields, columns);
+    }
+
+    public Comparator<BorrowingRecord> comparator() {
+        return comparator;
+    }
+
+    public List<LoanSegment.Order> columns() {
+        return columns;
+    }
+
+    //the first sort key, null when the sort is empty
+    public LoanSegment.Order first() {
+        return columns.isEmpty() ? null : columns.get(0);
+    }
+
+    //the value of the first sort key as the segment stores it
+    public Long firstValue(BorrowingRecord record) {
+        return fields.isEmpty() ? null : fields.get(0).value().apply(record);
+    }
+
+    private record Field(Column column, Function<BorrowingRecord, Long> value) {
+    }
+}
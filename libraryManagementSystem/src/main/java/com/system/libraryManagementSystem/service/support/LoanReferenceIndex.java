@@ -0,0 +1,107 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.system.libraryManagementSystem.exception.BookNotFoundException;
+import com.system.libraryManagementSystem.exception.MemberNotFoundException;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BookRepository.BookTitle;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository.MemberName;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//book titles and member names/emails by id, the intake checks a borrow request against these instead of the database.
+//an id is loaded on its first use or when the request does not match (renamed since), the intake writer checks every request
+//against the database again before saving it and puts what it read back in here
+@Component
+public class LoanReferenceIndex {
+
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+
+    @Value("${library.intake.index-max-entries:100000}")
+    private int maxEntries;
+
+    private final Map<Long, String> bookTitles = new ConcurrentHashMap<>();
+    private final Map<Long, MemberReference> members = new ConcurrentHashMap<>();
+
+    public void checkBook(Long bookId, String title) {
+        String knownTitle = bookTitles.get(bookId);
+        if (knownTitle == null || !knownTitle.equalsIgnoreCase(title)) {
+            knownTitle = loadBook(bookId);
+        }
+        if (!knownTitle.equalsIgnoreCase(title)) {
+            throw new BookNotFoundException(title + " did not match the title of the book with the id: " + bookId);
+        }
+    }
+
+    public void checkMember(Long memberId, String name, String email) {
+        MemberReference known = members.get(memberId);
+        if (known == null || !known.matches(name, email)) {
+            known = loadMember(memberId);
+        }
+        if (!known.name().equalsIgnoreCase(name)) {
+            throw new MemberNotFoundException(name + " did not match the name of the member with the id: " + memberId);
+        }
+        if (!known.email().equalsIgnoreCase(email)) {
+            throw new MemberNotFoundException(email + " is not the email of the member with the id: " + memberId);
+        }
+    }
+
+    public void remember(BookTitle book) {
+        makeRoom(bookTitles);
+        bookTitles.put(book.getId(), book.getTitle());
+    }
+
+    public void remember(MemberName member) {
+        makeRoom(members);
+        members.put(member.getId(), new MemberReference(member.getName(), member.getEmail()));
+    }
+
+    public void forgetBook(Long bookId) {
+        bookTitles.remove(bookId);
+    }
+
+    public void forgetMember(Long memberId) {
+        members.remove(memberId);
+    }
+
+    private String loadBook(Long bookId) {
+        List<BookTitle> found = bookRepository.findTitlesByIdIn(List.of(bookId));
+        if (found.isEmpty()) {
+            forgetBook(bookId);
+            throw new BookNotFoundException("Book not found with the id: " + bookId);
+        }
+        remember(found.get(0));
+        return found.get(0).getTitle();
+    }
+
+    private MemberReference loadMember(Long memberId) {
+        List<MemberName> found = memberRepository.findNamesByIdIn(List.of(memberId));
+        if (found.isEmpty()) {
+            forgetMember(memberId);
+            throw new MemberNotFoundException("Member not found with the id: " + memberId);
+        }
+        remember(found.get(0));
+        return new MemberReference(found.get(0).getName(), found.get(0).getEmail());
+    }
+
+    //a full index starts over instead of tracking which ids are used least, the next requests load their ids again
+    private void makeRoom(Map<Long, ?> index) {
+        if (index.size() >= maxEntries) {
+            index.clear();
+        }
+    }
+
+    private record MemberReference(String name, String email) {
+        boolean matches(String name, String email) {
+            return this.name.equalsIgnoreCase(name) && this.email.equalsIgnoreCase(email);
+        }
+    }
+}
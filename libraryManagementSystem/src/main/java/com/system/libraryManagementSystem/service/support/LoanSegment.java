@@ -0,0 +1,393 @@
+package com.system.libraryManagementSystem.service.support;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//column-oriented file of archived loans (LoanArchiveService). every column is encoded on its own and deflated on its own, so a query
+//inflates the one column it filters on and the other columns only when a row of the file matched.
+//numbers and timestamps (epoch microseconds) are stored as the zigzag varint of the difference to the previous value, 0 for null, rows
+//are written in borrow date order so these differences stay small. strings are dictionary encoded, one index per row.
+//layout: int header length, header (magic, version, rows, then name, raw length and deflated length of every column), column blocks
+public final class LoanSegment {
+
+    public static final String EXTENSION = ".lseg";
+
+    private static final int MAGIC = 0x4C534547;        //"LSEG"
+    private static final int VERSION = 1;
+
+    public enum Column {
+        ID, MEMBER_ID, MEMBER_NAME, MEMBER_EMAIL, BOOK_ID, BOOK_TITLE, REQUESTED_AT, APPROVED_AT, BORROWED_AT, DUE_AT, RETURNED_AT,
+        APPROVED, FINE, FINE_ACCRUED_UNTIL
+    }
+
+    public record Row(Long id, Long memberId, String memberName, String memberEmail, Long bookId, String bookTitle,
+                      LocalDateTime requestedAt, LocalDateTime approvedAt, LocalDateTime borrowedAt, LocalDateTime dueAt,
+                      LocalDateTime returnedAt, boolean approved, BigDecimal fine, LocalDateTime fineAccruedUntil) {
+    }
+
+    //a sort key of the rows, the column's stored number is compared (epoch microseconds, cents, 1 for approved), nulls first like mysql
+    public record Order(Column column, boolean ascending) {
+    }
+
+    //what the manifest keeps of a segment to skip it without opening it, nulls when no row had a value
+    public record Stats(int rows, long bytes, Long minId, Long maxId, Long minMemberId, Long maxMemberId,
+                        LocalDateTime minBorrowedAt, LocalDateTime maxBorrowedAt, LocalDateTime minDueAt, LocalDateTime maxDueAt) {
+    }
+
+    private LoanSegment() {
+    }
+
+    public static Stats write(Path file, List<Row> rows) throws IOException {
+        Map<Column, byte[]> columns = new EnumMap<>(Column.class);
+        columns.put(Column.ID, numbers(rows, Row::id));
+        columns.put(Column.MEMBER_ID, numbers(rows, Row::memberId));
+        columns.put(Column.MEMBER_NAME, strings(rows, Row::memberName));
+        columns.put(Column.MEMBER_EMAIL, strings(rows, Row::memberEmail));
+        columns.put(Column.BOOK_ID, numbers(rows, Row::bookId));
+        columns.put(Column.BOOK_TITLE, strings(rows, Row::bookTitle));
+        columns.put(Column.REQUESTED_AT, numbers(rows, row -> micros(row.requestedAt())));
+        columns.put(Column.APPROVED_AT, numbers(rows, row -> micros(row.approvedAt())));
+        columns.put(Column.BORROWED_AT, numbers(rows, row -> micros(row.borrowedAt())));
+        columns.put(Column.DUE_AT, numbers(rows, row -> micros(row.dueAt())));
+        columns.put(Column.RETURNED_AT, numbers(rows, row -> micros(row.returnedAt())));
+        columns.put(Column.APPROVED, numbers(rows, row -> row.approved() ? 1L : 0L));
+        columns.put(Column.FINE, numbers(rows, row -> row.fine() == null ? null : row.fine().movePointRight(2).longValueExact()));
+        columns.put(Column.FINE_ACCRUED_UNTIL, numbers(rows, row -> micros(row.fineAccruedUntil())));
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        List<byte[]> blocks = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows.size());
+            out.writeInt(columns.size());
+            for (Map.Entry<Column, byte[]> column : columns.entrySet()) {
+                byte[] block = deflate(column.getValue());
+                out.writeUTF(column.getKey().name());
+                out.writeInt(column.getValue().length);
+                out.writeInt(block.length);
+                blocks.add(block);
+            }
+        }
+
+        long bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, header.size()));
+            channel.write(ByteBuffer.wrap(header.toByteArray()));
+            for (byte[] block : blocks) {
+                channel.write(ByteBuffer.wrap(block));
+            }
+            channel.force(true);
+            bytes = channel.size();
+        }
+        return new Stats(rows.size(), bytes,
+                min(rows, Row::id), max(rows, Row::id), min(rows, Row::memberId), max(rows, Row::memberId),
+                min(rows, Row::borrowedAt), max(rows, Row::borrowedAt), min(rows, Row::dueAt), max(rows, Row::dueAt));
+    }
+
+    public static Reader open(Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    public static Long micros(LocalDateTime time) {
+        if (time == null) {
+            return null;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    public static LocalDateTime time(Long micros) {
+        if (micros == null) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    public static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final int rows;
+        private final Map<String, Block> blocks = new HashMap<>();
+
+        private Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                readFully(length, 0);
+                ByteBuffer header = ByteBuffer.allocate(length.getInt(0));
+                readFully(header, Integer.BYTES);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a loan segment");
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException(file + " is a loan segment of version " + version + ", only " + VERSION + " is read");
+                }
+                rows = in.readInt();
+                int columnCount = in.readInt();
+                long position = Integer.BYTES + header.capacity();
+                for (int i = 0; i < columnCount; i++) {
+                    String name = in.readUTF();
+                    int rawLength = in.readInt();
+                    int deflatedLength = in.readInt();
+                    blocks.put(name, new Block(position, rawLength, deflatedLength));
+                    position += deflatedLength;
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        //rows with a value of the column in [from, to], null never matches. only this column is inflated
+        public BitSet where(Column column, long from, long to) throws IOException {
+            Long[] values = numbers(column);
+            BitSet matching = new BitSet(rows);
+            for (int i = 0; i < rows; i++) {
+                if (values[i] != null && values[i] >= from && values[i] <= to) {
+                    matching.set(i);
+                }
+            }
+            return matching;
+        }
+
+        //the selected rows in file order, the other columns are only inflated when something is selected
+        public List<Row> rows(BitSet selected) throws IOException {
+            if (selected.isEmpty()) {
+                return List.of();
+            }
+            Long[] ids = numbers(Column.ID);
+            Long[] memberIds = numbers(Column.MEMBER_ID);
+            String[] memberNames = strings(Column.MEMBER_NAME);
+            String[] memberEmails = strings(Column.MEMBER_EMAIL);
+            Long[] bookIds = numbers(Column.BOOK_ID);
+            String[] bookTitles = strings(Column.BOOK_TITLE);
+            Long[] requestedAt = numbers(Column.REQUESTED_AT);
+            Long[] approvedAt = numbers(Column.APPROVED_AT);
+            Long[] borrowedAt = numbers(Column.BORROWED_AT);
+            Long[] dueAt = numbers(Column.DUE_AT);
+            Long[] returnedAt = numbers(Column.RETURNED_AT);
+            Long[] approved = numbers(Column.APPROVED);
+            Long[] fines = numbers(Column.FINE);
+            Long[] fineAccruedUntil = numbers(Column.FINE_ACCRUED_UNTIL);
+
+            List<Row> selectedRows = new ArrayList<>(selected.cardinality());
+            for (int i = selected.nextSetBit(0); i >= 0 && i < rows; i = selected.nextSetBit(i + 1)) {
+                selectedRows.add(new Row(ids[i], memberIds[i], memberNames[i], memberEmails[i], bookIds[i], bookTitles[i],
+                        time(requestedAt[i]), time(approvedAt[i]), time(borrowedAt[i]), time(dueAt[i]), time(returnedAt[i]),
+                        approved[i] != null && approved[i] == 1, fines[i] == null ? null : BigDecimal.valueOf(fines[i], 2),
+                        time(fineAccruedUntil[i])));
+            }
+            return selectedRows;
+        }
+
+        //the first limit of the selected rows in the order, ties by id. the order columns pick them, only the picked rows are decoded
+        public List<Row> first(BitSet selected, List<Order> order, int limit) throws IOException {
+            if (limit <= 0) {
+                return List.of();
+            }
+            if (selected.cardinality() <= limit) {
+                return rows(selected);
+            }
+            Comparator<Integer> byOrder = (a, b) -> 0;
+            for (Order key : order) {
+                Long[] values = numbers(key.column());
+                Comparator<Integer> byKey = Comparator.comparing(i -> values[i], Comparator.nullsFirst(Comparator.naturalOrder()));
+                byOrder = byOrder.thenComparing(key.ascending() ? byKey : byKey.reversed());
+            }
+            Long[] ids = numbers(Column.ID);
+            byOrder = byOrder.thenComparing(i -> ids[i], Comparator.nullsFirst(Comparator.naturalOrder()));
+
+            //the last of the picked rows on top, a row before it takes its place
+            PriorityQueue<Integer> picked = new PriorityQueue<>(limit + 1, byOrder.reversed());
+            for (int i = selected.nextSetBit(0); i >= 0 && i < rows; i = selected.nextSetBit(i + 1)) {
+                picked.add(i);
+                if (picked.size() > limit) {
+                    picked.poll();
+                }
+            }
+            BitSet firstRows = new BitSet(rows);
+            picked.forEach(firstRows::set);
+            return rows(firstRows);
+        }
+
+        private Long[] numbers(Column column) throws IOException {
+            ByteArrayInputStream in = new ByteArrayInputStream(inflate(column));
+            Long[] values = new Long[rows];
+            long previous = 0;
+            for (int i = 0; i < rows; i++) {
+                long encoded = readVarint(in);
+                if (encoded != 0) {
+                    previous += unzigzag(encoded - 1);
+                    values[i] = previous;
+                }
+            }
+            return values;
+        }
+
+        private String[] strings(Column column) throws IOException {
+            ByteArrayInputStream in = new ByteArrayInputStream(inflate(column));
+            String[] dictionary = new String[(int) readVarint(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = new String(in.readNBytes((int) readVarint(in)), StandardCharsets.UTF_8);
+            }
+            String[] values = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                int index = (int) readVarint(in);
+                values[i] = index == 0 ? null : dictionary[index - 1];
+            }
+            return values;
+        }
+
+        private byte[] inflate(Column column) throws IOException {
+            Block block = blocks.get(column.name());
+            if (block == null) {
+                throw new IOException("Loan segment has no column " + column);
+            }
+            ByteBuffer deflated = ByteBuffer.allocate(block.deflatedLength());
+            readFully(deflated, block.position());
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(deflated.array());
+                byte[] raw = new byte[block.rawLength()];
+                int read = 0;
+                while (read < raw.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, read, raw.length - read);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += inflated;
+                }
+                if (read != raw.length) {
+                    throw new IOException("Loan segment column " + column + " is cut off");
+                }
+                return raw;
+            } catch (DataFormatException e) {
+                throw new IOException("Loan segment column " + column + " is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Loan segment is cut off");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private record Block(long position, int rawLength, int deflatedLength) {
+        }
+    }
+
+    private static byte[] numbers(List<Row> rows, Function<Row, Long> value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long previous = 0;
+        for (Row row : rows) {
+            Long current = value.apply(row);
+            if (current == null) {
+                writeVarint(out, 0);
+            } else {
+                writeVarint(out, zigzag(current - previous) + 1);
+                previous = current;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] strings(List<Row> rows, Function<Row, String> value) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        ByteArrayOutputStream indexes = new ByteArrayOutputStream();
+        for (Row row : rows) {
+            String current = value.apply(row);
+            writeVarint(indexes, current == null ? 0 : dictionary.computeIfAbsent(current, key -> dictionary.size() + 1));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, dictionary.size());
+        for (String entry : dictionary.keySet()) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+        out.writeBytes(indexes.toByteArray());
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteArrayInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int next = in.read();
+            if (next < 0) {
+                throw new EOFException("Loan segment column is cut off");
+            }
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Loan segment varint is too long");
+    }
+
+    private static <T extends Comparable<? super T>> T min(List<Row> rows, Function<Row, T> value) {
+        return rows.stream().map(value).filter(Objects::nonNull).min(Comparator.naturalOrder()).orElse(null);
+    }
+
+    private static <T extends Comparable<? super T>> T max(List<Row> rows, Function<Row, T> value) {
+        return rows.stream().map(value).filter(Objects::nonNull).max(Comparator.naturalOrder()).orElse(null);
+    }
+}
@@ -0,0 +1,12 @@
+package com.system.libraryManagementSystem.service.support;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//re-runs a @Transactional service write in a new transaction when it loses a version check, a deadlock or a lock wait (see OptimisticRetryAspect)
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OptimisticRetry {
+}
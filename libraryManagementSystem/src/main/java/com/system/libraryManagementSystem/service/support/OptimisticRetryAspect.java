@@ -0,0 +1,78 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.system.libraryManagementSystem.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+//ordered before the transaction and cache interceptors, so every attempt gets a new transaction and the cache is only written by the attempt that commits.
+//conflicts are counted as library.write.conflicts, retries as library.write.retries and give-ups as library.write.retries.exhausted (tag: operation)
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class OptimisticRetryAspect {
+
+    private static final Logger logger = LoggerFactory.getLogger(OptimisticRetryAspect.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${library.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${library.retry.backoff-ms:20}")
+    private long backoffMillis;
+
+    @Value("${library.retry.max-backoff-ms:200}")
+    private long maxBackoffMillis;
+
+    @Around("@annotation(com.system.libraryManagementSystem.service.support.OptimisticRetry)")
+    public Object retry(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();     //joined an outer transaction, a retry would reuse the failed persistence context
+        }
+
+        String operation = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return joinPoint.proceed();
+            } catch (ConcurrencyFailureException e) {
+                meterRegistry.counter("library.write.conflicts", "operation", operation).increment();
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("library.write.retries.exhausted", "operation", operation).increment();
+                    logger.warn("{} gave up after {} conflicting attempts: {}", operation, attempt, e.getMessage());
+                    throw new ConcurrentUpdateException("The resource was changed by another request, please try again");
+                }
+                meterRegistry.counter("library.write.retries", "operation", operation).increment();
+                sleep(backoff(attempt));
+            }
+        }
+    }
+
+    //exponential backoff with full jitter, requests that collided once do not collide again on the same beat
+    long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException("Interrupted while waiting to retry a conflicting update");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.system.libraryManagementSystem.service.support;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+//sorted set that also answers "how many keys come before this one" in O(log n) expected time: a treap (binary search tree by key,
+//heap by a random priority so it stays balanced) where every node counts the keys of its subtree. not thread-safe, callers lock
+public class OrderStatisticTreap<K extends Comparable<K>> {
+
+    private Node<K> root;
+
+    public int size() {
+        return size(root);
+    }
+
+    //false when the key is already in
+    public boolean insert(K key) {
+        if (rank(key) >= 0) {
+            return false;
+        }
+        Node<K>[] parts = split(root, key);
+        root = merge(merge(parts[0], new Node<>(key)), parts[1]);
+        return true;
+    }
+
+    public boolean remove(K key) {
+        int before = size(root);
+        root = remove(root, key);
+        return size(root) < before;
+    }
+
+    //0-based position of the key, -1 when it is not in
+    public int rank(K key) {
+        int rank = 0;
+        Node<K> node = root;
+        while (node != null) {
+            int comparison = key.compareTo(node.key);
+            if (comparison == 0) {
+                return rank + size(node.left);
+            }
+            if (comparison < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    //the smallest key, null when empty
+    public K first() {
+        Node<K> node = root;
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    //splits into the keys smaller than key and the others
+    @SuppressWarnings("unchecked")
+    private Node<K>[] split(Node<K> node, K key) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        if (node.key.compareTo(key) < 0) {
+            Node<K>[] parts = split(node.right, key);
+            node.right = parts[0];
+            update(node);
+            return new Node[]{node, parts[1]};
+        }
+        Node<K>[] parts = split(node.left, key);
+        node.left = parts[1];
+        update(node);
+        return new Node[]{parts[0], node};
+    }
+
+    //every key of left is smaller than every key of right
+    private Node<K> merge(Node<K> left, Node<K> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private Node<K> remove(Node<K> node, K key) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = key.compareTo(node.key);
+        if (comparison == 0) {
+            return merge(node.left, node.right);
+        }
+        if (comparison < 0) {
+            node.left = remove(node.left, key);
+        } else {
+            node.right = remove(node.right, key);
+        }
+        update(node);
+        return node;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node<?> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static final class Node<K> {
+        private final K key;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private int size = 1;
+        private Node<K> left;
+        private Node<K> right;
+
+        private Node(K key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.system.libraryManagementSystem.service.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+//hierarchical timing wheel, levels of wheelSize slots where a slot of level i spans wheelSize^i ticks. a timer goes into the level its delay
+//fits and moves down a level each time the slot it is in comes round (cascade), so schedule and cancel are O(1) list operations and a tick
+//only looks at the timers of one slot. timers further away than the top level wait in it for another round.
+//one thread ticks, due tasks are handed to the executor so a slow task does not hold the clock back
+public class TimingWheel implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final int bits;
+    private final int mask;
+    private final Slot[][] levels;
+    private final Executor executor;
+    private long currentTick;
+    private int size;
+    private Thread ticker;
+    private volatile boolean closed;
+
+    public TimingWheel(Duration tick, int wheelSize, int levelCount, Executor executor) {
+        if (Integer.bitCount(wheelSize) != 1 || levelCount < 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two and levelCount at least 1");
+        }
+        this.tickNanos = tick.toNanos();
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.executor = executor;
+        this.levels = new Slot[levelCount][wheelSize];
+        for (Slot[] level : levels) {
+            for (int i = 0; i < wheelSize; i++) {
+                level[i] = new Slot();
+            }
+        }
+    }
+
+    public synchronized void start(String threadName) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = new Thread(this::run, threadName);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    //runs the task on the first tick at or after the delay, at least one tick from now
+    public synchronized Timeout schedule(Runnable task, Duration delay) {
+        long ticks = Math.max(1, (delay.toNanos() + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(task, currentTick + ticks);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread;
+        synchronized (this) {
+            thread = ticker;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        long ticks = 0;
+        while (!closed) {
+            long wait = start + (ticks + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            ticks++;
+            try {
+                tick();     //behind after a pause, the missed ticks run back to back
+            } catch (RuntimeException e) {
+                logger.error("Timing wheel tick failed", e);
+            }
+        }
+    }
+
+    //advances one tick and hands the timers that are due to the executor, package-private so tests can drive the clock
+    void tick() {
+        Timeout due;
+        synchronized (this) {
+            currentTick++;
+            for (int level = levels.length - 1; level > 0; level--) {       //from the top, a cascaded timer can land in a lower slot that cascades next
+                if ((currentTick & ((1L << (bits * level)) - 1)) == 0) {
+                    Timeout timeout = levels[level][(int) (currentTick >>> (bits * level)) & mask].clear();
+                    while (timeout != null) {
+                        Timeout next = timeout.next;
+                        timeout.next = null;
+                        timeout.previous = null;
+                        place(timeout);
+                        timeout = next;
+                    }
+                }
+            }
+            due = levels[0][(int) currentTick & mask].clear();
+            for (Timeout timeout = due; timeout != null; timeout = timeout.next) {
+                timeout.slot = null;
+                size--;
+            }
+        }
+        while (due != null) {
+            Timeout next = due.next;
+            due.next = null;
+            try {
+                executor.execute(due.task);
+            } catch (RuntimeException e) {
+                logger.error("Timing wheel task was not run", e);
+            }
+            due = next;
+        }
+    }
+
+    private void place(Timeout timeout) {
+        long deadline = Math.max(timeout.deadlineTick, currentTick);        //a cascade can hand over a timer of this very tick
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (level < levels.length - 1 && delta >= (1L << (bits * (level + 1)))) {
+            level++;
+        }
+        levels[level][(int) (deadline >>> (bits * level)) & mask].add(timeout);
+    }
+
+    public final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private Slot slot;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public boolean isPending() {
+            synchronized (TimingWheel.this) {
+                return slot != null;
+            }
+        }
+
+        //false when the task already ran or was handed to the executor
+        public boolean cancel() {
+            synchronized (TimingWheel.this) {
+                if (slot == null) {
+                    return false;
+                }
+                slot.remove(this);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    private static final class Slot {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.slot = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        //the whole list, still linked through next
+        private Timeout clear() {
+            Timeout first = head;
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.system.libraryManagementSystem.exception.PreconditionFailedException;
+import com.system.libraryManagementSystem.model.VersionedEntity;
+
+public final class VersionPreconditions {
+
+    private VersionPreconditions() {
+    }
+
+    //expectedVersion comes from the If-Match header (null when the client sent none), checked against the row read in the current transaction
+    public static void checkVersion(VersionedEntity current, Long expectedVersion, String description) {
+        if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+            throw new PreconditionFailedException(description + " was changed by another request, current version is " + current.getVersion());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.system.libraryManagementSystem.benchmark;
+
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberProfileRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//bulk insert throughput with and without jdbc batching, run with: mvn test -Pbenchmark
+//a jdbc batch size of 1 is what every insert cost while the ids were IDENTITY
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@ActiveProfiles("test")
+class BulkInsertBenchmarkTest {
+
+    private static final int BOOKS = 10_000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberProfileRepository memberProfileRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+    private int batchSize;
+
+    private Author author;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAllInBatch();
+        authorRepository.deleteAll();
+        author = authorRepository.save(Author.builder()
+                .name("Benchmark Author")
+                .biography("Author of every book inserted by the benchmark.")
+                .publishedBooks(new ArrayList<>())
+                .build());
+    }
+
+    @Test
+    void bulkInsert_BatchedComparedToOneStatementPerRow() {
+        double unbatched = insertBooks(1);
+        bookRepository.deleteAllInBatch();
+        double batched = insertBooks(batchSize);
+
+        assertEquals(BOOKS, bookRepository.count());
+        System.out.printf("jdbc batch size 1:  %,.0f inserts/s%n", unbatched);
+        System.out.printf("jdbc batch size %d: %,.0f inserts/s%n", batchSize, batched);
+    }
+
+    //same shape as the catalog import: persist, flush and clear every batch so the persistence context stays small
+    private double insertBooks(int jdbcBatchSize) {
+        long start = System.nanoTime();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+            Author reference = entityManager.getReference(Author.class, author.getId());
+            for (int i = 0; i < BOOKS; i++) {
+                entityManager.persist(new Book(null, "Book " + i, "Fantasy", 1900 + i % 100, reference, new ArrayList<>()));
+                if ((i + 1) % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    reference = entityManager.getReference(Author.class, author.getId());
+                }
+            }
+        });
+        return BOOKS / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.system.libraryManagementSystem.benchmark;
+
+import com.system.libraryManagementSystem.dto.BookDTO;
+import com.system.libraryManagementSystem.mapper.BookMapper;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberProfileRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//read-only vs read-write transaction for the same large page, run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@ActiveProfiles("test")
+class ReadOnlyTransactionBenchmarkTest {
+
+    private static final int BOOKS = 5000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberProfileRepository memberProfileRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS / 10; i++) {
+            Author author = authorRepository.save(Author.builder()
+                    .name("Author " + i)
+                    .biography("Biography of the author number " + i)
+                    .publishedBooks(new ArrayList<>())
+                    .build());
+            for (int j = 0; j < 10; j++) {
+                books.add(new Book(null, "Book " + i + "-" + j, "Fantasy", 1900 + j, author, new ArrayList<>()));
+            }
+        }
+        bookRepository.saveAll(books);
+    }
+
+    @Test
+    void readOnlyTransaction_ComparedToReadWrite() {
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Result readWriteResult = measure(readWrite);
+        Result readOnlyResult = measure(readOnly);
+
+        System.out.printf("read-write: %.2f ms/op, %,d bytes/op%n", readWriteResult.millisPerOp(), readWriteResult.bytesPerOp());
+        System.out.printf("read-only:  %.2f ms/op, %,d bytes/op%n", readOnlyResult.millisPerOp(), readOnlyResult.bytesPerOp());
+    }
+
+    private Result measure(TransactionTemplate template) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            loadPage(template);
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            assertEquals(BOOKS, loadPage(template).size());
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        return new Result(elapsed / 1_000_000.0 / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS);
+    }
+
+    //same work as BookService.getAllBooks: one page of entities mapped to dtos, the flush on commit is what differs
+    private List<BookDTO> loadPage(TransactionTemplate template) {
+        return template.execute(status -> bookRepository.findAll(PageRequest.of(0, BOOKS))
+                .map(BookMapper::toDTO)
+                .getContent());
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private record Result(double millisPerOp, long bytesPerOp) {
+    }
+}
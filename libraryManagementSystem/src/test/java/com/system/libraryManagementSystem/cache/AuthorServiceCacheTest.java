@@ -114,12 +114,12 @@ class AuthorServiceCacheTest {
         assertEquals(result, cacheManager.getCache("authors").get(author.getId(), Author.class));
         verify(authorRepository, times(1)).findById(author.getId());
 
-        doNothing().when(authorRepository).deleteById(author.getId());
+        when(authorRepository.tombstone(author.getId())).thenReturn(1);
 
         authorService.deleteAuthorById(author.getId());
 
         assertNull(cacheManager.getCache("authors").get(author.getId()));       //ensures the the cache is evicted
-        verify(authorRepository, times(1)).deleteById(author.getId());
+        verify(authorRepository, times(1)).tombstone(author.getId());
         verify(authorRepository, times(1)).findById(author.getId());
 
         when(authorRepository.findById(author.getId())).thenReturn(Optional.empty());
@@ -91,12 +91,13 @@ public class BookServiceCacheTest {
 
         assertNotNull(cacheManager.getCache("books").get(book.getId()));
 
-        doNothing().when(bookRepository).deleteById(book.getId());
+        when(bookRepository.tombstone(book.getId())).thenReturn(1);
         when(bookRepository.findById(book.getId())).thenReturn(Optional.empty());
 
         bookService.deleteBookById(book.getId());
 
         assertNull(cacheManager.getCache("books").get(book.getId()));
+        verify(bookRepository, times(1)).tombstone(book.getId());
         assertThrows(BookNotFoundException.class, () -> bookService.getBookById(book.getId()));
         verify(bookRepository, times(2)).findById(book.getId());
     }
@@ -160,20 +160,20 @@ class MemberProfileServiceCacheTest {
 
 
         //delete data must delete the cache too
-        when(memberRepository.save(member)).thenReturn(member);     //based on the service logic
-        doNothing().when(memberProfileRepository).deleteById(memberProfile.getId());
+        when(memberProfileRepository.findMemberEmailById(memberProfile.getId())).thenReturn(Optional.of(memberProfile.getMember().getEmail()));
+        when(memberProfileRepository.tombstone(memberProfile.getId())).thenReturn(1);
 
         memberProfileService.deleteMemberProfileById(memberProfile.getId());
 
         assertNull(cacheManager.getCache("member_profiles").get(memberProfile.getId(), MemberProfile.class));
         assertNull(cacheManager.getCache("member_profiles").get(memberProfile.getMember().getEmail(), MemberProfile.class));
-        verify(memberProfileRepository,times(2)).findById(memberProfile.getId());
-        verify(memberProfileRepository,times(1)).deleteById(memberProfile.getId());
+        verify(memberProfileRepository,times(1)).findById(memberProfile.getId());      //the delete does not load the profile
+        verify(memberProfileRepository,times(1)).tombstone(memberProfile.getId());
 
         //repository must be activated because cache is deleted
         when(memberProfileRepository.findById(memberProfile.getId())).thenReturn(Optional.empty());
         assertThrows(MemberProfileNotFoundException.class, () -> memberProfileService.getMemberProfileById(memberProfile.getId()));
-        verify(memberProfileRepository,times(3)).findById(memberProfile.getId());
+        verify(memberProfileRepository,times(2)).findById(memberProfile.getId());
 
         when(memberProfileRepository.findMemberProfileByEmail(memberProfile.getMember().getEmail())).thenReturn(Optional.empty());
         assertThrows(MemberProfileNotFoundException.class, () -> memberProfileService.getMemberProfileByMemberEmail(memberProfile.getMember().getEmail()));
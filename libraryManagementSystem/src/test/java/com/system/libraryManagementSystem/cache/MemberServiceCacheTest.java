@@ -7,6 +7,7 @@ import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.model.MemberProfile;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
 import com.system.libraryManagementSystem.service.MemberService;
 import org.junit.jupiter.api.BeforeEach;
@@ -42,6 +43,8 @@ class MemberServiceCacheTest {
     private MemberRepository memberRepository;
     @MockitoBean
     private BookRepository bookRepository;
+    @MockitoBean
+    private BorrowingRecordRepository borrowingRecordRepository;
 
     private Member member;
     private Book book;
@@ -148,13 +151,13 @@ class MemberServiceCacheTest {
         assertEquals(firstCall, cacheManager.getCache("members").get(member.getId(), Member.class));
         verify(memberRepository, times(1)).findById(member.getId());
 
-        doNothing().when(memberRepository).deleteById(member.getId());
+        when(memberRepository.tombstone(member.getId())).thenReturn(1);
 
         memberService.deleteMemberById(member.getId());
 
         assertNull(cacheManager.getCache("members").get(member.getId(), Member.class));
         verify(memberRepository,times(1)).findById(member.getId());
-        verify(memberRepository,times(1)).deleteById(member.getId());
+        verify(memberRepository,times(1)).tombstone(member.getId());
 
         when(memberRepository.findById(member.getId())).thenReturn(Optional.empty());
         assertThrows(MemberNotFoundException.class, () -> memberService.getMemberById(member.getId()));
@@ -171,7 +174,8 @@ class MemberServiceCacheTest {
         assertEquals(firstCall, cacheManager.getCache("members").get(member.getId(), Member.class));
         verify(memberRepository, times(1)).findById(member.getId());
 
-        when(memberRepository.save(any(Member.class))).thenReturn(member);
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.existsById(book.getId())).thenReturn(true);
 
         memberService.borrowBook(member.getId(), book.getId());
 
@@ -206,7 +210,8 @@ class MemberServiceCacheTest {
         verify(memberRepository, times(1)).findById(member.getId());
 
 
-        when(memberRepository.save(any(Member.class))).thenReturn(member);
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.existsById(book.getId())).thenReturn(true);
 
         Member memberBorrower = memberService.borrowBook(member.getId(), book.getId());
 
@@ -0,0 +1,107 @@
+package com.system.libraryManagementSystem.cache;
+
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.service.BookService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Hibernate second-level cache (book, author, author.publishedBooks regions) and query cache, see ehcache.xml
+@ActiveProfiles("test")
+@SpringBootTest
+class SecondLevelCacheIntegrationTest {
+
+    @Autowired
+    AuthorRepository authorRepository;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+    private TransactionTemplate transactionTemplate;
+    private Author author;
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("British author best known for the Harry Potter series.")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = new Book(null, "Harry Potter and the Philosopher's Stone", "Fantasy", 1997, author, new ArrayList<>());
+        Book book2 = new Book(null, "Harry Potter and the Chamber of Secrets", "Fantasy", 1998, author, new ArrayList<>());
+        bookRepository.saveAll(List.of(book, book2));
+
+        entityManagerFactory.getCache().evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void findById_ShouldBeServedFromSecondLevelCache_OnSecondLoad() {
+        bookRepository.findById(book.getId());
+        assertEquals(0, statistics.getSecondLevelCacheHitCount());
+
+        Book secondLoad = bookRepository.findById(book.getId()).orElseThrow();
+
+        assertEquals(book.getTitle(), secondLoad.getTitle());
+        assertTrue(statistics.getDomainDataRegionStatistics("book").getHitCount() > 0);
+    }
+
+    @Test
+    void searchByTitle_ShouldBeServedFromQueryCache_OnSecondCall() {
+        bookService.getBooksByTitle("harry", 0, 10, "ASC", "id");
+        long queriesAfterFirstCall = statistics.getPrepareStatementCount();
+
+        assertEquals(2, bookService.getBooksByTitle("harry", 0, 10, "ASC", "id").getTotalElements());
+
+        assertTrue(statistics.getQueryCacheHitCount() > 0);
+        assertEquals(queriesAfterFirstCall, statistics.getPrepareStatementCount());
+    }
+
+    @WithMockUser(username = "librarian", roles = "LIBRARIAN")
+    @Test
+    void saveNewBook_ShouldInvalidateCachedSearchAndPublishedBooks() {
+        assertEquals(2, countPublishedBooks());
+        assertEquals(2, bookService.getBooksByTitle("harry", 0, 10, "ASC", "id").getTotalElements());
+
+        bookService.saveNewBook(new Book(null, "Harry Potter and the Prisoner of Azkaban", "Fantasy", 1999, author, new ArrayList<>()));
+
+        assertEquals(3, countPublishedBooks());
+        assertEquals(3, bookService.getBooksByTitle("harry", 0, 10, "ASC", "id").getTotalElements());
+    }
+
+    private int countPublishedBooks() {
+        return transactionTemplate.execute(status -> authorRepository.findById(author.getId()).orElseThrow().getPublishedBooks().size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.system.libraryManagementSystem.config.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    private DataSource primary, replica1, replica2;
+    private Connection primaryConnection, replica1Connection, replica2Connection;
+    private ReadYourWritesTracker tracker;
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replica1 = mock(DataSource.class);
+        replica2 = mock(DataSource.class);
+        primaryConnection = mock(Connection.class);
+        replica1Connection = mock(Connection.class);
+        replica2Connection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica1.getConnection()).thenReturn(replica1Connection);
+        when(replica2.getConnection()).thenReturn(replica2Connection);
+        when(replica1Connection.isValid(anyInt())).thenReturn(true);
+        when(replica2Connection.isValid(anyInt())).thenReturn(true);
+
+        tracker = new ReadYourWritesTracker(Duration.ofMinutes(1));
+        routingDataSource = new ReplicaRoutingDataSource(List.of(replica1, replica2), primary, tracker, Duration.ofSeconds(1));
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "member@gmail.com", null, List.of(new SimpleGrantedAuthority("ROLE_MEMBER"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getConnection_ShouldRoundRobinOverReplicas() throws SQLException {
+        assertSame(replica1Connection, routingDataSource.getConnection());
+        assertSame(replica2Connection, routingDataSource.getConnection());
+        assertSame(replica1Connection, routingDataSource.getConnection());
+        verify(primary, never()).getConnection();
+    }
+
+    @Test
+    void getConnection_AfterWrite_ShouldReadFromPrimaryForThatMemberOnly() throws SQLException {
+        tracker.pinCurrentPrincipal();
+
+        assertSame(primaryConnection, routingDataSource.getConnection());
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "other@gmail.com", null, List.of(new SimpleGrantedAuthority("ROLE_MEMBER"))));
+        assertNotSame(primaryConnection, routingDataSource.getConnection());
+    }
+
+    @Test
+    void getConnection_WhenPinExpired_ShouldReadFromReplicaAgain() throws SQLException {
+        tracker = new ReadYourWritesTracker(Duration.ZERO);
+        routingDataSource = new ReplicaRoutingDataSource(List.of(replica1, replica2), primary, tracker, Duration.ofSeconds(1));
+        tracker.pinCurrentPrincipal();
+
+        assertSame(replica1Connection, routingDataSource.getConnection());
+    }
+
+    @Test
+    void getConnection_WhenReplicaFails_ShouldSkipItUntilHealthCheckPasses() throws SQLException {
+        when(replica1.getConnection()).thenThrow(new SQLException("replica down"));
+
+        assertSame(replica2Connection, routingDataSource.getConnection());
+        assertFalse(routingDataSource.isReplicaHealthy(0));
+        assertSame(replica2Connection, routingDataSource.getConnection());
+
+        doReturn(replica1Connection).when(replica1).getConnection();
+        routingDataSource.checkReplicas();
+
+        assertTrue(routingDataSource.isReplicaHealthy(0));
+    }
+
+    @Test
+    void getConnection_WhenAllReplicasDown_ShouldFallBackToPrimary() throws SQLException {
+        when(replica1Connection.isValid(anyInt())).thenReturn(false);
+        when(replica2.getConnection()).thenThrow(new SQLException("replica down"));
+        routingDataSource.checkReplicas();
+
+        assertSame(primaryConnection, routingDataSource.getConnection());
+    }
+
+    @Test
+    void getConnectionWithCredentials_ShouldRouteLikeGetConnection() throws SQLException {
+        Connection replicaConnection = mock(Connection.class);
+        Connection pinnedConnection = mock(Connection.class);
+        when(replica1.getConnection("reporting", "secret")).thenReturn(replicaConnection);
+        when(primary.getConnection("reporting", "secret")).thenReturn(pinnedConnection);
+
+        assertSame(replicaConnection, routingDataSource.getConnection("reporting", "secret"));
+
+        tracker.pinCurrentPrincipal();
+        assertSame(pinnedConnection, routingDataSource.getConnection("reporting", "secret"));
+        verify(replica1, never()).getConnection();
+        verify(primary, never()).getConnection();
+    }
+}
@@ -0,0 +1,96 @@
+package com.system.libraryManagementSystem.controller;
+
+import com.system.libraryManagementSystem.controller.IdempotencyStore.Claim;
+import com.system.libraryManagementSystem.controller.IdempotencyStore.StoredResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+
+    private static final byte[] BODY = {1, 2, 3};
+    private static final StoredResponse CREATED = new StoredResponse(201, Map.of("Content-Type", "application/json"), "{}".getBytes());
+
+    private IdempotencyStore idempotencyStore;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyStore = new IdempotencyStore();
+        ReflectionTestUtils.setField(idempotencyStore, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(idempotencyStore, "maxEntries", 2);
+        now = Instant.parse("2025-02-13T12:00:00Z");
+        idempotencyStore.setClock(Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void claim_WhenTheKeyIsCompleted_ShouldReturnTheStoredResponse() throws Exception {
+        Claim first = idempotencyStore.claim("key", BODY);
+        idempotencyStore.complete(first, CREATED);
+
+        Claim second = idempotencyStore.claim("key", BODY);
+
+        assertTrue(first.owner());
+        assertFalse(second.owner());
+        assertTrue(second.sameRequest());
+        assertSame(CREATED, idempotencyStore.await(second, Duration.ofMillis(10)));
+    }
+
+    @Test
+    void claim_WhenTheBodyIsDifferent_ShouldNotBeTheSameRequest() {
+        idempotencyStore.claim("key", BODY);
+
+        assertFalse(idempotencyStore.claim("key", new byte[]{4}).sameRequest());
+    }
+
+    @Test
+    void await_WhileTheFirstRequestRuns_ShouldTimeOut() {
+        idempotencyStore.claim("key", BODY);
+
+        Claim duplicate = idempotencyStore.claim("key", BODY);
+
+        assertThrows(TimeoutException.class, () -> idempotencyStore.await(duplicate, Duration.ofMillis(10)));
+    }
+
+    @Test
+    void abandon_ShouldLetTheNextRequestRunAgain() throws Exception {
+        Claim first = idempotencyStore.claim("key", BODY);
+        Claim duplicate = idempotencyStore.claim("key", BODY);
+
+        idempotencyStore.abandon(first);
+
+        assertNull(idempotencyStore.await(duplicate, Duration.ofMillis(10)));
+        assertTrue(idempotencyStore.claim("key", BODY).owner());
+    }
+
+    @Test
+    void purgeExpired_ShouldDropResponsesOlderThanTheTtl() {
+        idempotencyStore.complete(idempotencyStore.claim("key", BODY), CREATED);
+        idempotencyStore.setClock(Clock.fixed(now.plus(Duration.ofHours(2)), ZoneOffset.UTC));
+
+        idempotencyStore.purgeExpired();
+
+        assertEquals(0, idempotencyStore.size());
+        assertTrue(idempotencyStore.claim("key", BODY).owner());
+    }
+
+    @Test
+    void complete_WhenMaxEntriesIsExceeded_ShouldEvictTheOldest() {
+        idempotencyStore.complete(idempotencyStore.claim("a", BODY), CREATED);
+        idempotencyStore.complete(idempotencyStore.claim("b", BODY), CREATED);
+        idempotencyStore.complete(idempotencyStore.claim("c", BODY), CREATED);
+
+        assertEquals(2, idempotencyStore.size());
+        assertTrue(idempotencyStore.claim("a", BODY).owner());
+        assertFalse(idempotencyStore.claim("c", BODY).owner());
+    }
+}
@@ -6,6 +6,7 @@ import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.service.TombstoneService;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -47,10 +48,14 @@ class AuthorControllerIntegrationTest {
 
     private Author author1, author2;
 
+    @Autowired
+    private TombstoneService tombstoneService;
+
     @BeforeEach
     void setUp() {
+        tombstoneService.purge();      //rows deleted through the api by an earlier test are only flagged, deleteAll does not see them
+        bookRepository.deleteAll();          //books first, deleting an author does not cascade to its books
         authorRepository.deleteAll();
-        bookRepository.deleteAll();
         author1 = Author.builder()
                 .name("J.K. Rowling")
                 .biography("British author best known for the Harry Potter series.")
@@ -92,6 +97,7 @@ class AuthorControllerIntegrationTest {
 
     @Test
     void testGetAllAuthors_WhenAuthorsDoNotExist_ShouldReturnEmptyPage() throws Exception {
+        bookRepository.deleteAll();
         authorRepository.deleteAll();
 
         mockMvc.perform(get("/authors")
@@ -7,6 +7,7 @@ import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.service.TombstoneService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -28,6 +29,7 @@ import static org.hamcrest.Matchers.containsStringIgnoringCase;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -50,10 +52,14 @@ class BookControllerIntegrationTest {
     private Book book1, book2, book3, book4;
 
 
+    @Autowired
+    private TombstoneService tombstoneService;
+
     @BeforeEach
     void setUp() {
+        tombstoneService.purge();      //rows deleted through the api by an earlier test are only flagged, deleteAll does not see them
+        bookRepository.deleteAll();          //books first, deleting an author does not cascade to its books
         authorRepository.deleteAll();
-        bookRepository.deleteAll();
         author1 = Author.builder()
                 .name("J.K. Rowling")
                 .biography("British author best known for the Harry Potter series.")
@@ -95,6 +101,7 @@ class BookControllerIntegrationTest {
 
     @Test
     void testGetAllAuthors_WhenAuthorsDoNotExist_ShouldReturnEmptyPage() throws Exception {
+        bookRepository.deleteAll();
         authorRepository.deleteAll();
 
         mockMvc.perform(get("/books")
@@ -167,6 +174,77 @@ class BookControllerIntegrationTest {
                 .andExpect(jsonPath("$.authorName").value(author1.getName()));
     }
 
+    @Test
+    void testGetBookById_WhenBookExist_ShouldReturnVersionAsETag() throws Exception {
+        mockMvc.perform(get("/books/{id}", book1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""));
+    }
+
+    @WithMockUser(username = "admin", roles = "ADMIN")
+    @Test
+    void testUpdateBook_WhenIfMatchIsCurrent_ShouldUpdateAndReturnNextETag() throws Exception {
+        BookDTO newBook = BookDTO.builder()
+                .id(book1.getId())
+                .title("Updated Book")
+                .genre("Updated Genre")
+                .publicationYear(2025)
+                .authorId(author1.getId())
+                .authorName("J.K. Rowling")
+                .build();
+
+        mockMvc.perform(put("/books/update")
+                        .header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(newBook)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""))
+                .andExpect(jsonPath("$.title").value(newBook.getTitle()));
+    }
+
+    @WithMockUser(username = "admin", roles = "ADMIN")
+    @Test
+    void testUpdateBook_WhenIfMatchIsStale_ShouldReturnPreconditionFailed() throws Exception {
+        BookDTO newBook = BookDTO.builder()
+                .id(book1.getId())
+                .title("Updated Book")
+                .genre("Updated Genre")
+                .publicationYear(2025)
+                .authorId(author1.getId())
+                .authorName("J.K. Rowling")
+                .build();
+
+        mockMvc.perform(put("/books/update")
+                        .header("If-Match", "\"7\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(newBook)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.errorResponse").value("PRECONDITION FAILED"));
+
+        mockMvc.perform(get("/books/{id}", book1.getId()))
+                .andExpect(jsonPath("$.title").value(book1.getTitle()));
+    }
+
+    @WithMockUser(username = "admin", roles = "ADMIN")
+    @Test
+    void testUpdateBook_WhenIfMatchIsWeak_ShouldReturnPreconditionFailed() throws Exception {
+        BookDTO newBook = BookDTO.builder()
+                .id(book1.getId())
+                .title("Updated Book")
+                .genre("Updated Genre")
+                .publicationYear(2025)
+                .authorId(author1.getId())
+                .authorName("J.K. Rowling")
+                .build();
+
+        mockMvc.perform(put("/books/update")
+                        .header("If-Match", "W/\"0\"")     //the current version, but If-Match compares strongly
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(newBook)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.errorResponse").value("PRECONDITION FAILED"));
+    }
+
     @WithMockUser(username = "admin", roles = "ADMIN")
     @Test
     void testDeleteBooks_ShouldReturnStatusNoContent() throws Exception {
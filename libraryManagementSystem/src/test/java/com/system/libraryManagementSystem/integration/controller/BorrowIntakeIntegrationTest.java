@@ -0,0 +1,208 @@
+package com.system.libraryManagementSystem.integration.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.system.libraryManagementSystem.dto.BorrowRequestDTO;
+import com.system.libraryManagementSystem.dto.IntakeStatusDTO;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.LoanLimitService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+//not @Transactional, the intake writer saves the requests on its own thread and has to see the committed member and book
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class BorrowIntakeIntegrationTest {
+
+    @TempDir
+    static Path journalDirectory;
+
+    @DynamicPropertySource
+    static void intakeProperties(DynamicPropertyRegistry registry) {
+        registry.add("library.intake.enabled", () -> "true");
+        registry.add("library.intake.journal", () -> journalDirectory.resolve("borrow-requests.journal").toString());
+        registry.add("library.intake.dead-letter", () -> journalDirectory.resolve("borrow-requests.dead").toString());
+        registry.add("library.intake.max-attempts", () -> "2");
+        registry.add("library.intake.retry-delay", () -> "10ms");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @MockitoSpyBean
+    private LoanLimitService loanLimitService;
+
+    private Member member;
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = bookRepository.save(Book.builder()
+                .title("Harry Potter")
+                .genre("Fantasy")
+                .publicationYear(1997)
+                .author(author)
+                .build());
+        member = memberRepository.save(Member.builder()
+                .name("Member")
+                .email("member@gmail.com")
+                .password(passwordEncoder.encode("12345member"))
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+
+    @Test
+    void sendBorrowRequestAsync_ShouldBeQueuedAndThenSaved() throws Exception {
+        String body = mockMvc.perform(post("/borrowing-record/request/async")
+                        .with(user(member.getEmail()).roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request(book.getTitle()))))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andReturn().getResponse().getContentAsString();
+        String trackingId = objectMapper.readValue(body, IntakeStatusDTO.class).getTrackingId();
+
+        IntakeStatusDTO status = awaitFinalStatus(trackingId);
+
+        assertEquals(IntakeStatusDTO.Status.ACCEPTED, status.getStatus());
+        BorrowingRecord record = borrowingRecordRepository.findByIntakeId(trackingId).orElseThrow();
+        assertEquals(status.getRecordId(), record.getId());
+        assertFalse(record.isApproved());
+        assertNotNull(record.getRequestedAt());
+    }
+
+    @Test
+    void sendBorrowRequestAsync_WhenSavingKeepsFailing_ShouldBeDeadLetteredAndRejected() throws Exception {
+        doThrow(new IllegalStateException("poison")).when(loanLimitService).requestsSaved(eq(member.getId()), anyInt());
+
+        String body = mockMvc.perform(post("/borrowing-record/request/async")
+                        .with(user(member.getEmail()).roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request(book.getTitle()))))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        String trackingId = objectMapper.readValue(body, IntakeStatusDTO.class).getTrackingId();
+
+        IntakeStatusDTO status = awaitFinalStatus(trackingId);
+
+        assertEquals(IntakeStatusDTO.Status.REJECTED, status.getStatus());
+        assertTrue(borrowingRecordRepository.findByIntakeId(trackingId).isEmpty());
+        assertTrue(Files.readString(journalDirectory.resolve("borrow-requests.dead")).contains(trackingId));
+    }
+
+    @Test
+    void sendBorrowRequestAsync_WhenTitleDoesNotMatch_ShouldBeRefusedRightAway() throws Exception {
+        mockMvc.perform(post("/borrowing-record/request/async")
+                        .with(user(member.getEmail()).roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request("Lord of the Rings"))))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.errorResponse").value("BOOK NOT FOUND"));
+    }
+
+    @Test
+    void sendBorrowRequestAsync_ForAnotherMember_ShouldBeForbidden() throws Exception {
+        mockMvc.perform(post("/borrowing-record/request/async")
+                        .with(user("someone.else@gmail.com").roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request(book.getTitle()))))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void getIntakeStatus_WhenTrackingIdIsUnknown_ShouldReturnNotFound() throws Exception {
+        mockMvc.perform(get("/borrowing-record/intake/{trackingId}", "unknown")
+                        .with(user("librarian@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.errorResponse").value("INTAKE REQUEST NOT FOUND"));
+    }
+
+    private BorrowRequestDTO request(String bookTitle) {
+        return BorrowRequestDTO.builder()
+                .bookId(book.getId())
+                .bookTitle(bookTitle)
+                .memberId(member.getId())
+                .memberName(member.getName())
+                .memberEmail(member.getEmail())
+                .borrowDate(LocalDateTime.now().minusMinutes(1))
+                .returnDate(LocalDateTime.now().plusDays(14))
+                .build();
+    }
+
+    private IntakeStatusDTO awaitFinalStatus(String trackingId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            String body = mockMvc.perform(get("/borrowing-record/intake/{trackingId}", trackingId)
+                            .with(user(member.getEmail()).roles("MEMBER")))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            IntakeStatusDTO status = objectMapper.readValue(body, IntakeStatusDTO.class);
+            if (status.getStatus() != IntakeStatusDTO.Status.QUEUED || System.currentTimeMillis() > deadline) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -2,12 +2,15 @@ package com.system.libraryManagementSystem.integration.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.system.libraryManagementSystem.dto.BatchApprovalRequestDTO;
 import com.system.libraryManagementSystem.dto.BorrowingRecordDTO;
 import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BookInventory;
 import com.system.libraryManagementSystem.model.BorrowingRecord;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
 import com.system.libraryManagementSystem.repository.BookRepository;
 import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
@@ -33,6 +36,8 @@ import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -56,6 +61,9 @@ class BorrowingRecordControllerIntegrationTest {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private BookInventoryRepository bookInventoryRepository;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -675,4 +683,168 @@ class BorrowingRecordControllerIntegrationTest {
                 .andExpect(jsonPath("$.errorResponse").value("BORROWING RECORD NOT FOUND"))
                 .andExpect(jsonPath("$.message").value("Record not found with the id: 99"));
     }
-}
\ No newline at end of file
+
+    @WithMockUser(username = "Admin", roles = "ADMIN")
+    @Test
+    void testApproveBorrowRequests_ShouldReportAnOutcomePerId() throws Exception {
+        BatchApprovalRequestDTO request = BatchApprovalRequestDTO.builder()
+                .ids(List.of(borrowingRecord1.getId(), borrowingRecord2.getId(), 999L))
+                .build();
+
+        mockMvc.perform(put("/borrowing-record/approve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.approved").value(1))
+                .andExpect(jsonPath("$.alreadyApproved").value(1))
+                .andExpect(jsonPath("$.notFound").value(1))
+                .andExpect(jsonPath("$.outcomes", hasSize(3)))
+                .andExpect(jsonPath("$.outcomes[0].recordId").value(borrowingRecord1.getId()))
+                .andExpect(jsonPath("$.outcomes[0].outcome").value("APPROVED"))
+                .andExpect(jsonPath("$.outcomes[1].outcome").value("ALREADY_APPROVED"))
+                .andExpect(jsonPath("$.outcomes[2].outcome").value("NOT_FOUND"));
+
+        mockMvc.perform(get("/borrowing-record/{id}", borrowingRecord1.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.approved").value(true));
+    }
+
+    @WithMockUser(username = "Admin", roles = "ADMIN")
+    @Test
+    void testApproveBorrowRequests_WithFilter_ShouldGiveTheLastCopyToTheOldestRequest() throws Exception {
+        bookInventoryRepository.save(new BookInventory(book.getId(), 2, 1));
+        BorrowingRecord newerRequest = borrowingRecordRepository.save(BorrowingRecord.builder()
+                .member(member)
+                .book(book)
+                .requestedAt(LocalDateTime.now())
+                .borrowDate(LocalDateTime.now())
+                .isApproved(false)
+                .build());
+        borrowingRecord1.setRequestedAt(LocalDateTime.now().minusHours(1));
+        borrowingRecordRepository.saveAndFlush(borrowingRecord1);
+
+        mockMvc.perform(put("/borrowing-record/approve")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(BatchApprovalRequestDTO.builder().bookId(book.getId()).build())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.approved").value(1))
+                .andExpect(jsonPath("$.unavailable").value(1))
+                .andExpect(jsonPath("$.outcomes[0].recordId").value(borrowingRecord1.getId()))
+                .andExpect(jsonPath("$.outcomes[0].outcome").value("APPROVED"))
+                .andExpect(jsonPath("$.outcomes[1].recordId").value(newerRequest.getId()))
+                .andExpect(jsonPath("$.outcomes[1].outcome").value("UNAVAILABLE"));
+
+        mockMvc.perform(get("/books/{id}/inventory", book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.availableCopies").value(0));
+    }
+
+    @Test
+    void testClaimPendingRequests_ShouldHandEachRequestToOneLibrarian() throws Exception {
+        mockMvc.perform(post("/borrowing-record/claims").param("size", "10")
+                        .with(user("librarian1@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].recordId").value(borrowingRecord1.getId()));
+
+        mockMvc.perform(post("/borrowing-record/claims").param("size", "10")
+                        .with(user("librarian2@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        mockMvc.perform(delete("/borrowing-record/claims/{id}", borrowingRecord1.getId())
+                        .with(user("librarian1@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(post("/borrowing-record/claims").param("size", "10")
+                        .with(user("librarian2@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].recordId").value(borrowingRecord1.getId()));
+        mockMvc.perform(get("/borrowing-record/claims")
+                        .with(user("librarian1@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    void testClaimPendingRequests_WhenTheClaimExpired_ShouldGoBackToTheQueue() throws Exception {
+        borrowingRecord1.setClaimedBy("librarian1@gmail.com");
+        borrowingRecord1.setClaimExpiresAt(LocalDateTime.now().minusMinutes(1));
+        borrowingRecordRepository.saveAndFlush(borrowingRecord1);
+
+        mockMvc.perform(post("/borrowing-record/claims").param("size", "10")
+                        .with(user("librarian2@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].recordId").value(borrowingRecord1.getId()));
+    }
+
+    @Test
+    void testReleaseClaim_WhenClaimedByAnotherLibrarian_ShouldReturnNotFound() throws Exception {
+        mockMvc.perform(post("/borrowing-record/claims").with(user("librarian1@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(delete("/borrowing-record/claims/{id}", borrowingRecord1.getId())
+                        .with(user("librarian2@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.errorResponse").value("BORROWING RECORD NOT FOUND"));
+    }
+
+    @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
+    @Test
+    void sendOwnBorrowingRequest_WhenRetriedWithTheSameIdempotencyKey_ShouldSaveItOnceAndReplayTheResponse() throws Exception {
+        String body = objectMapper.writeValueAsString(BorrowingRecordDTO.builder()
+                .bookId(book.getId())
+                .bookTitle(book.getTitle())
+                .memberId(member.getId())
+                .memberName(member.getName())
+                .memberEmail(member.getEmail())
+                .borrowDate(LocalDateTime.now())
+                .build());
+        long before = borrowingRecordRepository.count();
+
+        String first = mockMvc.perform(post("/borrowing-record/request")
+                        .header("Idempotency-Key", "request-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(post("/borrowing-record/request")
+                        .header("Idempotency-Key", "request-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(content().json(first));
+
+        assertEquals(before + 1, borrowingRecordRepository.count());
+    }
+
+    @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
+    @Test
+    void sendOwnBorrowingRequest_WhenTheIdempotencyKeyWasUsedForAnotherBody_ShouldReturnUnprocessableEntity() throws Exception {
+        BorrowingRecordDTO borrowingRecordDTO = BorrowingRecordDTO.builder()
+                .bookId(book.getId())
+                .bookTitle(book.getTitle())
+                .memberId(member.getId())
+                .memberName(member.getName())
+                .memberEmail(member.getEmail())
+                .borrowDate(LocalDateTime.now())
+                .build();
+
+        mockMvc.perform(post("/borrowing-record/request")
+                        .header("Idempotency-Key", "request-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(borrowingRecordDTO)))
+                .andExpect(status().isCreated());
+
+        borrowingRecordDTO.setBorrowDate(LocalDateTime.now().plusDays(1));
+        mockMvc.perform(post("/borrowing-record/request")
+                        .header("Idempotency-Key", "request-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(borrowingRecordDTO)))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.errorResponse").value("IDEMPOTENCY KEY REUSED"));
+    }
+}
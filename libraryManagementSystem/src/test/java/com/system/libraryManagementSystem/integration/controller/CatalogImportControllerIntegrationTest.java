@@ -0,0 +1,154 @@
+package com.system.libraryManagementSystem.integration.controller;
+
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.*;
+import com.system.libraryManagementSystem.security.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "library.import.chunk-size=2")     //small chunks so every test spans several commits
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class CatalogImportControllerIntegrationTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    AuthorRepository authorRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberProfileRepository memberProfileRepository;
+    @Autowired
+    BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    PasswordEncoder passwordEncoder;
+    @Autowired
+    JwtService jwtService;
+
+    private Author author;
+    private String librarianToken;
+    private String memberToken;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        author = authorRepository.save(Author.builder()
+                .name("George Orwell")
+                .biography("English novelist, best known for '1984' and 'Animal Farm'.")
+                .publishedBooks(new ArrayList<>())
+                .build());
+
+        librarianToken = jwtService.getToken(saveMember("librarian@gmail.com", "ROLE_LIBRARIAN").getEmail());
+        memberToken = jwtService.getToken(saveMember("member@gmail.com", "ROLE_MEMBER").getEmail());
+    }
+
+    @Test
+    void importCsv_ShouldCreateBooksAndMissingAuthors() throws Exception {
+        String csv = """
+                title,genre,publicationYear,authorName,authorBiography
+                Animal Farm,Political Satire,1945,george orwell,
+                1984,Dystopian,1949,George Orwell,
+                Harry Potter and the Philosopher's Stone,Fantasy,1997,J.K. Rowling,British author best known for the Harry Potter series.
+                Harry Potter and the Chamber of Secrets,Fantasy,1998,J.K. Rowling,
+                Harry Potter and the Prisoner of Azkaban,Fantasy,1999,J.K. Rowling,
+                """;
+
+        mockMvc.perform(post("/catalog/import")
+                        .header("Authorization", "Bearer " + librarianToken)
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowsRead").value(5))
+                .andExpect(jsonPath("$.booksImported").value(5))
+                .andExpect(jsonPath("$.authorsCreated").value(1))
+                .andExpect(jsonPath("$.rowsRejected").value(0))
+                .andExpect(jsonPath("$.chunksCommitted").value(3));
+
+        List<Book> books = bookRepository.findAll();
+        assertEquals(5, books.size());
+        assertEquals(2, books.stream().filter(book -> book.getAuthor().getId().equals(author.getId())).count());
+        assertEquals(2, authorRepository.count());
+    }
+
+    @Test
+    void importNdjson_ShouldReportInvalidRowsAndImportTheRest() throws Exception {
+        String ndjson = """
+                {"title": "Animal Farm", "genre": "Political Satire", "publicationYear": 1945, "authorName": "George Orwell"}
+                {"title": "", "genre": "Dystopian", "publicationYear": 1949, "authorName": "George Orwell"}
+                {"title": "Homage to Catalonia", "genre": "Memoir", "publicationYear": "not a year", "authorName": "George Orwell"}
+                {"title": "Brave New World", "genre": "Dystopian", "publicationYear": 1932, "authorName": "Aldous Huxley"}
+                {"title": "Burmese Days", "genre": "Novel", "publicationYear": 1934, "authorName": "George Orwell"}
+                """;
+
+        mockMvc.perform(post("/catalog/import")
+                        .header("Authorization", "Bearer " + librarianToken)
+                        .contentType("application/x-ndjson")
+                        .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rowsRead").value(5))
+                .andExpect(jsonPath("$.booksImported").value(2))
+                .andExpect(jsonPath("$.rowsRejected").value(3))
+                .andExpect(jsonPath("$.errors", hasSize(3)))
+                .andExpect(jsonPath("$.errors[?(@.row == 2)].message", hasItem(containsString("Book's title must not be blank"))))
+                .andExpect(jsonPath("$.errors[?(@.row == 3)].message", hasItem(containsString("Row could not be parsed"))))
+                .andExpect(jsonPath("$.errors[?(@.row == 4)].message", hasItem(containsString("Author not found with the name: Aldous Huxley"))));
+
+        assertEquals(2, bookRepository.count());
+        assertEquals(1, authorRepository.count());
+    }
+
+    @Test
+    void importCsv_WhenMember_ShouldReturnForbidden() throws Exception {
+        mockMvc.perform(post("/catalog/import")
+                        .header("Authorization", "Bearer " + memberToken)
+                        .contentType("text/csv")
+                        .content("title,genre,publicationYear,authorName\n1984,Dystopian,1949,George Orwell\n"))
+                .andExpect(status().isForbidden());
+
+        assertEquals(0, bookRepository.count());
+    }
+
+    private Member saveMember(String email, String role) {
+        return memberRepository.save(Member.builder()
+                .name(email.substring(0, email.indexOf('@')))
+                .email(email)
+                .password(passwordEncoder.encode("12345password"))
+                .roles(Set.of(role))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+}
@@ -0,0 +1,171 @@
+package com.system.libraryManagementSystem.integration.controller;
+
+import com.system.libraryManagementSystem.model.*;
+import com.system.libraryManagementSystem.repository.*;
+import com.system.libraryManagementSystem.security.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class ExportControllerIntegrationTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    AuthorRepository authorRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberProfileRepository memberProfileRepository;
+    @Autowired
+    BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    PasswordEncoder passwordEncoder;
+    @Autowired
+    JwtService jwtService;
+
+    private String adminToken;
+    private String memberToken;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        Author author = authorRepository.save(Author.builder()
+                .name("George Orwell")
+                .biography("English novelist, best known for '1984' and 'Animal Farm'.")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        List<Book> books = bookRepository.saveAll(List.of(
+                new Book(null, "1984", "Dystopian", 1949, author, new ArrayList<>()),
+                new Book(null, "Animal Farm", "Political Satire", 1945, author, new ArrayList<>()),
+                new Book(null, "Burmese Days", "Novel", 1934, author, new ArrayList<>())));
+
+        Member admin = saveMember("admin@gmail.com", "ROLE_ADMIN");
+        Member member = saveMember("member@gmail.com", "ROLE_MEMBER");
+        memberProfileRepository.save(MemberProfile.builder()
+                .phoneNumber("09123456789")
+                .address("Street number 1, Some City")
+                .dateOfBirth(LocalDate.of(1990, 1, 1))
+                .member(member)
+                .build());
+        borrowingRecordRepository.save(BorrowingRecord.builder()
+                .book(books.get(0))
+                .member(member)
+                .borrowDate(LocalDateTime.now().minusDays(1))
+                .returnDate(LocalDateTime.now().plusDays(6))
+                .build());
+
+        adminToken = jwtService.getToken(admin.getEmail());
+        memberToken = jwtService.getToken(member.getEmail());
+    }
+
+    @Test
+    void exportBooks_AsNdjson_ShouldStreamOneLinePerBook() throws Exception {
+        String body = export("/export/books", "ndjson", false).getResponse().getContentAsString();
+
+        String[] lines = body.strip().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("\"title\":\"1984\""));
+        assertTrue(lines[0].contains("\"authorName\":\"George Orwell\""));
+    }
+
+    @Test
+    void exportMembers_AsCsv_ShouldWriteHeaderAndRowsWithoutPasswords() throws Exception {
+        String body = export("/export/members", "csv", false).getResponse().getContentAsString();
+
+        String[] lines = body.strip().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("id,name,email"));
+        assertTrue(body.contains("09123456789"));
+        assertFalse(body.toLowerCase().contains("password"));
+    }
+
+    @Test
+    void exportBorrowingRecords_Gzipped_ShouldBeReadableAfterDecompression() throws Exception {
+        MvcResult result = export("/export/borrowing-records", "ndjson", true);
+
+        assertEquals("application/gzip", result.getResponse().getContentType());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            String body = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(1, body.strip().split("\n").length);
+            assertTrue(body.contains("\"bookTitle\":\"1984\""));
+        }
+    }
+
+    @Test
+    void exportBooks_WithUnknownFormat_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/export/books")
+                        .param("format", "xml")
+                        .header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value(containsString("Unsupported export format")));
+    }
+
+    @Test
+    void exportBooks_WhenMember_ShouldReturnForbidden() throws Exception {
+        mockMvc.perform(get("/export/books")
+                        .header("Authorization", "Bearer " + memberToken))
+                .andExpect(status().isForbidden());
+    }
+
+    private MvcResult export(String url, String format, boolean gzip) throws Exception {
+        MvcResult started = mockMvc.perform(get(url)
+                        .param("format", format)
+                        .param("gzip", String.valueOf(gzip))
+                        .header("Authorization", "Bearer " + adminToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", containsString("attachment")))
+                .andReturn();
+    }
+
+    private Member saveMember(String email, String role) {
+        return memberRepository.save(Member.builder()
+                .name(email.substring(0, email.indexOf('@')))
+                .email(email)
+                .password(passwordEncoder.encode("12345password"))
+                .roles(Set.of(role))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+}
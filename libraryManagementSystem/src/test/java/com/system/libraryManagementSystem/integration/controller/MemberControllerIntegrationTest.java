@@ -4,10 +4,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.system.libraryManagementSystem.dto.MemberDTO;
 import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService;
 import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,12 +27,16 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -58,14 +65,22 @@ class MemberControllerIntegrationTest {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
     private Member member;
 
     private Book book;
 
     private Author author;
 
+    @Autowired
+    private TombstoneService tombstoneService;
+
     @BeforeEach
     void setUp() {
+        tombstoneService.purge();      //rows deleted through the api by an earlier test are only flagged, deleteAll does not see them
+        borrowingRecordRepository.deleteAll();
         memberRepository.deleteAll();           //always remember they have relationships, must delete in systematic order
         bookRepository.deleteAll();
         authorRepository.deleteAll();
@@ -267,11 +282,54 @@ class MemberControllerIntegrationTest {
                 .andExpect(jsonPath("$.message").value("Book not found with the id: 99"));
     }
 
+    @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
+    @Test
+    void testBorrowBook_WhenBookIsAlreadyBorrowed_ShouldKeepOneLoan() throws Exception {
+        mockMvc.perform(post("/members/{memberId}/borrow/{bookId}", member.getId(), book.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/members/{memberId}/borrow/{bookId}", member.getId(), book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.borrowedBooks", hasSize(1)));
+    }
+
+    @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
+    @Test
+    void testGetOwnLoans_WhenMemberHasLoans_ShouldReturnPageOfBooks() throws Exception {
+        Book secondBook = bookRepository.save(Book.builder()
+                .title("Harry Potter and the Chamber of Secrets")
+                .genre("Fantasy")
+                .publicationYear(1998)
+                .author(author)
+                .members(new ArrayList<>())
+                .build());
+        mockMvc.perform(post("/members/{memberId}/borrow/{bookId}", member.getId(), book.getId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/members/{memberId}/borrow/{bookId}", member.getId(), secondBook.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/members/{memberId}/loans", member.getId())
+                        .param("size", "1")
+                        .param("sortDirection", "DESC"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content[0].title").value(secondBook.getTitle()))
+                .andExpect(jsonPath("$.content[0].authorName").value(author.getName()))
+                .andExpect(jsonPath("$.totalElements").value(2));
+    }
+
+    @WithMockUser(username = "admin@gmail.com", roles = "ADMIN")
+    @Test
+    void testGetLoansWithAuthority_WhenMemberDoesNotExist_ShouldReturnException() throws Exception {
+        mockMvc.perform(get("/members/authorized/{memberId}/loans", 99L))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.errorResponse").value("MEMBER NOT FOUND"));
+    }
+
     @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
     @Test
     void testReturnBook_WhenMemberAndBookExist_ShouldReturnMember() throws Exception {
-        member.getBorrowedBooks().add(book);
-        memberRepository.save(member);
+        openLoan(member, book);
 
         mockMvc.perform(post("/members/{memberId}/return/{bookId}", member.getId(), book.getId()))
                 .andExpect(status().isOk())
@@ -279,6 +337,22 @@ class MemberControllerIntegrationTest {
                 .andExpect(jsonPath("$.borrowedBooks", hasSize(0)));
     }
 
+    @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
+    @Test
+    void testBorrowAndReturnBook_ShouldKeepTheLoanAsOneLedgerRow() throws Exception {
+        mockMvc.perform(post("/members/{memberId}/borrow/{bookId}", member.getId(), book.getId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/members/{memberId}/return/{bookId}", member.getId(), book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.borrowedBooks", hasSize(0)));
+
+        List<BorrowingRecord> loans = borrowingRecordRepository.findAll();
+        assertEquals(1, loans.size());      //the same row went from borrowed to returned, it stays as the borrowing record
+        assertTrue(loans.get(0).isApproved());
+        assertNotNull(loans.get(0).getBorrowDate());
+        assertNotNull(loans.get(0).getReturnedAt());
+    }
+
     @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
     @Test
     void testReturnBook_WhenBookDoesNotExist_ShouldReturnException() throws Exception {
@@ -321,8 +395,7 @@ class MemberControllerIntegrationTest {
     @WithMockUser(username = "admin@gmail.com", roles = "ADMIN")
     @Test
     void testReturnBookWithAuthority_WhenMemberAndBookExist_ShouldReturnMember() throws Exception {
-        member.getBorrowedBooks().add(book);
-        memberRepository.save(member);
+        openLoan(member, book);
 
         mockMvc.perform(post("/members/authorized/{memberId}/return/{bookId}", member.getId(), book.getId()))
                 .andExpect(status().isOk())
@@ -425,8 +498,7 @@ class MemberControllerIntegrationTest {
             "harry potter and the philosopher's stone"
     })
     void testGetMemberByBorrowedBookTitle_WhenBookTitleIsFullyProvidedIgnoringCase_ShouldReturnPageOfRecords(String bookTitle) throws Exception {
-        member.getBorrowedBooks().add(book);
-        memberRepository.save(member);
+        openLoan(member, book);
 
         mockMvc.perform(get("/members/book-title")
                         .param("bookTitle", bookTitle)
@@ -452,8 +524,7 @@ class MemberControllerIntegrationTest {
             "philosopher's stone"
     })
     void testGetMemberByBorrowedBookTitle_WhenBookTitleIsPartiallyProvided_ShouldReturnEmptyPage(String bookTitle) throws Exception {
-        member.getBorrowedBooks().add(book);
-        memberRepository.save(member);
+        openLoan(member, book);
         mockMvc.perform(get("/members/book-title")
                         .param("bookTitle", bookTitle)
                         .param("page", "0")
@@ -487,4 +558,16 @@ class MemberControllerIntegrationTest {
                 .andExpect(jsonPath("$.pageable.pageNumber").value(0));
     }
 
-}
\ No newline at end of file
+    //Member.borrowedBooks is a view of the loan ledger, a loan is an approved row that is not returned
+    private void openLoan(Member member, Book book) {
+        borrowingRecordRepository.save(BorrowingRecord.builder()
+                .member(member)
+                .book(book)
+                .requestedAt(LocalDateTime.now())
+                .approvedAt(LocalDateTime.now())
+                .borrowDate(LocalDateTime.now())
+                .returnDate(LocalDateTime.now().plusDays(14))
+                .isApproved(true)
+                .build());
+    }
+}
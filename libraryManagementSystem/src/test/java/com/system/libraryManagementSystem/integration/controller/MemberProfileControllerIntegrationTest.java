@@ -7,6 +7,7 @@ import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.model.MemberProfile;
 import com.system.libraryManagementSystem.repository.MemberProfileRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -55,8 +56,12 @@ class MemberProfileControllerIntegrationTest {
     private Member member;
     private MemberProfile memberProfile;
 
+    @Autowired
+    private TombstoneService tombstoneService;
+
     @BeforeEach
     void setUp() {
+        tombstoneService.purge();      //rows deleted through the api by an earlier test are only flagged, deleteAll does not see them
         memberProfileRepository.deleteAll();
         memberRepository.deleteAll();
 
@@ -102,7 +107,7 @@ class MemberProfileControllerIntegrationTest {
     @WithMockUser(username = "admin", roles = "ADMIN")
     @Test
     void testGetALlMemberProfiles_WhenProfilesDoesNotExist_ShouldReturnEmptyPage() throws Exception {
-        memberRepository.deleteAll();
+        memberProfileRepository.deleteAll();
 
         mockMvc.perform(get("/member-profile")
                         .param("page", "0")
@@ -162,8 +167,6 @@ class MemberProfileControllerIntegrationTest {
     @WithMockUser(username = "admin", roles = "ADMIN")
     @Test
     void testSaveNewMemberProfile_ShouldReturnCreatedMemberProfile() throws Exception {
-        member.setMemberProfile(null); // This will trigger orphan removal
-        memberRepository.save(member); // Save the member to apply changes
         memberProfileRepository.deleteAll();
 
 
@@ -199,8 +202,6 @@ class MemberProfileControllerIntegrationTest {
     @WithMockUser(username = "member@gmail.com", roles = "MEMBER")
     @Test
     void testSaveOwnMemberProfile_ShouldReturnCreatedMemberProfile() throws Exception {
-        member.setMemberProfile(null); // This will trigger orphan removal
-        memberRepository.save(member); // Save the member to apply changes
         memberProfileRepository.deleteAll();
 
         MemberProfileDTO newProfile = MemberProfileDTO.builder()
@@ -0,0 +1,183 @@
+package com.system.libraryManagementSystem.integration.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.system.libraryManagementSystem.dto.ReservationDTO;
+import com.system.libraryManagementSystem.dto.ReservationRequestDTO;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BookInventory;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+@Transactional
+class ReservationControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private BookInventoryRepository bookInventoryRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    private Book book;
+    private Member holder;
+    private Member first;
+    private Member second;
+
+    @BeforeEach
+    void setUp() {
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = bookRepository.save(Book.builder()
+                .title("Harry Potter")
+                .genre("Fantasy")
+                .publicationYear(1997)
+                .author(author)
+                .build());
+        bookInventoryRepository.save(new BookInventory(book.getId(), 1, 0));        //the only copy is on loan
+        holder = member("holder@gmail.com");
+        first = member("first@gmail.com");
+        second = member("second@gmail.com");
+        LocalDateTime now = LocalDateTime.now();
+        borrowingRecordRepository.save(BorrowingRecord.builder()
+                .member(holder)
+                .book(book)
+                .requestedAt(now)
+                .approvedAt(now)
+                .borrowDate(now)
+                .returnDate(now.plusDays(14))
+                .isApproved(true)
+                .build());
+    }
+
+    @Test
+    void reservations_ShouldBeServedInOrderWhenTheCopyComesBack() throws Exception {
+        ReservationDTO firstReservation = reserve(first);
+        ReservationDTO secondReservation = reserve(second);
+        assertEquals(1, firstReservation.getPosition());
+        assertEquals(2, secondReservation.getPosition());
+
+        mockMvc.perform(get("/reservation/book/{bookId}/next", book.getId()).with(user("librarian@gmail.com").roles("LIBRARIAN")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reservationId").value(firstReservation.getReservationId()));
+
+        mockMvc.perform(post("/members/{memberId}/return/{bookId}", holder.getId(), book.getId()).with(user(holder.getEmail()).roles("MEMBER")))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/reservation/{id}", firstReservation.getReservationId()).with(user(first.getEmail()).roles("MEMBER")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("READY"))
+                .andExpect(jsonPath("$.expiresAt").exists());
+        mockMvc.perform(get("/reservation/{id}", secondReservation.getReservationId()).with(user(second.getEmail()).roles("MEMBER")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("WAITING"))
+                .andExpect(jsonPath("$.position").value(1));
+        assertEquals(0, bookInventoryRepository.findById(book.getId()).orElseThrow().getAvailableCopies());     //held, not on the shelf
+
+        mockMvc.perform(post("/members/{memberId}/borrow/{bookId}", first.getId(), book.getId()).with(user(first.getEmail()).roles("MEMBER")))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/reservation/{id}", firstReservation.getReservationId()).with(user(first.getEmail()).roles("MEMBER")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("FULFILLED"));
+        assertEquals(0, bookInventoryRepository.findById(book.getId()).orElseThrow().getAvailableCopies());
+    }
+
+    @Test
+    void cancelReservation_ShouldMoveTheOthersUp() throws Exception {
+        ReservationDTO firstReservation = reserve(first);
+        ReservationDTO secondReservation = reserve(second);
+
+        mockMvc.perform(delete("/reservation/{id}", firstReservation.getReservationId()).with(user(first.getEmail()).roles("MEMBER")))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/reservation/{id}", secondReservation.getReservationId()).with(user(second.getEmail()).roles("MEMBER")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.position").value(1));
+        mockMvc.perform(delete("/reservation/{id}", firstReservation.getReservationId()).with(user(first.getEmail()).roles("MEMBER")))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.errorResponse").value("RESERVATION CONFLICT"));
+    }
+
+    @Test
+    void placeReservation_WhenACopyIsAvailable_ShouldReturnConflict() throws Exception {
+        bookInventoryRepository.save(new BookInventory(book.getId(), 2, 1));
+
+        mockMvc.perform(post("/reservation").with(user(first.getEmail()).roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ReservationRequestDTO(book.getId(), first.getId(), null))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.errorResponse").value("RESERVATION CONFLICT"));
+    }
+
+    @Test
+    void placeReservation_ForAnotherMember_ShouldBeForbidden() throws Exception {
+        mockMvc.perform(post("/reservation").with(user(first.getEmail()).roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ReservationRequestDTO(book.getId(), second.getId(), null))))
+                .andExpect(status().isForbidden());
+    }
+
+    private ReservationDTO reserve(Member member) throws Exception {
+        String body = mockMvc.perform(post("/reservation").with(user(member.getEmail()).roles("MEMBER"))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ReservationRequestDTO(book.getId(), member.getId(), null))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.status").value("WAITING"))
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(body, ReservationDTO.class);
+    }
+
+    private Member member(String email) {
+        return memberRepository.save(Member.builder()
+                .name(email.substring(0, email.indexOf('@')))
+                .email(email)
+                .password("12345member")
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+}
@@ -0,0 +1,166 @@
+package com.system.libraryManagementSystem.integration.service;
+
+import com.system.libraryManagementSystem.exception.BookUnavailableException;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BookInventory;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.MemberService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//not @Transactional, every loan has to commit on its own thread for the threads to race on the inventory row
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class InventoryConcurrencyIntegrationTest {
+
+    private static final int COPIES = 5;
+    private static final int MEMBERS = 40;
+    private static final int THREADS = 16;
+
+    @Autowired
+    private MemberService memberService;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookInventoryRepository bookInventoryRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Book book;
+    private List<Member> members;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookInventoryRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("British author best known for the Harry Potter series.")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = bookRepository.save(new Book(null, "Harry Potter and the Philosopher's Stone", "Fantasy", 1997, author, new ArrayList<>()));
+        bookInventoryRepository.save(new BookInventory(book.getId(), COPIES, COPIES));
+
+        members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(Member.builder()
+                    .name("Member " + i)
+                    .email("member" + i + "@gmail.com")
+                    .password("12345member")
+                    .roles(Set.of("ROLE_MEMBER"))
+                    .isEnabled(true)
+                    .isAccountNonExpired(true)
+                    .isAccountNonLocked(true)
+                    .isCredentialsNonExpired(true)
+                    .borrowedBooks(new ArrayList<>())
+                    .build());
+        }
+        members = memberRepository.saveAll(members);
+    }
+
+    @Test
+    void borrowBook_WhenMoreMembersThanCopiesRace_ShouldNeverOversell() throws Exception {
+        AtomicInteger loaned = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+
+        runConcurrently(member -> {
+            try {
+                memberService.borrowBook(member.getId(), book.getId());
+                loaned.incrementAndGet();
+            } catch (BookUnavailableException e) {
+                refused.incrementAndGet();
+            }
+        });
+
+        assertEquals(COPIES, loaned.get());
+        assertEquals(MEMBERS - COPIES, refused.get());
+        assertEquals(0, bookInventoryRepository.findById(book.getId()).orElseThrow().getAvailableCopies());
+        assertEquals(COPIES, countLoans());
+    }
+
+    @Test
+    void returnBook_WhenEveryBorrowerReturnsAtOnce_ShouldRestoreEveryCopy() throws Exception {
+        runConcurrently(member -> {
+            try {
+                memberService.borrowBook(member.getId(), book.getId());
+            } catch (BookUnavailableException ignored) {
+            }
+        });
+        runConcurrently(member -> memberService.returnBook(member.getId(), book.getId()));
+
+        BookInventory inventory = bookInventoryRepository.findById(book.getId()).orElseThrow();
+        assertEquals(COPIES, inventory.getTotalCopies());
+        assertEquals(COPIES, inventory.getAvailableCopies());
+        assertEquals(0, countLoans());
+    }
+
+    //every member acts on its own pool thread, the latch releases them together so the updates really overlap
+    private void runConcurrently(MemberAction action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Member member : members) {
+                futures.add(executor.submit(() -> {
+                    SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                            "librarian@gmail.com", null, List.of(new SimpleGrantedAuthority("ROLE_LIBRARIAN"))));
+                    try {
+                        start.await();
+                        action.run(member);
+                    } finally {
+                        SecurityContextHolder.clearContext();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);       //rethrows anything other than BookUnavailableException
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int countLoans() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM loan WHERE book_id = ? AND is_approved = 1 AND returned_at IS NULL", Integer.class, book.getId());
+    }
+
+    @FunctionalInterface
+    private interface MemberAction {
+        void run(Member member) throws Exception;
+    }
+}
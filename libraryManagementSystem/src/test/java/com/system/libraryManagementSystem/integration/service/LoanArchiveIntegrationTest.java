@@ -0,0 +1,217 @@
+package com.system.libraryManagementSystem.integration.service;
+
+import com.system.libraryManagementSystem.model.ArchiveSegment;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.ArchiveSegmentRepository;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.BorrowingRecordService;
+import com.system.libraryManagementSystem.service.LoanArchiveService;
+import com.system.libraryManagementSystem.service.LoanArchiveService.ArchiveResult;
+import com.system.libraryManagementSystem.service.support.LoanOrder;
+import com.system.libraryManagementSystem.service.support.LoanSegment;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//not @Transactional, every segment commits with the delete of its loans
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+@WithMockUser(username = "librarian", roles = "LIBRARIAN")
+class LoanArchiveIntegrationTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    @TempDir
+    static Path archiveDirectory;
+
+    @DynamicPropertySource
+    static void archiveProperties(DynamicPropertyRegistry registry) {
+        registry.add("library.loan-archive.directory", archiveDirectory::toString);
+        registry.add("library.loan-archive.min-age", () -> "P365D");
+        registry.add("library.loan-archive.segment-rows", () -> "2");
+        registry.add("library.loan-archive.min-segment-rows", () -> "1");
+    }
+
+    @Autowired
+    private LoanArchiveService loanArchiveService;
+    @Autowired
+    private BorrowingRecordService borrowingRecordService;
+    @Autowired
+    private ArchiveSegmentRepository archiveSegmentRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Member member;
+    private Book book;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        archiveSegmentRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(archiveDirectory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        loanArchiveService.reload();
+
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = bookRepository.save(Book.builder()
+                .title("Harry Potter")
+                .genre("Fantasy")
+                .publicationYear(1997)
+                .author(author)
+                .build());
+        member = memberRepository.save(Member.builder()
+                .name("Member")
+                .email("member@gmail.com")
+                .password("12345member")
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+
+    @Test
+    void archive_ShouldMoveOnlyLoansReturnedBeforeTheCutoffIntoSegments() {
+        BorrowingRecord oldest = loan(NOW.minusYears(3), NOW.minusYears(3).plusDays(10));
+        BorrowingRecord older = loan(NOW.minusYears(2).minusMonths(6), NOW.minusYears(2).minusMonths(6).plusDays(10));
+        BorrowingRecord old = loan(NOW.minusYears(2), NOW.minusYears(2).plusDays(10));
+        BorrowingRecord recent = loan(NOW.minusMonths(2), NOW.minusMonths(2).plusDays(10));
+        BorrowingRecord open = loan(NOW.minusYears(2), null);
+
+        ArchiveResult result = loanArchiveService.archive(NOW);
+
+        assertEquals(3, result.archived());
+        assertEquals(2, result.segments());     //two loans a segment
+        assertEquals(Set.of(recent.getId(), open.getId()),
+                Set.copyOf(borrowingRecordRepository.findAll().stream().map(BorrowingRecord::getId).toList()));
+        List<ArchiveSegment> segments = archiveSegmentRepository.findAll();
+        assertEquals(2, segments.size());
+        for (ArchiveSegment segment : segments) {
+            assertTrue(Files.exists(archiveDirectory.resolve(segment.getName())));
+        }
+        assertEquals(0, loanArchiveService.archive(NOW).archived());
+
+        //read through by borrow date and by member, with the member and book names of the archived loans
+        Page<BorrowingRecord> byBorrowDate = borrowingRecordService.getBorrowingRecordByBorrowDate(older.getBorrowDate(), 0, 10, "ASC", "id");
+        assertEquals(1, byBorrowDate.getTotalElements());
+        assertEquals(older.getId(), byBorrowDate.getContent().get(0).getId());
+        assertEquals("Harry Potter", byBorrowDate.getContent().get(0).getBook().getTitle());
+        assertEquals("member@gmail.com", byBorrowDate.getContent().get(0).getMember().getEmail());
+
+        Page<BorrowingRecord> byDueDate = borrowingRecordService.getBorrowingRecordByReturnDate(oldest.getReturnDate().toLocalDate().atStartOfDay(), 0, 10, "ASC", "id");
+        assertEquals(List.of(oldest.getId()), byDueDate.getContent().stream().map(BorrowingRecord::getId).toList());
+
+        Page<BorrowingRecord> byMember = borrowingRecordService.getBorrowingRecordByMemberEmail("member@gmail.com", 0, 2, "DESC", "borrowDate");
+        assertEquals(5, byMember.getTotalElements());
+        assertEquals(List.of(recent.getId()), byMember.getContent().stream().limit(1).map(BorrowingRecord::getId).toList());
+        Page<BorrowingRecord> lastPage = borrowingRecordService.getBorrowingRecordByMemberEmail("member@gmail.com", 2, 2, "DESC", "borrowDate");
+        assertEquals(List.of(oldest.getId()), lastPage.getContent().stream().map(BorrowingRecord::getId).toList());
+        assertNotNull(old);
+    }
+
+    @Test
+    void getBorrowingRecordsBorrowedBetween_ShouldSkipSegmentsOutsideTheRange() {
+        loan(NOW.minusYears(3), NOW.minusYears(3).plusDays(10));
+        loan(NOW.minusYears(3).plusDays(1), NOW.minusYears(3).plusDays(11));
+        loan(NOW.minusYears(2), NOW.minusYears(2).plusDays(10));
+        loanArchiveService.archive(NOW);
+        double skipped = meterRegistry.counter("library.loan-archive.segments.skipped").count();
+        double read = meterRegistry.counter("library.loan-archive.segments.read").count();
+
+        Page<BorrowingRecord> window = borrowingRecordService.getBorrowingRecordsBorrowedBetween(
+                NOW.minusYears(2).minusDays(1), NOW.minusYears(2).plusDays(1), 0, 10, "ASC", "id");
+
+        assertEquals(1, window.getTotalElements());
+        assertEquals(1, meterRegistry.counter("library.loan-archive.segments.read").count() - read);
+        assertEquals(1, meterRegistry.counter("library.loan-archive.segments.skipped").count() - skipped);
+    }
+
+    @Test
+    void getBorrowingRecordsBorrowedBetween_ShouldOnlyOpenTheSegmentsThePageReaches() {
+        BorrowingRecord first = loan(NOW.minusYears(3), NOW.minusYears(3).plusDays(10));
+        loan(NOW.minusYears(3).plusDays(1), NOW.minusYears(3).plusDays(11));
+        loan(NOW.minusYears(2), NOW.minusYears(2).plusDays(10));
+        loan(NOW.minusYears(2).plusDays(1), NOW.minusYears(2).plusDays(11));
+        loanArchiveService.archive(NOW);
+        double read = meterRegistry.counter("library.loan-archive.segments.read").count();
+
+        Page<BorrowingRecord> page = borrowingRecordService.getBorrowingRecordsBorrowedBetween(
+                NOW.minusYears(4), NOW.minusYears(1), 0, 1, "ASC", "borrowDate");
+
+        assertEquals(List.of(first.getId()), page.getContent().stream().map(BorrowingRecord::getId).toList());
+        assertEquals(4, page.getTotalElements());
+        assertEquals(1, meterRegistry.counter("library.loan-archive.segments.read").count() - read);      //the later one is counted from the manifest
+    }
+
+    @Test
+    void afterSingletonsInstantiated_ShouldThrowAwayStagedSegmentsWithoutAManifestRow() throws IOException {
+        Path staged = archiveDirectory.resolve("loans-42" + LoanSegment.EXTENSION + ".tmp");
+        Files.writeString(staged, "never committed");
+
+        loanArchiveService.afterSingletonsInstantiated();
+
+        assertFalse(Files.exists(staged));
+        assertEquals(0, loanArchiveService.findByMember(member.getId(), LoanOrder.of(Sort.by("id")), 10).total());
+    }
+
+    private BorrowingRecord loan(LocalDateTime borrowedAt, LocalDateTime returnedAt) {
+        return borrowingRecordRepository.save(BorrowingRecord.builder()
+                .member(member)
+                .book(book)
+                .requestedAt(borrowedAt)
+                .approvedAt(borrowedAt)
+                .borrowDate(borrowedAt)
+                .returnDate(borrowedAt.plusDays(14))
+                .returnedAt(returnedAt)
+                .isApproved(true)
+                .build());
+    }
+}
@@ -0,0 +1,150 @@
+package com.system.libraryManagementSystem.integration.service;
+
+import com.system.libraryManagementSystem.exception.BookUnavailableException;
+import com.system.libraryManagementSystem.exception.LoanLimitExceededException;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BookInventory;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.BorrowingRecordService;
+import com.system.libraryManagementSystem.service.LoanLimitService;
+import com.system.libraryManagementSystem.service.MemberService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//not @Transactional, the counters follow commits and rollbacks
+@SpringBootTest(properties = {"library.loan-limit.roles.member.max-loans=2", "library.loan-limit.roles.member.max-requests=1"})
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+@WithMockUser(username = "librarian", roles = "LIBRARIAN")
+class LoanLimitIntegrationTest {
+
+    @Autowired
+    private MemberService memberService;
+    @Autowired
+    private BorrowingRecordService borrowingRecordService;
+    @Autowired
+    private LoanLimitService loanLimitService;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private BookInventoryRepository bookInventoryRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    private Member member;
+    private List<Book> books;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        bookInventoryRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        books = new ArrayList<>();
+        for (String title : List.of("Philosopher's Stone", "Chamber of Secrets", "Prisoner of Azkaban")) {
+            books.add(bookRepository.save(Book.builder()
+                    .title(title)
+                    .genre("Fantasy")
+                    .publicationYear(1997)
+                    .author(author)
+                    .build()));
+        }
+        member = memberRepository.save(Member.builder()
+                .name("Member")
+                .email("member@gmail.com")
+                .password("12345member")
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+
+    @Test
+    void borrowBook_PastTheLimit_ShouldBeRefusedUntilALoanIsReturned() {
+        memberService.borrowBook(member.getId(), books.get(0).getId());
+        memberService.borrowBook(member.getId(), books.get(1).getId());
+
+        assertThrows(LoanLimitExceededException.class, () -> memberService.borrowBook(member.getId(), books.get(2).getId()));
+        assertFalse(borrowingRecordRepository.existsOpenLoan(member.getId(), books.get(2).getId()));
+
+        memberService.returnBook(member.getId(), books.get(0).getId());
+        memberService.borrowBook(member.getId(), books.get(2).getId());
+
+        assertTrue(borrowingRecordRepository.existsOpenLoan(member.getId(), books.get(2).getId()));
+    }
+
+    @Test
+    void pendingRequests_ShouldHoldAPlaceUnderTheLoanLimit() {
+        borrowingRecordService.saveNewBorrowingRecord(request(books.get(0)));
+
+        assertThrows(LoanLimitExceededException.class, () -> borrowingRecordService.saveNewBorrowingRecord(request(books.get(1))));      //one pending request at a time
+        memberService.borrowBook(member.getId(), books.get(1).getId());
+        assertThrows(LoanLimitExceededException.class, () -> memberService.borrowBook(member.getId(), books.get(2).getId()));
+        assertEquals(2, borrowingRecordRepository.count());
+    }
+
+    @Test
+    void borrowBook_RolledBack_ShouldNotCountAgainstTheLimit() {
+        bookInventoryRepository.save(new BookInventory(books.get(2).getId(), 1, 0));
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(BookUnavailableException.class, () -> memberService.borrowBook(member.getId(), books.get(2).getId()));
+        }
+
+        memberService.borrowBook(member.getId(), books.get(0).getId());
+        memberService.borrowBook(member.getId(), books.get(1).getId());
+        assertEquals(2, borrowingRecordRepository.count());
+    }
+
+    @Test
+    void reconcile_ShouldCorrectACounterThatDriftedFromTheLoanTable() {
+        memberService.borrowBook(member.getId(), books.get(0).getId());
+        memberService.borrowBook(member.getId(), books.get(1).getId());
+        borrowingRecordRepository.deleteAll();      //behind the counter's back
+
+        loanLimitService.reconcile();
+
+        memberService.borrowBook(member.getId(), books.get(2).getId());
+        assertTrue(borrowingRecordRepository.existsOpenLoan(member.getId(), books.get(2).getId()));
+    }
+
+    private BorrowingRecord request(Book book) {
+        return BorrowingRecord.builder()
+                .member(member)
+                .book(book)
+                .isApproved(false)
+                .build();
+    }
+}
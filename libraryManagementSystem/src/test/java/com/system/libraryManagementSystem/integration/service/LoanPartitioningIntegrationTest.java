@@ -0,0 +1,156 @@
+package com.system.libraryManagementSystem.integration.service;
+
+import com.system.libraryManagementSystem.config.LoanPartitioning;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//not @Transactional, partitions are changed with ddl that commits on its own
+@SpringBootTest(properties = {"library.loan-partition.enabled=true", "library.loan-partition.months-ahead=2", "library.loan-partition.retention-months=12"})
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class LoanPartitioningIntegrationTest {
+
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    @Autowired
+    private LoanPartitioning loanPartitioning;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    private Member member;
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        if (!partitions().isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE loan REMOVE PARTITIONING");
+        }
+
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = bookRepository.save(Book.builder()
+                .title("Harry Potter")
+                .genre("Fantasy")
+                .publicationYear(1997)
+                .author(author)
+                .build());
+        member = memberRepository.save(Member.builder()
+                .name("Member")
+                .email("member@gmail.com")
+                .password("12345member")
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+
+    @AfterEach
+    void dropDetachedMonths() {
+        jdbcTemplate.queryForList("SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME LIKE 'loan\\_p%'", String.class)
+                .forEach(table -> jdbcTemplate.execute("DROP TABLE " + table));
+    }
+
+    @Test
+    void start_ShouldPartitionTheLoanTableByMonthFromTheOldestLoan() {
+        YearMonth now = YearMonth.now();
+        loan(now.minusMonths(2).atDay(10).atTime(12, 0), LocalDateTime.now());
+
+        loanPartitioning.afterSingletonsInstantiated();
+
+        List<String> expected = new ArrayList<>();
+        for (YearMonth month = now.minusMonths(2); !month.isAfter(now.plusMonths(2)); month = month.plusMonths(1)) {
+            expected.add(NAME.format(month));
+        }
+        expected.add("pmax");
+        assertEquals(expected, partitions());
+        assertEquals(1, borrowingRecordRepository.count());
+    }
+
+    @Test
+    void rangeOnTheBorrowDate_ShouldOnlyReadItsMonth() {
+        loanPartitioning.afterSingletonsInstantiated();
+        YearMonth now = YearMonth.now();
+
+        String partitions = jdbcTemplate.queryForObject("EXPLAIN SELECT id FROM loan WHERE borrowed_at BETWEEN ? AND ?",
+                (row, rowNumber) -> row.getString("partitions"), now.atDay(1).atStartOfDay(), now.atEndOfMonth().atTime(23, 59, 59));
+
+        assertEquals(NAME.format(now), partitions);
+    }
+
+    @Test
+    void maintain_ShouldDetachReturnedMonthsPastTheRetentionAndKeepMonthsWithOpenLoans() {
+        YearMonth now = YearMonth.now();
+        YearMonth returnedMonth = now.minusMonths(24);
+        YearMonth openMonth = now.minusMonths(23);
+        loan(returnedMonth.atDay(5).atTime(10, 0), returnedMonth.atDay(20).atTime(10, 0));
+        loan(openMonth.atDay(5).atTime(10, 0), null);
+        loan(LocalDateTime.now(), null);
+
+        loanPartitioning.afterSingletonsInstantiated();     //partitions from the oldest loan, then retires what is past the retention
+
+        List<String> partitions = partitions();
+        assertFalse(partitions.contains(NAME.format(returnedMonth)));
+        assertTrue(partitions.contains(NAME.format(openMonth)));
+        assertEquals(2, borrowingRecordRepository.count());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM loan_" + NAME.format(returnedMonth), Integer.class));
+    }
+
+    private void loan(LocalDateTime borrowedAt, LocalDateTime returnedAt) {
+        borrowingRecordRepository.save(BorrowingRecord.builder()
+                .member(member)
+                .book(book)
+                .requestedAt(borrowedAt)
+                .approvedAt(borrowedAt)
+                .borrowDate(borrowedAt)
+                .returnDate(borrowedAt.plusDays(14))
+                .returnedAt(returnedAt)
+                .isApproved(true)
+                .build());
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() " +
+                "AND TABLE_NAME = 'loan' AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION", String.class);
+    }
+}
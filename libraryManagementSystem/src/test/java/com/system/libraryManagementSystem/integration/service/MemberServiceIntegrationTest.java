@@ -2,9 +2,11 @@ package com.system.libraryManagementSystem.integration.service;
 
 import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
 import com.system.libraryManagementSystem.service.MemberService;
 import jakarta.transaction.Transactional;
@@ -20,7 +22,8 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -41,6 +44,9 @@ class MemberServiceIntegrationTest {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
     @Autowired
     private MemberService memberService;
 
@@ -70,7 +76,7 @@ class MemberServiceIntegrationTest {
         member = Member.builder()
                 .name("Member")
                 .email("member@gmail.com")
-                .borrowedBooks(List.of(book))
+                .borrowedBooks(new ArrayList<>())
                 .password(passwordEncoder.encode("12345member"))
                 .roles(Set.of("ROLE_MEMBER"))
                 .isEnabled(true)
@@ -79,6 +85,15 @@ class MemberServiceIntegrationTest {
                 .isCredentialsNonExpired(true)
                 .build();
         memberRepository.save(member);
+        borrowingRecordRepository.save(BorrowingRecord.builder()       //open loan of the book, Member.borrowedBooks reads it from the ledger
+                .member(member)
+                .book(book)
+                .requestedAt(LocalDateTime.now())
+                .approvedAt(LocalDateTime.now())
+                .borrowDate(LocalDateTime.now())
+                .returnDate(LocalDateTime.now().plusDays(14))
+                .isApproved(true)
+                .build());
     }
 
     @WithMockUser(username = "Admin", roles = "ADMIN")
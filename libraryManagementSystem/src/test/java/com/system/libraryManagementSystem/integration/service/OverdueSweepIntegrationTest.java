@@ -0,0 +1,159 @@
+package com.system.libraryManagementSystem.integration.service;
+
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.model.SweepWatermark;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.repository.SweepWatermarkRepository;
+import com.system.libraryManagementSystem.service.OverdueSweepService;
+import com.system.libraryManagementSystem.service.OverdueSweepService.SweepResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//not @Transactional, every chunk of the sweep commits on its own
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class OverdueSweepIntegrationTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    @Autowired
+    private OverdueSweepService overdueSweepService;
+    @Autowired
+    private SweepWatermarkRepository sweepWatermarkRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    private Member member;
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        sweepWatermarkRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        Author author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book = bookRepository.save(Book.builder()
+                .title("Harry Potter")
+                .genre("Fantasy")
+                .publicationYear(1997)
+                .author(author)
+                .build());
+        member = memberRepository.save(Member.builder()
+                .name("Member")
+                .email("member@gmail.com")
+                .password("12345member")
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+    }
+
+    @Test
+    void sweep_ShouldMarkOnlyOpenLoansPastTheirDueDateAndChargeWholeDays() {
+        BorrowingRecord overdue = loan(NOW.minusDays(3).minusHours(2), null);
+        BorrowingRecord returned = loan(NOW.minusDays(3), NOW.minusDays(4));
+        BorrowingRecord notDue = loan(NOW.plusHours(12), null);
+
+        SweepResult result = overdueSweepService.sweep(NOW);
+
+        assertEquals(2, result.scanned());
+        assertEquals(1, result.detected());
+        assertEquals(1, result.charged());
+        BorrowingRecord charged = borrowingRecordRepository.findById(overdue.getId()).orElseThrow();
+        assertEquals(0, new BigDecimal("0.75").compareTo(charged.getFine()));
+        assertEquals(NOW.minusHours(2), charged.getFineAccruedUntil());
+        assertNull(borrowingRecordRepository.findById(returned.getId()).orElseThrow().getFine());
+        assertNull(borrowingRecordRepository.findById(notDue.getId()).orElseThrow().getFine());
+    }
+
+    @Test
+    void sweep_ShouldStartFromTheWatermarkOfTheLastRun() {
+        BorrowingRecord overdue = loan(NOW.minusDays(3).minusHours(2), null);
+        BorrowingRecord notDue = loan(NOW.plusHours(12), null);
+        overdueSweepService.sweep(NOW);
+
+        SweepResult next = overdueSweepService.sweep(NOW.plusDays(1));
+
+        assertEquals(1, next.scanned());        //only the loan that fell due since the last run
+        assertEquals(1, next.detected());
+        assertEquals(1, next.charged());        //a day more for the first loan, the second one is not a whole day late yet
+        assertEquals(0, new BigDecimal("1.00").compareTo(borrowingRecordRepository.findById(overdue.getId()).orElseThrow().getFine()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(borrowingRecordRepository.findById(notDue.getId()).orElseThrow().getFine()));
+        SweepWatermark watermark = sweepWatermarkRepository.findById(OverdueSweepService.WATERMARK).orElseThrow();
+        assertEquals(notDue.getReturnDate(), watermark.getPositionAt());
+        assertEquals(notDue.getId(), watermark.getPositionId());
+    }
+
+    @Test
+    void sweep_ShouldNotChargeMoreThanTheMaximumFine() {
+        BorrowingRecord overdue = loan(NOW.minusDays(200), null);
+
+        overdueSweepService.sweep(NOW);
+
+        assertEquals(0, new BigDecimal("20.00").compareTo(borrowingRecordRepository.findById(overdue.getId()).orElseThrow().getFine()));
+    }
+
+    @Test
+    void sweep_ShouldMarkALoanApprovedAfterTheWatermarkPassedItsDueDate() {
+        BorrowingRecord request = loan(NOW.minusDays(3), null);
+        request.setApproved(false);
+        request = borrowingRecordRepository.save(request);
+        overdueSweepService.sweep(NOW);     //walks past the pending request
+        request.setApproved(true);
+        borrowingRecordRepository.save(request);
+
+        SweepResult next = overdueSweepService.sweep(NOW.plusHours(1));
+
+        assertEquals(0, next.scanned());
+        assertEquals(1, next.detected());
+        assertEquals(1, next.charged());
+        assertEquals(0, new BigDecimal("0.75").compareTo(borrowingRecordRepository.findById(request.getId()).orElseThrow().getFine()));
+    }
+
+    private BorrowingRecord loan(LocalDateTime dueAt, LocalDateTime returnedAt) {
+        return borrowingRecordRepository.save(BorrowingRecord.builder()
+                .member(member)
+                .book(book)
+                .requestedAt(dueAt.minusDays(14))
+                .approvedAt(dueAt.minusDays(14))
+                .borrowDate(dueAt.minusDays(14))
+                .returnDate(dueAt)
+                .returnedAt(returnedAt)
+                .isApproved(true)
+                .build());
+    }
+}
@@ -0,0 +1,208 @@
+package com.system.libraryManagementSystem.integration.service;
+
+import com.system.libraryManagementSystem.exception.OpenLoanConflictException;
+import com.system.libraryManagementSystem.model.Author;
+import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BookInventory;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
+import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.model.MemberProfile;
+import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.MemberProfileRepository;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
+import com.system.libraryManagementSystem.service.TombstoneService.PurgeResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//not @Transactional, the purge commits chunk by chunk
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class TombstoneIntegrationTest {
+
+    @Autowired
+    private TombstoneService tombstoneService;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private BookInventoryRepository bookInventoryRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberProfileRepository memberProfileRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Author author;
+    private Book book1;
+    private Book book2;
+    private Member member;
+    private MemberProfile memberProfile;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        tombstoneService.purge();
+        bookInventoryRepository.deleteAll();
+        memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+
+        author = authorRepository.save(Author.builder()
+                .name("J.K. Rowling")
+                .biography("Famous author")
+                .publishedBooks(new ArrayList<>())
+                .build());
+        book1 = bookRepository.save(Book.builder().title("Harry Potter").genre("Fantasy").publicationYear(1997).author(author).build());
+        book2 = bookRepository.save(Book.builder().title("The Casual Vacancy").genre("Drama").publicationYear(2012).author(author).build());
+        bookInventoryRepository.save(new BookInventory(book1.getId(), 2, 2));
+        member = memberRepository.save(member("member@gmail.com"));
+        memberProfile = memberProfileRepository.save(MemberProfile.builder()
+                .phoneNumber("09123456789")
+                .address("Manila")
+                .dateOfBirth(LocalDate.of(2000, 1, 1))
+                .member(member)
+                .build());
+    }
+
+    @Test
+    void deleteAuthor_ShouldHideTheAuthorAndItsBooksUntilThePurgeRemovesThem() {
+        assertEquals(new Deleted(1, 2, 0, 0), tombstoneService.deleteAuthor(author.getId()));
+
+        assertTrue(authorRepository.findById(author.getId()).isEmpty());
+        assertTrue(bookRepository.findById(book1.getId()).isEmpty());
+        assertEquals(0, bookRepository.count());
+        assertEquals(2, count("book"));     //flagged, not deleted
+        assertEquals(Deleted.NOTHING, tombstoneService.deleteAuthor(author.getId()));
+
+        PurgeResult result = tombstoneService.purge();
+
+        assertEquals(new PurgeResult(2, 0, 0, 1), result);
+        assertEquals(0, count("book"));
+        assertEquals(0, count("author"));
+        assertFalse(bookInventoryRepository.existsById(book1.getId()));
+    }
+
+    @Test
+    void deleteBook_ShouldKeepTheAuthorAndItsOtherBooks() {
+        assertEquals(new Deleted(0, 1, 0, 0), tombstoneService.deleteBook(book1.getId()));
+        tombstoneService.purge();
+
+        Author remaining = authorRepository.findById(author.getId()).orElseThrow();
+        assertEquals(1, remaining.getPublishedBooks().size());
+        assertEquals(book2.getId(), remaining.getPublishedBooks().get(0).getId());
+        assertEquals(1, count("book"));
+        assertFalse(bookInventoryRepository.existsById(book1.getId()));
+    }
+
+    @Test
+    void deleteMember_ShouldHideTheProfileWithTheMemberAndFreeTheEmailForANewMember() {
+        assertEquals(new Deleted(0, 0, 1, 1), tombstoneService.deleteMember(member.getId()));
+
+        assertTrue(memberRepository.findByEmail(member.getEmail()).isEmpty());
+        assertTrue(memberProfileRepository.findById(memberProfile.getId()).isEmpty());
+        assertEquals(1, count("member_profile"));
+
+        tombstoneService.purgeMemberWithEmail(member.getEmail());       //what registration does before saving
+        Member registeredAgain = memberRepository.save(member(member.getEmail()));
+
+        assertNotEquals(member.getId(), registeredAgain.getId());
+        assertEquals(1, count("member"));
+        assertEquals(0, count("member_profile"));
+        assertEquals(new PurgeResult(0, 0, 0, 0), tombstoneService.purge());
+    }
+
+    @Test
+    void deleteBookAndMember_WhenALoanIsOpen_ShouldRefuseUntilItIsReturned() {
+        BorrowingRecord loan = borrowingRecordRepository.save(loan(null));
+
+        assertThrows(OpenLoanConflictException.class, () -> tombstoneService.deleteBook(book1.getId()));
+        assertThrows(OpenLoanConflictException.class, () -> tombstoneService.deleteAuthor(author.getId()));
+        assertThrows(OpenLoanConflictException.class, () -> tombstoneService.deleteMember(member.getId()));
+        assertTrue(bookRepository.findById(book1.getId()).isPresent());
+        assertTrue(memberRepository.findById(member.getId()).isPresent());
+
+        loan.setReturnedAt(LocalDateTime.now());
+        borrowingRecordRepository.save(loan);
+
+        assertEquals(new Deleted(0, 1, 0, 0), tombstoneService.deleteBook(book1.getId()));
+        assertEquals(new Deleted(0, 0, 1, 1), tombstoneService.deleteMember(member.getId()));
+    }
+
+    @Test
+    void purge_ShouldKeepTheClosedLoansOfTheDeletedBookAndMemberReadable() {
+        BorrowingRecord loan = borrowingRecordRepository.save(loan(LocalDateTime.now()));
+        tombstoneService.deleteBook(book1.getId());
+        tombstoneService.deleteMember(member.getId());
+        tombstoneService.purge();
+
+        BorrowingRecord kept = borrowingRecordRepository.findById(loan.getId()).orElseThrow();
+
+        assertNull(kept.getBook());
+        assertNull(kept.getMember());
+    }
+
+    @Test
+    void deleteMemberProfile_ShouldLeaveTheMember() {
+        assertEquals(new Deleted(0, 0, 0, 1), tombstoneService.deleteMemberProfile(memberProfile.getId()));
+
+        assertFalse(memberProfileRepository.existsByMemberId(member.getId()));
+        assertEquals(new PurgeResult(0, 1, 0, 0), tombstoneService.purge());
+        assertTrue(memberRepository.findById(member.getId()).isPresent());
+        assertEquals(0, count("member_profile"));
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private BorrowingRecord loan(LocalDateTime returnedAt) {
+        LocalDateTime borrowed = LocalDateTime.now().minusDays(3);
+        return BorrowingRecord.builder()
+                .member(member)
+                .book(book1)
+                .requestedAt(borrowed)
+                .approvedAt(borrowed)
+                .borrowDate(borrowed)
+                .returnDate(borrowed.plusDays(14))
+                .returnedAt(returnedAt)
+                .isApproved(true)
+                .build();
+    }
+
+    private static Member member(String email) {
+        return Member.builder()
+                .name("Member")
+                .email(email)
+                .password("12345member")
+                .roles(Set.of("ROLE_MEMBER"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build();
+    }
+}
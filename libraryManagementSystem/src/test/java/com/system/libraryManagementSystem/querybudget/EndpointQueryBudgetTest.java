@@ -0,0 +1,211 @@
+package com.system.libraryManagementSystem.querybudget;
+
+import com.system.libraryManagementSystem.model.*;
+import com.system.libraryManagementSystem.repository.*;
+import com.system.libraryManagementSystem.security.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//every endpoint declares how many statements a full page may cost, an N+1 regression fails the build
+//authenticated endpoints include 2 statements for the jwt filter (member, roles)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+class EndpointQueryBudgetTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private AuthorRepository authorRepository;
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberProfileRepository memberProfileRepository;
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Author author;
+    private Book book;
+    private String adminToken;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE + 1; i++) {
+            Author savedAuthor = authorRepository.save(Author.builder()
+                    .name("Author " + i)
+                    .biography("Biography of the author number " + i)
+                    .publishedBooks(new ArrayList<>())
+                    .build());
+            for (int j = 0; j < 3; j++) {
+                books.add(new Book(null, "Book " + i + "-" + j, "Fantasy", 1990 + j, savedAuthor, new ArrayList<>()));
+            }
+        }
+        bookRepository.saveAll(books);
+        author = books.get(0).getAuthor();
+        book = books.get(0);
+
+        for (int i = 0; i < PAGE_SIZE + 1; i++) {
+            Member member = memberRepository.save(Member.builder()
+                    .name("Member " + i)
+                    .email("member" + i + "@gmail.com")
+                    .password(passwordEncoder.encode("12345member"))
+                    .roles(Set.of("ROLE_MEMBER"))
+                    .isEnabled(true)
+                    .isAccountNonExpired(true)
+                    .isAccountNonLocked(true)
+                    .isCredentialsNonExpired(true)
+                    .borrowedBooks(new ArrayList<>())
+                    .build());
+            for (Book borrowed : List.of(books.get(i * 3), books.get(i * 3 + 1))) {       //two open loans per member in the ledger
+                borrowingRecordRepository.save(BorrowingRecord.builder()
+                        .book(borrowed)
+                        .member(member)
+                        .requestedAt(LocalDateTime.now().minusDays(2))
+                        .approvedAt(LocalDateTime.now().minusDays(2))
+                        .borrowDate(LocalDateTime.now().minusDays(2))
+                        .returnDate(LocalDateTime.now().plusDays(12))
+                        .isApproved(true)
+                        .build());
+            }
+            memberProfileRepository.save(MemberProfile.builder()
+                    .phoneNumber("0912345678" + i)
+                    .address("Street number " + i + ", Some City")
+                    .dateOfBirth(LocalDate.of(1990, 1, 1))
+                    .member(member)
+                    .build());
+            borrowingRecordRepository.save(BorrowingRecord.builder()
+                    .book(books.get(i * 3))
+                    .member(member)
+                    .borrowDate(LocalDateTime.now().minusDays(1))
+                    .returnDate(LocalDateTime.now().plusDays(6))
+                    .build());
+        }
+
+        Member admin = memberRepository.save(Member.builder()
+                .name("Admin")
+                .email("admin@gmail.com")
+                .password(passwordEncoder.encode("12345admin"))
+                .roles(Set.of("ROLE_ADMIN"))
+                .isEnabled(true)
+                .isAccountNonExpired(true)
+                .isAccountNonLocked(true)
+                .isCredentialsNonExpired(true)
+                .borrowedBooks(new ArrayList<>())
+                .build());
+        adminToken = jwtService.getToken(admin.getEmail());
+    }
+
+    @QueryBudget(2)     //page with joined authors + count
+    @Test
+    void getAllBooks_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/books").param("size", String.valueOf(PAGE_SIZE)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(PAGE_SIZE)));
+    }
+
+    @QueryBudget(1)
+    @Test
+    void getBookById_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/books/{id}", book.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.authorName").value(author.getName()));
+    }
+
+    @QueryBudget(3)     //page + count + one batch for the published books of the page
+    @Test
+    void getAllAuthors_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/authors").param("size", String.valueOf(PAGE_SIZE)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(PAGE_SIZE)))
+                .andExpect(jsonPath("$.content[0].publishedBooks", hasSize(3)));
+    }
+
+    @QueryBudget(1)
+    @Test
+    void getAuthorById_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/authors/{id}", author.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.publishedBooks", hasSize(3)));
+    }
+
+    @QueryBudget(3)     //author ids page + count + authors with their matching books for those ids
+    @Test
+    void getAuthorsByPublishedBookTitle_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/authors/published-book")
+                        .param("bookTitle", "Book")
+                        .param("size", String.valueOf(PAGE_SIZE)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(PAGE_SIZE)))
+                .andExpect(jsonPath("$.totalElements").value(PAGE_SIZE + 1))
+                .andExpect(jsonPath("$.content[0].publishedBooks", hasSize(3)));
+    }
+
+    @QueryBudget(7)     //filter (2) + page + count + roles batch + borrowed books batch + their authors
+    @Test
+    void getAllMembers_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/members")
+                        .param("size", String.valueOf(PAGE_SIZE))
+                        .header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(PAGE_SIZE)))
+                .andExpect(jsonPath("$.content[0].borrowedBooks", hasSize(2)));
+    }
+
+    @QueryBudget(6)     //filter (2) + page with book and member + count + authors batch + roles batch
+    @Test
+    void getAllBorrowingRecords_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/borrowing-record")
+                        .param("size", String.valueOf(PAGE_SIZE))
+                        .header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(PAGE_SIZE)));
+    }
+
+    @QueryBudget(5)     //filter (2) + page with members + count + roles batch
+    @Test
+    void getAllMemberProfiles_ShouldStayWithinQueryBudget() throws Exception {
+        mockMvc.perform(get("/member-profile")
+                        .param("size", String.valueOf(PAGE_SIZE))
+                        .header("Authorization", "Bearer " + adminToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(PAGE_SIZE)));
+    }
+}
@@ -0,0 +1,20 @@
+package com.system.libraryManagementSystem.querybudget;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maximum number of SQL statements a test method may execute, counted from Hibernate's statistics
+ * (requires hibernate.generate_statistics=true, see application-test.properties).
+ * Statements issued in @BeforeEach are not counted, only the test method body.
+ */
+@Target({ ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(QueryBudgetExtension.class)
+public @interface QueryBudget {
+    int value();
+}
@@ -0,0 +1,38 @@
+package com.system.libraryManagementSystem.querybudget;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//fails the test (and the build) when the annotated method executes more statements than its @QueryBudget
+public class QueryBudgetExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        Statistics statistics = statistics(context);
+        assertTrue(statistics.isStatisticsEnabled(), "@QueryBudget needs spring.jpa.properties.hibernate.generate_statistics=true");
+        statistics.clear();
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        QueryBudget budget = context.getRequiredTestMethod().getAnnotation(QueryBudget.class);
+        long executed = statistics(context).getPrepareStatementCount();
+
+        assertTrue(executed <= budget.value(),
+                context.getDisplayName() + " executed " + executed + " statements, its query budget is " + budget.value());
+    }
+
+    private Statistics statistics(ExtensionContext context) {
+        return SpringExtension.getApplicationContext(context)
+                .getBean(EntityManagerFactory.class)
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+    }
+}
@@ -0,0 +1,51 @@
+package com.system.libraryManagementSystem.repository.support;
+
+import com.system.libraryManagementSystem.model.Author;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoPhasePaginationTest {
+
+    private final PageRequest pageRequest = PageRequest.of(1, 3, Sort.by(Sort.Direction.DESC, "name"));
+
+    @Test
+    void fetch_ShouldKeepTheOrderAndTotalOfTheIdPage() {
+        Page<Long> idPage = new PageImpl<>(List.of(7L, 3L, 5L), pageRequest, 9);
+        Author author3 = Author.builder().id(3L).name("C").build();
+        Author author5 = Author.builder().id(5L).name("B").build();
+        Author author7 = Author.builder().id(7L).name("D").build();
+
+        Page<Author> result = TwoPhasePagination.fetch(idPage, ids -> List.of(author3, author5, author7, author3), Author::getId);
+
+        assertEquals(List.of(author7, author3, author5), result.getContent());
+        assertEquals(9, result.getTotalElements());
+        assertEquals(pageRequest, result.getPageable());
+    }
+
+    @Test
+    void fetch_WhenRootWasDeletedBetweenPhases_ShouldSkipIt() {
+        Page<Long> idPage = new PageImpl<>(List.of(1L, 2L), pageRequest, 5);
+        Author author2 = Author.builder().id(2L).name("B").build();
+
+        Page<Author> result = TwoPhasePagination.fetch(idPage, ids -> List.of(author2), Author::getId);
+
+        assertEquals(List.of(author2), result.getContent());
+    }
+
+    @Test
+    void fetch_WhenIdPageIsEmpty_ShouldNotRunSecondPhase() {
+        Page<Long> idPage = new PageImpl<>(List.of(), pageRequest, 3);
+
+        Page<Author> result = TwoPhasePagination.fetch(idPage, ids -> fail("graph must not be loaded"), Author::getId);
+
+        assertTrue(result.getContent().isEmpty());
+        assertEquals(3, result.getTotalElements());
+    }
+}
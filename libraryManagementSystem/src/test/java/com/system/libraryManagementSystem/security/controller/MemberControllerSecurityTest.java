@@ -22,6 +22,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -62,8 +63,10 @@ class MemberControllerSecurityTest {
             @Autowired BookRepository bookRepository,
             @Autowired AuthorRepository authorRepository,
             @Autowired MemberRepository memberRepository,
+            @Autowired BorrowingRecordRepository borrowingRecordRepository,
             @Autowired JwtService jwtService
     ) {
+        borrowingRecordRepository.deleteAll();
         memberRepository.deleteAll();
         authorRepository.deleteAll();
         bookRepository.deleteAll();
@@ -122,13 +125,21 @@ class MemberControllerSecurityTest {
                 .email("regular@gmail.com")
                 .password("12345regular")
                 .roles(Set.of("ROLE_MEMBER"))
-                .borrowedBooks(List.of(borrowedBook))
                 .isEnabled(true)
                 .isAccountNonExpired(true)
                 .isAccountNonLocked(true)
                 .isCredentialsNonExpired(true)
                 .build();
         memberRepository.saveAll(List.of(member, librarian, admin, regularMember));
+        borrowingRecordRepository.save(BorrowingRecord.builder()       //regularMember has borrowedBook on loan
+                .member(regularMember)
+                .book(borrowedBook)
+                .requestedAt(LocalDateTime.now())
+                .approvedAt(LocalDateTime.now())
+                .borrowDate(LocalDateTime.now())
+                .returnDate(LocalDateTime.now().plusDays(14))
+                .isApproved(true)
+                .build());
     }
 
 
@@ -197,7 +208,7 @@ class MemberControllerSecurityTest {
     @Test
     void testGetMemberByBorrowedBookTitle_WhenUnauthenticated_ShouldReturn403() throws Exception {
         mockMvc.perform(get("/members/book-title")
-                        .param("bookTitle", regularMember.getBorrowedBooks().get(0).getTitle()))
+                        .param("bookTitle", borrowedBook.getTitle()))
                 .andExpect(status().isForbidden());
     }
 
@@ -210,7 +221,7 @@ class MemberControllerSecurityTest {
     void testGetMemberByBorrowedBookTitle_WhenAuthorizedOrUnauthorized_ShouldReturnExpectedStatus(String email, int expectedStatus) throws Exception {
         String token = jwtService.getToken(email);
         mockMvc.perform(get("/members/book-title")
-                        .param("bookTitle", regularMember.getBorrowedBooks().get(0).getTitle())
+                        .param("bookTitle", borrowedBook.getTitle())
                         .header("Authorization", "Bearer " + token))
                 .andExpect(status().is(expectedStatus));
     }
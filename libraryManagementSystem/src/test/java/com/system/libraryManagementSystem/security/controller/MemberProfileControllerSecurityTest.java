@@ -56,8 +56,8 @@ class MemberProfileControllerSecurityTest {
             @Autowired MemberRepository memberRepository,
             @Autowired JwtService jwtService
     ) {
-        memberRepository.deleteAll();
         memberProfileRepository.deleteAll();
+        memberRepository.deleteAll();
 
         member = Member.builder()
                 .name("Member")
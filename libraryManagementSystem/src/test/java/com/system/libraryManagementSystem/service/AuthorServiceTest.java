@@ -4,6 +4,7 @@ import com.system.libraryManagementSystem.exception.AuthorNotFoundException;
 import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.repository.AuthorRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -33,6 +34,9 @@ class AuthorServiceTest {
     @Mock //create a mock object so we can use the repo
     private AuthorRepository authorRepository;
 
+    @Mock
+    private TombstoneService tombstoneService;
+
     @InjectMocks  //whatever the dependencies this class needed(the repository) will be injected, and this service will become mock object so we can use it too
     private AuthorService authorService;
 
@@ -185,13 +189,16 @@ class AuthorServiceTest {
 
     @Test
     void deleteAuthorById_WhenIdExists_ShouldDeleteSuccessfully() {
-        doNothing().when(authorRepository).deleteById(1L);
+        when(tombstoneService.deleteAuthor(1L)).thenReturn(new Deleted(1, 2, 0, 0));
         when(authorRepository.findById(1L)).thenReturn(Optional.empty());
 
-        authorService.deleteAuthorById(1L);
+        Deleted result = authorService.deleteAuthorById(1L);
+
+        assertEquals(new Deleted(1, 2, 0, 0), result);      //the author and its books
 
         assertThrows(AuthorNotFoundException.class, () -> authorService.getAuthorById(1L));
-        verify(authorRepository,times(1)).deleteById(author1.getId());
+        verify(tombstoneService, times(1)).deleteAuthor(author1.getId());
+        verify(authorRepository, never()).deleteById(author1.getId());
     }
 
     @Test
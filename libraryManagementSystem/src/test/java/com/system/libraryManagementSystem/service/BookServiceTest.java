@@ -5,6 +5,7 @@ import com.system.libraryManagementSystem.exception.BookNotFoundException;
 import com.system.libraryManagementSystem.model.Author;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -30,6 +31,9 @@ class BookServiceTest {
     @Mock
     private BookRepository bookRepository;
 
+    @Mock
+    private TombstoneService tombstoneService;
+
     @InjectMocks
     private BookService bookService;
 
@@ -153,12 +157,13 @@ class BookServiceTest {
 
     @Test
     void deleteBookById() {
-        doNothing().when(bookRepository).deleteById(book1.getId());
+        when(tombstoneService.deleteBook(book1.getId())).thenReturn(new Deleted(0, 1, 0, 0));
         when(bookRepository.findById(book1.getId())).thenReturn(Optional.empty());
 
-        bookService.deleteBookById(author1.getId());
+        bookService.deleteBookById(book1.getId());
 
         assertThrows(BookNotFoundException.class, () -> bookService.getBookById(book1.getId()));
-        verify(bookRepository,times(1)).deleteById(author1.getId());
+        verify(tombstoneService, times(1)).deleteBook(book1.getId());
+        verify(bookRepository, never()).deleteById(book1.getId());     //purged later
     }
 }
\ No newline at end of file
@@ -1,22 +1,41 @@
 package com.system.libraryManagementSystem.service;
 
+import com.system.libraryManagementSystem.dto.ApprovalOutcomeDTO;
+import com.system.libraryManagementSystem.dto.BatchApprovalRequestDTO;
+import com.system.libraryManagementSystem.dto.BatchApprovalResultDTO;
+import com.system.libraryManagementSystem.exception.BookNotFoundException;
 import com.system.libraryManagementSystem.exception.BorrowingRecordNotFound;
+import com.system.libraryManagementSystem.exception.InvalidApprovalFilterException;
+import com.system.libraryManagementSystem.exception.InvalidSortFieldException;
 import com.system.libraryManagementSystem.model.Book;
 import com.system.libraryManagementSystem.model.BorrowingRecord;
 import com.system.libraryManagementSystem.model.Member;
+import com.system.libraryManagementSystem.repository.BookRepository;
 import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository.ApprovalCandidate;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository.LoanHolding;
+import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.LoanArchiveService.Matches;
+import com.system.libraryManagementSystem.service.support.LoanOrder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.*;
 import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,9 +47,36 @@ class BorrowingRecordServiceTest {
     @Mock
     private BorrowingRecordRepository borrowingRecordRepository;
 
+    @Mock
+    private MemberRepository memberRepository;
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private InventoryService inventoryService;
+
     @Mock
     private Authentication authentication;
 
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache cache;
+
+    @Mock
+    private DueDateReminderService dueDateReminderService;
+
+    @Mock
+    private LoanLimitService loanLimitService;
+
+    @Mock
+    private LoanArchiveService loanArchiveService;
+
+    @Mock
+    private ReservationService reservationService;
+
     @InjectMocks
     private BorrowingRecordService borrowingRecordService;
 
@@ -126,6 +172,7 @@ class BorrowingRecordServiceTest {
                 .member(member)
                 .build();
 
+        when(memberRepository.lockLive(List.of(1L))).thenReturn(List.of(1L));
         when(borrowingRecordRepository.save(any(BorrowingRecord.class))).thenReturn(newBorrowingRecord);
 
         // Act
@@ -137,6 +184,72 @@ class BorrowingRecordServiceTest {
         verify(borrowingRecordRepository, times(1)).save(newBorrowingRecord);
     }
 
+    @Test
+    void saveNewBorrowingRecord_WhenApproved_ShouldTakeACopy() {
+        BorrowingRecord newLoan = BorrowingRecord.builder()
+                .member(member)
+                .book(Book.builder().id(5L).build())
+                .isApproved(true)
+                .build();
+        when(memberRepository.lockLive(List.of(1L))).thenReturn(List.of(1L));
+        when(bookRepository.lockLive(List.of(5L))).thenReturn(List.of(5L));
+        when(borrowingRecordRepository.save(newLoan)).thenReturn(newLoan);
+
+        borrowingRecordService.saveNewBorrowingRecord(newLoan);
+
+        verify(loanLimitService, times(1)).openLoan(1L);
+        verify(inventoryService, times(1)).checkout(5L);
+        verify(borrowingRecordRepository, times(1)).save(newLoan);
+        verify(dueDateReminderService, times(1)).trackAfterCommit(newLoan.getId(), newLoan.getReturnDate());
+    }
+
+    @Test
+    void updateBorrowingRecord_WhenApprovalIsWithdrawn_ShouldGiveTheCopyBack() {
+        Book book = Book.builder().id(5L).build();
+        BorrowingRecord openLoan = BorrowingRecord.builder().id(4L).member(member).book(book).isApproved(true).build();
+        BorrowingRecord withdrawn = BorrowingRecord.builder().id(4L).member(member).book(book).isApproved(false).build();
+
+        when(borrowingRecordRepository.findById(4L)).thenReturn(Optional.of(openLoan));
+
+        borrowingRecordService.updateBorrowingRecord(4L, withdrawn);
+
+        verify(inventoryService, never()).checkout(anyLong());
+        verify(reservationService, times(1)).returnCopy(5L);        //a hold for the next in line or back on the shelf
+        assertFalse(openLoan.isApproved());
+    }
+
+    @Test
+    void saveNewBorrowingRecord_WhenTheBookWasDeleted_ShouldThrowBookNotFoundException() {
+        BorrowingRecord newLoan = BorrowingRecord.builder()
+                .member(member)
+                .book(Book.builder().id(5L).build())
+                .isApproved(true)
+                .build();
+        when(memberRepository.lockLive(List.of(1L))).thenReturn(List.of(1L));
+        when(bookRepository.lockLive(List.of(5L))).thenReturn(List.of());       //flagged by a delete that committed first
+
+        assertThrows(BookNotFoundException.class, () -> borrowingRecordService.saveNewBorrowingRecord(newLoan));
+
+        verifyNoInteractions(inventoryService, loanLimitService);
+        verify(borrowingRecordRepository, never()).save(any(BorrowingRecord.class));
+    }
+
+    @Test
+    void updateBorrowingRecord_WhenTheBookOfAnOpenLoanChanges_ShouldMoveTheCopy() {
+        BorrowingRecord openLoan = BorrowingRecord.builder().id(4L).member(member).book(Book.builder().id(5L).build()).isApproved(true).build();
+        BorrowingRecord moved = BorrowingRecord.builder().id(4L).member(member).book(Book.builder().id(6L).build()).isApproved(true).build();
+
+        when(borrowingRecordRepository.findById(4L)).thenReturn(Optional.of(openLoan));
+        when(bookRepository.lockLive(List.of(6L))).thenReturn(List.of(6L));
+
+        borrowingRecordService.updateBorrowingRecord(4L, moved);
+
+        verify(memberRepository, never()).lockLive(any());      //the member stays, only the new book is locked
+        verify(inventoryService, times(1)).checkout(6L);
+        verify(reservationService, times(1)).returnCopy(5L);
+        assertEquals(6L, openLoan.getBook().getId());
+    }
+
     @Test
     void updateBorrowingRecord_WhenRecordIsChanged_ShouldUpdateSuccessfully() {
         Book book = Book.builder()
@@ -205,6 +318,36 @@ class BorrowingRecordServiceTest {
         verify(borrowingRecordRepository, times(1)).deleteById(record1.getId());
     }
 
+    @Test
+    void deleteBorrowingRecordById_WhenLoanIsOpen_ShouldGiveTheCopyBack() {
+        when(borrowingRecordRepository.findLoanHoldingById(4L)).thenReturn(Optional.of(holding(5L, true, null)));
+
+        borrowingRecordService.deleteBorrowingRecordById(4L);
+
+        verify(reservationService, times(1)).returnCopy(5L);
+        verify(loanLimitService, times(1)).forget(1L);
+        verify(borrowingRecordRepository, times(1)).deleteById(4L);
+    }
+
+    @Test
+    void deleteBorrowingRecordById_WhenLoanWasReturned_ShouldNotCheckInAgain() {
+        when(borrowingRecordRepository.findLoanHoldingById(4L)).thenReturn(Optional.of(holding(5L, true, LocalDateTime.now())));
+
+        borrowingRecordService.deleteBorrowingRecordById(4L);
+
+        verify(reservationService, never()).returnCopy(anyLong());
+        verify(borrowingRecordRepository, times(1)).deleteById(4L);
+    }
+
+    private static LoanHolding holding(Long bookId, boolean approved, LocalDateTime returnedAt) {
+        return new LoanHolding() {
+            public Long getMemberId() { return 1L; }
+            public Long getBookId() { return bookId; }
+            public Boolean getApproved() { return approved; }
+            public LocalDateTime getReturnedAt() { return returnedAt; }
+        };
+    }
+
     @Test
     void deleteBorrowingRecordById_ShouldNotThrowException_WhenRecordDoesNotExist() {
         doNothing().when(borrowingRecordRepository).deleteById(99L);
@@ -216,6 +359,7 @@ class BorrowingRecordServiceTest {
 
     @Test
     void approveBorrowRequest_WhenIdExist_ShouldSetApproveToTrue() {
+        record1.setBook(Book.builder().id(1L).title("Spring Boot in Action").build());
         when(borrowingRecordRepository.findById(record1.getId())).thenReturn(Optional.of(record1));
         when(borrowingRecordRepository.save(any(BorrowingRecord.class))).thenReturn(record1);
 
@@ -225,8 +369,35 @@ class BorrowingRecordServiceTest {
 
         assertNotNull(result);
         assertTrue(record1.isApproved());
+        assertNotNull(record1.getApprovedAt());
+        verify(inventoryService, times(1)).checkout(1L);        //an approved request is an open loan and takes a copy
         verify(borrowingRecordRepository, times(2)).findById(record1.getId());
         verify(borrowingRecordRepository, times(1)).save(record1);
+        verify(dueDateReminderService, times(1)).trackAfterCommit(record1.getId(), record1.getReturnDate());     //its due date may be in a window already read
+    }
+
+    @Test
+    void approveBorrowRequest_WhenTheMemberWasDeleted_ShouldStillApprove() {
+        record1.setBook(Book.builder().id(1L).title("Spring Boot in Action").build());
+        record1.setMember(null);
+        when(borrowingRecordRepository.findById(record1.getId())).thenReturn(Optional.of(record1));
+
+        assertDoesNotThrow(() -> borrowingRecordService.approveBorrowRequest(record1.getId()));
+
+        assertTrue(record1.isApproved());
+        verify(borrowingRecordRepository, times(1)).save(record1);
+        verify(loanLimitService, never()).requestsApproved(any(), anyInt());
+    }
+
+    @Test
+    void approveBorrowRequest_WhenAlreadyApproved_ShouldNotTakeAnotherCopy() {
+        record1.setApproved(true);
+        when(borrowingRecordRepository.findById(record1.getId())).thenReturn(Optional.of(record1));
+
+        borrowingRecordService.approveBorrowRequest(record1.getId());
+
+        verify(inventoryService, never()).checkout(anyLong());
+        verify(borrowingRecordRepository, never()).save(any(BorrowingRecord.class));
     }
 
     @Test
@@ -241,6 +412,117 @@ class BorrowingRecordServiceTest {
         verify(borrowingRecordRepository, never()).save(record1);
     }
 
+    @Test
+    void approveBorrowRequests_ShouldApproveAsManyRequestsAsThereAreCopies() {
+        when(borrowingRecordRepository.lockForApproval(any())).thenReturn(List.of(
+                candidate(1L, 1L, false), candidate(2L, 1L, false), candidate(3L, 2L, true)));
+        when(inventoryService.lockAvailableCopies(List.of(1L))).thenReturn(Map.of(1L, 1));
+        when(cacheManager.getCache("borrowing_records")).thenReturn(cache);
+
+        BatchApprovalResultDTO result = borrowingRecordService.approveBorrowRequests(
+                BatchApprovalRequestDTO.builder().ids(List.of(1L, 2L, 3L, 99L)).build());
+
+        assertEquals(1, result.getApproved());
+        assertEquals(1, result.getUnavailable());
+        assertEquals(1, result.getAlreadyApproved());
+        assertEquals(1, result.getNotFound());
+        assertEquals(ApprovalOutcomeDTO.Outcome.APPROVED, result.getOutcomes().get(0).getOutcome());
+        assertEquals(ApprovalOutcomeDTO.Outcome.UNAVAILABLE, result.getOutcomes().get(1).getOutcome());
+        verify(borrowingRecordRepository, times(1)).approveAll(eq(List.of(1L)), any());
+        verify(inventoryService, times(1)).checkoutAll(List.of(1L), 1);
+        verify(cache, times(1)).evict(1L);
+        verify(inventoryService, never()).checkout(anyLong());
+        verify(dueDateReminderService, times(1)).trackAfterCommit(1L, LocalDate.of(2030, 1, 1).atStartOfDay());
+        verify(dueDateReminderService, never()).trackAfterCommit(eq(2L), any());
+    }
+
+    @Test
+    void approveBorrowRequests_WhenNothingIsPending_ShouldNotUpdateAnything() {
+        when(borrowingRecordRepository.lockForApproval(any())).thenReturn(List.of(candidate(1L, 1L, true)));
+
+        BatchApprovalResultDTO result = borrowingRecordService.approveBorrowRequests(
+                BatchApprovalRequestDTO.builder().ids(List.of(1L)).build());
+
+        assertEquals(1, result.getAlreadyApproved());
+        verify(borrowingRecordRepository, never()).approveAll(any(), any());
+        verifyNoInteractions(inventoryService, cacheManager);
+    }
+
+    @Test
+    void approveBorrowRequests_WithoutIdsOrAFilter_ShouldThrowInvalidApprovalFilterException() {
+        assertThrows(InvalidApprovalFilterException.class,
+                () -> borrowingRecordService.approveBorrowRequests(BatchApprovalRequestDTO.builder().ids(List.of()).build()));
+
+        verify(borrowingRecordRepository, never()).lockPendingForApproval(any(), any(), anyInt());
+        verifyNoInteractions(inventoryService);
+    }
+
+    @Test
+    void claimPendingRequests_ShouldClaimAtMostTheConfiguredNumberOfRequests() {
+        ReflectionTestUtils.setField(borrowingRecordService, "maxClaimSize", 5);
+        ReflectionTestUtils.setField(borrowingRecordService, "claimLease", Duration.ofMinutes(5));
+        when(borrowingRecordRepository.lockUnclaimed(any(), eq(5))).thenReturn(List.of(1L));
+        when(borrowingRecordRepository.findClaimedBy(eq("librarian"), any())).thenReturn(List.of(record1));
+        when(cacheManager.getCache("borrowing_records")).thenReturn(cache);
+
+        List<BorrowingRecord> result = borrowingRecordService.claimPendingRequests("librarian", 100);
+
+        assertEquals(List.of(record1), result);
+        verify(borrowingRecordRepository, times(1)).claim(eq(List.of(1L)), eq("librarian"), any());
+        verify(cache, times(1)).evict(1L);
+    }
+
+    @Test
+    void releaseClaim_WhenNotClaimedByTheLibrarian_ShouldThrowException() {
+        when(borrowingRecordRepository.releaseClaim(1L, "librarian")).thenReturn(0);
+
+        assertThrows(BorrowingRecordNotFound.class, () -> borrowingRecordService.releaseClaim(1L, "librarian"));
+    }
+
+    private static ApprovalCandidate candidate(Long id, Long bookId, boolean approved) {
+        return new ApprovalCandidate() {
+            public Long getId() { return id; }
+            public Long getBookId() { return bookId; }
+            public Long getMemberId() { return 1L; }
+            public Boolean getApproved() { return approved; }
+            public LocalDateTime getDueAt() { return LocalDate.of(2030, 1, 1).atStartOfDay(); }
+        };
+    }
+
+    @Test
+    void getBorrowingRecordByBorrowDate_WhenLoansAreArchived_ShouldMergeThemIntoThePage() {
+        LocalDateTime day = LocalDate.of(2020, 5, 4).atStartOfDay();
+        BorrowingRecord hotEarly = BorrowingRecord.builder().id(10L).member(member).borrowDate(day.plusHours(10)).build();
+        BorrowingRecord hotLate = BorrowingRecord.builder().id(12L).member(member).borrowDate(day.plusHours(12)).build();
+        BorrowingRecord archivedFirst = BorrowingRecord.builder().id(9L).member(member).borrowDate(day.plusHours(9)).build();
+        BorrowingRecord archivedMiddle = BorrowingRecord.builder().id(11L).member(member).borrowDate(day.plusHours(11)).build();
+        Sort sort = Sort.by(Sort.Direction.ASC, "borrowDate");
+
+        //no more archived rows than the end of the second page, in the order of the page
+        when(loanArchiveService.findBorrowedBetween(eq(day), eq(day.with(LocalTime.MAX)), any(LoanOrder.class), eq(4)))
+                .thenReturn(new Matches(List.of(archivedFirst, archivedMiddle), 2));
+        //the table is read up to the end of the second page
+        when(borrowingRecordRepository.findBorrowingRecordByBorrowDate(day, day.with(LocalTime.MAX), PageRequest.of(0, 4, sort)))
+                .thenReturn(new PageImpl<>(List.of(hotEarly, hotLate), PageRequest.of(0, 4, sort), 2));
+
+        Page<BorrowingRecord> result = borrowingRecordService.getBorrowingRecordByBorrowDate(day, 1, 2, "ASC", "borrowDate");
+
+        assertEquals(List.of(11L, 12L), result.getContent().stream().map(BorrowingRecord::getId).toList());
+        assertEquals(4, result.getTotalElements());
+        assertEquals(2, result.getTotalPages());
+    }
+
+    @Test
+    void getBorrowingRecordByBorrowDate_WhenTheSortFieldIsNotStoredInTheArchive_ShouldThrowException() {
+        LocalDateTime day = LocalDate.of(2020, 5, 4).atStartOfDay();
+
+        InvalidSortFieldException exception = assertThrows(InvalidSortFieldException.class,
+                () -> borrowingRecordService.getBorrowingRecordByBorrowDate(day, 0, 10, "ASC", "member"));
+
+        assertTrue(exception.getMessage().startsWith("Borrowing records can not be sorted by member"));
+        verifyNoInteractions(loanArchiveService, borrowingRecordRepository);
+    }
+
     @Test
     void testIsMemberOwnerOfTheRecord_ReturnsTrue_WhenEmailMatches() {
         when(borrowingRecordRepository.findById(1L)).thenReturn(Optional.of(record1));
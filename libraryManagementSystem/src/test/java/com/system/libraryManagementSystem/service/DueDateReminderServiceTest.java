@@ -0,0 +1,70 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
+import com.system.libraryManagementSystem.service.support.TimingWheel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DueDateReminderServiceTest {
+
+    @Mock
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private DueDateReminderService dueDateReminderService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(dueDateReminderService, "enabled", true);
+        ReflectionTestUtils.setField(dueDateReminderService, "daysBefore", 2);
+        ReflectionTestUtils.setField(dueDateReminderService, "lookAhead", Duration.ofHours(6));
+        ReflectionTestUtils.setField(dueDateReminderService, "tick", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(dueDateReminderService, "fetchSize", 1000);
+        ReflectionTestUtils.setField(dueDateReminderService, "threads", 1);
+        ReflectionTestUtils.setField(dueDateReminderService, "queueCapacity", 10);
+        dueDateReminderService.afterSingletonsInstantiated();       //the window is read, no loan falls due in it yet
+    }
+
+    @AfterEach
+    void tearDown() {
+        dueDateReminderService.destroy();
+    }
+
+    @Test
+    void trackAfterCommit_WhenALoanIsApprovedAfterItsWindowWasRead_ShouldScheduleItsReminder() {
+        dueDateReminderService.trackAfterCommit(7L, LocalDateTime.now().plusDays(2).plusHours(1));
+
+        assertEquals(1, pending());
+        verify(borrowingRecordRepository, times(1)).findDueForReminder(any(LocalDateTime.class), anyLong(), any(LocalDateTime.class), anyInt());
+    }
+
+    @Test
+    void trackAfterCommit_WhenTheDueDateIsAfterTheWindow_ShouldLeaveItToTheNextRead() {
+        dueDateReminderService.trackAfterCommit(7L, LocalDateTime.now().plusDays(30));
+
+        assertEquals(0, pending());
+    }
+
+    private int pending() {
+        return ((TimingWheel) ReflectionTestUtils.getField(dueDateReminderService, "timingWheel")).size();
+    }
+}
@@ -0,0 +1,97 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.exception.BookNotFoundException;
+import com.system.libraryManagementSystem.exception.BookUnavailableException;
+import com.system.libraryManagementSystem.exception.InventoryConflictException;
+import com.system.libraryManagementSystem.model.BookInventory;
+import com.system.libraryManagementSystem.repository.BookInventoryRepository;
+import com.system.libraryManagementSystem.repository.BookRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryServiceTest {
+
+    @Mock
+    private BookInventoryRepository bookInventoryRepository;
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @InjectMocks
+    private InventoryService inventoryService;
+
+    @Test
+    void checkout_WhenCopyIsAvailable_ShouldOnlyRunTheConditionalUpdate() {
+        when(bookInventoryRepository.checkout(1L)).thenReturn(1);
+
+        inventoryService.checkout(1L);
+
+        verify(bookInventoryRepository, times(1)).checkout(1L);
+        verify(bookInventoryRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    void checkout_WhenNoCopyIsLeft_ShouldThrowException() {
+        when(bookInventoryRepository.checkout(1L)).thenReturn(0);
+        when(bookInventoryRepository.existsById(1L)).thenReturn(true);
+
+        BookUnavailableException result = assertThrows(BookUnavailableException.class, () -> inventoryService.checkout(1L));
+
+        assertEquals("No copies of the book with the id: 1 are available", result.getMessage());
+    }
+
+    @Test
+    void checkout_WhenTitleIsNotTracked_ShouldAllowTheLoan() {
+        when(bookInventoryRepository.checkout(1L)).thenReturn(0);
+        when(bookInventoryRepository.existsById(1L)).thenReturn(false);
+
+        assertDoesNotThrow(() -> inventoryService.checkout(1L));
+    }
+
+    @Test
+    void setTotalCopies_WhenNoInventoryExists_ShouldCreateItWithEveryCopyAvailable() {
+        when(bookRepository.existsById(1L)).thenReturn(true);
+        when(bookInventoryRepository.updateTotalCopies(1L, 3)).thenReturn(0);
+        when(bookInventoryRepository.existsById(1L)).thenReturn(false);
+        when(bookInventoryRepository.save(any(BookInventory.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BookInventory result = inventoryService.setTotalCopies(1L, 3);
+
+        assertEquals(3, result.getTotalCopies());
+        assertEquals(3, result.getAvailableCopies());
+    }
+
+    @Test
+    void setTotalCopies_WhenLessThanCopiesOnLoan_ShouldThrowException() {
+        when(bookRepository.existsById(1L)).thenReturn(true);
+        when(bookInventoryRepository.updateTotalCopies(1L, 1)).thenReturn(0);
+        when(bookInventoryRepository.existsById(1L)).thenReturn(true);
+
+        assertThrows(InventoryConflictException.class, () -> inventoryService.setTotalCopies(1L, 1));
+        verify(bookInventoryRepository, never()).save(any(BookInventory.class));
+    }
+
+    @Test
+    void setTotalCopies_WhenBookDoesNotExist_ShouldThrowException() {
+        when(bookRepository.existsById(99L)).thenReturn(false);
+
+        assertThrows(BookNotFoundException.class, () -> inventoryService.setTotalCopies(99L, 3));
+        verify(bookInventoryRepository, never()).updateTotalCopies(anyLong(), anyInt());
+    }
+
+    @Test
+    void getInventory_WhenNotTracked_ShouldThrowException() {
+        when(bookInventoryRepository.findById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(BookNotFoundException.class, () -> inventoryService.getInventory(1L));
+    }
+}
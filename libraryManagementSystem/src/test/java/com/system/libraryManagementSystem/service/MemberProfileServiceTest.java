@@ -8,7 +8,7 @@ import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.model.MemberProfile;
 import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberProfileRepository;
-import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -38,7 +38,7 @@ class MemberProfileServiceTest {
     private MemberProfileRepository memberProfileRepository;
 
     @Mock
-    private MemberRepository memberRepository;
+    private TombstoneService tombstoneService;
 
     @Mock
     private Authentication authentication;
@@ -217,6 +217,23 @@ class MemberProfileServiceTest {
         verify(memberProfileRepository, never()).save(updatedMemberProfile);
     }
 
+    @Test
+    void updateMemberProfile_WhenMemberIsAnotherOne_ShouldThrowException() {
+        MemberProfile updatedMemberProfile = MemberProfile.builder()
+                .id(memberProfile.getId())
+                .member(Member.builder().id(2L).email("other@example.com").build())
+                .address("Updated address test")
+                .build();
+
+        when(memberProfileRepository.findById(memberProfile.getId())).thenReturn(Optional.of(memberProfile));
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> memberProfileService.updateMemberProfile(memberProfile.getId(), updatedMemberProfile));
+
+        assertEquals("Member profile with the id: 1 belongs to another member.", exception.getMessage());
+        verify(memberProfileRepository, never()).save(any(MemberProfile.class));
+    }
+
     @Test
     void updateBorrowingRecord_WhenRecordNotFound_ShouldThrowException() {
         MemberProfile updatedMemberProfile = new MemberProfile();
@@ -233,30 +250,25 @@ class MemberProfileServiceTest {
 
     @Test
     void deleteMemberProfileById_WhenProfileExist_ShouldDeleteSuccesfully() {
-        when(memberProfileRepository.findById(memberProfile.getId())).thenReturn(Optional.of(memberProfile));
-        when(memberRepository.save(member)).thenReturn(member);
-        when(cacheManager.getCache("member_profiles")).thenReturn(cache);
-        doNothing().when(memberProfileRepository).deleteById(memberProfile.getId());
+        when(tombstoneService.deleteMemberProfile(memberProfile.getId())).thenReturn(new Deleted(0, 0, 0, 1));
 
-        memberProfileService.deleteMemberProfileById(memberProfile.getId());
+        Deleted result = memberProfileService.deleteMemberProfileById(memberProfile.getId());
 
-        verify(memberProfileRepository, times(1)).deleteById(memberProfile.getId());
-        assertNull(member.getMemberProfile());
-        verify(memberProfileRepository, times(1)).findById(memberProfile.getId());
-        verify(memberRepository, times(1)).save(member);
-        verify(cache, times(1)).evict("test@example.com");
+        assertEquals(1, result.profiles());
+        verify(tombstoneService, times(1)).deleteMemberProfile(memberProfile.getId());
+        verify(memberProfileRepository, never()).findById(memberProfile.getId());       //no entity is loaded to delete it
+        verify(memberProfileRepository, never()).deleteById(memberProfile.getId());
     }
 
     @Test
     void deleteMemberProfileById_ShouldThrowException_WhenProfileDoesNotExist() {
-        when(memberProfileRepository.findById(99L)).thenReturn(Optional.empty());
+        when(tombstoneService.deleteMemberProfile(99L)).thenReturn(Deleted.NOTHING);
 
         MemberProfileNotFoundException result = assertThrows(MemberProfileNotFoundException.class, () -> memberProfileService.deleteMemberProfileById(99L));
 
         assertNotNull(result);
         assertEquals("Member profile not found with the id: 99", result.getMessage());
-        verify(memberProfileRepository, times(1)).findById(99L);
-        verify(memberProfileRepository, never()).deleteById(99L);
+        verify(tombstoneService, times(1)).deleteMemberProfile(99L);
     }
 
     @Test
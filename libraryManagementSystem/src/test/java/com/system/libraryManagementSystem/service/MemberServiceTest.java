@@ -2,13 +2,18 @@ package com.system.libraryManagementSystem.service;
 
 import com.system.libraryManagementSystem.exception.AuthorNotFoundException;
 import com.system.libraryManagementSystem.exception.BookNotFoundException;
+import com.system.libraryManagementSystem.exception.BookUnavailableException;
+import com.system.libraryManagementSystem.exception.LoanLimitExceededException;
 import com.system.libraryManagementSystem.exception.MemberNotFoundException;
 import com.system.libraryManagementSystem.exception.MemberProfileNotFoundException;
 import com.system.libraryManagementSystem.model.Book;
+import com.system.libraryManagementSystem.model.BorrowingRecord;
 import com.system.libraryManagementSystem.model.Member;
 import com.system.libraryManagementSystem.model.MemberProfile;
 import com.system.libraryManagementSystem.repository.BookRepository;
+import com.system.libraryManagementSystem.repository.BorrowingRecordRepository;
 import com.system.libraryManagementSystem.repository.MemberRepository;
+import com.system.libraryManagementSystem.service.TombstoneService.Deleted;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,7 +21,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -25,6 +34,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -48,6 +58,30 @@ class MemberServiceTest {
     @Mock
     private BookRepository bookRepository;
 
+    @Mock
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Mock
+    private InventoryService inventoryService;
+
+    @Mock
+    private ReservationService reservationService;
+
+    @Mock
+    private LoanLimitService loanLimitService;
+
+    @Mock
+    private TombstoneService tombstoneService;
+
+    @Mock
+    private DueDateReminderService dueDateReminderService;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache cache;
+
     @InjectMocks
     private MemberService memberService;
 
@@ -238,17 +272,21 @@ class MemberServiceTest {
 
 
     @Test
-    void deleteMemberById_ShouldCallRepositoryDeleteById() {
+    void deleteMemberById_ShouldTombstoneTheMember() {
         when(memberRepository.findById(member.getId())).thenReturn(Optional.empty());
-        memberService.deleteMemberById(member.getId());
+        when(tombstoneService.deleteMember(member.getId())).thenReturn(new Deleted(0, 0, 1, 1));
+
+        assertEquals(new Deleted(0, 0, 1, 1), memberService.deleteMemberById(member.getId()));      //the member and its profile
 
         assertThrows(MemberNotFoundException.class, () -> memberService.getMemberById(member.getId()));
-        verify(memberRepository, times(1)).deleteById(member.getId());
+        verify(tombstoneService, times(1)).deleteMember(member.getId());
+        verify(memberRepository, never()).deleteById(member.getId());
+        verify(loanLimitService, times(1)).forget(member.getId());
     }
 
     @Test
     void testReturnBook_WhenMemberDoesNotExist_ShouldThrowException() {
-        when(memberRepository.findById(99L)).thenReturn(Optional.empty());
+        when(memberRepository.existsById(99L)).thenReturn(false);
 
         MemberNotFoundException result = assertThrows(MemberNotFoundException.class,
                 () -> memberService.returnBook(99L, book.getId()));
@@ -256,15 +294,15 @@ class MemberServiceTest {
         assertNotNull(result);
         assertEquals("Member not found with the id: 99", result.getMessage());
 
-        verify(memberRepository, times(1)).findById(99L);
-        verify(bookRepository, times(0)).findById(anyLong());
-        verify(memberRepository, never()).save(any(Member.class));
+        verify(memberRepository, times(1)).existsById(99L);
+        verify(bookRepository, never()).existsById(anyLong());
+        verify(borrowingRecordRepository, never()).returnLoan(anyLong(), anyLong(), any(LocalDateTime.class));
     }
 
     @Test
     void testReturnBook_WhenBookDoesNotExist_ShouldThrowException() {
-        when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
-        when(bookRepository.findById(99L)).thenReturn(Optional.empty());
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.existsById(99L)).thenReturn(false);
 
         BookNotFoundException result = assertThrows(BookNotFoundException.class,
                 () -> memberService.returnBook(member.getId(), 99L));
@@ -272,88 +310,186 @@ class MemberServiceTest {
         assertNotNull(result);
         assertEquals("Book not found with the id: 99", result.getMessage());
 
-        verify(memberRepository, times(1)).findById(member.getId());
-        verify(bookRepository, times(1)).findById(99L);
-        verify(memberRepository, never()).save(any(Member.class));
+        verify(memberRepository, times(1)).existsById(member.getId());
+        verify(bookRepository, times(1)).existsById(99L);
+        verify(borrowingRecordRepository, never()).returnLoan(anyLong(), anyLong(), any(LocalDateTime.class));
     }
 
     @Test
-    void testReturnBook_WhenMemberHasBorrowedBook_ShouldReturnAndSave() {
-        member.setBorrowedBooks(new ArrayList<>(List.of(book)));
-
+    void testReturnBook_WhenMemberHasBorrowedBook_ShouldCloseTheLoan() {
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.existsById(book.getId())).thenReturn(true);
+        when(borrowingRecordRepository.lockOpenLoanIds(member.getId(), book.getId())).thenReturn(List.of(7L));
+        when(borrowingRecordRepository.returnLoan(eq(member.getId()), eq(book.getId()), any(LocalDateTime.class))).thenReturn(1);
         when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
-        when(memberRepository.save(any(Member.class))).thenReturn(member);
+        when(cacheManager.getCache("borrowing_records")).thenReturn(cache);
 
         Member result = memberService.returnBook(member.getId(), book.getId());
 
         assertNotNull(result);
-        assertFalse(result.getBorrowedBooks().contains(book)); // Ensure book was removed
+        assertEquals(member.getId(), result.getId());
 
-        verify(memberRepository, times(1)).findById(member.getId());
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(memberRepository, times(1)).save(member);
+        verify(borrowingRecordRepository, times(1)).returnLoan(eq(member.getId()), eq(book.getId()), any(LocalDateTime.class));
+        verify(cache, times(1)).evict(7L);      //the closed loan's record is read again
+        verify(reservationService, times(1)).returnCopy(book.getId());
+        verify(memberRepository, never()).save(any(Member.class));     //the borrowedBooks bag is never rewritten
     }
 
     @Test
-    void testReturnBook_WhenMemberDoesNotHaveBook_ShouldDoNothing() {
-        member.setBorrowedBooks(new ArrayList<>()); // No books borrowed
+    void testReturnBook_WhenTheBookWasOpenTwice_ShouldReturnBothCopies() {
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.existsById(book.getId())).thenReturn(true);
+        when(borrowingRecordRepository.returnLoan(eq(member.getId()), eq(book.getId()), any(LocalDateTime.class))).thenReturn(2);
+        when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
 
+        memberService.returnBook(member.getId(), book.getId());
+
+        verify(reservationService, times(2)).returnCopy(book.getId());      //a hold for the next in line or back on the shelf
+        verify(loanLimitService, times(1)).loansReturned(member.getId(), 2);
+    }
+
+    @Test
+    void testBorrowBook_WhenTheMemberHasAHold_ShouldNotTakeAnotherCopy() {
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(book.getId()))).thenReturn(List.of(book.getId()));
+        when(borrowingRecordRepository.existsOpenLoan(member.getId(), book.getId())).thenReturn(false);
+        when(reservationService.fulfillHold(member.getId(), book.getId())).thenReturn(true);
+        when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
+
+        memberService.borrowBook(member.getId(), book.getId());
+
+        verify(inventoryService, never()).checkout(anyLong());
+        verify(borrowingRecordRepository, times(1)).saveAndFlush(any(BorrowingRecord.class));
+    }
+
+    @Test
+    void testBorrowBook_WhenAnotherRequestOpenedTheSameLoan_ShouldFailAsAConflict() {
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(book.getId()))).thenReturn(List.of(book.getId()));
+        when(borrowingRecordRepository.existsOpenLoan(member.getId(), book.getId())).thenReturn(false);
+        when(borrowingRecordRepository.saveAndFlush(any(BorrowingRecord.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry '1-1' for key 'open_loan.PRIMARY'"));
+
+        //retried by OptimisticRetry, the next attempt finds the loan open
+        assertThrows(ConcurrencyFailureException.class, () -> memberService.borrowBook(member.getId(), book.getId()));
+
+        verify(memberRepository, never()).findById(member.getId());
+    }
+
+    @Test
+    void testBorrowBook_WhenTheMemberIsAtTheLimit_ShouldNotTakeACopy() {
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(book.getId()))).thenReturn(List.of(book.getId()));
+        when(borrowingRecordRepository.existsOpenLoan(member.getId(), book.getId())).thenReturn(false);
+        doThrow(new LoanLimitExceededException("Member with the id: 1 already has 5 loans and 0 pending requests, the limit is 5"))
+                .when(loanLimitService).openLoan(member.getId());
+
+        assertThrows(LoanLimitExceededException.class, () -> memberService.borrowBook(member.getId(), book.getId()));
+
+        verify(reservationService, never()).fulfillHold(anyLong(), anyLong());
+        verify(inventoryService, never()).checkout(anyLong());
+        verify(borrowingRecordRepository, never()).saveAndFlush(any(BorrowingRecord.class));
+    }
+
+    @Test
+    void testReturnBook_WhenMemberDoesNotHaveBook_ShouldDoNothing() {
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.existsById(book.getId())).thenReturn(true);
+        when(borrowingRecordRepository.returnLoan(eq(member.getId()), eq(book.getId()), any(LocalDateTime.class))).thenReturn(0);
         when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
-        when(memberRepository.save(any(Member.class))).thenReturn(member);
 
         Member result = memberService.returnBook(member.getId(), book.getId());
 
         assertNotNull(result);
         assertEquals(0, result.getBorrowedBooks().size()); // Ensure no changes
 
-        verify(memberRepository, times(1)).findById(member.getId());
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(memberRepository, times(1)).save(member);
+        verify(reservationService, never()).returnCopy(anyLong());
+        verify(memberRepository, never()).save(any(Member.class));
     }
 
     @Test
-    void testBorrowBook_WhenBookAndMemberExist_ShouldBorrowSuccesfully() {
+    void testBorrowBook_WhenBookAndMemberExist_ShouldOpenOneLoan() {
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(book.getId()))).thenReturn(List.of(book.getId()));
+        when(borrowingRecordRepository.existsOpenLoan(member.getId(), book.getId())).thenReturn(false);
         when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
-        when(bookRepository.findById(book.getId())).thenReturn(Optional.of(book));
-        when(memberRepository.save(any(Member.class))).thenReturn(member);
 
         Member result = memberService.borrowBook(member.getId(), book.getId());
 
         assertNotNull(result);
-        assertEquals(1, result.getBorrowedBooks().size());
-        assertEquals(book.getId(), result.getBorrowedBooks().get(0).getId());
-        verify(bookRepository, times(1)).findById(book.getId());
-        verify(memberRepository, times(1)).findById(member.getId());
-        verify(memberRepository, times(1)).save(member);
+        assertEquals(member.getId(), result.getId());
+        verify(borrowingRecordRepository, times(1)).saveAndFlush(argThat(loan -> loan.isApproved() && loan.getReturnedAt() == null && loan.getBorrowDate() != null));
+        verify(inventoryService, times(1)).checkout(book.getId());
+        verify(dueDateReminderService, times(1)).trackAfterCommit(any(), any(LocalDateTime.class));
+        verify(bookRepository, never()).findById(anyLong());
+        verify(memberRepository, never()).save(any(Member.class));
+    }
+
+    @Test
+    void testBorrowBook_WhenBookIsAlreadyBorrowed_ShouldNotTakeAnotherCopy() {
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(book.getId()))).thenReturn(List.of(book.getId()));
+        when(borrowingRecordRepository.existsOpenLoan(member.getId(), book.getId())).thenReturn(true);
+        when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
+
+        memberService.borrowBook(member.getId(), book.getId());
+
+        verify(inventoryService, never()).checkout(anyLong());
+        verify(borrowingRecordRepository, never()).saveAndFlush(any(BorrowingRecord.class));
+    }
+
+    @Test
+    void testBorrowBook_WhenNoCopyIsAvailable_ShouldThrowException() {
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(book.getId()))).thenReturn(List.of(book.getId()));
+        when(borrowingRecordRepository.existsOpenLoan(member.getId(), book.getId())).thenReturn(false);
+        doThrow(new BookUnavailableException("No copies of the book with the id: 1 are available"))
+                .when(inventoryService).checkout(book.getId());
+
+        BookUnavailableException result = assertThrows(BookUnavailableException.class, () -> memberService.borrowBook(member.getId(), book.getId()));
+
+        assertEquals("No copies of the book with the id: 1 are available", result.getMessage());     //checked out before the loan row is written
+        verify(borrowingRecordRepository, never()).saveAndFlush(any(BorrowingRecord.class));
+        verify(memberRepository, never()).findById(anyLong());
     }
 
     @Test
     void testBorrowBook_WhenMemberDoesNotExist_ShouldThrowException() {
-        when(memberRepository.findById(99L)).thenReturn(Optional.empty());
+        when(memberRepository.lockLive(List.of(99L))).thenReturn(List.of());
 
         MemberNotFoundException result = assertThrows(MemberNotFoundException.class, () -> memberService.borrowBook(99L, book.getId()));
 
         assertNotNull(result);
         assertEquals("Member not found with the id: 99", result.getMessage());
-        verify(memberRepository, times(1)).findById(99L);
-        verify(bookRepository, never()).findById(book.getId());
-        verify(memberRepository, never()).save(member);
+        verify(memberRepository, times(1)).lockLive(List.of(99L));
+        verify(bookRepository, never()).lockLive(any());
+        verify(borrowingRecordRepository, never()).saveAndFlush(any(BorrowingRecord.class));
     }
 
     @Test
     void testBorrowBook_WhenBookDoesNotExist_ShouldThrowException() {
-        when(memberRepository.findById(member.getId())).thenReturn(Optional.of(member));
-        when(bookRepository.findById(99L)).thenReturn(Optional.empty());
+        when(memberRepository.lockLive(List.of(member.getId()))).thenReturn(List.of(member.getId()));
+        when(bookRepository.lockLive(List.of(99L))).thenReturn(List.of());
 
         BookNotFoundException result = assertThrows(BookNotFoundException.class, () -> memberService.borrowBook(member.getId(), 99L));
 
         assertNotNull(result);
         assertEquals("Book not found with the id: 99", result.getMessage());
-        verify(memberRepository, times(1)).findById(member.getId());
-        verify(bookRepository, times(1)).findById(99L);
-        verify(memberRepository, never()).save(any(Member.class));
+        verify(memberRepository, times(1)).lockLive(List.of(member.getId()));
+        verify(bookRepository, times(1)).lockLive(List.of(99L));
+        verify(borrowingRecordRepository, never()).saveAndFlush(any(BorrowingRecord.class));
+    }
+
+    @Test
+    void testGetBorrowedBooks_WhenMemberExists_ShouldReturnPageOfLoans() {
+        PageRequest loansPage = PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, "id"));
+        when(memberRepository.existsById(member.getId())).thenReturn(true);
+        when(bookRepository.findBorrowedBooksByMemberId(member.getId(), loansPage)).thenReturn(new PageImpl<>(List.of(book), loansPage, 1));
+
+        Page<Book> result = memberService.getBorrowedBooks(member.getId(), 0, 10, "ASC", "id");
+
+        assertEquals(1, result.getTotalElements());
+        assertEquals(book.getId(), result.getContent().get(0).getId());
     }
 
     @Test
@@ -0,0 +1,85 @@
+package com.system.libraryManagementSystem.service;
+
+import com.system.libraryManagementSystem.repository.ReservationRepository;
+import com.system.libraryManagementSystem.repository.ReservationRepository.HoldExpiry;
+import com.system.libraryManagementSystem.service.support.TimingWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReservationServiceTest {
+
+    @Mock
+    private ReservationRepository reservationRepository;
+
+    @Mock
+    private InventoryService inventoryService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private ReservationService reservationService;
+
+    private TimingWheel holdExpiry;
+
+    @BeforeEach
+    void setUp() {
+        holdExpiry = new TimingWheel(Duration.ofSeconds(1), 512, 4, Runnable::run);       //not started, timers only wait in it
+        ReflectionTestUtils.setField(reservationService, "holdExpiry", holdExpiry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        holdExpiry.close();
+    }
+
+    @Test
+    void expireHold_WhenTheTimerFiresBeforeTheHoldEnds_ShouldScheduleItAgain() {
+        LocalDateTime expiresAt = LocalDateTime.now().plusNanos(500_000_000);
+        when(reservationRepository.findBookIdById(1L)).thenReturn(Optional.of(5L));
+        when(inventoryService.lockAvailableCopies(List.of(5L))).thenReturn(Map.of(5L, 0));
+        when(reservationRepository.expire(eq(1L), any(LocalDateTime.class))).thenReturn(0);
+        when(reservationRepository.findHold(1L)).thenReturn(Optional.of(hold(1L, expiresAt)));
+
+        ReflectionTestUtils.invokeMethod(reservationService, "expireHold", 1L);
+
+        assertEquals(1, holdExpiry.size());
+        verify(inventoryService, never()).checkin(anyLong());       //the copy stays with the hold
+    }
+
+    @Test
+    void expireHold_WhenTheHoldWasPickedUp_ShouldNotScheduleItAgain() {
+        when(reservationRepository.findBookIdById(1L)).thenReturn(Optional.of(5L));
+        when(inventoryService.lockAvailableCopies(List.of(5L))).thenReturn(Map.of(5L, 0));
+        when(reservationRepository.expire(eq(1L), any(LocalDateTime.class))).thenReturn(0);
+        when(reservationRepository.findHold(1L)).thenReturn(Optional.empty());
+
+        ReflectionTestUtils.invokeMethod(reservationService, "expireHold", 1L);
+
+        assertEquals(0, holdExpiry.size());
+    }
+
+    private static HoldExpiry hold(Long id, LocalDateTime expiresAt) {
+        return new HoldExpiry() {
+            public Long getId() { return id; }
+            public LocalDateTime getExpiresAt() { return expiresAt; }
+        };
+    }
+}
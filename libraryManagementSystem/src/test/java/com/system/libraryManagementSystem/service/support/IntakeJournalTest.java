@@ -0,0 +1,89 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.system.libraryManagementSystem.service.support.IntakeJournal.Entry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntakeJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private ObjectMapper objectMapper;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        file = directory.resolve("intake").resolve("borrow-requests.journal");
+    }
+
+    @Test
+    void open_ShouldReadBackOnlyTheRequestsThatWereNotFinished() throws IOException {
+        try (IntakeJournal journal = new IntakeJournal(file, objectMapper, true, 1024 * 1024)) {
+            assertTrue(journal.open().isEmpty());
+            journal.append(entry("a"));
+            journal.append(entry("b"));
+            journal.append(entry("c"));
+            journal.markDone(List.of("b"));
+        }
+
+        try (IntakeJournal journal = new IntakeJournal(file, objectMapper, true, 1024 * 1024)) {
+            List<Entry> unfinished = journal.open();
+
+            assertEquals(List.of("a", "c"), unfinished.stream().map(Entry::trackingId).toList());
+            assertEquals(entry("a"), unfinished.get(0));
+            assertEquals(2, Files.readAllLines(file).size());       //rewritten without the finished request
+        }
+    }
+
+    @Test
+    void open_WhenTheLastLineWasCutOff_ShouldSkipIt() throws IOException {
+        try (IntakeJournal journal = new IntakeJournal(file, objectMapper, true, 1024 * 1024)) {
+            journal.open();
+            journal.append(entry("a"));
+        }
+        Files.writeString(file, "{\"request\":{\"trackingId\":\"b\",\"memb", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (IntakeJournal journal = new IntakeJournal(file, objectMapper, true, 1024 * 1024)) {
+            assertEquals(List.of("a"), journal.open().stream().map(Entry::trackingId).toList());
+        }
+    }
+
+    @Test
+    void markDone_WhenNothingIsLeft_ShouldEmptyTheFile() throws IOException {
+        try (IntakeJournal journal = new IntakeJournal(file, objectMapper, false, 0)) {
+            journal.open();
+            journal.append(entry("a"));
+            journal.append(entry("b"));
+            journal.markDone(List.of("a"));
+            assertTrue(Files.size(file) > 0);
+
+            journal.markDone(List.of("b"));
+            assertEquals(0, Files.size(file));
+
+            journal.append(entry("c"));
+        }
+
+        try (IntakeJournal journal = new IntakeJournal(file, objectMapper, false, 0)) {
+            assertEquals(List.of("c"), journal.open().stream().map(Entry::trackingId).toList());
+        }
+    }
+
+    private static Entry entry(String trackingId) {
+        return new Entry(trackingId, 1L, "Member", "member@gmail.com", 2L, "Harry Potter",
+                LocalDateTime.of(2025, 2, 13, 12, 0), LocalDateTime.of(2025, 2, 27, 12, 0), LocalDateTime.of(2025, 2, 13, 12, 0, 5));
+    }
+}
@@ -0,0 +1,121 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.system.libraryManagementSystem.service.support.LoanSegment.Column;
+import com.system.libraryManagementSystem.service.support.LoanSegment.Row;
+import com.system.libraryManagementSystem.service.support.LoanSegment.Stats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanSegmentTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2021, 1, 1, 9, 30, 15, 123_456_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void write_ShouldReadBackEveryColumnOfTheSelectedRows() throws IOException {
+        Path file = directory.resolve("loans-1" + LoanSegment.EXTENSION);
+        Row returned = new Row(1L, 7L, "Member", "member@gmail.com", 3L, "Harry Potter", START.minusDays(1), START.minusHours(20), START,
+                START.plusDays(14), START.plusDays(20), true, new BigDecimal("1.50"), START.plusDays(20));
+        Row withNulls = new Row(2L, null, null, null, 4L, "Dune", null, null, START.plusDays(1), null, START.plusDays(2), false, null, null);
+
+        Stats stats = LoanSegment.write(file, List.of(returned, withNulls));
+
+        assertEquals(2, stats.rows());
+        assertEquals(Files.size(file), stats.bytes());
+        assertEquals(7L, stats.minMemberId());
+        assertEquals(7L, stats.maxMemberId());
+        assertEquals(START, stats.minBorrowedAt());
+        assertEquals(START.plusDays(1), stats.maxBorrowedAt());
+        try (LoanSegment.Reader reader = LoanSegment.open(file)) {
+            BitSet all = new BitSet();
+            all.set(0, 2);
+            assertEquals(List.of(returned, withNulls), reader.rows(all));
+        }
+    }
+
+    @Test
+    void where_ShouldMatchTheRangeOfOneColumnAndNeverNulls() throws IOException {
+        Path file = directory.resolve("loans-1" + LoanSegment.EXTENSION);
+        List<Row> rows = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            LocalDateTime borrowedAt = START.plusHours(id);
+            rows.add(new Row(id, id % 10, "Member " + id % 10, "member" + id % 10 + "@gmail.com", id % 50, "Book " + id % 50,
+                    borrowedAt, borrowedAt, borrowedAt, id % 100 == 0 ? null : borrowedAt.plusDays(14), borrowedAt.plusDays(7), true, null, null));
+        }
+        LoanSegment.write(file, rows);
+
+        try (LoanSegment.Reader reader = LoanSegment.open(file)) {
+            assertEquals(1000, reader.rows());
+            List<Row> borrowed = reader.rows(reader.where(Column.BORROWED_AT, LoanSegment.micros(START.plusHours(100)), LoanSegment.micros(START.plusHours(109))));
+            assertEquals(10, borrowed.size());
+            assertEquals(rows.subList(99, 109), borrowed);
+
+            assertEquals(100, reader.where(Column.MEMBER_ID, 3, 3).cardinality());
+            assertEquals(990, reader.where(Column.DUE_AT, Long.MIN_VALUE, Long.MAX_VALUE).cardinality());
+            assertTrue(reader.rows(reader.where(Column.MEMBER_ID, 11, 20)).isEmpty());
+        }
+    }
+
+    @Test
+    void first_ShouldDecodeOnlyTheFirstSelectedRowsInTheOrder() throws IOException {
+        Path file = directory.resolve("loans-1" + LoanSegment.EXTENSION);
+        List<Row> rows = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            LocalDateTime borrowedAt = START.plusHours(id);
+            rows.add(new Row(id, id % 10, null, null, 1L, null, borrowedAt, borrowedAt, borrowedAt,
+                    id % 25 == 0 ? null : borrowedAt.plusDays(14 - id % 3), null, true, null, null));
+        }
+        LoanSegment.write(file, rows);
+
+        try (LoanSegment.Reader reader = LoanSegment.open(file)) {
+            BitSet member3 = reader.where(Column.MEMBER_ID, 3, 3);
+            List<Row> latest = reader.first(member3, List.of(new LoanSegment.Order(Column.BORROWED_AT, false)), 3);
+            assertEquals(List.of(73L, 83L, 93L), latest.stream().map(Row::id).toList());       //file order, the caller sorts
+
+            BitSet all = new BitSet();
+            all.set(0, 100);
+            List<Row> earliestDue = reader.first(all, List.of(new LoanSegment.Order(Column.DUE_AT, true)), 5);
+            assertEquals(List.of(25L, 50L, 75L, 100L), earliestDue.stream().map(Row::id).filter(id -> id % 25 == 0).toList());      //nulls first
+            assertEquals(5, earliestDue.size());
+
+            assertEquals(rows.subList(2, 4), reader.first(reader.where(Column.ID, 3, 4), List.of(), 10));
+        }
+    }
+
+    @Test
+    void write_ShouldCompressRepeatedValues() throws IOException {
+        Path file = directory.resolve("loans-1" + LoanSegment.EXTENSION);
+        List<Row> rows = new ArrayList<>();
+        for (long id = 1; id <= 10_000; id++) {
+            LocalDateTime borrowedAt = START.plusMinutes(id * 7);
+            rows.add(new Row(id, id % 200, "A member with a long name " + id % 200, "member" + id % 200 + "@gmail.com", id % 500,
+                    "A book with a long title " + id % 500, borrowedAt, borrowedAt, borrowedAt, borrowedAt.plusDays(14), borrowedAt.plusDays(10),
+                    true, BigDecimal.ZERO.setScale(2), borrowedAt.plusDays(10)));
+        }
+
+        Stats stats = LoanSegment.write(file, rows);
+
+        assertTrue(stats.bytes() < 10_000 * 16, "segment of " + stats.bytes() + " bytes");        //less than 16 bytes a loan
+    }
+
+    @Test
+    void open_WhenTheFileIsNotASegment_ShouldThrowException() throws IOException {
+        Path file = directory.resolve("loans-1" + LoanSegment.EXTENSION);
+        Files.write(file, new byte[]{0, 0, 0, 4, 1, 2, 3, 4});
+
+        assertThrows(IOException.class, () -> LoanSegment.open(file));
+    }
+}
@@ -0,0 +1,92 @@
+package com.system.libraryManagementSystem.service.support;
+
+import com.system.libraryManagementSystem.exception.ConcurrentUpdateException;
+import com.system.libraryManagementSystem.exception.PreconditionFailedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimisticRetryAspectTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private Writer target;
+    private Writer proxy;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        OptimisticRetryAspect aspect = new OptimisticRetryAspect();
+        ReflectionTestUtils.setField(aspect, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(aspect, "maxAttempts", 3);
+        ReflectionTestUtils.setField(aspect, "backoffMillis", 1L);
+        ReflectionTestUtils.setField(aspect, "maxBackoffMillis", 2L);
+
+        target = new Writer();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        proxy = factory.getProxy();
+    }
+
+    @Test
+    void retry_WhenConflictClearsBeforeLastAttempt_ShouldReturnResult() {
+        target.conflictsLeft = 2;
+
+        assertEquals("saved", proxy.save());
+
+        assertEquals(3, target.calls.get());
+        assertEquals(2, count("library.write.conflicts"));
+        assertEquals(2, count("library.write.retries"));
+        assertEquals(0, count("library.write.retries.exhausted"));
+    }
+
+    @Test
+    void retry_WhenEveryAttemptConflicts_ShouldGiveUpWithConcurrentUpdateException() {
+        target.conflictsLeft = 10;
+
+        assertThrows(ConcurrentUpdateException.class, () -> proxy.save());
+
+        assertEquals(3, target.calls.get());
+        assertEquals(3, count("library.write.conflicts"));
+        assertEquals(1, count("library.write.retries.exhausted"));
+    }
+
+    @Test
+    void retry_WhenPreconditionFails_ShouldNotRetry() {
+        target.preconditionFails = true;
+
+        assertThrows(PreconditionFailedException.class, () -> proxy.save());
+
+        assertEquals(1, target.calls.get());
+        assertEquals(0, count("library.write.conflicts"));
+    }
+
+    private double count(String name) {
+        return meterRegistry.find(name).counters().stream().mapToDouble(counter -> counter.count()).sum();
+    }
+
+    static class Writer {
+        int conflictsLeft;
+        boolean preconditionFails;
+        final AtomicInteger calls = new AtomicInteger();
+
+        @OptimisticRetry
+        public String save() {
+            calls.incrementAndGet();
+            if (preconditionFails) {
+                throw new PreconditionFailedException("Book with the id: 1 was changed by another request, current version is 2");
+            }
+            if (conflictsLeft-- > 0) {
+                throw new ObjectOptimisticLockingFailureException("Book", 1L);
+            }
+            return "saved";
+        }
+    }
+}
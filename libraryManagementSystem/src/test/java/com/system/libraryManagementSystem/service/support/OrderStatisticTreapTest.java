@@ -0,0 +1,67 @@
+package com.system.libraryManagementSystem.service.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderStatisticTreapTest {
+
+    @Test
+    void rank_ShouldBeThePositionInSortedOrder() {
+        OrderStatisticTreap<Integer> treap = new OrderStatisticTreap<>();
+        for (int key : new int[]{50, 10, 40, 20, 30}) {
+            assertTrue(treap.insert(key));
+        }
+
+        assertFalse(treap.insert(30));
+        assertEquals(5, treap.size());
+        assertEquals(0, treap.rank(10));
+        assertEquals(2, treap.rank(30));
+        assertEquals(4, treap.rank(50));
+        assertEquals(-1, treap.rank(35));
+        assertEquals(10, treap.first());
+    }
+
+    @Test
+    void remove_ShouldMoveTheKeysBehindItUp() {
+        OrderStatisticTreap<Integer> treap = new OrderStatisticTreap<>();
+        List.of(1, 2, 3, 4).forEach(treap::insert);
+
+        assertTrue(treap.remove(1));
+        assertFalse(treap.remove(1));
+
+        assertEquals(3, treap.size());
+        assertEquals(2, treap.first());
+        assertEquals(0, treap.rank(2));
+        assertEquals(2, treap.rank(4));
+    }
+
+    @Test
+    void rank_ShouldMatchASortedSetAfterRandomChanges() {
+        OrderStatisticTreap<Integer> treap = new OrderStatisticTreap<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), treap.insert(key));
+            } else {
+                assertEquals(expected.remove(key), treap.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), treap.size());
+        assertEquals(expected.isEmpty() ? null : expected.first(), treap.first());
+        List<Integer> keys = new ArrayList<>(expected);
+        Collections.shuffle(keys, random);
+        for (int key : keys) {
+            assertEquals(expected.headSet(key).size(), treap.rank(key));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.system.libraryManagementSystem.service.support;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the clock is driven by hand through tick(), tasks run on the ticking thread
+class TimingWheelTest {
+
+    private TimingWheel timingWheel;
+    private List<Long> fired;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        timingWheel = new TimingWheel(Duration.ofSeconds(1), 8, 3, Runnable::run);      //levels of 8, 64 and 512 ticks
+        fired = new ArrayList<>();
+        now = 0;
+    }
+
+    @Test
+    void tick_ShouldRunEveryTimerOnTheTickOfItsDeadline() {
+        for (long seconds : new long[]{1, 7, 8, 9, 63, 64, 65, 500, 511, 512, 1500}) {
+            timingWheel.schedule(() -> fired.add(now), Duration.ofSeconds(seconds));
+        }
+
+        advance(1600);
+
+        assertEquals(List.of(1L, 7L, 8L, 9L, 63L, 64L, 65L, 500L, 511L, 512L, 1500L), fired);       //past the top level too
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    void schedule_WhenTheDelayIsNotAWholeTick_ShouldRoundUp() {
+        timingWheel.schedule(() -> fired.add(now), Duration.ofMillis(2500));
+        timingWheel.schedule(() -> fired.add(now), Duration.ZERO);
+
+        advance(5);
+
+        assertEquals(List.of(1L, 3L), fired);
+    }
+
+    @Test
+    void cancel_ShouldKeepTheTaskFromRunning() {
+        TimingWheel.Timeout cancelled = timingWheel.schedule(() -> fired.add(-1L), Duration.ofSeconds(100));
+        TimingWheel.Timeout kept = timingWheel.schedule(() -> fired.add(now), Duration.ofSeconds(100));
+        advance(50);        //cascaded once already
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        advance(100);
+
+        assertEquals(List.of(100L), fired);
+        assertFalse(kept.isPending());
+        assertFalse(kept.cancel());
+    }
+
+    @Test
+    void schedule_WhileTheWheelIsTurning_ShouldCountFromTheCurrentTick() {
+        advance(13);
+        timingWheel.schedule(() -> fired.add(now), Duration.ofSeconds(70));
+
+        advance(100);
+
+        assertEquals(List.of(83L), fired);
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            now++;
+            timingWheel.tick();
+        }
+    }
+}